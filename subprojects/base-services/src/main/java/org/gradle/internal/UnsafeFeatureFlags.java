@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Reads the {@code org.gradle.unsafe.*} system properties that enable experimental behaviour.
+ *
+ * A flag is enabled when the property is set to any value other than {@code false}, so both {@code -Dflag} and {@code -Dflag=true} enable it.
+ * A property passed to the build with {@code -D} on the command line takes precedence over the system property of the current process.
+ */
+public abstract class UnsafeFeatureFlags {
+
+    public static boolean isEnabled(String property) {
+        return isEnabled(property, Collections.emptyMap());
+    }
+
+    public static boolean isEnabled(String property, Map<String, String> systemPropertiesArgs) {
+        String value = getValue(property, systemPropertiesArgs);
+        return value != null && !"false".equalsIgnoreCase(value);
+    }
+
+    @Nullable
+    public static String getValue(String property) {
+        return getValue(property, Collections.emptyMap());
+    }
+
+    @Nullable
+    public static String getValue(String property, Map<String, String> systemPropertiesArgs) {
+        String value = systemPropertiesArgs.get(property);
+        return value != null ? value : System.getProperty(property);
+    }
+
+    /**
+     * Returns the integer value of the given property, or the default value when the property is not set or is not a number.
+     */
+    public static int getInt(String property, int defaultValue) {
+        String value = getValue(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -35,6 +35,14 @@
      */
     void add(T operation);
 
+    /**
+     * Adds an operation to be executed before the operations that have been added and not yet started.
+     * Useful for follow-up work of an operation that should not wait for all queued operations to start.
+     *
+     * @param operation operation to execute
+     */
+    void addFirst(T operation);
+
     /**
      * Cancels all queued operations in this queue.  Any operations that have started will be allowed to complete.
      */
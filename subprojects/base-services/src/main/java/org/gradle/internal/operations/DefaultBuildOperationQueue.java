@@ -59,6 +59,15 @@ private enum QueueState {
 
     @Override
     public void add(final T operation) {
+        add(operation, false);
+    }
+
+    @Override
+    public void addFirst(T operation) {
+        add(operation, true);
+    }
+
+    private void add(T operation, boolean first) {
         lock.lock();
         try {
             if (queueState == QueueState.Done) {
@@ -67,7 +76,11 @@ public void add(final T operation) {
             if (queueState == QueueState.Cancelled) {
                 return;
             }
-            workQueue.add(operation);
+            if (first) {
+                workQueue.addFirst(operation);
+            } else {
+                workQueue.addLast(operation);
+            }
             pendingOperations++;
             workAvailable.signalAll();
             if (workerCount == 0 || workerCount < workerLeases.getMaxWorkerCount() - 1) {
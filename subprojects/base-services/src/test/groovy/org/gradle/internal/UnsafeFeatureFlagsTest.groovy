@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal
+
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class UnsafeFeatureFlagsTest extends Specification {
+    static final String FLAG = "org.gradle.unsafe.test-flag"
+
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def "flag is disabled when not set"() {
+        expect:
+        !UnsafeFeatureFlags.isEnabled(FLAG)
+        UnsafeFeatureFlags.getValue(FLAG) == null
+        UnsafeFeatureFlags.getInt(FLAG, 3) == 3
+    }
+
+    @Unroll
+    def "flag set to '#value' is enabled: #enabled"() {
+        given:
+        System.setProperty(FLAG, value)
+
+        expect:
+        UnsafeFeatureFlags.isEnabled(FLAG) == enabled
+
+        where:
+        value   | enabled
+        ""      | true
+        "true"  | true
+        "TRUE"  | true
+        "false" | false
+        "False" | false
+        "/tmp"  | true
+    }
+
+    def "build arguments take precedence over system properties"() {
+        given:
+        System.setProperty(FLAG, "false")
+
+        expect:
+        UnsafeFeatureFlags.isEnabled(FLAG, [(FLAG): "true"])
+        UnsafeFeatureFlags.getValue(FLAG, [(FLAG): "value"]) == "value"
+        !UnsafeFeatureFlags.isEnabled(FLAG, [:])
+    }
+
+    @Unroll
+    def "reads integer value '#value'"() {
+        when:
+        System.setProperty(FLAG, value)
+
+        then:
+        UnsafeFeatureFlags.getInt(FLAG, 3) == expected
+
+        where:
+        value  | expected
+        "10"   | 10
+        " 7 "  | 7
+        "many" | 3
+    }
+}
@@ -25,6 +25,7 @@ import spock.lang.Specification
 import spock.lang.Unroll
 
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
 import java.util.concurrent.Executors
 
 class DefaultBuildOperationQueueTest extends Specification {
@@ -195,6 +196,48 @@ class DefaultBuildOperationQueueTest extends Specification {
         5    | 10
     }
 
+    @Unroll
+    def "operations added #description by a running operation are executed #order"() {
+        def executed = Collections.synchronizedList([])
+        workerRegistry = new DefaultWorkerLeaseService(new DefaultResourceLockCoordinationService(), new DefaultParallelismConfiguration(true, 1)) {}
+        // Do not start any workers, so that all operations are executed in order by the thread waiting for completion
+        operationQueue = new DefaultBuildOperationQueue(workerRegistry, { Runnable worker -> } as Executor, new SimpleWorker())
+
+        when:
+        operationQueue.add(new RecordingBuildOperation("first", executed, { addFollowUp(operationQueue, new RecordingBuildOperation("follow-up", executed)) }))
+        operationQueue.add(new RecordingBuildOperation("second", executed))
+        operationQueue.add(new RecordingBuildOperation("third", executed))
+
+        and:
+        operationQueue.waitForCompletion()
+
+        then:
+        executed == expected
+
+        where:
+        description | addFollowUp                         | order                                       | expected
+        "last"      | { queue, op -> queue.add(op) }      | "after operations that are already queued"  | ["first", "second", "third", "follow-up"]
+        "first"     | { queue, op -> queue.addFirst(op) } | "before operations that are already queued" | ["first", "follow-up", "second", "third"]
+    }
+
+    static class RecordingBuildOperation extends TestBuildOperation {
+        final String name
+        final List<String> executed
+        final Runnable operationAction
+
+        RecordingBuildOperation(String name, List<String> executed, Runnable operationAction = {}) {
+            this.name = name
+            this.executed = executed
+            this.operationAction = operationAction
+        }
+
+        @Override
+        void run(BuildOperationContext context) {
+            executed.add(name)
+            operationAction.run()
+        }
+    }
+
     static class SynchronizedBuildOperation extends TestBuildOperation {
         final Runnable operationAction
         final CountDownLatch startedLatch
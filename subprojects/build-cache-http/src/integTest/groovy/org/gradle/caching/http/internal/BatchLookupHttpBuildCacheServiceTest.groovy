@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal
+
+import org.apache.http.HttpHeaders
+import org.apache.http.HttpStatus
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheServiceFactory
+import org.gradle.caching.http.HttpBuildCache
+import org.gradle.caching.internal.controller.BuildCacheController
+import org.gradle.caching.internal.controller.BuildCacheLoadCommand
+import org.gradle.caching.internal.controller.DefaultBuildCacheController
+import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.test.fixtures.server.http.HttpServer
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+class BatchLookupHttpBuildCacheServiceTest extends Specification {
+    @Rule
+    HttpServer server = new HttpServer()
+    @Rule
+    TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider(getClass())
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties([(DefaultHttpBuildCacheServiceFactory.BATCH_LOOKUP_PATH_PROPERTY): "lookup"])
+
+    def missingKey = key("01234567abcdef")
+    def presentKey = key("89abcdef012345")
+    BatchLookupHttpBuildCacheService cache
+
+    def setup() {
+        server.start()
+        def config = new HttpBuildCache()
+        config.url = server.uri.resolve("/cache/")
+        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), { it.addHeader("X-Gradle-Version", "3.0") })
+            .createBuildCacheService(config, Stub(BuildCacheServiceFactory.Describer)) as BatchLookupHttpBuildCacheService
+    }
+
+    def cleanup() {
+        cache?.close()
+    }
+
+    def "looks up entries with a single request"() {
+        def requestedKeys = null
+        expectLookup { keys ->
+            requestedKeys = keys
+            [presentKey.hashCode]
+        }
+
+        when:
+        def found = cache.lookup([missingKey, presentKey])
+
+        then:
+        requestedKeys == [missingKey.hashCode, presentKey.hashCode]
+        found == [presentKey] as Set
+    }
+
+    def "sends X-Gradle-Version header when looking up entries"() {
+        server.expect("/cache/lookup", ["POST"], new HttpServer.ActionSupport("lookup has appropriate headers") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                assert request.getHeader("X-Gradle-Version") == "3.0"
+                assert request.getHeader(HttpHeaders.ACCEPT) == "text/plain"
+                response.setStatus(200)
+            }
+        })
+
+        expect:
+        cache.lookup([missingKey]).empty
+    }
+
+    def "reports error when lookup fails with http code #httpCode"(int httpCode) {
+        server.expect("/cache/lookup", ["POST"], new HttpServer.ActionSupport("return ${httpCode} broken") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                response.sendError(httpCode, "broken")
+            }
+        })
+
+        when:
+        cache.lookup([missingKey])
+
+        then:
+        BuildCacheException exception = thrown()
+
+        exception.message == "Looking up entries at '${server.uri}/cache/lookup' response status ${httpCode}: broken"
+
+        where:
+        httpCode << [HttpStatus.SC_NOT_FOUND, HttpStatus.SC_INTERNAL_SERVER_ERROR]
+    }
+
+    def "build cache controller does not download prefetched entry that lookup found to be missing"() {
+        expectLookup { keys -> [] }
+
+        when:
+        def controller = createController()
+        controller.prefetch(missingKey)
+        def result = controller.load(loadCommand(missingKey))
+        controller.close()
+
+        then:
+        !result.present
+    }
+
+    def "build cache controller downloads prefetched entry that lookup found"() {
+        def srcFile = tempDir.file("cached.zip")
+        srcFile.text = "Data"
+        expectLookup { keys -> keys }
+        server.expectGet("/cache/${presentKey.hashCode}", srcFile)
+
+        when:
+        def controller = createController()
+        controller.prefetch(presentKey)
+        def result = controller.load(loadCommand(presentKey))
+        controller.close()
+
+        then:
+        result.get() == "Data"
+    }
+
+    private void expectLookup(Closure<List<String>> presentKeys) {
+        server.expect("/cache/lookup", ["POST"], new HttpServer.ActionSupport("return present keys") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                def present = presentKeys.call(request.inputStream.text.readLines())
+                response.setStatus(200)
+                response.outputStream << present.collect { "$it\n" }.join("")
+            }
+        })
+    }
+
+    private BuildCacheController createController() {
+        new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(null, false, cache, false),
+            new TestBuildOperationExecutor(),
+            tempDir.file("user-home"),
+            false,
+            false,
+            new DefaultExecutorFactory(),
+            2
+        )
+    }
+
+    private BuildCacheLoadCommand<String> loadCommand(BuildCacheKey key) {
+        Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_ as InputStream) >> { InputStream input ->
+                def text = input.text
+                new BuildCacheLoadCommand.Result<String>() {
+                    @Override
+                    long getArtifactEntryCount() {
+                        return 0
+                    }
+
+                    @Override
+                    String getMetadata() {
+                        return text
+                    }
+                }
+            }
+        }
+    }
+
+    private static BuildCacheKey key(String hash) {
+        def hashCode = HashCode.fromString(hash)
+        new BuildCacheKey() {
+            @Override
+            String getHashCode() {
+                return hashCode.toString()
+            }
+
+            @Override
+            byte[] toByteArray() {
+                return hashCode.toByteArray()
+            }
+
+            @Override
+            String getDisplayName() {
+                return getHashCode()
+            }
+        }
+    }
+}
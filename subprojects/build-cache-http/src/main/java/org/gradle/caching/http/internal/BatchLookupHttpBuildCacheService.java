@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.CharStreams;
+import org.apache.http.HttpHeaders;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.BatchLookupBuildCacheService;
+import org.gradle.internal.resource.transport.http.HttpClientHelper;
+import org.gradle.internal.resource.transport.http.HttpClientResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * HTTP build cache implementation that can look up many entries with a single request to a batch lookup endpoint.
+ *
+ * The endpoint is sent a {@code POST} request listing the keys to look up, one per line, and responds with the keys it has, one per line.
+ */
+public class BatchLookupHttpBuildCacheService extends HttpBuildCacheService implements BatchLookupBuildCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchLookupHttpBuildCacheService.class);
+    private static final Splitter LINE_SPLITTER = Splitter.on('\n').trimResults().omitEmptyStrings();
+
+    private final HttpClientHelper httpClientHelper;
+    private final URI batchLookupUri;
+    private final HttpBuildCacheRequestCustomizer requestCustomizer;
+
+    public BatchLookupHttpBuildCacheService(HttpClientHelper httpClientHelper, URI url, URI batchLookupUri, HttpBuildCacheRequestCustomizer requestCustomizer) {
+        super(httpClientHelper, url, requestCustomizer);
+        this.httpClientHelper = httpClientHelper;
+        this.batchLookupUri = batchLookupUri;
+        this.requestCustomizer = requestCustomizer;
+    }
+
+    @Override
+    public Set<BuildCacheKey> lookup(Collection<BuildCacheKey> keys) throws BuildCacheException {
+        HttpPost httpPost = new HttpPost(batchLookupUri);
+        httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.TEXT_PLAIN.getMimeType());
+        requestCustomizer.customize(httpPost);
+        StringBuilder body = new StringBuilder();
+        for (BuildCacheKey key : keys) {
+            body.append(key.getHashCode()).append('\n');
+        }
+        httpPost.setEntity(new StringEntity(body.toString(), ContentType.create(ContentType.TEXT_PLAIN.getMimeType(), Charsets.UTF_8)));
+
+        try (HttpClientResponse response = httpClientHelper.performHttpRequest(httpPost)) {
+            StatusLine statusLine = response.getStatusLine();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for POST {}: {}", batchLookupUri, statusLine);
+            }
+            int statusCode = statusLine.getStatusCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                throw new BuildCacheException(String.format("Looking up entries at '%s' response status %d: %s", batchLookupUri, statusCode, statusLine.getReasonPhrase()));
+            }
+            Set<String> present;
+            try (Reader reader = new InputStreamReader(response.getContent(), Charsets.UTF_8)) {
+                present = new HashSet<>(LINE_SPLITTER.splitToList(CharStreams.toString(reader)));
+            }
+            Set<BuildCacheKey> found = new LinkedHashSet<>();
+            for (BuildCacheKey key : keys) {
+                if (present.contains(key.getHashCode())) {
+                    found.add(key);
+                }
+            }
+            return found;
+        } catch (IOException e) {
+            throw new BuildCacheException(e.getMessage(), e);
+        }
+    }
+}
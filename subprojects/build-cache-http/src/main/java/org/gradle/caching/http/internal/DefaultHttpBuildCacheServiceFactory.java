@@ -23,6 +23,7 @@
 import org.gradle.caching.BuildCacheServiceFactory;
 import org.gradle.caching.http.HttpBuildCache;
 import org.gradle.caching.http.HttpBuildCacheCredentials;
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.authentication.DefaultBasicAuthentication;
 import org.gradle.internal.deprecation.DeprecationLogger;
 import org.gradle.internal.resource.transport.http.DefaultHttpSettings;
@@ -41,6 +42,10 @@
  * Build cache factory for HTTP backend.
  */
 public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFactory<HttpBuildCache> {
+    /**
+     * The path of an endpoint that looks up many entries with a single request, relative to the cache URL, see {@link BatchLookupHttpBuildCacheService}.
+     */
+    public static final String BATCH_LOOKUP_PATH_PROPERTY = "org.gradle.unsafe.build-cache.http.batch-lookup-path";
 
     private final SslContextFactory sslContextFactory;
     private final HttpBuildCacheRequestCustomizer requestCustomizer;
@@ -96,6 +101,13 @@ public BuildCacheService createBuildCacheService(HttpBuildCache configuration, D
             .config("allowUntrustedServer", Boolean.toString(allowUntrustedServer))
             .config("allowInsecureProtocol", Boolean.toString(allowInsecureProtocol));
 
+        String batchLookupPath = UnsafeFeatureFlags.getValue(BATCH_LOOKUP_PATH_PROPERTY);
+        if (batchLookupPath != null) {
+            URI batchLookupUrl = noUserInfoUrl.resolve(batchLookupPath);
+            describer.config("batchLookupUrl", batchLookupUrl.toASCIIString());
+            return new BatchLookupHttpBuildCacheService(httpClientHelper, noUserInfoUrl, batchLookupUrl, requestCustomizer);
+        }
+
         return new HttpBuildCacheService(httpClientHelper, noUserInfoUrl, requestCustomizer);
     }
 
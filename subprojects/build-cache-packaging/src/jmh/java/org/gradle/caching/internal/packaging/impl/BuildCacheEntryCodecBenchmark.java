@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares the throughput and compression ratio of the build cache entry codecs.
+ *
+ * The input is the concatenated contents of a jar, which is close to what the output of a compile task looks like.
+ * By default the Guava jar is used, another jar can be given with {@code -Dorg.gradle.benchmark.codec.input=<path>}.
+ * The compression ratio of each codec is printed when setting up the trial.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@State(Scope.Benchmark)
+public class BuildCacheEntryCodecBenchmark {
+    private static final byte[] BUFFER = new byte[64 * 1024];
+
+    @Param({"gzip", "lz4", "none"})
+    String codecName;
+
+    private StandardBuildCacheEntryCodec codec;
+    private byte[] contents;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, URISyntaxException {
+        codec = StandardBuildCacheEntryCodec.forName(codecName);
+        contents = readJarContents(inputJar());
+        compressed = compress(contents);
+        System.out.printf("%n%s: %d bytes compressed to %d bytes (%.1f%%)%n", codecName, contents.length, compressed.length, 100.0 * compressed.length / contents.length);
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        return compress(contents);
+    }
+
+    @Benchmark
+    public void decompress(Blackhole blackhole) throws IOException {
+        try (InputStream input = codec.decompress(new ByteArrayInputStream(compressed))) {
+            int read;
+            while ((read = input.read(BUFFER)) >= 0) {
+                blackhole.consume(read);
+            }
+        }
+    }
+
+    private byte[] compress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length);
+        try (OutputStream compressedOutput = codec.compress(output)) {
+            compressedOutput.write(bytes);
+        }
+        return output.toByteArray();
+    }
+
+    private static File inputJar() throws URISyntaxException {
+        String path = System.getProperty("org.gradle.benchmark.codec.input");
+        if (path != null) {
+            return new File(path);
+        }
+        return new File(ImmutableList.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static byte[] readJarContents(File jar) throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                try (InputStream input = zipFile.getInputStream(entries.nextElement())) {
+                    ByteStreams.copy(input, contents);
+                }
+            }
+        }
+        return contents.toByteArray();
+    }
+}
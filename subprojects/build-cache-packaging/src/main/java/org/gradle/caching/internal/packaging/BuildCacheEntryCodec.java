@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses the stream of a packed build cache entry.
+ */
+public interface BuildCacheEntryCodec {
+    /**
+     * The name of the codec, used to select it in the configuration.
+     */
+    String getName();
+
+    /**
+     * The identifier of the codec stored in the header of the entries it compresses. Must be unique among the known codecs and must never change.
+     */
+    int getId();
+
+    OutputStream compress(OutputStream output) throws IOException;
+
+    InputStream decompress(InputStream input) throws IOException;
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.origin.OriginReader;
+import org.gradle.caching.internal.origin.OriginWriter;
+import org.gradle.caching.internal.packaging.BuildCacheEntryCodec;
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Map;
+
+/**
+ * Compresses packed build cache entries with a configurable codec.
+ *
+ * Entries compressed with gzip are written as plain gzip streams, the format used before codecs were configurable.
+ * Entries compressed with other codecs start with a header identifying the codec. Since the header cannot be confused with the gzip magic number,
+ * entries in both formats can be read regardless of the configured codec, so a cache keeps working when the codec is changed.
+ */
+public class CompressingBuildCacheEntryPacker implements BuildCacheEntryPacker {
+    private static final int HEADER_MAGIC_1 = 'G';
+    private static final int HEADER_MAGIC_2 = 'C';
+    private static final int HEADER_VERSION = 1;
+
+    private final BuildCacheEntryPacker delegate;
+    private final BuildCacheEntryCodec codec;
+
+    public CompressingBuildCacheEntryPacker(BuildCacheEntryPacker delegate, BuildCacheEntryCodec codec) {
+        this.delegate = delegate;
+        this.codec = codec;
+    }
+
+    @Override
+    public PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
+        writeHeader(codec, output);
+        try (OutputStream compressedOutput = codec.compress(output)) {
+            return delegate.pack(entity, snapshots, compressedOutput, writeOrigin);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+        PushbackInputStream pushbackInput = new PushbackInputStream(input, 2);
+        try (InputStream decompressedInput = readHeader(pushbackInput).decompress(pushbackInput)) {
+            return delegate.unpack(entity, decompressedInput, readOrigin);
+        }
+    }
+
+    /**
+     * Writes the header identifying the given codec, which must be followed by the packed entry compressed with that codec.
+     */
+    public static void writeHeader(BuildCacheEntryCodec codec, OutputStream output) throws IOException {
+        if (codec != StandardBuildCacheEntryCodec.GZIP) {
+            output.write(HEADER_MAGIC_1);
+            output.write(HEADER_MAGIC_2);
+            output.write(HEADER_VERSION);
+            output.write(codec.getId());
+        }
+    }
+
+    /**
+     * Reads the header of a compressed entry, leaving the given stream at the start of the compressed data.
+     * Returns {@code null} and resets the stream when it does not start like an entry written with one of the standard codecs.
+     *
+     * @param input a stream that supports {@link InputStream#mark(int)}.
+     */
+    @Nullable
+    public static BuildCacheEntryCodec readCodec(InputStream input) throws IOException {
+        input.mark(4);
+        int first = input.read();
+        int second = input.read();
+        if (first == 0x1f && second == 0x8b) {
+            input.reset();
+            return StandardBuildCacheEntryCodec.GZIP;
+        }
+        if (first == HEADER_MAGIC_1 && second == HEADER_MAGIC_2 && input.read() == HEADER_VERSION) {
+            int id = input.read();
+            for (StandardBuildCacheEntryCodec codec : StandardBuildCacheEntryCodec.values()) {
+                if (codec.getId() == id) {
+                    return codec;
+                }
+            }
+        }
+        input.reset();
+        return null;
+    }
+
+    private BuildCacheEntryCodec readHeader(PushbackInputStream input) throws IOException {
+        int first = input.read();
+        int second = input.read();
+        if (first != HEADER_MAGIC_1 || second != HEADER_MAGIC_2) {
+            // Anything else is read as gzip, which also reports streams in an unknown format
+            if (second >= 0) {
+                input.unread(second);
+            }
+            if (first >= 0) {
+                input.unread(first);
+            }
+            return StandardBuildCacheEntryCodec.GZIP;
+        }
+        int version = input.read();
+        if (version != HEADER_VERSION) {
+            throw new IOException(String.format("Unsupported build cache entry header version %d.", version));
+        }
+        int id = input.read();
+        if (id == codec.getId()) {
+            return codec;
+        }
+        try {
+            return StandardBuildCacheEntryCodec.forId(id);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses single blocks in the LZ4 block format.
+ *
+ * The compressor is the simple greedy variant: a hash table of the positions of recent 4-byte sequences is used to find matches,
+ * and the search step grows while no match is found, so incompressible data is skipped over quickly.
+ */
+final class Lz4Block {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int RUN_MASK = 15;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * The size of the buffer needed to compress the given number of bytes in the worst case.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses the first {@code length} bytes of {@code source} into {@code target}, and returns the number of bytes written.
+     */
+    int compress(byte[] source, int length, byte[] target) {
+        int targetPosition = 0;
+        int anchor = 0;
+        if (length >= MATCH_FIND_LIMIT + 1) {
+            Arrays.fill(hashTable, -1);
+            int matchLimit = length - MATCH_FIND_LIMIT;
+            int matchEndLimit = length - LAST_LITERALS;
+            int position = 0;
+            int searchCount = 1 << SKIP_TRIGGER;
+            while (position < matchLimit) {
+                int sequence = readInt(source, position);
+                int hash = hash(sequence);
+                int reference = hashTable[hash];
+                hashTable[hash] = position;
+                if (reference < 0 || position - reference > MAX_OFFSET || readInt(source, reference) != sequence) {
+                    position += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+                while (position > anchor && reference > 0 && source[position - 1] == source[reference - 1]) {
+                    position--;
+                    reference--;
+                }
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < matchEndLimit && source[position + matchLength] == source[reference + matchLength]) {
+                    matchLength++;
+                }
+                targetPosition = writeSequence(source, anchor, position - anchor, position - reference, matchLength, target, targetPosition);
+                position += matchLength;
+                anchor = position;
+            }
+        }
+        return writeLastLiterals(source, anchor, length - anchor, target, targetPosition);
+    }
+
+    /**
+     * Decompresses {@code length} bytes of {@code source} into {@code target}, which must be exactly as long as the decompressed block.
+     */
+    static void decompress(byte[] source, int length, byte[] target, int decompressedLength) throws IOException {
+        int sourcePosition = 0;
+        int targetPosition = 0;
+        while (sourcePosition < length) {
+            int token = source[sourcePosition++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int value;
+                do {
+                    checkAvailable(sourcePosition, 1, length);
+                    value = source[sourcePosition++] & 0xff;
+                    literalLength += value;
+                } while (value == 255);
+            }
+            checkAvailable(sourcePosition, literalLength, length);
+            checkAvailable(targetPosition, literalLength, decompressedLength);
+            System.arraycopy(source, sourcePosition, target, targetPosition, literalLength);
+            sourcePosition += literalLength;
+            targetPosition += literalLength;
+            if (sourcePosition == length) {
+                break;
+            }
+
+            checkAvailable(sourcePosition, 2, length);
+            int offset = (source[sourcePosition] & 0xff) | (source[sourcePosition + 1] & 0xff) << 8;
+            sourcePosition += 2;
+            if (offset == 0 || offset > targetPosition) {
+                throw corrupt();
+            }
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int value;
+                do {
+                    checkAvailable(sourcePosition, 1, length);
+                    value = source[sourcePosition++] & 0xff;
+                    matchLength += value;
+                } while (value == 255);
+            }
+            matchLength += MIN_MATCH;
+            checkAvailable(targetPosition, matchLength, decompressedLength);
+            int matchPosition = targetPosition - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(target, matchPosition, target, targetPosition, matchLength);
+                targetPosition += matchLength;
+            } else {
+                // Overlapping match, which repeats the last offset bytes
+                for (int i = 0; i < matchLength; i++) {
+                    target[targetPosition++] = target[matchPosition + i];
+                }
+            }
+        }
+        if (targetPosition != decompressedLength) {
+            throw corrupt();
+        }
+    }
+
+    private static int writeSequence(byte[] source, int literalStart, int literalLength, int offset, int matchLength, byte[] target, int targetPosition) {
+        int tokenPosition = targetPosition++;
+        int remainingMatchLength = matchLength - MIN_MATCH;
+        int token = (Math.min(literalLength, RUN_MASK) << 4) | Math.min(remainingMatchLength, RUN_MASK);
+        target[tokenPosition] = (byte) token;
+        targetPosition = writeLength(literalLength, target, targetPosition);
+        System.arraycopy(source, literalStart, target, targetPosition, literalLength);
+        targetPosition += literalLength;
+        target[targetPosition++] = (byte) offset;
+        target[targetPosition++] = (byte) (offset >>> 8);
+        return writeLength(remainingMatchLength, target, targetPosition);
+    }
+
+    private static int writeLastLiterals(byte[] source, int literalStart, int literalLength, byte[] target, int targetPosition) {
+        target[targetPosition++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        targetPosition = writeLength(literalLength, target, targetPosition);
+        System.arraycopy(source, literalStart, target, targetPosition, literalLength);
+        return targetPosition + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] target, int targetPosition) {
+        if (length >= RUN_MASK) {
+            int remaining = length - RUN_MASK;
+            while (remaining >= 255) {
+                target[targetPosition++] = (byte) 255;
+                remaining -= 255;
+            }
+            target[targetPosition++] = (byte) remaining;
+        }
+        return targetPosition;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xff)
+            | (bytes[position + 1] & 0xff) << 8
+            | (bytes[position + 2] & 0xff) << 16
+            | (bytes[position + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static void checkAvailable(int position, int count, int length) throws IOException {
+        if (count < 0 || position + count > length) {
+            throw corrupt();
+        }
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Corrupt LZ4 compressed block.");
+    }
+}
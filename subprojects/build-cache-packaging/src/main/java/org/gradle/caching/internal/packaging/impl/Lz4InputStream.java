@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a stream written by {@link Lz4OutputStream}.
+ */
+class Lz4InputStream extends InputStream {
+    private static final int MAX_COMPRESSED_LENGTH = Lz4Block.maxCompressedLength(Lz4OutputStream.BLOCK_SIZE);
+
+    private final DataInputStream input;
+    private final CRC32 crc = new CRC32();
+    private final byte[] compressed = new byte[MAX_COMPRESSED_LENGTH];
+    private final byte[] buffer = new byte[Lz4OutputStream.BLOCK_SIZE];
+    private int position;
+    private int limit;
+    private boolean finished;
+
+    Lz4InputStream(InputStream input) {
+        this.input = new DataInputStream(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position == limit) {
+            if (finished) {
+                return false;
+            }
+            readBlock();
+        }
+        return true;
+    }
+
+    private void readBlock() throws IOException {
+        int storedLength = input.readInt();
+        if (storedLength == 0) {
+            finished = true;
+            return;
+        }
+        int decompressedLength = input.readInt();
+        int expectedCrc = input.readInt();
+        if (decompressedLength <= 0 || decompressedLength > buffer.length) {
+            throw new IOException("Corrupt LZ4 compressed stream.");
+        }
+        if ((storedLength & Lz4OutputStream.UNCOMPRESSED_FLAG) != 0) {
+            if ((storedLength & ~Lz4OutputStream.UNCOMPRESSED_FLAG) != decompressedLength) {
+                throw new IOException("Corrupt LZ4 compressed stream.");
+            }
+            input.readFully(buffer, 0, decompressedLength);
+        } else {
+            if (storedLength > compressed.length) {
+                throw new IOException("Corrupt LZ4 compressed stream.");
+            }
+            input.readFully(compressed, 0, storedLength);
+            Lz4Block.decompress(compressed, storedLength, buffer, decompressedLength);
+        }
+        crc.reset();
+        crc.update(buffer, 0, decompressedLength);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Corrupt LZ4 compressed stream: checksum mismatch.");
+        }
+        position = 0;
+        limit = decompressedLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a stream of LZ4 compressed blocks.
+ *
+ * Each block starts with its stored length, its decompressed length and a CRC-32 of the decompressed contents.
+ * The highest bit of the stored length marks a block that is stored uncompressed, because it did not get smaller.
+ * The stream ends with a zero length block.
+ */
+class Lz4OutputStream extends OutputStream {
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int UNCOMPRESSED_FLAG = 0x80000000;
+
+    private final DataOutputStream output;
+    private final Lz4Block compressor = new Lz4Block();
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[Lz4Block.maxCompressedLength(BLOCK_SIZE)];
+    private int buffered;
+    private boolean closed;
+
+    Lz4OutputStream(OutputStream output) {
+        this.output = new DataOutputStream(output);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (buffered == BLOCK_SIZE) {
+            writeBlock();
+        }
+        buffer[buffered++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (buffered == BLOCK_SIZE) {
+                writeBlock();
+            }
+            int count = Math.min(length, BLOCK_SIZE - buffered);
+            System.arraycopy(bytes, offset, buffer, buffered, count);
+            buffered += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffered > 0) {
+            writeBlock();
+        }
+        output.flush();
+    }
+
+    private void writeBlock() throws IOException {
+        crc.reset();
+        crc.update(buffer, 0, buffered);
+        int compressedLength = compressor.compress(buffer, buffered, compressed);
+        if (compressedLength < buffered) {
+            output.writeInt(compressedLength);
+            output.writeInt(buffered);
+            output.writeInt((int) crc.getValue());
+            output.write(compressed, 0, compressedLength);
+        } else {
+            output.writeInt(buffered | UNCOMPRESSED_FLAG);
+            output.writeInt(buffered);
+            output.writeInt((int) crc.getValue());
+            output.write(buffer, 0, buffered);
+        }
+        buffered = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (buffered > 0) {
+                writeBlock();
+            }
+            output.writeInt(0);
+            output.flush();
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.gradle.caching.internal.packaging.BuildCacheEntryCodec;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The codecs that can be used to compress build cache entries.
+ */
+public enum StandardBuildCacheEntryCodec implements BuildCacheEntryCodec {
+    /**
+     * gzip, which produces the smallest entries. This is the default, and entries are written without a codec header so older versions can read them.
+     */
+    GZIP("gzip", 0) {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    },
+    /**
+     * LZ4, which is several times faster than gzip in both directions, at the cost of larger entries.
+     */
+    LZ4("lz4", 1) {
+        @Override
+        public OutputStream compress(OutputStream output) {
+            return new Lz4OutputStream(output);
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) {
+            return new Lz4InputStream(input);
+        }
+    },
+    /**
+     * No compression, for caches on fast storage or caches that compress or deduplicate entries on their own.
+     */
+    NONE("none", 2) {
+        @Override
+        public OutputStream compress(OutputStream output) {
+            return new FilterOutputStream(output) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) {
+            return input;
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final int id;
+
+    StandardBuildCacheEntryCodec(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    public static StandardBuildCacheEntryCodec forName(String name) {
+        for (StandardBuildCacheEntryCodec codec : values()) {
+            if (codec.name.equals(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown build cache entry codec '%s', supported codecs are %s.", name, describeNames()));
+    }
+
+    public static StandardBuildCacheEntryCodec forId(int id) {
+        for (StandardBuildCacheEntryCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown build cache entry codec id %d.", id));
+    }
+
+    private static String describeNames() {
+        StringBuilder names = new StringBuilder();
+        for (StandardBuildCacheEntryCodec codec : values()) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append('\'').append(codec.name).append('\'');
+        }
+        return names.toString();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import org.gradle.internal.snapshot.FileSystemSnapshot
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CompressingBuildCacheEntryPackerTest extends Specification {
+    def entity = Mock(CacheableEntity)
+    def contents = (0..<200_000).collect { (byte) (it % 251 < 100 ? it % 7 : it) } as byte[]
+    byte[] unpacked
+
+    def delegate = new BuildCacheEntryPacker() {
+        @Override
+        BuildCacheEntryPacker.PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
+            output.write(contents)
+            return new BuildCacheEntryPacker.PackResult(1)
+        }
+
+        @Override
+        BuildCacheEntryPacker.UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+            unpacked = input.bytes
+            return new BuildCacheEntryPacker.UnpackResult(null, 1, [:])
+        }
+    }
+
+    @Unroll
+    def "entry packed with #writeCodec can be unpacked when configured with #readCodec"() {
+        when:
+        def packed = pack(writeCodec)
+        unpack(readCodec, packed)
+
+        then:
+        unpacked == contents
+
+        where:
+        [writeCodec, readCodec] << [StandardBuildCacheEntryCodec.values(), StandardBuildCacheEntryCodec.values()].combinations()
+    }
+
+    def "gzip entries are written without header"() {
+        when:
+        def packed = pack(StandardBuildCacheEntryCodec.GZIP)
+
+        then:
+        (packed[0] & 0xff) == 0x1f
+        (packed[1] & 0xff) == 0x8b
+    }
+
+    def "lz4 compresses repetitive contents"() {
+        expect:
+        pack(StandardBuildCacheEntryCodec.LZ4).length < contents.length / 2
+    }
+
+    def "detects corrupt lz4 entry"() {
+        def packed = pack(StandardBuildCacheEntryCodec.LZ4)
+        def corrupted = packed.length.intdiv(2)
+        packed[corrupted] = (byte) (packed[corrupted] ^ 0x55)
+
+        when:
+        unpack(StandardBuildCacheEntryCodec.LZ4, packed)
+
+        then:
+        thrown IOException
+    }
+
+    def "fails on unknown codec"() {
+        def packed = [(byte) 'G', (byte) 'C', 1, 42] as byte[]
+
+        when:
+        unpack(StandardBuildCacheEntryCodec.GZIP, packed)
+
+        then:
+        def ex = thrown IOException
+        ex.message == "Unknown build cache entry codec id 42."
+    }
+
+    def "fails on unknown codec name"() {
+        when:
+        StandardBuildCacheEntryCodec.forName("zip")
+
+        then:
+        def ex = thrown IllegalArgumentException
+        ex.message == "Unknown build cache entry codec 'zip', supported codecs are 'gzip', 'lz4', 'none'."
+    }
+
+    private byte[] pack(StandardBuildCacheEntryCodec codec) {
+        def output = new ByteArrayOutputStream()
+        new CompressingBuildCacheEntryPacker(delegate, codec).pack(entity, [:], output, Mock(OriginWriter))
+        return output.toByteArray()
+    }
+
+    private void unpack(StandardBuildCacheEntryCodec codec, byte[] packed) {
+        new CompressingBuildCacheEntryPacker(delegate, codec).unpack(entity, new ByteArrayInputStream(packed), Mock(OriginReader))
+    }
+}
@@ -22,6 +22,7 @@ dependencies {
     api(project(":snapshots"))
 
     implementation(project(":baseServices"))
+    implementation(project(":buildCachePackaging"))
     implementation(project(":coreApi"))
     implementation(project(":files"))
     implementation(project(":native"))
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A build cache service that can find out which of a number of entries it has with a single request.
+ *
+ * The build cache controller uses this when prefetching remote entries, so that it only downloads the entries the cache has.
+ */
+public interface BatchLookupBuildCacheService extends BuildCacheService {
+    /**
+     * Looks up the given entries.
+     *
+     * @return the keys of the entries that are present in the cache, a subset of the given keys.
+     */
+    Set<BuildCacheKey> lookup(Collection<BuildCacheKey> keys) throws BuildCacheException;
+}
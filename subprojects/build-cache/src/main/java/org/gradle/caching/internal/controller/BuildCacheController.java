@@ -16,6 +16,7 @@
 
 package org.gradle.caching.internal.controller;
 
+import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 
 import java.io.Closeable;
@@ -32,6 +33,17 @@ public interface BuildCacheController extends Closeable {
 
     boolean isEmitDebugLogging();
 
+    /**
+     * Hints that the entry with the given key is likely to be loaded soon, so that it can be fetched ahead of time.
+     * Must be followed by a call to {@link #discardPrefetched(BuildCacheKey)} once the entry is no longer needed.
+     */
+    void prefetch(BuildCacheKey key);
+
+    /**
+     * Drops the entry with the given key from the prefetched entries, if it has not been loaded.
+     */
+    void discardPrefetched(BuildCacheKey key);
+
     <T> Optional<T> load(BuildCacheLoadCommand<T> command);
 
     void store(BuildCacheStoreCommand command);
@@ -22,6 +22,7 @@
 import org.gradle.api.GradleException;
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.BatchLookupBuildCacheService;
 import org.gradle.caching.internal.controller.operations.PackOperationDetails;
 import org.gradle.caching.internal.controller.operations.PackOperationResult;
 import org.gradle.caching.internal.controller.operations.UnpackOperationDetails;
@@ -40,6 +41,8 @@
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -66,6 +69,9 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildOperationExecutor buildOperationExecutor;
     private final boolean emitDebugLogging;
 
+    @Nullable
+    private final RemoteBuildCachePrefetcher prefetcher;
+
     private boolean closed;
 
     public DefaultBuildCacheController(
@@ -74,12 +80,30 @@ public DefaultBuildCacheController(
         File gradleUserHomeDir,
         boolean logStackTraces,
         boolean emitDebugLogging
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, emitDebugLogging, new DefaultExecutorFactory(), 0);
+    }
+
+    /**
+     * @param maxPrefetchedEntries the maximum number of remote entries to keep prefetched at the same time, or 0 to disable prefetching.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        ExecutorFactory executorFactory,
+        int maxPrefetchedEntries
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.emitDebugLogging = emitDebugLogging;
         this.local = toLocalHandle(config.getLocal(), config.isLocalPush());
         this.remote = toRemoteHandle(config.getRemote(), config.isRemotePush(), buildOperationExecutor, logStackTraces);
         this.tmp = toTempFileStore(config.getLocal(), gradleUserHomeDir);
+        this.prefetcher = maxPrefetchedEntries > 0 && config.getRemote() != null
+            ? new RemoteBuildCachePrefetcher(remote, toBatchLookup(config.getRemote()), local, new File(gradleUserHomeDir, "build-cache-prefetch"), maxPrefetchedEntries, executorFactory, buildOperationExecutor)
+            : null;
     }
 
     @Override
@@ -92,6 +116,20 @@ public boolean isEmitDebugLogging() {
         return emitDebugLogging;
     }
 
+    @Override
+    public void prefetch(BuildCacheKey key) {
+        if (prefetcher != null) {
+            prefetcher.prefetch(key);
+        }
+    }
+
+    @Override
+    public void discardPrefetched(BuildCacheKey key) {
+        if (prefetcher != null) {
+            prefetcher.discard(key);
+        }
+    }
+
     @Override
     public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
         final Unpack<T> unpack = new Unpack<>(command);
@@ -104,26 +142,35 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             }
 
             if (unpack.result != null) {
+                discardPrefetched(command.getKey());
                 return Optional.of(unpack.result.getMetadata());
             }
         }
 
         if (remote.canLoad()) {
-            tmp.withTempFile(command.getKey(), file -> {
-                LoadTarget loadTarget = new LoadTarget(file);
-                remote.load(command.getKey(), loadTarget);
-
-                if (loadTarget.isLoaded()) {
-                    try {
-                        unpack.execute(file);
-                    } catch (Exception e) {
-                        throw new GradleException("Build cache entry " + command.getKey().getHashCode() + " from remote build cache is invalid", e);
-                    }
-                    if (local.canStore()) {
-                        local.store(command.getKey(), file);
+            RemoteBuildCachePrefetcher.StagedEntry staged = prefetcher == null ? null : prefetcher.take(command.getKey());
+            if (staged != null && staged.isResolved()) {
+                try {
+                    File file = staged.getFile();
+                    if (file != null) {
+                        unpackRemote(command.getKey(), unpack, file);
                     }
+                } finally {
+                    staged.release();
                 }
-            });
+            } else {
+                if (staged != null) {
+                    staged.release();
+                }
+                tmp.withTempFile(command.getKey(), file -> {
+                    LoadTarget loadTarget = new LoadTarget(file);
+                    remote.load(command.getKey(), loadTarget);
+
+                    if (loadTarget.isLoaded()) {
+                        unpackRemote(command.getKey(), unpack, file);
+                    }
+                });
+            }
         }
 
         BuildCacheLoadCommand.Result<T> result = unpack.result;
@@ -132,6 +179,17 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             : Optional.of(result.getMetadata());
     }
 
+    private void unpackRemote(BuildCacheKey key, Unpack<?> unpack, File file) {
+        try {
+            unpack.execute(file);
+        } catch (Exception e) {
+            throw new GradleException("Build cache entry " + key.getHashCode() + " from remote build cache is invalid", e);
+        }
+        if (local.canStore()) {
+            local.store(key, file);
+        }
+    }
+
     private class Unpack<T> implements Action<File> {
         private final BuildCacheLoadCommand<T> command;
 
@@ -229,6 +287,10 @@ public void close() throws IOException {
             Closer closer = Closer.create();
             closer.register(local);
             closer.register(remote);
+            if (prefetcher != null) {
+                // Registered last so it is closed first, as it still uses the remote and local caches
+                closer.register(prefetcher);
+            }
             closer.close();
         }
     }
@@ -239,6 +301,13 @@ private static BuildCacheServiceHandle toRemoteHandle(@Nullable BuildCacheServic
             : new OpFiringBuildCacheServiceHandle(service, push, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
     }
 
+    @Nullable
+    private static BatchLookupBuildCacheService toBatchLookup(@Nullable BuildCacheService service) {
+        return service instanceof BatchLookupBuildCacheService
+            ? (BatchLookupBuildCacheService) service
+            : null;
+    }
+
     private static LocalBuildCacheServiceHandle toLocalHandle(@Nullable LocalBuildCacheService local, boolean localPush) {
         return local == null
             ? NullLocalBuildCacheServiceHandle.INSTANCE
@@ -16,6 +16,8 @@
 
 package org.gradle.caching.internal.controller;
 
+import org.gradle.caching.BuildCacheKey;
+
 import java.util.Optional;
 
 public class NoOpBuildCacheController implements BuildCacheController {
@@ -35,6 +37,16 @@ public boolean isEmitDebugLogging() {
         return false;
     }
 
+    @Override
+    public void prefetch(BuildCacheKey key) {
+
+    }
+
+    @Override
+    public void discardPrefetched(BuildCacheKey key) {
+
+    }
+
     @Override
     public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
         return Optional.empty();
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.BatchLookupBuildCacheService;
+import org.gradle.caching.internal.controller.operations.PrefetchOperationDetails;
+import org.gradle.caching.internal.controller.operations.PrefetchOperationResult;
+import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
+import org.gradle.caching.internal.controller.service.LoadTarget;
+import org.gradle.caching.internal.controller.service.LocalBuildCacheServiceHandle;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads entries from the remote build cache in the background into a bounded staging area,
+ * so that loading them later does not have to wait for the remote build cache.
+ *
+ * Each staged entry occupies one of a fixed number of slots from the time its prefetch starts until it is either taken by a load
+ * or released without being used. When all slots are in use, further prefetches are rejected rather than queued,
+ * as the entries requested most recently are the ones least likely to be needed soon.
+ *
+ * Each download runs as a build operation that is a child of the operation that requested the prefetch. That operation must either
+ * {@link #take(BuildCacheKey) take} or {@link #discard(BuildCacheKey) discard} the entry before it completes, so that the download does not outlive it.
+ *
+ * When the remote build cache can {@link BatchLookupBuildCacheService look up} many entries with a single request, the entries requested
+ * since the last lookup are looked up together before anything is downloaded, and only the entries the cache has are downloaded.
+ * The others are staged as missing. If a lookup fails, lookups are disabled for the rest of the build and each entry is downloaded directly.
+ *
+ * The staging area is shared by all daemons using the same Gradle user home. Staged files left behind by a daemon that was killed
+ * are deleted when a prefetcher starts or is closed, once they are older than a day.
+ */
+class RemoteBuildCachePrefetcher implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteBuildCachePrefetcher.class);
+    private static final String STAGED_FILE_SUFFIX = ".prefetch";
+    private static final int THREAD_COUNT = 4;
+    private static final long ORPHANED_FILE_AGE = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_LOOKUP_BATCH_SIZE = 100;
+
+    private final BuildCacheServiceHandle remote;
+    @Nullable
+    private final BatchLookupBuildCacheService batchLookup;
+    private final LocalBuildCacheServiceHandle local;
+    private final File stagingDir;
+    private final int maxStagedEntries;
+    private final Semaphore slots;
+    private final ManagedExecutor executor;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final ConcurrentMap<String, StagedEntry> entries = new ConcurrentHashMap<>();
+    private final Queue<StagedEntry> pendingLookups = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean lookupScheduled = new AtomicBoolean();
+
+    private final AtomicLong prefetchedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong wastedCount = new AtomicLong();
+    private final AtomicLong wastedBytes = new AtomicLong();
+
+    private volatile boolean lookupEnabled;
+    private volatile boolean closed;
+
+    RemoteBuildCachePrefetcher(
+        BuildCacheServiceHandle remote,
+        @Nullable BatchLookupBuildCacheService batchLookup,
+        LocalBuildCacheServiceHandle local,
+        File stagingDir,
+        int maxStagedEntries,
+        ExecutorFactory executorFactory,
+        BuildOperationExecutor buildOperationExecutor
+    ) {
+        this.remote = remote;
+        this.batchLookup = batchLookup;
+        this.lookupEnabled = batchLookup != null;
+        this.local = local;
+        this.stagingDir = stagingDir;
+        this.maxStagedEntries = maxStagedEntries;
+        this.slots = new Semaphore(maxStagedEntries);
+        this.executor = executorFactory.create("Build cache prefetch", Math.min(THREAD_COUNT, maxStagedEntries));
+        this.buildOperationExecutor = buildOperationExecutor;
+        GFileUtils.mkdirs(stagingDir);
+        deleteOrphanedFiles();
+    }
+
+    /**
+     * Starts downloading the given entry from the remote build cache, unless it is already being prefetched or the staging area is full.
+     */
+    void prefetch(BuildCacheKey key) {
+        if (closed || !remote.canLoad() || entries.containsKey(key.getHashCode())) {
+            return;
+        }
+        if (!slots.tryAcquire()) {
+            rejectedCount.incrementAndGet();
+            return;
+        }
+        StagedEntry entry = new StagedEntry(key, buildOperationExecutor.getCurrentOperation());
+        if (entries.putIfAbsent(key.getHashCode(), entry) != null) {
+            slots.release();
+            return;
+        }
+        prefetchedCount.incrementAndGet();
+        if (lookupEnabled) {
+            pendingLookups.add(entry);
+            scheduleLookup();
+        } else {
+            download(entry);
+        }
+    }
+
+    private void download(StagedEntry entry) {
+        try {
+            executor.execute(entry);
+        } catch (RejectedExecutionException e) {
+            // Closed concurrently
+            entry.abandon();
+        }
+    }
+
+    private void scheduleLookup() {
+        if (!lookupScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::lookUpPending);
+        } catch (RejectedExecutionException e) {
+            // Closed concurrently
+            lookupScheduled.set(false);
+            StagedEntry entry;
+            while ((entry = pendingLookups.poll()) != null) {
+                entry.abandon();
+            }
+        }
+    }
+
+    /**
+     * Looks up the entries requested since the last lookup with a single request, and downloads the ones the remote build cache has.
+     */
+    private void lookUpPending() {
+        lookupScheduled.set(false);
+        List<StagedEntry> batch = new ArrayList<>();
+        StagedEntry pending;
+        while (batch.size() < MAX_LOOKUP_BATCH_SIZE && (pending = pendingLookups.poll()) != null) {
+            batch.add(pending);
+        }
+        if (!pendingLookups.isEmpty()) {
+            scheduleLookup();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Set<String> present = null;
+        if (lookupEnabled && !closed && remote.canLoad()) {
+            List<BuildCacheKey> keys = new ArrayList<>(batch.size());
+            for (StagedEntry entry : batch) {
+                keys.add(entry.key);
+            }
+            try {
+                Set<BuildCacheKey> found = batchLookup.lookup(keys);
+                present = new HashSet<>(found.size());
+                for (BuildCacheKey key : found) {
+                    present.add(key.getHashCode());
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Could not look up {} build cache entries in the remote build cache, downloading them directly from now on", keys.size(), e);
+                lookupEnabled = false;
+            }
+        }
+
+        for (StagedEntry entry : batch) {
+            if (present == null || present.contains(entry.key.getHashCode())) {
+                download(entry);
+            } else if (entry.start()) {
+                entry.complete(null, true);
+            }
+        }
+    }
+
+    /**
+     * Removes the prefetched entry for the given key from the staging area, waiting for its download to finish if necessary.
+     * The caller must {@link StagedEntry#release() release} the returned entry once it is done with it.
+     *
+     * @return the staged entry, or {@code null} if the entry was not prefetched.
+     */
+    @Nullable
+    StagedEntry take(BuildCacheKey key) {
+        StagedEntry entry = entries.remove(key.getHashCode());
+        if (entry == null) {
+            return null;
+        }
+        entry.awaitCompletion();
+        if (entry.getFile() != null) {
+            hitCount.incrementAndGet();
+        } else if (entry.isMissing()) {
+            missCount.incrementAndGet();
+        }
+        entry.used = true;
+        return entry;
+    }
+
+    /**
+     * Drops the prefetched entry for the given key, if there is one.
+     * A download that has not started yet is cancelled, while one that is in progress is waited for.
+     */
+    void discard(BuildCacheKey key) {
+        StagedEntry entry = entries.remove(key.getHashCode());
+        if (entry != null) {
+            entry.cancelOrAwaitCompletion();
+            entry.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                executor.stop();
+                List<StagedEntry> remaining = new ArrayList<>(entries.values());
+                entries.clear();
+                for (StagedEntry entry : remaining) {
+                    entry.release();
+                }
+                deleteOrphanedFiles();
+                context.setResult(new PrefetchOperationResult(
+                    prefetchedCount.get(),
+                    rejectedCount.get(),
+                    hitCount.get(),
+                    missCount.get(),
+                    wastedCount.get(),
+                    wastedBytes.get()
+                ));
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Finish prefetching build cache entries")
+                    .details(new PrefetchOperationDetails(maxStagedEntries));
+            }
+        });
+        LOGGER.debug("Prefetched {} build cache entries ({} rejected): {} hits, {} misses, {} wasted ({} bytes).",
+            prefetchedCount.get(), rejectedCount.get(), hitCount.get(), missCount.get(), wastedCount.get(), wastedBytes.get());
+    }
+
+    /**
+     * Deletes staged files that are too old to still be in use by another daemon.
+     */
+    private void deleteOrphanedFiles() {
+        File[] stagedFiles = stagingDir.listFiles((dir, name) -> name.endsWith(STAGED_FILE_SUFFIX));
+        if (stagedFiles == null) {
+            return;
+        }
+        long minimumTimestamp = System.currentTimeMillis() - ORPHANED_FILE_AGE;
+        for (File stagedFile : stagedFiles) {
+            if (stagedFile.lastModified() < minimumTimestamp) {
+                LOGGER.debug("Deleting orphaned prefetched build cache entry {}", stagedFile);
+                GFileUtils.deleteQuietly(stagedFile);
+            }
+        }
+    }
+
+    /**
+     * An entry in the staging area. Its slot is given back once the entry has been released and its download has completed.
+     */
+    class StagedEntry implements Runnable {
+        private final BuildCacheKey key;
+        private final BuildOperationRef parent;
+        private final CountDownLatch completion = new CountDownLatch(1);
+
+        private File file;
+        private boolean missing;
+        private boolean started;
+        private boolean completed;
+        private boolean released;
+        private volatile boolean used;
+
+        private StagedEntry(BuildCacheKey key, BuildOperationRef parent) {
+            this.key = key;
+            this.parent = parent;
+        }
+
+        @Override
+        public void run() {
+            if (!start()) {
+                return;
+            }
+            try {
+                if (!closed) {
+                    buildOperationExecutor.run(new RunnableBuildOperation() {
+                        @Override
+                        public void run(BuildOperationContext context) {
+                            download();
+                        }
+
+                        @Override
+                        public BuildOperationDescriptor.Builder description() {
+                            return BuildOperationDescriptor.displayName("Prefetch build cache entry " + key.getHashCode())
+                                .progressDisplayName("Prefetching from remote build cache")
+                                .parent(parent);
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Could not prefetch build cache entry {}", key.getHashCode(), e);
+            } finally {
+                // Does nothing if the download completed
+                complete(null, false);
+            }
+            if (!isResolved() && entries.remove(key.getHashCode(), this)) {
+                // Nothing was staged, so there is no point in keeping the slot until the entry is taken
+                release();
+            }
+        }
+
+        private void download() {
+            File downloaded = null;
+            boolean missing = false;
+            try {
+                if (!isInLocalCache()) {
+                    downloaded = File.createTempFile(key.getHashCode() + "-", STAGED_FILE_SUFFIX, stagingDir);
+                    LoadTarget loadTarget = new LoadTarget(downloaded);
+                    remote.load(key, loadTarget);
+                    if (!loadTarget.isLoaded()) {
+                        GFileUtils.deleteQuietly(downloaded);
+                        downloaded = null;
+                        // A failed load disables the remote cache, in which case we know nothing about the entry
+                        missing = remote.canLoad();
+                    }
+                }
+            } catch (Exception e) {
+                // A failed prefetch leaves it to the load to fetch the entry
+                LOGGER.debug("Could not prefetch build cache entry {}", key.getHashCode(), e);
+                GFileUtils.deleteQuietly(downloaded);
+                downloaded = null;
+            } finally {
+                complete(downloaded, missing);
+            }
+        }
+
+        private boolean isInLocalCache() {
+            if (!local.canLoad()) {
+                return false;
+            }
+            boolean[] found = new boolean[1];
+            try {
+                local.load(key, file -> found[0] = true);
+            } catch (Exception e) {
+                LOGGER.debug("Could not check for build cache entry {} in the local build cache", key.getHashCode(), e);
+            }
+            return found[0];
+        }
+
+        /**
+         * Completes an entry that will not be downloaded, giving back its slot unless it has already been taken.
+         */
+        private void abandon() {
+            complete(null, false);
+            if (entries.remove(key.getHashCode(), this)) {
+                release();
+            }
+        }
+
+        private synchronized boolean start() {
+            if (completed) {
+                // Cancelled before it started
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        private synchronized void complete(@Nullable File downloaded, boolean missing) {
+            if (completed) {
+                return;
+            }
+            this.file = downloaded;
+            this.missing = missing;
+            this.completed = true;
+            completion.countDown();
+            if (released) {
+                dispose();
+            }
+        }
+
+        private void cancelOrAwaitCompletion() {
+            synchronized (this) {
+                if (!started) {
+                    complete(null, false);
+                    return;
+                }
+            }
+            awaitCompletion();
+        }
+
+        private void awaitCompletion() {
+            try {
+                completion.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+
+        /**
+         * The downloaded entry, or {@code null} if it was not downloaded.
+         */
+        @Nullable
+        synchronized File getFile() {
+            return file;
+        }
+
+        /**
+         * Whether the remote build cache reported that it does not have the entry.
+         */
+        synchronized boolean isMissing() {
+            return missing;
+        }
+
+        /**
+         * Whether the entry has been resolved by the prefetch, i.e. it has been downloaded or is known to be missing.
+         */
+        synchronized boolean isResolved() {
+            return file != null || missing;
+        }
+
+        synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (completed) {
+                dispose();
+            }
+        }
+
+        private void dispose() {
+            if (file != null) {
+                if (!used) {
+                    wastedCount.incrementAndGet();
+                    wastedBytes.addAndGet(file.length());
+                }
+                GFileUtils.deleteQuietly(file);
+                file = null;
+            }
+            slots.release();
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.gradle.caching.internal.controller;
 
+import org.gradle.caching.BuildCacheKey;
+
 import java.util.Optional;
 
 public class RootBuildCacheControllerRef {
@@ -58,6 +60,16 @@ public boolean isEmitDebugLogging() {
             return delegate.isEmitDebugLogging();
         }
 
+        @Override
+        public void prefetch(BuildCacheKey key) {
+            delegate.prefetch(key);
+        }
+
+        @Override
+        public void discardPrefetched(BuildCacheKey key) {
+            delegate.discardPrefetched(key);
+        }
+
         @Override
         public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             return delegate.load(command);
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.operations;
+
+import org.gradle.caching.internal.operations.BuildCacheRemotePrefetchBuildOperationType;
+
+public class PrefetchOperationResult implements BuildCacheRemotePrefetchBuildOperationType.Result {
+
+    private final long prefetchedCount;
+    private final long rejectedCount;
+    private final long hitCount;
+    private final long missCount;
+    private final long wastedCount;
+    private final long wastedBytes;
+
+    public PrefetchOperationResult(long prefetchedCount, long rejectedCount, long hitCount, long missCount, long wastedCount, long wastedBytes) {
+        this.prefetchedCount = prefetchedCount;
+        this.rejectedCount = rejectedCount;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.wastedCount = wastedCount;
+        this.wastedBytes = wastedBytes;
+    }
+
+    @Override
+    public long getPrefetchedCount() {
+        return prefetchedCount;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public long getWastedCount() {
+        return wastedCount;
+    }
+
+    @Override
+    public long getWastedBytes() {
+        return wastedBytes;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.operations;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Summarizes how the entries that were prefetched from the remote build cache were used.
+ *
+ * Entries are prefetched into a bounded staging area as soon as the cache key of a unit of work is known,
+ * and are either consumed when the work loads from the build cache, or wasted when the work turns out to be up-to-date,
+ * finds the entry in the local build cache or never asks for it.
+ */
+public final class BuildCacheRemotePrefetchBuildOperationType implements BuildOperationType<BuildCacheRemotePrefetchBuildOperationType.Details, BuildCacheRemotePrefetchBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The maximum number of entries that can be staged at the same time.
+         */
+        int getMaxStagedEntries();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of entries for which a prefetch was started.
+         */
+        long getPrefetchedCount();
+
+        /**
+         * The number of prefetches that were not started because the staging area was full.
+         */
+        long getRejectedCount();
+
+        /**
+         * The number of loads that were served by a prefetched entry.
+         */
+        long getHitCount();
+
+        /**
+         * The number of loads that were answered by a prefetch that found no entry in the remote build cache.
+         */
+        long getMissCount();
+
+        /**
+         * The number of prefetched entries that were downloaded but never used.
+         */
+        long getWastedCount();
+
+        /**
+         * The number of bytes downloaded for entries that were never used.
+         */
+        long getWastedBytes();
+
+    }
+
+    private BuildCacheRemotePrefetchBuildOperationType() {
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.cache.CleanableStore;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.cache.internal.FilesFinder;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.cache.internal.NonReservedFileFilter;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileFilter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cleans up a {@link ChunkedDirectoryBuildCacheService}: manifests that have not been used recently are deleted, then chunks are deleted when no remaining manifest refers to them.
+ *
+ * The reference counts of the chunks are computed from the remaining manifests on each cleanup instead of being maintained on every store,
+ * so that a crash in the middle of a store or a cleanup can at most leave behind chunks that the next cleanup removes.
+ * Staged chunks left behind by a crashed store are removed once they are older than a day.
+ */
+public class ChunkedDirectoryBuildCacheCleanup extends LeastRecentlyUsedCacheCleanup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedDirectoryBuildCacheCleanup.class);
+    private static final int MANIFEST_DEPTH = 1;
+    private static final int CHUNK_DEPTH = 2;
+    private static final long STALE_STAGING_AGE = TimeUnit.DAYS.toMillis(1);
+    private static final FileFilter ALL_FILES = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return true;
+        }
+    };
+
+    public ChunkedDirectoryBuildCacheCleanup(FileAccessTimeJournal journal, long numberOfDays) {
+        super(new ManifestFilesFinder(), journal, numberOfDays);
+    }
+
+    @Override
+    public void clean(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+        super.clean(cleanableStore, progressMonitor);
+        deleteUnreferencedChunks(cleanableStore, progressMonitor);
+        deleteStaleStagingDirectories(cleanableStore);
+    }
+
+    private void deleteUnreferencedChunks(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+        File baseDir = cleanableStore.getBaseDir();
+        Map<HashCode, Integer> referenceCounts = new HashMap<HashCode, Integer>();
+        for (File manifestFile : new ManifestFilesFinder().find(baseDir, new NonReservedFileFilter(cleanableStore.getReservedCacheFiles()))) {
+            List<HashCode> chunkHashes = ChunkedDirectoryBuildCacheService.readChunkHashes(manifestFile);
+            if (chunkHashes != null) {
+                for (HashCode chunkHash : chunkHashes) {
+                    Integer count = referenceCounts.get(chunkHash);
+                    referenceCounts.put(chunkHash, count == null ? 1 : count + 1);
+                }
+            }
+        }
+
+        File chunksDir = new File(baseDir, ChunkedDirectoryBuildCacheService.CHUNKS_DIRECTORY);
+        int chunksDeleted = 0;
+        for (File chunkFile : new SingleDepthFilesFinder(CHUNK_DEPTH).find(chunksDir, ALL_FILES)) {
+            if (referenceCounts.containsKey(chunkHashOf(chunkFile))) {
+                progressMonitor.incrementSkipped();
+                continue;
+            }
+            progressMonitor.incrementDeleted();
+            if (chunkFile.delete()) {
+                chunksDeleted++;
+                deleteEmptyParentDirectories(chunksDir, chunkFile.getParentFile());
+            }
+        }
+        LOGGER.debug("{} cleanup deleted {} unreferenced chunks, {} chunks remain referenced.", cleanableStore.getDisplayName(), chunksDeleted, referenceCounts.size());
+    }
+
+    private static void deleteStaleStagingDirectories(CleanableStore cleanableStore) {
+        File[] stagingDirs = new File(cleanableStore.getBaseDir(), ChunkedDirectoryBuildCacheService.STAGING_DIRECTORY).listFiles();
+        if (stagingDirs == null) {
+            return;
+        }
+        long minimumTimestamp = System.currentTimeMillis() - STALE_STAGING_AGE;
+        for (File stagingDir : stagingDirs) {
+            if (stagingDir.lastModified() < minimumTimestamp) {
+                GFileUtils.deleteQuietly(stagingDir);
+            }
+        }
+    }
+
+    @Nullable
+    private static HashCode chunkHashOf(File chunkFile) {
+        try {
+            return HashCode.fromString(chunkFile.getName());
+        } catch (IllegalArgumentException e) {
+            // Not a chunk, e.g. a partially written one left behind by a crashed store
+            return null;
+        }
+    }
+
+    private static class ManifestFilesFinder implements FilesFinder {
+        private final FilesFinder delegate = new SingleDepthFilesFinder(MANIFEST_DEPTH);
+
+        @Override
+        public Iterable<File> find(File baseDir, final FileFilter filter) {
+            return delegate.find(baseDir, new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return filter.accept(file)
+                        && !file.getName().equals(ChunkedDirectoryBuildCacheService.CHUNKS_DIRECTORY)
+                        && !file.getName().equals(ChunkedDirectoryBuildCacheService.STAGING_DIRECTORY);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.io.Closer;
+import org.gradle.api.Action;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.PersistentCache;
+import org.gradle.caching.BuildCacheEntryReader;
+import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.packaging.BuildCacheEntryCodec;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.StandardBuildCacheEntryCodec;
+import org.gradle.internal.Factory;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.hash.PrimitiveHasher;
+import org.gradle.internal.resource.local.FileAccessTracker;
+import org.gradle.util.GFileUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A local build cache that splits entries into content-defined chunks, and stores each distinct chunk only once.
+ *
+ * For each cache key, a small manifest file listing the chunks of the entry is stored directly in the cache directory, so access tracking
+ * and least recently used cleanup work on manifests the same way as on the entries of {@link DirectoryBuildCacheService}.
+ * The chunks are stored in the {@value #CHUNKS_DIRECTORY} directory, named by the hash of their contents, and are removed by
+ * {@link ChunkedDirectoryBuildCacheCleanup} once no manifest refers to them anymore.
+ *
+ * Storing an entry splits, hashes and compresses the new chunks in the {@value #STAGING_DIRECTORY} directory without holding any lock.
+ * Only moving the staged chunks into place and writing the manifest happen while holding the lock.
+ *
+ * Build cache entries are compressed, and a compressed stream looks completely different after the first modified byte.
+ * Because of this, entries compressed with any of the {@link StandardBuildCacheEntryCodec standard codecs} are chunked after decompressing them,
+ * and the chunks are stored uncompressed. A loaded entry is then written as an uncompressed entry, which can be unpacked whatever codec is configured,
+ * followed by the concatenation of the chunk files. Entries in any other format are chunked and loaded as they are.
+ * The concatenation is done with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so the chunks do not pass through the heap.
+ */
+public class ChunkedDirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    public static final String CHUNKS_DIRECTORY = "chunks";
+    public static final String STAGING_DIRECTORY = "chunks-staging";
+
+    private static final int MANIFEST_MAGIC = 0x43444342;
+    private static final int MANIFEST_VERSION = 2;
+    private static final int RAW = 0;
+    private static final int DECOMPRESSED = 1;
+
+    private final File baseDir;
+    private final File chunksDir;
+    private final File stagingDir;
+    private final PersistentCache persistentCache;
+    private final BuildCacheTempFileStore tempFileStore;
+    private final FileAccessTracker fileAccessTracker;
+    private final String failedFileSuffix;
+    private final ContentDefinedChunker chunker;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ChunkedDirectoryBuildCacheService(File baseDir, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix, ContentDefinedChunker chunker) {
+        this.baseDir = baseDir;
+        this.chunksDir = new File(baseDir, CHUNKS_DIRECTORY);
+        this.stagingDir = new File(baseDir, STAGING_DIRECTORY);
+        this.persistentCache = persistentCache;
+        this.tempFileStore = tempFileStore;
+        this.fileAccessTracker = fileAccessTracker;
+        this.failedFileSuffix = failedFileSuffix;
+        this.chunker = chunker;
+    }
+
+    @Override
+    public boolean load(BuildCacheKey key, final BuildCacheEntryReader reader) throws BuildCacheException {
+        final boolean[] loaded = new boolean[1];
+        loadLocally(key, new Action<File>() {
+            @Override
+            public void execute(@Nonnull File file) {
+                try {
+                    try (InputStream stream = new FileInputStream(file)) {
+                        reader.readFrom(stream);
+                    }
+                    loaded[0] = true;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        });
+        return loaded[0];
+    }
+
+    @Override
+    public void loadLocally(final BuildCacheKey key, final Action<? super File> reader) {
+        // We need to lock other processes out here because garbage collection can be under way in another process
+        persistentCache.withFileLock(new Runnable() {
+            @Override
+            public void run() {
+                lock.readLock().lock();
+                try {
+                    loadInsideLock(key, reader);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        });
+    }
+
+    private void loadInsideLock(final BuildCacheKey key, final Action<? super File> reader) {
+        final File manifestFile = new File(baseDir, key.getHashCode());
+        if (!manifestFile.isFile()) {
+            return;
+        }
+        fileAccessTracker.markAccessed(manifestFile);
+
+        final Manifest manifest = readManifest(manifestFile);
+        if (manifest == null || !allChunksPresent(manifest)) {
+            // The entry cannot be restored, treat it as a miss and store it again next time
+            GFileUtils.deleteQuietly(manifestFile);
+            return;
+        }
+
+        tempFileStore.withTempFile(key, new Action<File>() {
+            @Override
+            public void execute(@Nonnull File file) {
+                try {
+                    assemble(manifest, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                try {
+                    reader.execute(file);
+                } catch (Exception e) {
+                    // Try to move the manifest out of the way in case the entry is permanently corrupt
+                    // Don't delete, so that it can be potentially used for debugging
+                    File failedFile = new File(manifestFile.getAbsolutePath() + failedFileSuffix);
+                    GFileUtils.deleteQuietly(failedFile);
+                    //noinspection ResultOfMethodCallIgnored
+                    manifestFile.renameTo(failedFile);
+
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        });
+    }
+
+    private boolean allChunksPresent(Manifest manifest) {
+        for (Chunk chunk : manifest.chunks) {
+            if (chunkFile(chunk.hash).length() != chunk.storedLength) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void assemble(Manifest manifest, File target) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(target)) {
+            if (manifest.format == DECOMPRESSED) {
+                CompressingBuildCacheEntryPacker.writeHeader(StandardBuildCacheEntryCodec.NONE, outputStream);
+            }
+            FileChannel output = outputStream.getChannel();
+            for (Chunk chunk : manifest.chunks) {
+                try (FileChannel input = FileChannel.open(chunkFile(chunk.hash).toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < chunk.storedLength) {
+                        position += input.transferTo(position, chunk.storedLength - position, output);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void store(final BuildCacheKey key, final BuildCacheEntryWriter result) throws BuildCacheException {
+        tempFileStore.withTempFile(key, new Action<File>() {
+            @Override
+            public void execute(@Nonnull File file) {
+                try {
+                    Closer closer = Closer.create();
+                    try {
+                        result.writeTo(closer.register(new FileOutputStream(file)));
+                    } catch (Exception e) {
+                        throw closer.rethrow(e);
+                    } finally {
+                        closer.close();
+                    }
+                } catch (IOException ex) {
+                    throw UncheckedException.throwAsUncheckedException(ex);
+                }
+
+                storeLocally(key, file);
+            }
+        });
+    }
+
+    @Override
+    public void storeLocally(final BuildCacheKey key, final File file) {
+        try {
+            StagedEntry entry = stage(key, file, true);
+            try {
+                if (!publish(key, entry)) {
+                    // Some chunks that were already stored have been cleaned up in the meantime, so stage all of them
+                    entry.discard();
+                    entry = stage(key, file, false);
+                    publish(key, entry);
+                }
+            } finally {
+                entry.discard();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean publish(final BuildCacheKey key, final StagedEntry entry) {
+        // Chunks are moved into place while holding the lock, so a cleanup in another process never sees a chunk before the manifest referring to it
+        return persistentCache.withFileLock(new Factory<Boolean>() {
+            @Override
+            public Boolean create() {
+                lock.writeLock().lock();
+                try {
+                    return publishInsideLock(key, entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    private boolean publishInsideLock(BuildCacheKey key, StagedEntry entry) throws IOException {
+        for (Chunk chunk : entry.chunks) {
+            if (!entry.stagedFiles.containsKey(chunk.hash) && chunkFile(chunk.hash).length() != chunk.storedLength) {
+                return false;
+            }
+        }
+        for (Map.Entry<HashCode, File> stagedFile : entry.stagedFiles.entrySet()) {
+            File chunkFile = chunkFile(stagedFile.getKey());
+            if (chunkFile.length() != stagedFile.getValue().length()) {
+                GFileUtils.mkdirs(chunkFile.getParentFile());
+                GFileUtils.deleteQuietly(chunkFile);
+                moveIntoPlace(stagedFile.getValue(), chunkFile);
+            }
+        }
+        File manifestFile = new File(baseDir, key.getHashCode());
+        writeManifest(new Manifest(entry.format, entry.chunks), manifestFile);
+        fileAccessTracker.markAccessed(manifestFile);
+        return true;
+    }
+
+    /**
+     * Splits the given entry into chunks and writes the chunks to a new staging directory, without holding the lock.
+     * When {@code skipStoredChunks} is set, chunks that are already stored are not written again.
+     */
+    private StagedEntry stage(BuildCacheKey key, File file, boolean skipStoredChunks) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            BuildCacheEntryCodec codec = CompressingBuildCacheEntryPacker.readCodec(input);
+            if (codec != null) {
+                StagedEntry entry = new StagedEntry(DECOMPRESSED, createStagingDirectory(key));
+                try (InputStream decompressedInput = codec.decompress(input)) {
+                    stageChunks(decompressedInput, entry, skipStoredChunks);
+                    return entry;
+                } catch (IOException e) {
+                    // Not a valid compressed entry after all, so store it as it is
+                    entry.discard();
+                }
+            }
+        }
+        StagedEntry entry = new StagedEntry(RAW, createStagingDirectory(key));
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            stageChunks(input, entry, skipStoredChunks);
+        }
+        return entry;
+    }
+
+    private File createStagingDirectory(BuildCacheKey key) throws IOException {
+        GFileUtils.mkdirs(stagingDir);
+        return Files.createTempDirectory(stagingDir.toPath(), key.getHashCode() + "-").toFile();
+    }
+
+    private void stageChunks(InputStream input, final StagedEntry entry, final boolean skipStoredChunks) throws IOException {
+        chunker.split(input, new ContentDefinedChunker.ChunkConsumer() {
+            @Override
+            public void accept(byte[] buffer, int length) throws IOException {
+                entry.chunks.add(stageChunk(buffer, length, entry, skipStoredChunks));
+            }
+        });
+    }
+
+    private Chunk stageChunk(byte[] buffer, int length, StagedEntry entry, boolean skipStoredChunks) throws IOException {
+        PrimitiveHasher hasher = Hashing.newPrimitiveHasher();
+        hasher.putBytes(buffer, 0, length);
+        HashCode hash = hasher.hash();
+        File stagedFile = entry.stagedFiles.get(hash);
+        if (stagedFile != null) {
+            return new Chunk(hash, stagedFile.length());
+        }
+        File chunkFile = chunkFile(hash);
+        if (skipStoredChunks && chunkFile.isFile()) {
+            return new Chunk(hash, chunkFile.length());
+        }
+        stagedFile = new File(entry.dir, hash.toString());
+        try (OutputStream output = new FileOutputStream(stagedFile)) {
+            output.write(buffer, 0, length);
+        }
+        entry.stagedFiles.put(hash, stagedFile);
+        return new Chunk(hash, stagedFile.length());
+    }
+
+    private File chunkFile(HashCode hash) {
+        String name = hash.toString();
+        return new File(new File(chunksDir, name.substring(0, 2)), name);
+    }
+
+    @Override
+    public void withTempFile(final BuildCacheKey key, final Action<? super File> action) {
+        persistentCache.withFileLock(new Runnable() {
+            @Override
+            public void run() {
+                tempFileStore.withTempFile(key, action);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        persistentCache.close();
+    }
+
+    private static void moveIntoPlace(File source, File target) throws IOException {
+        if (!source.renameTo(target)) {
+            GFileUtils.deleteQuietly(source);
+            if (!target.isFile()) {
+                throw new IOException("Could not move " + source + " to " + target);
+            }
+        }
+    }
+
+    private static void writeManifest(Manifest manifest, File manifestFile) throws IOException {
+        File tempFile = new File(manifestFile.getAbsolutePath() + BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(MANIFEST_MAGIC);
+            output.writeByte(MANIFEST_VERSION);
+            output.writeByte(manifest.format);
+            output.writeInt(manifest.chunks.size());
+            for (Chunk chunk : manifest.chunks) {
+                byte[] hash = chunk.hash.toByteArray();
+                output.writeByte(hash.length);
+                output.write(hash);
+                output.writeLong(chunk.storedLength);
+            }
+        }
+        GFileUtils.deleteQuietly(manifestFile);
+        moveIntoPlace(tempFile, manifestFile);
+    }
+
+    /**
+     * Reads the chunk hashes listed in the given manifest, or returns {@code null} when the file is not a readable manifest.
+     */
+    @Nullable
+    static List<HashCode> readChunkHashes(File manifestFile) {
+        Manifest manifest = readManifest(manifestFile);
+        if (manifest == null) {
+            return null;
+        }
+        List<HashCode> hashes = new ArrayList<HashCode>(manifest.chunks.size());
+        for (Chunk chunk : manifest.chunks) {
+            hashes.add(chunk.hash);
+        }
+        return hashes;
+    }
+
+    @Nullable
+    private static Manifest readManifest(File manifestFile) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)))) {
+            if (manifestFile.length() < 10 || input.readInt() != MANIFEST_MAGIC || input.readByte() != MANIFEST_VERSION) {
+                return null;
+            }
+            int format = input.readByte();
+            int count = input.readInt();
+            if (count < 0) {
+                return null;
+            }
+            List<Chunk> chunks = new ArrayList<Chunk>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                byte[] hash = new byte[input.readUnsignedByte()];
+                input.readFully(hash);
+                chunks.add(new Chunk(HashCode.fromBytes(hash), input.readLong()));
+            }
+            return new Manifest(format, Collections.unmodifiableList(chunks));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static class Manifest {
+        private final int format;
+        private final List<Chunk> chunks;
+
+        private Manifest(int format, List<Chunk> chunks) {
+            this.format = format;
+            this.chunks = chunks;
+        }
+    }
+
+    private static class StagedEntry {
+        private final int format;
+        private final File dir;
+        private final List<Chunk> chunks = new ArrayList<Chunk>();
+        private final Map<HashCode, File> stagedFiles = new LinkedHashMap<HashCode, File>();
+
+        private StagedEntry(int format, File dir) {
+            this.format = format;
+            this.dir = dir;
+        }
+
+        private void discard() {
+            GFileUtils.deleteQuietly(dir);
+        }
+    }
+
+    private static class Chunk {
+        private final HashCode hash;
+        private final long storedLength;
+
+        private Chunk(HashCode hash, long storedLength) {
+            this.hash = hash;
+            this.storedLength = storedLength;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Splits a stream into chunks whose boundaries depend on the content only, so that inserting or removing bytes
+ * only changes the chunks around the modification.
+ *
+ * Boundaries are found with a gear rolling hash, using a stricter mask before the average chunk size and a looser one after it,
+ * which keeps the chunk sizes close to the average (normalized chunking as described for FastCDC).
+ */
+public class ContentDefinedChunker {
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 16 * 1024;
+    public static final int DEFAULT_AVERAGE_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 256 * 1024;
+
+    private static final long[] GEAR = createGearTable();
+
+    private final int minChunkSize;
+    private final int averageChunkSize;
+    private final int maxChunkSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    public ContentDefinedChunker() {
+        this(DEFAULT_MIN_CHUNK_SIZE, DEFAULT_AVERAGE_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+    public ContentDefinedChunker(int minChunkSize, int averageChunkSize, int maxChunkSize) {
+        Preconditions.checkArgument(Integer.bitCount(averageChunkSize) == 1, "average chunk size must be a power of two: %s", averageChunkSize);
+        Preconditions.checkArgument(0 < minChunkSize && minChunkSize <= averageChunkSize && averageChunkSize <= maxChunkSize,
+            "chunk sizes must satisfy 0 < min <= average <= max: %s, %s, %s", minChunkSize, averageChunkSize, maxChunkSize);
+        this.minChunkSize = minChunkSize;
+        this.averageChunkSize = averageChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        int bits = Integer.numberOfTrailingZeros(averageChunkSize);
+        this.strictMask = spreadMask(bits + 1);
+        this.looseMask = spreadMask(Math.max(bits - 1, 1));
+    }
+
+    /**
+     * Reads the given stream to its end and passes each chunk to the given consumer. The buffer passed to the consumer is reused for the next chunk.
+     */
+    public void split(InputStream input, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[maxChunkSize];
+        int filled = 0;
+        boolean endOfInput = false;
+        while (true) {
+            while (!endOfInput && filled < buffer.length) {
+                int read = input.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    filled += read;
+                }
+            }
+            if (filled == 0) {
+                return;
+            }
+            int chunkLength = cutPoint(buffer, filled);
+            consumer.accept(buffer, chunkLength);
+            filled -= chunkLength;
+            System.arraycopy(buffer, chunkLength, buffer, 0, filled);
+        }
+    }
+
+    private int cutPoint(byte[] buffer, int length) {
+        if (length <= minChunkSize) {
+            return length;
+        }
+        int normalSize = Math.min(averageChunkSize, length);
+        long hash = 0;
+        int i = minChunkSize;
+        for (; i < normalSize; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static long spreadMask(int bits) {
+        // Use the high bits of the hash, as they depend on the most recent 64 bytes of the window
+        return -1L << (64 - bits);
+    }
+
+    private static long[] createGearTable() {
+        // The seed is fixed, since changing the table changes where chunk boundaries are placed
+        Random random = new Random(0x6772616465L);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = random.nextLong();
+        }
+        return table;
+    }
+
+    public interface ChunkConsumer {
+        void accept(byte[] buffer, int length) throws IOException;
+    }
+}
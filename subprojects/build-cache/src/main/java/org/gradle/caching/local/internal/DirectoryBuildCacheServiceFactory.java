@@ -19,6 +19,7 @@
 import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
+import org.gradle.cache.CleanupAction;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleanupActionFactory;
@@ -28,6 +29,7 @@
 import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.BuildCacheServiceFactory;
 import org.gradle.caching.local.DirectoryBuildCache;
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.file.FileAccessTimeJournal;
 import org.gradle.internal.file.PathToFileResolver;
 import org.gradle.internal.resource.local.FileAccessTracker;
@@ -42,9 +44,15 @@
 
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     public static final String FAILED_READ_SUFFIX = ".failed";
+    /**
+     * Stores entries as content-defined chunks, see {@link ChunkedDirectoryBuildCacheService}. The chunked layout uses its own default
+     * cache directory, and a configured directory must not be shared with caches using the default layout.
+     */
+    public static final String CHUNKED_LAYOUT_PROPERTY = "org.gradle.unsafe.build-cache.chunked";
 
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
+    private static final String CHUNKED_BUILD_CACHE_KEY = "build-cache-chunked-" + BUILD_CACHE_VERSION;
     private static final String DIRECTORY_BUILD_CACHE_TYPE = "directory";
     private static final int FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 1;
 
@@ -68,12 +76,13 @@ public DirectoryBuildCacheServiceFactory(CacheRepository cacheRepository, CacheS
 
     @Override
     public BuildCacheService createBuildCacheService(DirectoryBuildCache configuration, Describer describer) {
+        boolean chunked = UnsafeFeatureFlags.isEnabled(CHUNKED_LAYOUT_PROPERTY);
         Object cacheDirectory = configuration.getDirectory();
         File target;
         if (cacheDirectory != null) {
             target = resolver.resolve(cacheDirectory);
         } else {
-            target = cacheScopeMapping.getBaseDirectory(null, BUILD_CACHE_KEY, VersionStrategy.SharedCache);
+            target = cacheScopeMapping.getBaseDirectory(null, chunked ? CHUNKED_BUILD_CACHE_KEY : BUILD_CACHE_KEY, VersionStrategy.SharedCache);
         }
         checkDirectory(target);
 
@@ -81,11 +90,16 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
         describer.type(DIRECTORY_BUILD_CACHE_TYPE).
             config("location", target.getAbsolutePath()).
             config("removeUnusedEntriesAfter", String.valueOf(removeUnusedEntriesAfterDays) + " days");
+        if (chunked) {
+            describer.config("layout", "chunked");
+        }
 
-        PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
+        CleanupAction cleanup = chunked
+            ? new ChunkedDirectoryBuildCacheCleanup(fileAccessTimeJournal, removeUnusedEntriesAfterDays)
+            : new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesAfterDays);
         PersistentCache persistentCache = cacheRepository
             .cache(target)
-            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
+            .withCleanup(cleanupActionFactory.create(cleanup))
             .withDisplayName("Build cache")
             .withLockOptions(mode(OnDemand))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
@@ -93,6 +107,10 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
         BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(target);
         FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
 
+        if (chunked) {
+            return new ChunkedDirectoryBuildCacheService(target, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX, new ContentDefinedChunker());
+        }
+        PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
         return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX);
     }
 
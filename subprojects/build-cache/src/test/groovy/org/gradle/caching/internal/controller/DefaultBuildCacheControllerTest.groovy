@@ -19,15 +19,23 @@ package org.gradle.caching.internal.controller
 import org.gradle.api.Action
 import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheException
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
+import org.gradle.caching.internal.BatchLookupBuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
+import org.gradle.caching.internal.operations.BuildCacheRemotePrefetchBuildOperationType
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
 import org.junit.Rule
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
 class DefaultBuildCacheControllerTest extends Specification {
 
     def key = Mock(BuildCacheKey) {
@@ -43,6 +51,7 @@ class DefaultBuildCacheControllerTest extends Specification {
     def localPush = true
     def remote = Mock(BuildCacheService)
     def remotePush = true
+    def maxPrefetchedEntries = 0
     def loadmetadata = Mock(Object)
 
     def storeCommand = Stub(BuildCacheStoreCommand) {
@@ -94,7 +103,9 @@ class DefaultBuildCacheControllerTest extends Specification {
             operations,
             tmpDir.file("dir"),
             false,
-            false
+            false,
+            new DefaultExecutorFactory(),
+            maxPrefetchedEntries
         )
     }
 
@@ -250,4 +261,234 @@ class DefaultBuildCacheControllerTest extends Specification {
         1 * local.close()
         1 * remote.close()
     }
+
+    def "loads prefetched entry without loading it from remote again"() {
+        local = null
+        maxPrefetchedEntries = 2
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        def result = controller.load(loadCommand)
+        controller.close()
+
+        then:
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+        result.get() == loadmetadata
+
+        and:
+        with(operations.log.mostRecentResult(BuildCacheRemotePrefetchBuildOperationType)) {
+            prefetchedCount == 1
+            hitCount == 1
+            wastedCount == 0
+        }
+    }
+
+    def "does not load entry from remote again when prefetch found it missing"() {
+        local = null
+        maxPrefetchedEntries = 2
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        def result = controller.load(loadCommand)
+        controller.close()
+
+        then:
+        1 * remote.load(key, _) >> false
+        !result.present
+
+        and:
+        with(operations.log.mostRecentResult(BuildCacheRemotePrefetchBuildOperationType)) {
+            prefetchedCount == 1
+            missCount == 1
+        }
+    }
+
+    def "reports discarded prefetched entry as wasted"() {
+        local = null
+        maxPrefetchedEntries = 2
+
+        def downloaded = false
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        new PollingConditions().eventually {
+            assert downloaded
+        }
+        controller.discardPrefetched(key)
+        controller.close()
+
+        then:
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            downloaded = true
+            true
+        }
+
+        and:
+        with(operations.log.mostRecentResult(BuildCacheRemotePrefetchBuildOperationType)) {
+            prefetchedCount == 1
+            hitCount == 0
+            wastedCount == 1
+            wastedBytes == 3
+        }
+    }
+
+    def "prefetches entry in a build operation of the operation that requested it"() {
+        local = null
+        maxPrefetchedEntries = 2
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        controller.load(loadCommand)
+        controller.close()
+
+        then:
+        1 * remote.load(key, _) >> false
+
+        and:
+        def prefetch = operations.log.descriptors.find { it.displayName == "Prefetch build cache entry key" }
+        prefetch.parentId == operations.currentOperation.id
+    }
+
+    def "waits for a download in progress when discarding a prefetched entry"() {
+        local = null
+        maxPrefetchedEntries = 2
+        def downloading = new CountDownLatch(1)
+        def finishDownload = new CountDownLatch(1)
+        remote.load(key, _) >> {
+            downloading.countDown()
+            finishDownload.await()
+            false
+        }
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        downloading.await()
+        def discarding = Thread.start {
+            controller.discardPrefetched(key)
+        }
+        discarding.join(100)
+
+        then:
+        discarding.alive
+
+        when:
+        finishDownload.countDown()
+        discarding.join()
+        controller.close()
+
+        then:
+        with(operations.log.mostRecentResult(BuildCacheRemotePrefetchBuildOperationType)) {
+            prefetchedCount == 1
+            missCount == 0
+        }
+    }
+
+    def "deletes orphaned prefetched entries when prefetching starts"() {
+        local = null
+        maxPrefetchedEntries = 2
+        def stagingDir = tmpDir.createDir("dir/build-cache-prefetch")
+        def orphaned = stagingDir.createFile("orphaned.prefetch")
+        orphaned.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2))
+        def recent = stagingDir.createFile("recent.prefetch")
+
+        when:
+        def controller = getController()
+
+        then:
+        !orphaned.exists()
+        recent.exists()
+
+        cleanup:
+        controller?.close()
+    }
+
+    def "rejects prefetches when staging area is full"() {
+        local = null
+        maxPrefetchedEntries = 1
+        def otherKey = Mock(BuildCacheKey) {
+            getHashCode() >> "other"
+        }
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        controller.prefetch(otherKey)
+        controller.close()
+
+        then:
+        (0..1) * remote.load(key, _) >> false
+        0 * remote.load(otherKey, _)
+
+        and:
+        with(operations.log.mostRecentResult(BuildCacheRemotePrefetchBuildOperationType)) {
+            prefetchedCount == 1
+            rejectedCount == 1
+        }
+    }
+
+    def "only loads entries that batch lookup found in the remote cache"() {
+        local = null
+        maxPrefetchedEntries = 2
+        remote = Mock(BatchLookupBuildCacheService)
+        def otherKey = Mock(BuildCacheKey) {
+            getHashCode() >> "other"
+        }
+        def otherLoadCommand = Stub(BuildCacheLoadCommand) {
+            getKey() >> otherKey
+        }
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        controller.prefetch(otherKey)
+        def result = controller.load(loadCommand)
+        def otherResult = controller.load(otherLoadCommand)
+        controller.close()
+
+        then:
+        (1..2) * remote.lookup(_) >> { Collection<BuildCacheKey> keys -> keys.findAll { it.is(key) } as Set }
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+        0 * remote.load(otherKey, _)
+        result.get() == loadmetadata
+        !otherResult.present
+
+        and:
+        with(operations.log.mostRecentResult(BuildCacheRemotePrefetchBuildOperationType)) {
+            prefetchedCount == 2
+            hitCount == 1
+            missCount == 1
+        }
+    }
+
+    def "downloads prefetched entries directly when batch lookup fails"() {
+        local = null
+        maxPrefetchedEntries = 2
+        remote = Mock(BatchLookupBuildCacheService)
+
+        when:
+        def controller = getController()
+        controller.prefetch(key)
+        def result = controller.load(loadCommand)
+        controller.close()
+
+        then:
+        1 * remote.lookup(_) >> { throw new BuildCacheException("broken") }
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+        result.get() == loadmetadata
+    }
 }
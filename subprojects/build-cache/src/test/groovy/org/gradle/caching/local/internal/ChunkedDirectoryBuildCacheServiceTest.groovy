@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.cache.CleanableStore
+import org.gradle.cache.CleanupProgressMonitor
+import org.gradle.cache.PersistentCache
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.internal.packaging.BuildCacheEntryCodec
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker
+import org.gradle.internal.Factory
+import org.gradle.internal.file.FileAccessTimeJournal
+import org.gradle.internal.resource.local.FileAccessTracker
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static org.gradle.caching.internal.packaging.impl.StandardBuildCacheEntryCodec.GZIP
+import static org.gradle.caching.internal.packaging.impl.StandardBuildCacheEntryCodec.LZ4
+
+@UsesNativeServices
+@CleanupTestDirectory
+class ChunkedDirectoryBuildCacheServiceTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+    def cacheDir = temporaryFolder.createDir("cache")
+    def persistentCache = Mock(PersistentCache) {
+        getBaseDir() >> cacheDir
+        withFileLock(_ as Runnable) >> { Runnable r -> r.run() }
+        withFileLock(_ as Factory) >> { Factory f -> f.create() }
+    }
+    def tempFileStore = new DefaultBuildCacheTempFileStore(cacheDir)
+    def fileAccessTracker = Mock(FileAccessTracker)
+    def service = new ChunkedDirectoryBuildCacheService(cacheDir, persistentCache, tempFileStore, fileAccessTracker, ".failed", new ContentDefinedChunker(64, 256, 1024))
+    def random = new Random(1234)
+
+    def "loads stored #description entry"() {
+        def key = key("1234abcd")
+        def content = randomBytes(100_000)
+
+        when:
+        service.store(key, writer(compress(content)))
+
+        then:
+        1 * fileAccessTracker.markAccessed(new File(cacheDir, "1234abcd"))
+
+        when:
+        byte[] loaded = null
+        def found = service.load(key, { input -> loaded = decompress(input.bytes) } as BuildCacheEntryReader)
+
+        then:
+        found
+        loaded == content
+
+        where:
+        description | compress            | decompress
+        "gzipped"   | { pack(GZIP, it) }  | { unpack(it) }
+        "lz4"       | { pack(LZ4, it) }   | { unpack(it) }
+        "raw"       | { it }              | { it }
+    }
+
+    def "loads stored empty gzipped entry"() {
+        def key = key("1234abcd")
+
+        when:
+        service.store(key, writer(pack(GZIP, new byte[0])))
+
+        then:
+        loadBytes(key) == new byte[0]
+    }
+
+    def "loads entry that only starts like a gzipped entry as it is"() {
+        def key = key("1234abcd")
+        def content = randomBytes(10_000)
+        content[0] = (byte) 0x1f
+        content[1] = (byte) 0x8b
+
+        when:
+        service.store(key, writer(content))
+
+        then:
+        service.load(key, { input -> assert input.bytes == content } as BuildCacheEntryReader)
+    }
+
+    def "does not find entry that was not stored"() {
+        expect:
+        !service.load(key("1234abcd"), Mock(BuildCacheEntryReader))
+    }
+
+    def "stores shared content of similar entries compressed with #codec only once"() {
+        def content = randomBytes(200_000)
+        def modifiedContent = new byte[content.length + 10]
+        System.arraycopy(content, 0, modifiedContent, 0, 100_000)
+        System.arraycopy(content, 100_000, modifiedContent, 100_010, 100_000)
+
+        when:
+        service.store(key("first"), writer(pack(codec, content)))
+        def chunksAfterFirst = chunkFiles()
+        service.store(key("second"), writer(pack(codec, modifiedContent)))
+        def chunksAfterSecond = chunkFiles()
+
+        then:
+        chunksAfterSecond.size() - chunksAfterFirst.size() < chunksAfterFirst.size() / 10
+        loadBytes(key("first")) == content
+        loadBytes(key("second")) == modifiedContent
+
+        where:
+        codec << [GZIP, LZ4]
+    }
+
+    def "stores shared content of entries compressed with different codecs only once"() {
+        def content = randomBytes(100_000)
+
+        when:
+        service.store(key("gzipped"), writer(pack(GZIP, content)))
+        def chunksAfterFirst = chunkFiles()
+        service.store(key("lz4"), writer(pack(LZ4, content)))
+
+        then:
+        chunkFiles().size() == chunksAfterFirst.size()
+        loadBytes(key("gzipped")) == content
+        loadBytes(key("lz4")) == content
+    }
+
+    def "does not leave staged chunks behind"() {
+        when:
+        service.store(key("1234abcd"), writer(pack(GZIP, randomBytes(10_000))))
+
+        then:
+        new File(cacheDir, ChunkedDirectoryBuildCacheService.STAGING_DIRECTORY).list() == [] as String[]
+    }
+
+    def "stages all chunks again when stored chunks are cleaned up before publishing"() {
+        def content = randomBytes(10_000)
+        service.store(key("first"), writer(pack(GZIP, content)))
+
+        when:
+        service.store(key("second"), writer(pack(GZIP, content)))
+
+        then:
+        1 * persistentCache.withFileLock(_ as Factory) >> { Factory f ->
+            chunkFiles()*.delete()
+            f.create()
+        }
+
+        and:
+        loadBytes(key("second")) == content
+    }
+
+    def "treats entry with missing chunks as a miss"() {
+        def key = key("1234abcd")
+        service.store(key, writer(pack(GZIP, randomBytes(10_000))))
+
+        when:
+        chunkFiles().first().delete()
+
+        then:
+        !service.load(key, Mock(BuildCacheEntryReader))
+        !new File(cacheDir, "1234abcd").exists()
+    }
+
+    def "cleanup deletes chunks only referenced by removed entries"() {
+        def content = randomBytes(50_000)
+        def otherContent = randomBytes(50_000)
+        service.store(key("used"), writer(pack(GZIP, content)))
+        service.store(key("unused"), writer(pack(GZIP, otherContent)))
+        def chunksBeforeCleanup = chunkFiles().size()
+        def journal = Mock(FileAccessTimeJournal) {
+            getLastAccessTime(new File(cacheDir, "used")) >> System.currentTimeMillis()
+            getLastAccessTime(_) >> 0
+        }
+        def cleanableStore = Mock(CleanableStore) {
+            getBaseDir() >> cacheDir
+            getReservedCacheFiles() >> []
+            getDisplayName() >> "build cache"
+        }
+
+        when:
+        new ChunkedDirectoryBuildCacheCleanup(journal, 7).clean(cleanableStore, Mock(CleanupProgressMonitor))
+
+        then:
+        new File(cacheDir, "used").exists()
+        !new File(cacheDir, "unused").exists()
+        new File(cacheDir, ChunkedDirectoryBuildCacheService.CHUNKS_DIRECTORY).isDirectory()
+        loadBytes(key("used")) == content
+        chunkFiles().size() < chunksBeforeCleanup
+    }
+
+    def "cleanup deletes stale staged chunks"() {
+        def stagingDir = new File(cacheDir, ChunkedDirectoryBuildCacheService.STAGING_DIRECTORY)
+        def staleDir = new File(stagingDir, "stale")
+        def currentDir = new File(stagingDir, "current")
+        new File(staleDir, "chunk").with { parentFile.mkdirs(); text = "stale" }
+        new File(currentDir, "chunk").with { parentFile.mkdirs(); text = "current" }
+        staleDir.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2))
+        def cleanableStore = Mock(CleanableStore) {
+            getBaseDir() >> cacheDir
+            getReservedCacheFiles() >> []
+            getDisplayName() >> "build cache"
+        }
+
+        when:
+        new ChunkedDirectoryBuildCacheCleanup(Mock(FileAccessTimeJournal), 7).clean(cleanableStore, Mock(CleanupProgressMonitor))
+
+        then:
+        !staleDir.exists()
+        currentDir.exists()
+        stagingDir.isDirectory()
+    }
+
+    private byte[] loadBytes(BuildCacheKey key) {
+        byte[] loaded = null
+        assert service.load(key, { input -> loaded = unpack(input.bytes) } as BuildCacheEntryReader)
+        return loaded
+    }
+
+    private List<File> chunkFiles() {
+        new File(cacheDir, ChunkedDirectoryBuildCacheService.CHUNKS_DIRECTORY).listFiles().collectMany { it.listFiles() as List }
+    }
+
+    private byte[] randomBytes(int count) {
+        def bytes = new byte[count]
+        random.nextBytes(bytes)
+        return bytes
+    }
+
+    private static byte[] pack(BuildCacheEntryCodec codec, byte[] bytes) {
+        def output = new ByteArrayOutputStream()
+        CompressingBuildCacheEntryPacker.writeHeader(codec, output)
+        codec.compress(output).withStream { it.write(bytes) }
+        return output.toByteArray()
+    }
+
+    private static byte[] unpack(byte[] bytes) {
+        def input = new BufferedInputStream(new ByteArrayInputStream(bytes))
+        return CompressingBuildCacheEntryPacker.readCodec(input).decompress(input).bytes
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        Mock(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    private static BuildCacheEntryWriter writer(byte[] bytes) {
+        new BuildCacheEntryWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                output.write(bytes)
+            }
+
+            @Override
+            long getSize() {
+                return bytes.length
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration;
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.logging.events.ProgressCompleteEvent;
+import org.gradle.internal.logging.events.ProgressEvent;
+import org.gradle.internal.logging.events.ProgressStartEvent;
+import org.gradle.internal.logging.progress.DefaultProgressLoggerFactory;
+import org.gradle.internal.logging.progress.ProgressListener;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.DefaultBuildOperationExecutor;
+import org.gradle.internal.operations.DefaultBuildOperationIdFactory;
+import org.gradle.internal.operations.DefaultBuildOperationListenerManager;
+import org.gradle.internal.operations.DefaultBuildOperationQueueFactory;
+import org.gradle.internal.resources.DefaultResourceLockCoordinationService;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.time.Time;
+import org.gradle.internal.work.DefaultWorkerLeaseService;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares hashing the entries of a jar one by one with hashing them in parallel.
+ *
+ * The {@code parallelWithCachedEntries} variant keeps the entry hash cache between invocations, which is what happens when a jar changes but most of its entries do not.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@State(Scope.Benchmark)
+public class ZipHasherBenchmark {
+
+    @Param({"100", "5000"})
+    int entryCount;
+
+    @Param({"4096"})
+    int entrySize;
+
+    private File tempDir;
+    private RegularFileSnapshot jar;
+    private ZipHasher sequentialHasher;
+    private ParallelZipHashing parallelZipHashing;
+    private ZipHasher parallelHasher;
+    private ParallelZipHashing cachingParallelZipHashing;
+    private ZipHasher cachingParallelHasher;
+    private DefaultExecutorFactory executorFactory;
+    private DefaultWorkerLeaseService workerLeaseService;
+    private BuildOperationExecutor buildOperationExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("zip-hasher").toFile();
+        File jarFile = new File(tempDir, "benchmark.jar");
+        writeJar(jarFile);
+        jar = new RegularFileSnapshot(jarFile.getAbsolutePath(), jarFile.getName(), HashCode.fromInt(0), DefaultFileMetadata.file(jarFile.lastModified(), jarFile.length(), AccessType.DIRECT));
+
+        DefaultParallelismConfiguration parallelismConfiguration = new DefaultParallelismConfiguration(true, Runtime.getRuntime().availableProcessors());
+        DefaultBuildOperationIdFactory buildOperationIdFactory = new DefaultBuildOperationIdFactory();
+        executorFactory = new DefaultExecutorFactory();
+        workerLeaseService = new DefaultWorkerLeaseService(new DefaultResourceLockCoordinationService(), parallelismConfiguration);
+        buildOperationExecutor = new DefaultBuildOperationExecutor(
+            new DefaultBuildOperationListenerManager().getBroadcaster(),
+            Time.clock(),
+            new DefaultProgressLoggerFactory(new NoOpProgressListener(), Time.clock(), buildOperationIdFactory),
+            new DefaultBuildOperationQueueFactory(workerLeaseService),
+            executorFactory,
+            parallelismConfiguration,
+            buildOperationIdFactory
+        );
+        sequentialHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING);
+        cachingParallelZipHashing = new ParallelZipHashing(Integer.MAX_VALUE).withBuildOperationExecutor(buildOperationExecutor);
+        cachingParallelHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING, cachingParallelZipHashing);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupUncachedParallelHasher() {
+        parallelZipHashing = new ParallelZipHashing(Integer.MAX_VALUE).withBuildOperationExecutor(buildOperationExecutor);
+        parallelHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING, parallelZipHashing);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CompositeStoppable.stoppable(buildOperationExecutor, workerLeaseService, executorFactory).stop();
+        File[] files = tempDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    @Benchmark
+    public HashCode sequential() {
+        return sequentialHasher.hash(jar);
+    }
+
+    @Benchmark
+    public HashCode parallel() {
+        return withWorkerLease(parallelHasher);
+    }
+
+    @Benchmark
+    public HashCode parallelWithCachedEntries() {
+        return withWorkerLease(cachingParallelHasher);
+    }
+
+    private HashCode withWorkerLease(ZipHasher hasher) {
+        // Hashing in parallel runs build operations, which need a worker lease like a task does
+        WorkerLeaseRegistry.WorkerLease workerLease = workerLeaseService.getWorkerLease();
+        return workerLeaseService.withLocks(Collections.singleton(workerLease), () -> hasher.hash(jar));
+    }
+
+    private void writeJar(File jarFile) throws IOException {
+        Random random = new Random(1234L);
+        byte[] content = new byte[entrySize];
+        try (ZipOutputStream outputStream = new ZipOutputStream(new FileOutputStream(jarFile))) {
+            for (int i = 0; i < entryCount; i++) {
+                // Half random, half repeated content, so the entries compress roughly like class files
+                random.nextBytes(content);
+                for (int j = entrySize / 2; j < entrySize; j++) {
+                    content[j] = (byte) (j % 16);
+                }
+                outputStream.putNextEntry(new ZipEntry("org/gradle/package" + (i % 50) + "/Class" + i + ".class"));
+                outputStream.write(content);
+                outputStream.closeEntry();
+            }
+        }
+    }
+
+    private static class NoOpProgressListener implements ProgressListener {
+        @Override
+        public void started(ProgressStartEvent event) {
+        }
+
+        @Override
+        public void progress(ProgressEvent event) {
+        }
+
+        @Override
+        public void completed(ProgressCompleteEvent event) {
+        }
+    }
+}
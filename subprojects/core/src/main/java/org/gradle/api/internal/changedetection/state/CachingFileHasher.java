@@ -30,10 +30,14 @@
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.serialize.InterningStringSerializer;
 
+import javax.annotation.Nullable;
 import java.io.File;
 
 public class CachingFileHasher implements FileHasher {
     private final PersistentIndexedCache<String, FileInfo> cache;
+    @Nullable
+    private final MappedFileHashStore mappedStore;
+    private volatile boolean mappedStoreRejectedHashes;
     private final FileHasher delegate;
     private final FileSystem fileSystem;
     private final StringInterner stringInterner;
@@ -46,6 +50,24 @@ public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, Str
             PersistentIndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer()),
             inMemorySize,
             true);
+        this.mappedStore = null;
+        this.stringInterner = stringInterner;
+        this.timestampInspector = timestampInspector;
+    }
+
+    /**
+     * Creates a hasher that keeps file hashes in a {@link MappedFileHashStore} in place of an indexed cache.
+     * The mapped store grows with the number of files hashed, up to the given maximum capacity.
+     * Hashes that the mapped store cannot hold are kept in the indexed cache instead.
+     */
+    public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem, int inMemorySize, int maximumMappedCapacity) {
+        this.delegate = delegate;
+        this.fileSystem = fileSystem;
+        this.cache = store.createCache(
+            PersistentIndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer()),
+            inMemorySize,
+            true);
+        this.mappedStore = store.createMappedFileHashStore(cacheName, maximumMappedCapacity);
         this.stringInterner = stringInterner;
         this.timestampInspector = timestampInspector;
     }
@@ -61,19 +83,18 @@ public String toString() {
 
     @Override
     public HashCode hash(File file) {
-        return snapshot(file).getHash();
+        FileMetadata fileMetadata = fileSystem.stat(file);
+        return hash(file, fileMetadata.getLength(), fileMetadata.getLastModified());
     }
 
     @Override
     public HashCode hash(File file, long length, long lastModified) {
+        if (mappedStore != null) {
+            return hashUsingMappedStore(file, file.getAbsolutePath(), length, lastModified);
+        }
         return snapshot(file, length, lastModified).getHash();
     }
 
-    private FileInfo snapshot(File file) {
-        FileMetadata fileMetadata = fileSystem.stat(file);
-        return snapshot(file, fileMetadata.getLength(), fileMetadata.getLastModified());
-    }
-
     private FileInfo snapshot(File file, long length, long timestamp) {
         String absolutePath = file.getAbsolutePath();
         if (timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
@@ -90,7 +111,41 @@ private FileInfo snapshot(File file, long length, long timestamp) {
         return info;
     }
 
+    private HashCode hashUsingMappedStore(File file, String absolutePath, long length, long timestamp) {
+        if (timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
+            HashCode hash = mappedStore.get(absolutePath, length, timestamp);
+            if (hash != null) {
+                return hash;
+            }
+            if (mappedStoreRejectedHashes) {
+                FileInfo info = cache.get(absolutePath);
+                if (info != null && length == info.length && timestamp == info.timestamp) {
+                    return info.getHash();
+                }
+            }
+        }
+
+        HashCode hash = delegate.hash(file);
+        if (!mappedStore.put(absolutePath, length, timestamp, hash)) {
+            mappedStoreRejectedHashes = true;
+            cache.put(stringInterner.intern(absolutePath), new FileInfo(hash, length, timestamp));
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the hashes recorded in the mapped store to its file, so that other processes see them.
+     */
+    public void flush() {
+        if (mappedStore != null) {
+            mappedStore.flush();
+        }
+    }
+
     public void discard(String path) {
+        if (mappedStore != null) {
+            mappedStore.remove(path);
+        }
         cache.remove(path);
     }
 
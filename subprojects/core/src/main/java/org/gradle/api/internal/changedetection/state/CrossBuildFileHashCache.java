@@ -23,10 +23,13 @@
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.internal.concurrent.CompositeStoppable;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
@@ -34,6 +37,7 @@ public class CrossBuildFileHashCache implements Closeable {
 
     private final PersistentCache cache;
     private final InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory;
+    private final List<MappedFileHashStore> mappedStores = new CopyOnWriteArrayList<>();
 
     public CrossBuildFileHashCache(@Nullable File cacheDir, CacheRepository repository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, Kind cacheKind) {
         this.inMemoryCacheDecoratorFactory = inMemoryCacheDecoratorFactory;
@@ -50,9 +54,19 @@ public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCachePar
         );
     }
 
+    /**
+     * Creates a file hash store that lives in a memory-mapped file in this cache's directory, guarded by the file lock of this cache.
+     * The store is available immediately and does not need to be loaded into memory.
+     */
+    public MappedFileHashStore createMappedFileHashStore(String name, int maximumCapacity) {
+        MappedFileHashStore store = new MappedFileHashStore(new File(cache.getBaseDir(), name + ".bin"), cache, maximumCapacity, Runtime.getRuntime().availableProcessors() * 4);
+        mappedStores.add(store);
+        return store;
+    }
+
     @Override
     public void close() {
-        cache.close();
+        CompositeStoppable.stoppable(mappedStores).add(cache).stop();
     }
 
     public enum Kind {
@@ -76,6 +76,7 @@ public void beforeComplete(GradleInternal gradle) {
             } finally {
                 filesWithCurrentTimestamp.clear();
             }
+            fileHasher.flush();
         }
     }
 }
@@ -0,0 +1,553 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.CacheAccess;
+import org.gradle.internal.hash.HashCode;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A persistent store of file hashes, backed by an open-addressing hash table in a memory-mapped file.
+ *
+ * Each entry is a fixed-size record containing a 128-bit hash of the file path, the file length, the file timestamp and the 16-byte content hash.
+ * The path itself is not stored, so a lookup does not need to decode anything and the table can be used right after mapping it, without loading it first.
+ * Looking up a path does not allocate, apart from the returned hash.
+ *
+ * The table starts small and doubles, up to the given maximum capacity, whenever a path finds no free slot within the probe limit.
+ * Once the table has reached its maximum capacity, the home slot of the path is overwritten instead.
+ * The table is split into segments, each guarded by its own lock. Probing wraps around inside the segment of the home slot of a path,
+ * so concurrent access to different segments does not contend.
+ *
+ * The file can be shared between processes. Lookups read the mapped table without taking the file lock of the cache that contains it,
+ * so they do not contend on the lock. Each record carries a check value over its contents, so a record that another process is writing,
+ * or that was only partially written by a process that crashed, is treated as a miss.
+ * Recorded hashes are kept in memory until {@value #MAX_PENDING_HASHES} of them are pending, at the end of each build, or until the store is closed,
+ * and are then written to the table under a single acquisition of the file lock. Removing entries and growing the table also hold the file lock.
+ * A process notices that another process has grown the table by the capacity in the header, and maps the file again.
+ */
+public class MappedFileHashStore implements Closeable {
+    private static final int MAGIC = 0x46484153;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+    private static final int HASH_SIZE = 16;
+    private static final int MAX_PROBES = 32;
+    private static final int MIN_SEGMENT_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 1 << 14;
+    private static final int MAX_CAPACITY = 1 << 24;
+    private static final long REMOVED = -1L;
+    private static final int MAX_PENDING_HASHES = 256;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_FORMAT_VERSION = 4;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_RECORD_SIZE = 12;
+
+    private static final int PATH_HASH_1 = 0;
+    private static final int PATH_HASH_2 = 8;
+    private static final int LENGTH = 16;
+    private static final int TIMESTAMP = 24;
+    private static final int CONTENT_HASH = 32;
+    private static final int CHECK = 48;
+
+    private final File file;
+    private final CacheAccess fileLock;
+    private final int maximumCapacity;
+    private final Object[] locks;
+    private final RandomAccessFile randomAccessFile;
+    // Hashes recorded since the last flush, looked up before the table
+    private final ConcurrentMap<String, PendingHash> pendingHashes = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+
+    // Guards the mapping: lookups and updates share it, growing and mapping the file again take it exclusively
+    private final StampedLock tableLock = new StampedLock();
+    private int capacity;
+    private int segmentSize;
+    private MappedByteBuffer buffer;
+
+    public MappedFileHashStore(File file, CacheAccess fileLock, int maximumCapacity, int concurrencyLevel) {
+        this.file = file;
+        this.fileLock = fileLock;
+        this.maximumCapacity = powerOfTwoAtLeast(Math.min(Math.max(maximumCapacity, MIN_SEGMENT_SIZE), MAX_CAPACITY));
+        int segments = Math.min(powerOfTwoAtLeast(concurrencyLevel), this.maximumCapacity / MIN_SEGMENT_SIZE);
+        this.locks = new Object[segments];
+        for (int i = 0; i < segments; i++) {
+            locks[i] = new Object();
+        }
+        try {
+            file.getParentFile().mkdirs();
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                fileLock.withFileLock(new Runnable() {
+                    @Override
+                    public void run() {
+                        open();
+                    }
+                });
+            } catch (RuntimeException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open file hash store " + file, e);
+        }
+    }
+
+    private void open() {
+        try {
+            deleteResizeFile();
+            int existingCapacity = readCompatibleCapacity();
+            if (existingCapacity > 0) {
+                map(existingCapacity);
+            } else {
+                // The file is never truncated, as another process may still have it mapped
+                int initialCapacity = Math.min(INITIAL_CAPACITY, maximumCapacity);
+                ensureLength(fileSizeFor(initialCapacity));
+                map(initialCapacity);
+                clear(initialCapacity);
+                buffer.putInt(HEADER_MAGIC, MAGIC);
+                buffer.putInt(HEADER_FORMAT_VERSION, FORMAT_VERSION);
+                buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+                buffer.putInt(HEADER_CAPACITY, initialCapacity);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open file hash store " + file, e);
+        }
+    }
+
+    private int readCompatibleCapacity() throws IOException {
+        if (randomAccessFile.length() < HEADER_SIZE) {
+            return -1;
+        }
+        randomAccessFile.seek(0);
+        if (randomAccessFile.readInt() != MAGIC || randomAccessFile.readInt() != FORMAT_VERSION) {
+            return -1;
+        }
+        int existingCapacity = randomAccessFile.readInt();
+        if (randomAccessFile.readInt() != RECORD_SIZE
+            || existingCapacity < MIN_SEGMENT_SIZE
+            || existingCapacity > MAX_CAPACITY
+            || Integer.bitCount(existingCapacity) != 1
+            || randomAccessFile.length() < fileSizeFor(existingCapacity)) {
+            return -1;
+        }
+        return existingCapacity;
+    }
+
+    /**
+     * Returns the content hash recorded for the given path, when the recorded length and timestamp match the given ones.
+     */
+    @Nullable
+    public HashCode get(String path, long length, long timestamp) {
+        PendingHash pending = pendingHashes.get(path);
+        if (pending != null) {
+            return pending.length == length && pending.timestamp == timestamp ? pending.hash : null;
+        }
+        return getFromTable(path, length, timestamp);
+    }
+
+    @Nullable
+    private HashCode getFromTable(String path, long length, long timestamp) {
+        long pathHash1 = pathHash1(path);
+        long pathHash2 = pathHash2(path);
+        long stamp = acquireTable();
+        try {
+            int home = homeSlot(pathHash1);
+            synchronized (lockFor(home)) {
+                int slot = find(home, pathHash1, pathHash2);
+                if (slot < 0) {
+                    return null;
+                }
+                int offset = offsetOf(slot);
+                if (buffer.getLong(offset + LENGTH) != length || buffer.getLong(offset + TIMESTAMP) != timestamp || !isConsistent(offset)) {
+                    return null;
+                }
+                return HashCode.fromLongs(buffer.getLong(offset + CONTENT_HASH), buffer.getLong(offset + CONTENT_HASH + 8));
+            }
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Records the content hash for the given path. Returns false when the hash cannot be stored in this table, which is when it is not a 128-bit hash.
+     */
+    public boolean put(String path, long length, long timestamp, HashCode hash) {
+        if (hash.length() != HASH_SIZE) {
+            return false;
+        }
+        pendingHashes.put(path, new PendingHash(length, timestamp, hash));
+        if (pendingHashes.size() >= MAX_PENDING_HASHES) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the recorded hashes to the table, so that other processes see them.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (pendingHashes.isEmpty()) {
+                return;
+            }
+            fileLock.withFileLock(new Runnable() {
+                @Override
+                public void run() {
+                    for (Map.Entry<String, PendingHash> entry : pendingHashes.entrySet()) {
+                        PendingHash pending = entry.getValue();
+                        putInsideLock(entry.getKey(), pending.length, pending.timestamp, pending.hash.toByteArray());
+                        // Keeps a hash that was recorded again in the meantime
+                        pendingHashes.remove(entry.getKey(), pending);
+                    }
+                }
+            });
+        }
+    }
+
+    private void putInsideLock(String path, long length, long timestamp, byte[] hashBytes) {
+        long pathHash1 = pathHash1(path);
+        long pathHash2 = pathHash2(path);
+        while (true) {
+            int capacityBeforeInsert;
+            long stamp = acquireTable();
+            try {
+                int home = homeSlot(pathHash1);
+                synchronized (lockFor(home)) {
+                    int slot = findForInsert(home, pathHash1, pathHash2);
+                    if (slot < 0 && capacity < maximumCapacity) {
+                        capacityBeforeInsert = capacity;
+                    } else {
+                        write(slot >= 0 ? slot : home, pathHash1, pathHash2, length, timestamp, hashBytes);
+                        return;
+                    }
+                }
+            } finally {
+                tableLock.unlockRead(stamp);
+            }
+            grow(capacityBeforeInsert);
+        }
+    }
+
+    /**
+     * Discards the entry for the given path. The slot keeps the path hash, so probing for other paths continues past it.
+     */
+    public void remove(final String path) {
+        synchronized (flushLock) {
+            pendingHashes.remove(path);
+            fileLock.withFileLock(new Runnable() {
+                @Override
+                public void run() {
+                    removeInsideLock(path);
+                }
+            });
+        }
+    }
+
+    private void removeInsideLock(String path) {
+        long pathHash1 = pathHash1(path);
+        long pathHash2 = pathHash2(path);
+        long stamp = acquireTable();
+        try {
+            int home = homeSlot(pathHash1);
+            synchronized (lockFor(home)) {
+                int slot = find(home, pathHash1, pathHash2);
+                if (slot >= 0) {
+                    int offset = offsetOf(slot);
+                    buffer.putLong(offset + LENGTH, REMOVED);
+                    buffer.putLong(offset + CHECK, check(offset));
+                }
+            }
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Acquires shared access to the table, mapping the file again first when another process has grown it.
+     */
+    private long acquireTable() {
+        while (true) {
+            long stamp = tableLock.readLock();
+            if (buffer.getInt(HEADER_CAPACITY) == capacity) {
+                return stamp;
+            }
+            tableLock.unlockRead(stamp);
+            stamp = tableLock.writeLock();
+            try {
+                int currentCapacity = buffer.getInt(HEADER_CAPACITY);
+                if (currentCapacity != capacity) {
+                    map(currentCapacity);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map file hash store " + file, e);
+            } finally {
+                tableLock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Doubles the capacity of the table, keeping the current entries. The entries are staged in a separate file while the table is rebuilt.
+     */
+    private void grow(int expectedCapacity) {
+        long stamp = tableLock.writeLock();
+        try {
+            if (capacity != expectedCapacity) {
+                // Already grown by another thread
+                return;
+            }
+            File resizeFile = resizeFile();
+            int entries = 0;
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(resizeFile)))) {
+                for (int slot = 0; slot < capacity; slot++) {
+                    int offset = offsetOf(slot);
+                    if (buffer.getLong(offset + PATH_HASH_1) == 0 && buffer.getLong(offset + PATH_HASH_2) == 0) {
+                        continue;
+                    }
+                    if (buffer.getLong(offset + LENGTH) == REMOVED || !isConsistent(offset)) {
+                        continue;
+                    }
+                    for (int field = 0; field < CHECK; field += 8) {
+                        output.writeLong(buffer.getLong(offset + field));
+                    }
+                    entries++;
+                }
+            }
+
+            int newCapacity = capacity * 2;
+            ensureLength(fileSizeFor(newCapacity));
+            map(newCapacity);
+            clear(newCapacity);
+
+            byte[] hashBytes = new byte[HASH_SIZE];
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(resizeFile)))) {
+                for (int i = 0; i < entries; i++) {
+                    long pathHash1 = input.readLong();
+                    long pathHash2 = input.readLong();
+                    long length = input.readLong();
+                    long timestamp = input.readLong();
+                    input.readFully(hashBytes);
+                    int home = homeSlot(pathHash1);
+                    int slot = findForInsert(home, pathHash1, pathHash2);
+                    write(slot >= 0 ? slot : home, pathHash1, pathHash2, length, timestamp, hashBytes);
+                }
+            }
+            // Publish the new capacity last, so that a table that was only partially rebuilt keeps its old capacity
+            buffer.putInt(HEADER_CAPACITY, newCapacity);
+            deleteResizeFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow file hash store " + file, e);
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+    }
+
+    private void map(int newCapacity) throws IOException {
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSizeFor(newCapacity));
+        capacity = newCapacity;
+        segmentSize = newCapacity / Math.min(locks.length, newCapacity / MIN_SEGMENT_SIZE);
+    }
+
+    private void ensureLength(long fileSize) throws IOException {
+        if (randomAccessFile.length() < fileSize) {
+            randomAccessFile.setLength(fileSize);
+        }
+    }
+
+    private void clear(int capacity) {
+        for (int offset = HEADER_SIZE; offset < fileSizeFor(capacity); offset += 8) {
+            buffer.putLong(offset, 0);
+        }
+    }
+
+    private File resizeFile() {
+        return new File(file.getPath() + ".resize");
+    }
+
+    private void deleteResizeFile() throws IOException {
+        File resizeFile = resizeFile();
+        if (resizeFile.exists() && !resizeFile.delete()) {
+            throw new IOException("Could not delete " + resizeFile);
+        }
+    }
+
+    private void write(int slot, long pathHash1, long pathHash2, long length, long timestamp, byte[] hashBytes) {
+        int offset = offsetOf(slot);
+        buffer.putLong(offset + PATH_HASH_1, pathHash1);
+        buffer.putLong(offset + PATH_HASH_2, pathHash2);
+        buffer.putLong(offset + LENGTH, length);
+        buffer.putLong(offset + TIMESTAMP, timestamp);
+        for (int i = 0; i < HASH_SIZE; i++) {
+            buffer.put(offset + CONTENT_HASH + i, hashBytes[i]);
+        }
+        buffer.putLong(offset + CHECK, check(offset));
+    }
+
+    private int find(int home, long pathHash1, long pathHash2) {
+        int segmentStart = home & ~(segmentSize - 1);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = segmentStart + ((home + probe) & (segmentSize - 1));
+            int offset = offsetOf(slot);
+            long storedHash1 = buffer.getLong(offset + PATH_HASH_1);
+            long storedHash2 = buffer.getLong(offset + PATH_HASH_2);
+            if (storedHash1 == pathHash1 && storedHash2 == pathHash2) {
+                return slot;
+            }
+            if (storedHash1 == 0 && storedHash2 == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot to store the given path in, or -1 when there is no free slot within the probe limit.
+     */
+    private int findForInsert(int home, long pathHash1, long pathHash2) {
+        int segmentStart = home & ~(segmentSize - 1);
+        int reusable = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = segmentStart + ((home + probe) & (segmentSize - 1));
+            int offset = offsetOf(slot);
+            long storedHash1 = buffer.getLong(offset + PATH_HASH_1);
+            long storedHash2 = buffer.getLong(offset + PATH_HASH_2);
+            if (storedHash1 == pathHash1 && storedHash2 == pathHash2) {
+                return slot;
+            }
+            if (storedHash1 == 0 && storedHash2 == 0) {
+                return reusable >= 0 ? reusable : slot;
+            }
+            if (reusable < 0 && (buffer.getLong(offset + LENGTH) == REMOVED || !isConsistent(offset))) {
+                reusable = slot;
+            }
+        }
+        return reusable;
+    }
+
+    private boolean isConsistent(int offset) {
+        return buffer.getLong(offset + CHECK) == check(offset);
+    }
+
+    private long check(int offset) {
+        long check = 0x9E3779B97F4A7C15L;
+        for (int field = 0; field < CHECK; field += 8) {
+            check = mix(check ^ buffer.getLong(offset + field));
+        }
+        return check;
+    }
+
+    private int homeSlot(long pathHash1) {
+        return (int) (pathHash1 >>> 32) & (capacity - 1);
+    }
+
+    private Object lockFor(int slot) {
+        return locks[slot / segmentSize];
+    }
+
+    private static long fileSizeFor(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static long pathHash1(String path) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return nonZero(mix(hash));
+    }
+
+    private static long pathHash2(String path) {
+        long hash = path.length();
+        for (int i = 0; i < path.length(); i++) {
+            hash = 31 * hash + path.charAt(i);
+            hash = Long.rotateLeft(hash, 7) * 0xC2B2AE3D27D4EB4FL;
+        }
+        return mix(hash);
+    }
+
+    private static long nonZero(long hash) {
+        // Together with the second hash this keeps the all-zero key free to mark empty slots
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static int powerOfTwoAtLeast(int value) {
+        int result = Integer.highestOneBit(Math.max(value, 1));
+        return result < value ? result << 1 : result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        long stamp = tableLock.writeLock();
+        try {
+            buffer.force();
+            randomAccessFile.close();
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "mapped file hash store " + file;
+    }
+
+    private static class PendingHash {
+        final long length;
+        final long timestamp;
+        final HashCode hash;
+
+        PendingHash(long length, long timestamp, HashCode hash) {
+            this.length = length;
+            this.timestamp = timestamp;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.internal.file.archive.ZipEntry;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provides the shared resources for hashing the entries of a zip file in parallel: the build operation executor that runs the batches
+ * of entries, and an in-memory cache of entry hashes with a bounded number of entries.
+ *
+ * The entry hash cache is keyed by the configuration of the hasher and the name, CRC-32 and size of the entry, as recorded in
+ * the central directory of the zip file. This allows to reuse the hash of an unchanged entry of a changed zip file without inflating it.
+ *
+ * The instance in the Gradle user home scope only holds the cache, so that it is kept between builds. Each build session uses a copy
+ * that shares the cache and runs the batches with the build operation executor of the session, see {@link #withBuildOperationExecutor(BuildOperationExecutor)}.
+ */
+public class ParallelZipHashing {
+    /**
+     * A zip hashing setup that hashes all entries on the calling thread.
+     */
+    public static final ParallelZipHashing DISABLED = new ParallelZipHashing(null, null);
+
+    private static final HashCode NO_HASH = Hashing.signature(ParallelZipHashing.class.getName() + " : no hash");
+    private static final int ENTRIES_PER_BATCH = 128;
+
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final Cache<HashCode, HashCode> entryHashes;
+
+    public ParallelZipHashing(long maximumCachedEntries) {
+        this(null, CacheBuilder.newBuilder().maximumSize(maximumCachedEntries).<HashCode, HashCode>build());
+    }
+
+    private ParallelZipHashing(@Nullable BuildOperationExecutor buildOperationExecutor, @Nullable Cache<HashCode, HashCode> entryHashes) {
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.entryHashes = entryHashes;
+    }
+
+    /**
+     * Returns a zip hashing setup that runs batches of entries using the given executor and shares the entry hash cache with this one.
+     */
+    public ParallelZipHashing withBuildOperationExecutor(BuildOperationExecutor buildOperationExecutor) {
+        if (entryHashes == null) {
+            return this;
+        }
+        return new ParallelZipHashing(buildOperationExecutor, entryHashes);
+    }
+
+    public boolean isEnabled() {
+        return buildOperationExecutor != null;
+    }
+
+    /**
+     * Hashes the given entry using the given hasher, unless an entry with the same name, CRC-32 and size has been hashed before with the same configuration.
+     */
+    @Nullable
+    public HashCode hashEntry(ZipEntry zipEntry, ResourceHasher resourceHasher, HashCode configurationHash) throws IOException {
+        long crc = zipEntry.getCrc();
+        int size = zipEntry.size();
+        if (crc == -1 || size == -1) {
+            return resourceHasher.hash(zipEntry);
+        }
+        HashCode cacheKey = entryHashCacheKey(configurationHash, zipEntry.getName(), crc, size);
+        HashCode entryHash = entryHashes.getIfPresent(cacheKey);
+        if (entryHash != null) {
+            return entryHash.equals(NO_HASH) ? null : entryHash;
+        }
+        entryHash = resourceHasher.hash(zipEntry);
+        entryHashes.put(cacheKey, entryHash == null ? NO_HASH : entryHash);
+        return entryHash;
+    }
+
+    /**
+     * Applies the given action to batches of the given entries as build operations, and returns the concatenated results in the order of the entries.
+     */
+    public <T> List<T> forEachBatch(List<ZipEntry> entries, BatchAction<T> action) throws IOException {
+        if (entries.size() <= ENTRIES_PER_BATCH) {
+            return action.execute(entries);
+        }
+        List<Batch<T>> batches = new ArrayList<>();
+        for (int start = 0; start < entries.size(); start += ENTRIES_PER_BATCH) {
+            batches.add(new Batch<>(entries.subList(start, Math.min(start + ENTRIES_PER_BATCH, entries.size())), action));
+        }
+        buildOperationExecutor.runAll(queue -> {
+            for (Batch<T> batch : batches) {
+                queue.add(batch);
+            }
+        });
+        List<T> results = new ArrayList<>(entries.size());
+        for (Batch<T> batch : batches) {
+            results.addAll(batch.results);
+        }
+        return results;
+    }
+
+    private static HashCode entryHashCacheKey(HashCode configurationHash, String name, long crc, int size) {
+        Hasher hasher = Hashing.newHasher();
+        hasher.putHash(configurationHash);
+        hasher.putString(name);
+        hasher.putLong(crc);
+        hasher.putInt(size);
+        return hasher.hash();
+    }
+
+    public interface BatchAction<T> {
+        List<T> execute(List<ZipEntry> entries) throws IOException;
+    }
+
+    private static class Batch<T> implements RunnableBuildOperation {
+        private final List<ZipEntry> entries;
+        private final BatchAction<T> action;
+        private List<T> results;
+
+        Batch(List<ZipEntry> entries, BatchAction<T> action) {
+            this.entries = entries;
+            this.action = action;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            try {
+                results = action.execute(entries);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Hash " + entries.size() + " zip entries");
+        }
+    }
+}
@@ -59,10 +59,24 @@ public static boolean isZipFile(final String name) {
 
     private final ResourceHasher resourceHasher;
     private final ResourceFilter resourceFilter;
+    private final ParallelZipHashing parallelZipHashing;
+    private final HashCode configurationHash;
 
     public ZipHasher(ResourceHasher resourceHasher, ResourceFilter resourceFilter) {
+        this(resourceHasher, resourceFilter, ParallelZipHashing.DISABLED);
+    }
+
+    /**
+     * Creates a hasher that reads the entries of a zip file from its central directory and hashes them in parallel, when parallel zip hashing is enabled.
+     * The resulting hashes are the same as the ones of a hasher that hashes the entries one by one.
+     */
+    public ZipHasher(ResourceHasher resourceHasher, ResourceFilter resourceFilter, ParallelZipHashing parallelZipHashing) {
         this.resourceHasher = resourceHasher;
         this.resourceFilter = resourceFilter;
+        this.parallelZipHashing = parallelZipHashing;
+        Hasher hasher = Hashing.newHasher();
+        appendConfigurationToHasher(hasher);
+        this.configurationHash = hasher.hash();
     }
 
     @Nullable
@@ -98,13 +112,42 @@ private List<FileSystemLocationFingerprint> fingerprintZipEntries(String zipFile
         try {
             input = FileZipInput.create(new File(zipFile));
             List<FileSystemLocationFingerprint> fingerprints = Lists.newArrayList();
-            fingerprintZipEntries("", fingerprints, input);
+            if (parallelZipHashing.isEnabled() && FileZipInput.isZipFileSafeToUse()) {
+                fingerprintZipEntriesInParallel(fingerprints, input);
+            } else {
+                fingerprintZipEntries("", fingerprints, input);
+            }
             return fingerprints;
         } finally {
             IoActions.closeQuietly(input);
         }
     }
 
+    private void fingerprintZipEntriesInParallel(List<FileSystemLocationFingerprint> fingerprints, ZipInput input) throws IOException {
+        fingerprints.add(newZipMarker(""));
+        // Iterating the entries of a zip file only reads its central directory, the contents are only read when hashing
+        List<ZipEntry> entries = Lists.newArrayList();
+        for (ZipEntry zipEntry : input) {
+            if (!zipEntry.isDirectory() && !resourceFilter.shouldBeIgnored(new ZipEntryRelativePath(zipEntry))) {
+                entries.add(zipEntry);
+            }
+        }
+        fingerprints.addAll(parallelZipHashing.forEachBatch(entries, batch -> {
+            List<FileSystemLocationFingerprint> batchFingerprints = Lists.newArrayList();
+            for (ZipEntry zipEntry : batch) {
+                if (isZipFile(zipEntry.getName())) {
+                    fingerprintZipEntries(zipEntry.getName(), batchFingerprints, new StreamZipInput(zipEntry.getInputStream()));
+                } else {
+                    HashCode hash = parallelZipHashing.hashEntry(zipEntry, resourceHasher, configurationHash);
+                    if (hash != null) {
+                        batchFingerprints.add(new DefaultFileSystemLocationFingerprint(zipEntry.getName(), FileType.RegularFile, hash));
+                    }
+                }
+            }
+            return batchFingerprints;
+        }));
+    }
+
     private void fingerprintZipEntries(String parentName, List<FileSystemLocationFingerprint> fingerprints, ZipInput input) throws IOException {
         fingerprints.add(newZipMarker(parentName));
         for (ZipEntry zipEntry : input) {
@@ -50,7 +50,7 @@ public static ZipInput create(File file) {
     /**
      * {@link ZipFile} is more efficient, but causes memory leaks on older Java versions, so we only use it on more recent ones.
      */
-    private static boolean isZipFileSafeToUse() {
+    public static boolean isZipFileSafeToUse() {
         return JavaVersion.current().isJava11Compatible();
     }
 
@@ -63,4 +63,9 @@ public InputStream getInputStream() {
     public int size() {
         return (int) entry.getSize();
     }
+
+    @Override
+    public long getCrc() {
+        return entry.getCrc();
+    }
 }
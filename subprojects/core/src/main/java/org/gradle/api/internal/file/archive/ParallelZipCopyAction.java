@@ -0,0 +1,412 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.archive;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.Zip64RequiredException;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.DocumentationRegistry;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.internal.IoActions;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A variant of {@link ZipCopyAction} that compresses the entries of the archive in parallel, using the build operation queue.
+ *
+ * The content of each file is read on the calling thread, and batches of files are then deflated and checksummed by build operations.
+ * The compressed entries are written to the archive as raw data in the order in which the files were visited, so the archive has the same
+ * layout regardless of how the work was scheduled, and is byte for byte reproducible when file timestamps are not preserved and the file order is reproducible.
+ * Entries that do not get smaller when deflated, like files that are already compressed, are stored as they are.
+ * When the calling thread needs a batch that no worker has started yet, it compresses the batch itself.
+ *
+ * The memory used for pending entries is bounded: files larger than {@link #MAX_BUFFERED_ENTRY_SIZE} are streamed into the archive
+ * on the calling thread, and the calling thread waits for the oldest pending entries once {@link #MAX_PENDING_BYTES} are buffered.
+ */
+public class ParallelZipCopyAction implements CopyAction {
+    /**
+     * Boolean JVM system property to compress the entries of ZIP archives in parallel.
+     */
+    public static final String PARALLEL_ZIP_PROPERTY = "org.gradle.unsafe.archive.parallel-zip";
+
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 4 * 1024 * 1024;
+    private static final long MAX_PENDING_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_ENTRIES_PER_BATCH = 64;
+    private static final long MAX_BYTES_PER_BATCH = 1024 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File zipFile;
+    private final boolean allowZip64;
+    private final int entryCompressionMethod;
+    private final DocumentationRegistry documentationRegistry;
+    private final String encoding;
+    private final boolean preserveFileTimestamps;
+    private final BuildOperationExecutor buildOperationExecutor;
+
+    public ParallelZipCopyAction(File zipFile, boolean allowZip64, int entryCompressionMethod, DocumentationRegistry documentationRegistry, @Nullable String encoding, boolean preserveFileTimestamps, BuildOperationExecutor buildOperationExecutor) {
+        this.zipFile = zipFile;
+        this.allowZip64 = allowZip64;
+        this.entryCompressionMethod = entryCompressionMethod;
+        this.documentationRegistry = documentationRegistry;
+        this.encoding = encoding;
+        this.preserveFileTimestamps = preserveFileTimestamps;
+        this.buildOperationExecutor = buildOperationExecutor;
+    }
+
+    @Override
+    public WorkResult execute(final CopyActionProcessingStream stream) {
+        ZipArchiveOutputStream zipOutStr;
+        try {
+            zipOutStr = new ZipArchiveOutputStream(zipFile);
+            zipOutStr.setUseZip64(allowZip64 ? Zip64Mode.AsNeeded : Zip64Mode.Never);
+            // Like ZipCopyAction, use the platform charset when none is configured, instead of the UTF-8 default of commons-compress
+            zipOutStr.setEncoding(encoding != null ? encoding : Charset.defaultCharset().name());
+        } catch (Exception e) {
+            throw new GradleException(String.format("Could not create ZIP '%s'.", zipFile), e);
+        }
+
+        try {
+            final StreamAction action = new StreamAction(zipOutStr);
+            buildOperationExecutor.runAll(new Action<BuildOperationQueue<CompressBatch>>() {
+                @Override
+                public void execute(BuildOperationQueue<CompressBatch> queue) {
+                    action.processAll(stream, queue);
+                }
+            });
+            action.rethrowFailure();
+            zipOutStr.close();
+        } catch (Zip64RequiredException e) {
+            throw zip64Required(e);
+        } catch (IOException e) {
+            throw new org.gradle.api.UncheckedIOException(e);
+        } catch (GradleException e) {
+            if (e.getCause() instanceof Zip64RequiredException) {
+                throw zip64Required((Zip64RequiredException) e.getCause());
+            }
+            throw e;
+        } finally {
+            IoActions.closeQuietly(zipOutStr);
+        }
+
+        return WorkResults.didWork(true);
+    }
+
+    private org.gradle.api.tasks.bundling.internal.Zip64RequiredException zip64Required(Zip64RequiredException e) {
+        return new org.gradle.api.tasks.bundling.internal.Zip64RequiredException(
+            String.format("%s\n\nTo build this archive, please enable the zip64 extension.\nSee: %s", e.getMessage(), documentationRegistry.getDslRefForProperty(Zip.class, "zip64"))
+        );
+    }
+
+    private class StreamAction implements CopyActionProcessingStreamAction {
+        private final ZipArchiveOutputStream zipOutStr;
+        private final Deque<PendingEntry> pendingEntries = new ArrayDeque<PendingEntry>();
+        private BuildOperationQueue<CompressBatch> queue;
+        private CompressBatch nextBatch;
+        private long pendingBytes;
+        private RuntimeException failure;
+
+        StreamAction(ZipArchiveOutputStream zipOutStr) {
+            this.zipOutStr = zipOutStr;
+        }
+
+        /**
+         * Processes the stream and writes all entries. Failures are kept until {@link #rethrowFailure()}, so they are not wrapped by the queue.
+         */
+        void processAll(CopyActionProcessingStream stream, BuildOperationQueue<CompressBatch> queue) {
+            this.queue = queue;
+            try {
+                stream.process(this);
+                writePendingEntries(0);
+            } catch (RuntimeException e) {
+                failure = e;
+                queue.cancel();
+            }
+        }
+
+        void rethrowFailure() {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void processFile(FileCopyDetailsInternal details) {
+            if (details.isDirectory()) {
+                visitDir(details);
+            } else {
+                visitFile(details);
+            }
+        }
+
+        private void visitFile(FileCopyDetails fileDetails) {
+            ZipArchiveEntry archiveEntry = new ZipArchiveEntry(fileDetails.getRelativePath().getPathString());
+            archiveEntry.setTime(getArchiveTimeFor(fileDetails));
+            archiveEntry.setUnixMode(UnixStat.FILE_FLAG | fileDetails.getMode());
+            if (fileDetails.getSize() > MAX_BUFFERED_ENTRY_SIZE) {
+                writePendingEntries(0);
+                streamEntry(fileDetails, archiveEntry);
+                return;
+            }
+            EntryBuffer content = new EntryBuffer((int) fileDetails.getSize());
+            try {
+                fileDetails.copyTo(content);
+            } catch (Exception e) {
+                throw new GradleException(String.format("Could not add %s to ZIP '%s'.", fileDetails, zipFile), e);
+            }
+            if (nextBatch == null) {
+                nextBatch = new CompressBatch(entryCompressionMethod);
+            }
+            pendingEntries.add(new PendingEntry(fileDetails, archiveEntry, nextBatch, nextBatch.add(content)));
+            pendingBytes += content.size();
+            if (nextBatch.isFull()) {
+                queueNextBatch();
+            }
+            writePendingEntries(MAX_PENDING_BYTES);
+        }
+
+        private void visitDir(FileCopyDetails dirDetails) {
+            // Trailing slash in name indicates that entry is a directory
+            ZipArchiveEntry archiveEntry = new ZipArchiveEntry(dirDetails.getRelativePath().getPathString() + '/');
+            archiveEntry.setTime(getArchiveTimeFor(dirDetails));
+            archiveEntry.setUnixMode(UnixStat.DIR_FLAG | dirDetails.getMode());
+            pendingEntries.add(new PendingEntry(dirDetails, archiveEntry, null, -1));
+        }
+
+        private void streamEntry(FileCopyDetails fileDetails, ZipArchiveEntry archiveEntry) {
+            try {
+                archiveEntry.setMethod(entryCompressionMethod);
+                zipOutStr.putArchiveEntry(archiveEntry);
+                fileDetails.copyTo(zipOutStr);
+                zipOutStr.closeArchiveEntry();
+            } catch (Exception e) {
+                throw new GradleException(String.format("Could not add %s to ZIP '%s'.", fileDetails, zipFile), e);
+            }
+        }
+
+        private void queueNextBatch() {
+            queue.add(nextBatch);
+            nextBatch = null;
+        }
+
+        /**
+         * Writes the oldest pending entries, waiting for them to be compressed, until no more than the given number of bytes are pending.
+         */
+        void writePendingEntries(long maxPendingBytes) {
+            while (!pendingEntries.isEmpty() && (pendingBytes > maxPendingBytes || maxPendingBytes == 0 || pendingEntries.peekFirst().isDone())) {
+                PendingEntry pendingEntry = pendingEntries.removeFirst();
+                if (pendingEntry.batch != null && pendingEntry.batch == nextBatch) {
+                    queueNextBatch();
+                }
+                try {
+                    if (pendingEntry.batch == null) {
+                        zipOutStr.putArchiveEntry(pendingEntry.archiveEntry);
+                        zipOutStr.closeArchiveEntry();
+                        continue;
+                    }
+                    CompressedEntry compressed = pendingEntry.batch.get(pendingEntry.indexInBatch);
+                    pendingBytes -= compressed.size;
+                    ZipArchiveEntry archiveEntry = pendingEntry.archiveEntry;
+                    archiveEntry.setMethod(compressed.method);
+                    archiveEntry.setCrc(compressed.crc);
+                    archiveEntry.setSize(compressed.size);
+                    archiveEntry.setCompressedSize(compressed.data.size());
+                    zipOutStr.addRawArchiveEntry(archiveEntry, compressed.data.asInputStream());
+                } catch (Exception e) {
+                    throw new GradleException(String.format("Could not add %s to ZIP '%s'.", pendingEntry.details, zipFile), e);
+                }
+            }
+        }
+    }
+
+    private long getArchiveTimeFor(FileCopyDetails details) {
+        return preserveFileTimestamps ? details.getLastModified() : ZipCopyAction.CONSTANT_TIME_FOR_ZIP_ENTRIES;
+    }
+
+    private static class PendingEntry {
+        final FileCopyDetails details;
+        final ZipArchiveEntry archiveEntry;
+        final CompressBatch batch;
+        final int indexInBatch;
+
+        PendingEntry(FileCopyDetails details, ZipArchiveEntry archiveEntry, @Nullable CompressBatch batch, int indexInBatch) {
+            this.details = details;
+            this.archiveEntry = archiveEntry;
+            this.batch = batch;
+            this.indexInBatch = indexInBatch;
+        }
+
+        boolean isDone() {
+            return batch == null || batch.isDone();
+        }
+    }
+
+    /**
+     * Compresses a batch of entries, either as a build operation or on the thread that needs the result first.
+     */
+    private static class CompressBatch implements RunnableBuildOperation {
+        private final int method;
+        private final List<EntryBuffer> contents = new ArrayList<EntryBuffer>();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private long size;
+        private List<CompressedEntry> compressed;
+        private Throwable failure;
+
+        CompressBatch(int method) {
+            this.method = method;
+        }
+
+        int add(EntryBuffer content) {
+            contents.add(content);
+            size += content.size();
+            return contents.size() - 1;
+        }
+
+        boolean isFull() {
+            return contents.size() >= MAX_ENTRIES_PER_BATCH || size >= MAX_BYTES_PER_BATCH;
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            compressIfNotStarted();
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Compress " + contents.size() + " zip entries");
+        }
+
+        CompressedEntry get(int index) throws InterruptedException {
+            compressIfNotStarted();
+            done.await();
+            if (failure != null) {
+                throw UncheckedException.throwAsUncheckedException(failure);
+            }
+            return compressed.get(index);
+        }
+
+        private void compressIfNotStarted() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                List<CompressedEntry> result = new ArrayList<CompressedEntry>(contents.size());
+                for (EntryBuffer content : contents) {
+                    result.add(compress(content, method));
+                }
+                compressed = result;
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private static CompressedEntry compress(EntryBuffer content, int method) {
+            CRC32 crc = new CRC32();
+            crc.update(content.getBuffer(), 0, content.size());
+            if (method == ZipEntry.DEFLATED) {
+                EntryBuffer deflated = deflate(content);
+                if (deflated.size() < content.size()) {
+                    return new CompressedEntry(ZipEntry.DEFLATED, crc.getValue(), content.size(), deflated);
+                }
+            }
+            return new CompressedEntry(ZipEntry.STORED, crc.getValue(), content.size(), content);
+        }
+
+        private static EntryBuffer deflate(EntryBuffer content) {
+            // Raw deflate data without zlib header, as expected in a ZIP entry
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(content.getBuffer(), 0, content.size());
+                deflater.finish();
+                EntryBuffer deflated = new EntryBuffer(content.size() / 2);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    deflated.write(buffer, 0, count);
+                }
+                return deflated;
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private static class CompressedEntry {
+        final int method;
+        final long crc;
+        final long size;
+        final EntryBuffer data;
+
+        CompressedEntry(int method, long crc, long size, EntryBuffer data) {
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    private static class EntryBuffer extends ByteArrayOutputStream {
+        EntryBuffer(int initialSize) {
+            super(Math.max(32, initialSize));
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        ByteArrayInputStream asInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -23,6 +23,7 @@
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.RelativePath;
 import org.gradle.api.internal.file.AbstractFileTreeElement;
+import org.gradle.api.internal.file.DefaultFileTreeElement;
 import org.gradle.internal.file.Chmod;
 
 import javax.annotation.Nullable;
@@ -76,6 +77,15 @@ public File getFile() {
         }
     }
 
+    @Nullable
+    @Override
+    public File getUnfilteredSourceFile() {
+        if (filterChain.hasFilters() || fileDetails.isDirectory() || !(fileDetails instanceof DefaultFileTreeElement)) {
+            return null;
+        }
+        return fileDetails.getFile();
+    }
+
     @Override
     public boolean isDirectory() {
         return fileDetails.isDirectory();
@@ -15,6 +15,7 @@
  */
 package org.gradle.api.internal.file.copy;
 
+import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
 import org.gradle.api.tasks.WorkResult;
 import org.gradle.api.tasks.WorkResults;
@@ -22,6 +23,9 @@
 import org.gradle.internal.file.PathToFileResolver;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.util.Objects;
 
 public class FileCopyAction implements CopyAction {
@@ -39,6 +43,20 @@ public WorkResult execute(CopyActionProcessingStream stream) {
         return WorkResults.didWork(action.didWork);
     }
 
+    /**
+     * Deletes the file at the given target before it is written. The file may be a hard link to a source file,
+     * for example when it was copied by {@link ParallelFileCopyAction} with hard links, and writing to it would overwrite the source.
+     */
+    static void deleteExistingFile(File target) {
+        try {
+            if (Files.isRegularFile(target.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+                Files.delete(target.toPath());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private class FileCopyDetailsInternalAction implements CopyActionProcessingStreamAction {
         private boolean didWork;
 
@@ -46,6 +64,7 @@ private class FileCopyDetailsInternalAction implements CopyActionProcessingStrea
         public void processFile(FileCopyDetailsInternal details) {
             File target = fileResolver.resolve(details.getRelativePath().getPathString());
             renameIfCaseChanged(target);
+            deleteExistingFile(target);
             boolean copied = details.copyTo(target);
             if (copied) {
                 didWork = true;
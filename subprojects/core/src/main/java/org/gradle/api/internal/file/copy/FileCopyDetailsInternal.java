@@ -18,9 +18,18 @@
 
 import org.gradle.api.file.FileCopyDetails;
 
+import javax.annotation.Nullable;
+import java.io.File;
+
 public interface FileCopyDetailsInternal extends FileCopyDetails {
 
     boolean isIncludeEmptyDirs();
 
     boolean isDefaultDuplicatesStrategy();
+
+    /**
+     * Returns the regular file on disk that this file is copied from, or null when the file is a directory, is not on disk or has filtered content.
+     */
+    @Nullable
+    File getUnfilteredSourceFile();
 }
@@ -27,6 +27,7 @@
 import org.gradle.api.tasks.WorkResult;
 import org.gradle.internal.file.Chmod;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FilterReader;
 import java.io.InputStream;
@@ -191,6 +192,12 @@ public boolean isDefaultDuplicatesStrategy() {
             throw new UnsupportedOperationException();
         }
 
+        @Nullable
+        @Override
+        public File getUnfilteredSourceFile() {
+            return null;
+        }
+
         @Override
         public String getSourceName() {
             throw new UnsupportedOperationException();
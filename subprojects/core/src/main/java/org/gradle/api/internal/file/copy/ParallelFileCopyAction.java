@@ -0,0 +1,262 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.copy;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+import org.gradle.internal.FileUtils;
+import org.gradle.internal.UnsafeFeatureFlags;
+import org.gradle.internal.file.PathToFileResolver;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.vfs.VirtualFileSystem;
+import org.gradle.util.GFileUtils;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A variant of {@link FileCopyAction} that copies the content of unfiltered files from disk in parallel, using the build operation queue.
+ *
+ * Directories and files with filtered content are copied on the calling thread as they are visited. The files copied as they are
+ * are collected and copied in batches once the stream has been processed, either with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * or, when possible, by creating a hard link to the source file. A file whose target already has the same content, according to the
+ * virtual file system, is not written again.
+ *
+ * An existing target is always deleted before it is written, in all modes and for filtered files as well, as it may be a hard link
+ * to a source file that an earlier copy created.
+ */
+public class ParallelFileCopyAction implements CopyAction {
+    /**
+     * JVM system property to select how the files of Copy and Sync tasks are copied when their content is not filtered.
+     *
+     * Supported values are {@code transfer} and {@code hardlink}. Files are copied on the calling thread when the property is not set.
+     */
+    public static final String FAST_COPY_PROPERTY = "org.gradle.unsafe.copy.fast-path";
+
+    private static final int FILES_PER_BATCH = 256;
+
+    public enum TransferMode {
+        TRANSFER("transfer"),
+        HARD_LINK("hardlink");
+
+        private final String name;
+
+        TransferMode(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the transfer mode selected with {@link #FAST_COPY_PROPERTY}, or null if none is selected.
+         */
+        @Nullable
+        public static TransferMode fromSystemProperty() {
+            String value = UnsafeFeatureFlags.getValue(FAST_COPY_PROPERTY);
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            for (TransferMode mode : values()) {
+                if (mode.name.equals(value)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException(String.format("Unknown file transfer mode '%s' set for %s.", value, FAST_COPY_PROPERTY));
+        }
+    }
+
+    private final PathToFileResolver fileResolver;
+    private final TransferMode transferMode;
+    private final VirtualFileSystem virtualFileSystem;
+    private final FileSystem fileSystem;
+    private final BuildOperationExecutor buildOperationExecutor;
+
+    public ParallelFileCopyAction(PathToFileResolver fileResolver, TransferMode transferMode, VirtualFileSystem virtualFileSystem, FileSystem fileSystem, BuildOperationExecutor buildOperationExecutor) {
+        this.fileResolver = fileResolver;
+        this.transferMode = transferMode;
+        this.virtualFileSystem = virtualFileSystem;
+        this.fileSystem = fileSystem;
+        this.buildOperationExecutor = buildOperationExecutor;
+    }
+
+    @Override
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        FileCopyDetailsInternalAction action = new FileCopyDetailsInternalAction();
+        stream.process(action);
+        copyPendingFiles(new ArrayList<PendingCopy>(action.pendingCopies.values()));
+        return WorkResults.didWork(action.didWork);
+    }
+
+    private void copyPendingFiles(final List<PendingCopy> pendingCopies) {
+        if (pendingCopies.isEmpty()) {
+            return;
+        }
+        if (pendingCopies.size() <= FILES_PER_BATCH) {
+            for (PendingCopy pendingCopy : pendingCopies) {
+                copy(pendingCopy);
+            }
+            return;
+        }
+        buildOperationExecutor.runAll(queue -> {
+            for (int start = 0; start < pendingCopies.size(); start += FILES_PER_BATCH) {
+                queue.add(new CopyBatch(pendingCopies.subList(start, Math.min(start + FILES_PER_BATCH, pendingCopies.size()))));
+            }
+        });
+    }
+
+    private void copy(PendingCopy pendingCopy) {
+        File source = pendingCopy.source;
+        File target = pendingCopy.target;
+        try {
+            if (hasSameContent(source, target) && fileSystem.getUnixMode(target) == pendingCopy.mode) {
+                return;
+            }
+            // The target may be a link to a source file, so it is written again instead of changing its mode
+            virtualFileSystem.update(Collections.singletonList(target.getAbsolutePath()), () -> write(source, target, pendingCopy.mode));
+        } catch (Exception e) {
+            throw new GradleException(String.format("Could not copy %s to '%s'.", pendingCopy.displayName, target), e);
+        }
+    }
+
+    private boolean hasSameContent(File source, File target) {
+        if (!target.isFile() || target.length() != source.length()) {
+            return false;
+        }
+        Optional<HashCode> sourceHash = virtualFileSystem.readRegularFileContentHash(source.getAbsolutePath(), hash -> hash);
+        Optional<HashCode> targetHash = virtualFileSystem.readRegularFileContentHash(target.getAbsolutePath(), hash -> hash);
+        return sourceHash.isPresent() && sourceHash.equals(targetHash);
+    }
+
+    private void write(File source, File target, int mode) {
+        GFileUtils.mkdirs(target.getParentFile());
+        // Never write through an existing link to a source file
+        FileCopyAction.deleteExistingFile(target);
+        try {
+            if (transferMode == TransferMode.HARD_LINK && fileSystem.getUnixMode(source) == mode && link(source, target)) {
+                return;
+            }
+            transfer(source, target);
+        } catch (IOException e) {
+            throw new org.gradle.api.UncheckedIOException(e);
+        }
+        fileSystem.chmod(target, mode);
+    }
+
+    private static boolean link(File source, File target) {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not supported by the file system, or source and target are on different file systems
+            return false;
+        }
+    }
+
+    private static void transfer(File source, File target) throws IOException {
+        try (FileChannel input = new FileInputStream(source).getChannel(); FileChannel output = new FileOutputStream(target).getChannel()) {
+            long size = input.size();
+            long position = 0;
+            while (position < size) {
+                position += input.transferTo(position, size - position, output);
+            }
+        }
+    }
+
+    private class FileCopyDetailsInternalAction implements CopyActionProcessingStreamAction {
+        // Keyed by target, so that the last file visited for a target is the one copied there
+        private final Map<File, PendingCopy> pendingCopies = new LinkedHashMap<File, PendingCopy>();
+        private boolean didWork;
+
+        @Override
+        public void processFile(FileCopyDetailsInternal details) {
+            File target = fileResolver.resolve(details.getRelativePath().getPathString());
+            renameIfCaseChanged(target);
+            pendingCopies.remove(target);
+            File source = details.getUnfilteredSourceFile();
+            if (source != null) {
+                pendingCopies.put(target, new PendingCopy(details.toString(), source, target, details.getMode()));
+                didWork = true;
+                return;
+            }
+            FileCopyAction.deleteExistingFile(target);
+            boolean copied = details.copyTo(target);
+            if (copied) {
+                didWork = true;
+            }
+        }
+
+        private void renameIfCaseChanged(File target) {
+            if (target.exists()) {
+                File canonicalizedTarget = FileUtils.canonicalize(target);
+                if (!Objects.equals(target.getName(), canonicalizedTarget.getName())) {
+                    canonicalizedTarget.renameTo(target);
+                }
+            }
+        }
+    }
+
+    private class CopyBatch implements RunnableBuildOperation {
+        private final List<PendingCopy> pendingCopies;
+
+        CopyBatch(List<PendingCopy> pendingCopies) {
+            this.pendingCopies = pendingCopies;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            for (PendingCopy pendingCopy : pendingCopies) {
+                copy(pendingCopy);
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Copy " + pendingCopies.size() + " files");
+        }
+    }
+
+    private static class PendingCopy {
+        final String displayName;
+        final File source;
+        final File target;
+        final int mode;
+
+        PendingCopy(String displayName, File source, File target, int mode) {
+            this.displayName = displayName;
+            this.source = source;
+            this.target = target;
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.TaskExecuter;
+import org.gradle.api.internal.tasks.TaskExecuterResult;
+import org.gradle.api.internal.tasks.TaskExecutionContext;
+import org.gradle.api.internal.tasks.TaskStateInternal;
+import org.gradle.internal.buildevents.BuildMemoryTelemetry;
+
+/**
+ * A {@link TaskExecuter} which records the bytes allocated by the current thread while executing a task.
+ */
+public class MeasureAllocatedBytesTaskExecuter implements TaskExecuter {
+    private final BuildMemoryTelemetry telemetry;
+    private final TaskExecuter executer;
+
+    public MeasureAllocatedBytesTaskExecuter(BuildMemoryTelemetry telemetry, TaskExecuter executer) {
+        this.telemetry = telemetry;
+        this.executer = executer;
+    }
+
+    @Override
+    public TaskExecuterResult execute(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
+        long allocatedBefore = telemetry.getCurrentThreadAllocatedBytes();
+        try {
+            return executer.execute(task, state, context);
+        } finally {
+            if (allocatedBefore >= 0) {
+                telemetry.taskExecuted(task.getIdentityPath().getPath(), telemetry.getCurrentThreadAllocatedBytes() - allocatedBefore);
+            }
+        }
+    }
+}
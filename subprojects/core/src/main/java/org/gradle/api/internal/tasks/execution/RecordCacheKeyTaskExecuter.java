@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.TaskExecuter;
+import org.gradle.api.internal.tasks.TaskExecuterResult;
+import org.gradle.api.internal.tasks.TaskExecutionContext;
+import org.gradle.api.internal.tasks.TaskStateInternal;
+import org.gradle.api.internal.tasks.properties.OutputFilePropertySpec;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.execution.plan.TaskCacheKeyHistory;
+import org.gradle.internal.execution.caching.CachingState;
+import org.gradle.internal.hash.HashCode;
+
+import java.io.File;
+
+/**
+ * A {@link TaskExecuter} which records the build cache key of each executed task, so that later builds can prefetch its entry.
+ */
+public class RecordCacheKeyTaskExecuter implements TaskExecuter {
+    private final TaskCacheKeyHistory cacheKeyHistory;
+    private final TaskExecuter executer;
+
+    public RecordCacheKeyTaskExecuter(TaskCacheKeyHistory cacheKeyHistory, TaskExecuter executer) {
+        this.cacheKeyHistory = cacheKeyHistory;
+        this.executer = executer;
+    }
+
+    @Override
+    public TaskExecuterResult execute(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
+        TaskExecuterResult result = executer.execute(task, state, context);
+        CachingState cachingState = result.getCachingState();
+        if (cachingState.getDisabledReasons().isEmpty()) {
+            //noinspection OptionalGetWithoutIsPresent
+            BuildCacheKey key = cachingState.getKey().get();
+            ImmutableList.Builder<File> outputLocations = ImmutableList.builder();
+            for (OutputFilePropertySpec outputFileProperty : context.getTaskProperties().getOutputFileProperties()) {
+                File outputFile = outputFileProperty.getOutputFile();
+                if (outputFile != null) {
+                    outputLocations.add(outputFile);
+                }
+            }
+            cacheKeyHistory.recordCacheKey(task.getIdentityPath(), HashCode.fromBytes(key.toByteArray()), outputLocations.build());
+        } else {
+            cacheKeyHistory.forgetCacheKey(task.getIdentityPath());
+        }
+        return result;
+    }
+}
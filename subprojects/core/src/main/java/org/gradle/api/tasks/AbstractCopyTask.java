@@ -37,9 +37,14 @@
 import org.gradle.api.internal.file.copy.CopySpecResolver;
 import org.gradle.api.internal.file.copy.CopySpecSource;
 import org.gradle.api.internal.file.copy.DefaultCopySpec;
+import org.gradle.api.internal.file.copy.FileCopyAction;
+import org.gradle.api.internal.file.copy.ParallelFileCopyAction;
 import org.gradle.api.specs.Spec;
+import org.gradle.internal.file.PathToFileResolver;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.reflect.Instantiator;
+import org.gradle.internal.vfs.VirtualFileSystem;
 import org.gradle.util.ClosureBackedAction;
 
 import javax.annotation.Nullable;
@@ -134,6 +139,17 @@ protected void copy() {
         setDidWork(didWork.getDidWork());
     }
 
+    /**
+     * Creates the action that copies the files into the given destination, using the fast path selected with {@link ParallelFileCopyAction#FAST_COPY_PROPERTY} if any.
+     */
+    CopyAction createFileCopyAction(PathToFileResolver fileResolver) {
+        ParallelFileCopyAction.TransferMode transferMode = ParallelFileCopyAction.TransferMode.fromSystemProperty();
+        if (transferMode == null) {
+            return new FileCopyAction(fileResolver);
+        }
+        return new ParallelFileCopyAction(fileResolver, transferMode, getServices().get(VirtualFileSystem.class), getFileSystem(), getServices().get(BuildOperationExecutor.class));
+    }
+
     protected CopyActionExecuter createCopyActionExecuter() {
         Instantiator instantiator = getInstantiator();
         FileSystem fileSystem = getFileSystem();
@@ -20,7 +20,6 @@
 import org.gradle.api.internal.file.copy.CopyAction;
 import org.gradle.api.internal.file.copy.CopySpecInternal;
 import org.gradle.api.internal.file.copy.DestinationRootCopySpec;
-import org.gradle.api.internal.file.copy.FileCopyAction;
 
 import java.io.File;
 
@@ -73,7 +72,7 @@ protected CopyAction createCopyAction() {
         if (destinationDir == null) {
             throw new InvalidUserDataException("No copy destination directory has been specified, use 'into' to specify a target directory.");
         }
-        return new FileCopyAction(getFileLookup().getFileResolver(destinationDir));
+        return createFileCopyAction(getFileLookup().getFileResolver(destinationDir));
     }
 
     @Override
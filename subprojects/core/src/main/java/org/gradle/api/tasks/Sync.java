@@ -21,7 +21,6 @@
 import org.gradle.api.internal.file.copy.CopyAction;
 import org.gradle.api.internal.file.copy.CopySpecInternal;
 import org.gradle.api.internal.file.copy.DestinationRootCopySpec;
-import org.gradle.api.internal.file.copy.FileCopyAction;
 import org.gradle.api.internal.file.copy.SyncCopyActionDecorator;
 import org.gradle.api.tasks.util.PatternFilterable;
 import org.gradle.api.tasks.util.PatternSet;
@@ -75,7 +74,7 @@ protected CopyAction createCopyAction() {
         }
         return new SyncCopyActionDecorator(
             destinationDir,
-            new FileCopyAction(getFileLookup().getFileResolver(destinationDir)),
+            createFileCopyAction(getFileLookup().getFileResolver(destinationDir)),
             preserveInDestination,
             getDeleter(),
             getDirectoryFileTreeFactory()
@@ -30,9 +30,10 @@
 import org.gradle.caching.internal.controller.impl.DefaultBuildCacheCommandFactory;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.DefaultTarPackerFileSystemSupport;
 import org.gradle.caching.internal.packaging.impl.FilePermissionAccess;
-import org.gradle.caching.internal.packaging.impl.GZipBuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.StandardBuildCacheEntryCodec;
 import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarPackerFileSystemSupport;
 import org.gradle.caching.internal.services.BuildCacheControllerFactory;
@@ -40,6 +41,8 @@
 import org.gradle.caching.local.internal.DirectoryBuildCacheFileStoreFactory;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.UnsafeFeatureFlags;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.file.FileException;
 import org.gradle.internal.hash.ChecksumService;
@@ -67,6 +70,16 @@
  * Build scoped services for build cache usage.
  */
 public final class BuildCacheServices extends AbstractPluginServiceRegistry {
+    /**
+     * The codec used to compress build cache entries, one of 'gzip' (the default), 'lz4' or 'none'.
+     * Entries are packed once and shared by the local and remote caches, so the codec applies to all caches of the build.
+     */
+    public static final String CODEC_PROPERTY = "org.gradle.unsafe.build-cache.codec";
+
+    /**
+     * The maximum number of remote build cache entries to prefetch ahead of loading them, 0 (the default) disables prefetching.
+     */
+    public static final String PREFETCH_PROPERTY = "org.gradle.unsafe.build-cache.prefetch";
 
     @Override
     public void registerBuildTreeServices(ServiceRegistration registration) {
@@ -120,8 +133,9 @@ BuildCacheEntryPacker createResultPacker(
                 StreamHasher fileHasher,
                 StringInterner stringInterner
             ) {
-                return new GZipBuildCacheEntryPacker(
-                    new TarBuildCacheEntryPacker(fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), fileHasher, stringInterner));
+                return new CompressingBuildCacheEntryPacker(
+                    new TarBuildCacheEntryPacker(fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), fileHasher, stringInterner),
+                    StandardBuildCacheEntryCodec.forName(getCodecName()));
             }
 
             OriginMetadataFactory createOriginMetadataFactory(
@@ -154,11 +168,12 @@ BuildCacheController createBuildCacheController(
                 BuildCacheConfigurationInternal buildCacheConfiguration,
                 BuildOperationExecutor buildOperationExecutor,
                 InstantiatorFactory instantiatorFactory,
+                ExecutorFactory executorFactory,
                 GradleInternal gradle,
                 RootBuildCacheControllerRef rootControllerRef
             ) {
                 if (isRoot(gradle) || isGradleBuildTaskRoot(rootControllerRef)) {
-                    return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle);
+                    return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, executorFactory, gradle);
                 } else {
                     // must be an included build or buildSrc
                     return rootControllerRef.getForNonRootBuild();
@@ -178,7 +193,7 @@ private boolean isRoot(GradleInternal gradle) {
                 return gradle.getParent() == null;
             }
 
-            private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle) {
+            private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, ExecutorFactory executorFactory, GradleInternal gradle) {
                 StartParameter startParameter = gradle.getStartParameter();
                 Path buildIdentityPath = gradle.getIdentityPath();
                 File gradleUserHomeDir = gradle.getGradleUserHomeDir();
@@ -196,12 +211,19 @@ private BuildCacheController doCreateBuildCacheController(ServiceRegistry servic
                     remoteAccessMode,
                     logStackTraces,
                     emitDebugLogging,
-                    instantiatorFactory.inject(serviceRegistry)
+                    instantiatorFactory.inject(serviceRegistry),
+                    executorFactory,
+                    UnsafeFeatureFlags.getInt(PREFETCH_PROPERTY, 0)
                 );
             }
         });
     }
 
+    private static String getCodecName() {
+        String codecName = UnsafeFeatureFlags.getValue(CODEC_PROPERTY);
+        return codecName != null ? codecName : StandardBuildCacheEntryCodec.GZIP.getName();
+    }
+
     private static final class FilePermissionsAccessAdapter implements FilePermissionAccess {
 
         private final FileSystem fileSystem;
@@ -32,6 +32,7 @@
 import org.gradle.caching.local.DirectoryBuildCache;
 import org.gradle.caching.local.internal.DirectoryBuildCacheService;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -69,7 +70,9 @@ public static BuildCacheController create(
         final RemoteAccessMode remoteAccessMode,
         final boolean logStackTraces,
         final boolean emitDebugLogging,
-        final Instantiator instantiator
+        final Instantiator instantiator,
+        final ExecutorFactory executorFactory,
+        final int maxPrefetchedEntries
     ) {
         return buildOperationExecutor.call(new CallableBuildOperation<BuildCacheController>() {
             @Override
@@ -120,7 +123,9 @@ public BuildCacheController call(BuildOperationContext context) {
                         buildOperationExecutor,
                         gradleUserHomeDir,
                         logStackTraces,
-                        emitDebugLogging
+                        emitDebugLogging,
+                        executorFactory,
+                        maxPrefetchedEntries
                     );
                 }
             }
@@ -23,6 +23,7 @@
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.changedetection.TaskExecutionModeResolver;
 import org.gradle.api.internal.changedetection.changes.DefaultTaskExecutionModeResolver;
+import org.gradle.api.internal.changedetection.state.ParallelZipHashing;
 import org.gradle.api.internal.changedetection.state.ResourceSnapshotterCacheService;
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.api.internal.file.FileOperations;
@@ -37,15 +38,21 @@
 import org.gradle.api.internal.tasks.execution.EventFiringTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter;
 import org.gradle.api.internal.tasks.execution.FinalizePropertiesTaskExecuter;
+import org.gradle.api.internal.tasks.execution.MeasureAllocatedBytesTaskExecuter;
+import org.gradle.api.internal.tasks.execution.RecordCacheKeyTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ResolveTaskExecutionModeExecuter;
 import org.gradle.api.internal.tasks.execution.SkipOnlyIfTaskExecuter;
 import org.gradle.api.internal.tasks.execution.SkipTaskWithNoActionsExecuter;
 import org.gradle.api.internal.tasks.execution.TaskCacheabilityResolver;
 import org.gradle.api.internal.tasks.execution.TaskSnapshotter;
 import org.gradle.api.internal.tasks.properties.PropertyWalker;
+import org.gradle.caching.internal.BuildCacheServices;
 import org.gradle.caching.internal.controller.BuildCacheController;
+import org.gradle.execution.plan.TaskCacheKeyHistory;
 import org.gradle.execution.taskgraph.TaskExecutionGraphInternal;
 import org.gradle.execution.taskgraph.TaskListenerInternal;
+import org.gradle.internal.UnsafeFeatureFlags;
+import org.gradle.internal.buildevents.BuildMemoryTelemetry;
 import org.gradle.internal.cleanup.BuildOutputCleanupRegistry;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.CachingResult;
@@ -111,6 +118,7 @@ EmptySourceTaskSkipper createEmptySourceTaskSkipper(
     TaskExecuter createTaskExecuter(
         AsyncWorkTracker asyncWorkTracker,
         BuildCacheController buildCacheController,
+        BuildMemoryTelemetry buildMemoryTelemetry,
         BuildOperationExecutor buildOperationExecutor,
         BuildOutputCleanupRegistry cleanupRegistry,
         BuildScanPluginApplied buildScanPlugin,
@@ -133,6 +141,7 @@ TaskExecuter createTaskExecuter(
         TaskExecutionListener taskExecutionListener,
         TaskExecutionModeResolver repository,
         TaskListenerInternal taskListenerInternal,
+        TaskCacheKeyHistory taskCacheKeyHistory,
         TaskSnapshotter taskSnapshotter,
         WorkExecutor<ExecutionRequestContext, CachingResult> workExecutor
     ) {
@@ -170,6 +179,12 @@ TaskExecuter createTaskExecuter(
             fileCollectionFactory,
             fileOperations
         );
+        if (BuildMemoryTelemetry.isEnabled(startParameter)) {
+            executer = new MeasureAllocatedBytesTaskExecuter(buildMemoryTelemetry, executer);
+        }
+        if (buildCacheController.isEnabled() && UnsafeFeatureFlags.getInt(BuildCacheServices.PREFETCH_PROPERTY, 0) > 0) {
+            executer = new RecordCacheKeyTaskExecuter(taskCacheKeyHistory, executer);
+        }
         executer = new CleanupStaleOutputsExecuter(
             buildOperationExecutor,
             cleanupRegistry,
@@ -188,12 +203,13 @@ TaskExecuter createTaskExecuter(
     }
 
     // Overrides the global ClasspathFingerPrinter, currently need to have the parent parameter
-    ClasspathFingerprinter createClasspathFingerprinter(ClasspathFingerprinter parent, ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, InputNormalizationHandlerInternal inputNormalizationHandler) {
+    ClasspathFingerprinter createClasspathFingerprinter(ClasspathFingerprinter parent, ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, InputNormalizationHandlerInternal inputNormalizationHandler, ParallelZipHashing parallelZipHashing) {
         return new DefaultClasspathFingerprinter(
             resourceSnapshotterCacheService,
             fileCollectionSnapshotter,
             inputNormalizationHandler.getRuntimeClasspath().getResourceFilter(),
-            stringInterner
+            stringInterner,
+            parallelZipHashing
         );
     }
 
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.taskgraph.CalculateTaskPrioritiesBuildOperationType;
+import org.gradle.internal.time.Clock;
+import org.gradle.util.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * Orders the nodes of an execution plan so that the nodes with the longest chain of work depending on them come first.
+ *
+ * The length of a chain is the sum of the durations of its tasks in previous builds. Nodes without a known duration count as 1ms,
+ * so that every node is strictly longer than anything that has to run after it. Sorting by that length therefore keeps every node
+ * after its successors, including soft ones like should-run-after, and only changes which of the ready nodes is picked first.
+ *
+ * All methods must be called while holding the lock of the execution plan.
+ */
+public class CriticalPathPrioritizer {
+    /**
+     * Enables ordering the execution plan by critical path.
+     */
+    public static final String CRITICAL_PATH_SCHEDULING_PROPERTY = "org.gradle.unsafe.critical-path-scheduling";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CriticalPathPrioritizer.class);
+    private static final long UNKNOWN_DURATION = -1;
+
+    private final TaskDurationHistory durationHistory;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final Clock clock;
+    private final Map<Node, Long> startTimes = new IdentityHashMap<>();
+    private final Map<Path, Long> durations = new HashMap<>();
+
+    public CriticalPathPrioritizer(TaskDurationHistory durationHistory, BuildOperationExecutor buildOperationExecutor, Clock clock) {
+        this.durationHistory = durationHistory;
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Sorts the given nodes, which are in an order where every node comes after its successors, by descending critical path length.
+     */
+    public void prioritize(String buildPath, List<Node> nodes) {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                Map<Node, Long> expectedDurations = new IdentityHashMap<>();
+                Map<Node, Long> criticalPaths = calculateCriticalPaths(nodes, expectedDurations);
+                nodes.sort(Comparator.comparingLong((Node node) -> criticalPaths.get(node)).reversed());
+
+                List<CalculateTaskPrioritiesBuildOperationType.PrioritizedTask> taskOrder = new ArrayList<>();
+                for (Node node : nodes) {
+                    if (node instanceof LocalTaskNode) {
+                        taskOrder.add(new DefaultPrioritizedTask(
+                            ((LocalTaskNode) node).getTask().getIdentityPath().getPath(),
+                            expectedDurations.get(node),
+                            criticalPaths.get(node)
+                        ));
+                    }
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Task order by critical path for build {}: {}", buildPath, taskOrder);
+                }
+                context.setResult((CalculateTaskPrioritiesBuildOperationType.Result) () -> taskOrder);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Calculate task priorities")
+                    .details((CalculateTaskPrioritiesBuildOperationType.Details) () -> buildPath);
+            }
+        });
+    }
+
+    private Map<Node, Long> calculateCriticalPaths(List<Node> nodes, Map<Node, Long> expectedDurations) {
+        // The longest path found so far from a node that has to run after the key node
+        Map<Node, Long> longestDependentPaths = new IdentityHashMap<>();
+        Map<Node, Long> criticalPaths = new IdentityHashMap<>();
+        ListIterator<Node> iterator = nodes.listIterator(nodes.size());
+        while (iterator.hasPrevious()) {
+            Node node = iterator.previous();
+            long expectedDuration = expectedDurationOf(node);
+            expectedDurations.put(node, expectedDuration);
+            long criticalPath = Math.max(expectedDuration, 1) + longestDependentPaths.getOrDefault(node, 0L);
+            criticalPaths.put(node, criticalPath);
+            for (Node successor : node.getAllSuccessors()) {
+                if (!criticalPaths.containsKey(successor)) {
+                    longestDependentPaths.merge(successor, criticalPath, Math::max);
+                }
+            }
+        }
+        return criticalPaths;
+    }
+
+    private long expectedDurationOf(Node node) {
+        if (node instanceof LocalTaskNode) {
+            return durationHistory.getExpectedDuration(((LocalTaskNode) node).getTask().getIdentityPath());
+        }
+        return UNKNOWN_DURATION;
+    }
+
+    public void nodeStarted(Node node) {
+        if (node instanceof LocalTaskNode) {
+            startTimes.put(node, clock.getCurrentTime());
+        }
+    }
+
+    public void nodeFinished(Node node) {
+        Long startTime = startTimes.remove(node);
+        if (startTime != null) {
+            TaskInternal task = ((LocalTaskNode) node).getTask();
+            // Only actual executions tell how long the task takes when it has to run
+            if (task.getState().getOutcome() == TaskExecutionOutcome.EXECUTED) {
+                durations.put(task.getIdentityPath(), clock.getCurrentTime() - startTime);
+            }
+        }
+    }
+
+    /**
+     * Stores the durations of the tasks executed since the last call.
+     */
+    public void recordDurations() {
+        startTimes.clear();
+        if (!durations.isEmpty()) {
+            durationHistory.recordDurations(durations);
+            durations.clear();
+        }
+    }
+
+    private static class DefaultPrioritizedTask implements CalculateTaskPrioritiesBuildOperationType.PrioritizedTask {
+        private final String taskPath;
+        private final long expectedDuration;
+        private final long criticalPathDuration;
+
+        DefaultPrioritizedTask(String taskPath, long expectedDuration, long criticalPathDuration) {
+            this.taskPath = taskPath;
+            this.expectedDuration = expectedDuration;
+            this.criticalPathDuration = criticalPathDuration;
+        }
+
+        @Override
+        public String getTaskPath() {
+            return taskPath;
+        }
+
+        @Override
+        public long getExpectedDuration() {
+            return expectedDuration;
+        }
+
+        @Override
+        public long getCriticalPathDuration() {
+            return criticalPathDuration;
+        }
+
+        @Override
+        public String toString() {
+            return taskPath + " (" + criticalPathDuration + "ms)";
+        }
+    }
+}
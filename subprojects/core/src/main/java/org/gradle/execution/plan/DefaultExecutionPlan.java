@@ -52,13 +52,16 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * A reusable implementation of ExecutionPlan. The {@link #addEntryTasks(java.util.Collection)} and {@link #clear()} methods are NOT threadsafe, and callers must synchronize access to these methods.
@@ -69,7 +72,13 @@ public class DefaultExecutionPlan implements ExecutionPlan {
 
     private final Set<Node> entryNodes = new LinkedHashSet<>();
     private final NodeMapping nodeMapping = new NodeMapping();
-    private final List<Node> executionQueue = Lists.newLinkedList();
+    private final Set<Node> executionQueue = new LinkedHashSet<>();
+    private final Map<Node, Integer> executionOrder = Maps.newHashMap();
+    /**
+     * The nodes from the execution queue whose dependencies are complete, in execution queue order.
+     * Maintained as nodes complete, so that selecting the next node does not need to scan the whole queue.
+     */
+    private final NavigableSet<Node> readyNodes = new TreeSet<>(Comparator.comparingInt(executionOrder::get));
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final FailureCollector failureCollector = new FailureCollector();
     private final TaskNodeFactory taskNodeFactory;
@@ -85,13 +94,29 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     private final List<Node> dependenciesWhichRequireMonitoring = Lists.newArrayList();
     private boolean maybeNodesReady;
     private final GradleInternal gradle;
+    @Nullable
+    private final CriticalPathPrioritizer prioritizer;
+    @Nullable
+    private final UpcomingTaskPrefetcher prefetcher;
 
     private boolean buildCancelled;
 
     public DefaultExecutionPlan(GradleInternal gradle, TaskNodeFactory taskNodeFactory, TaskDependencyResolver dependencyResolver) {
+        this(gradle, taskNodeFactory, dependencyResolver, null, null);
+    }
+
+    public DefaultExecutionPlan(
+        GradleInternal gradle,
+        TaskNodeFactory taskNodeFactory,
+        TaskDependencyResolver dependencyResolver,
+        @Nullable CriticalPathPrioritizer prioritizer,
+        @Nullable UpcomingTaskPrefetcher prefetcher
+    ) {
         this.gradle = gradle;
         this.taskNodeFactory = taskNodeFactory;
         this.dependencyResolver = dependencyResolver;
+        this.prioritizer = prioritizer;
+        this.prefetcher = prefetcher;
     }
 
     @Override
@@ -326,11 +351,21 @@ public NodeInVisitingSegment apply(Node node) {
                 }
             }
         }
-        executionQueue.clear();
         dependencyResolver.clear();
-        Iterables.addAll(executionQueue, nodeMapping);
+        List<Node> orderedNodes = Lists.newArrayList(nodeMapping);
+        if (prioritizer != null) {
+            prioritizer.prioritize(getDisplayName(), orderedNodes);
+        }
+        executionQueue.clear();
+        executionOrder.clear();
+        readyNodes.clear();
+        for (Node node : orderedNodes) {
+            executionOrder.put(node, executionOrder.size());
+            executionQueue.add(node);
+        }
         for (Node node : executionQueue) {
-            maybeNodesReady |= node.updateAllDependenciesComplete() && node.isReady();
+            node.updateAllDependenciesComplete();
+            maybeNodesReady |= addIfReady(node);
         }
         this.dependenciesWhichRequireMonitoring.addAll(dependenciesWhichRequireMonitoring);
     }
@@ -465,11 +500,16 @@ private void onOrderingCycle(Node successor, Node currentNode) {
     }
 
     public void clear() {
+        if (prioritizer != null) {
+            prioritizer.recordDurations();
+        }
         taskNodeFactory.clear();
         dependencyResolver.clear();
         entryNodes.clear();
         nodeMapping.clear();
         executionQueue.clear();
+        executionOrder.clear();
+        readyNodes.clear();
         projectLocks.clear();
         failureCollector.clearFailures();
         producedButNotYetConsumed.clear();
@@ -509,6 +549,9 @@ public void setContinueOnFailure(boolean continueOnFailure) {
     @Override
     @Nullable
     public Node selectNext(WorkerLeaseRegistry.WorkerLease workerLease, ResourceLockState resourceLockState) {
+        if (prefetcher != null) {
+            prefetcher.prefetchUpcoming(executionQueue);
+        }
         if (allProjectsLocked()) {
             // TODO - this is incorrect. We can still run nodes that don't need a project lock
             return null;
@@ -525,27 +568,31 @@ public Node selectNext(WorkerLeaseRegistry.WorkerLease workerLease, ResourceLock
         if (!maybeNodesReady) {
             return null;
         }
-        Iterator<Node> iterator = executionQueue.iterator();
+        Iterator<Node> iterator = readyNodes.iterator();
         boolean foundReadyNode = false;
         while (iterator.hasNext()) {
             Node node = iterator.next();
-            if (node.isReady() && node.allDependenciesComplete()) {
-                foundReadyNode = true;
-                MutationInfo mutations = getResolvedMutationInfo(node);
+            if (!node.isReady() || !node.allDependenciesComplete()) {
+                // Skipped, aborted or waiting for an enforced dependency, added back when it becomes ready again
+                iterator.remove();
+                continue;
+            }
+            foundReadyNode = true;
+            MutationInfo mutations = getResolvedMutationInfo(node);
 
-                if (!tryAcquireLocksForNode(node, workerLease, mutations)) {
-                    resourceLockState.releaseLocks();
-                    continue;
-                }
+            if (!tryAcquireLocksForNode(node, workerLease, mutations)) {
+                resourceLockState.releaseLocks();
+                continue;
+            }
 
-                if (node.allDependenciesSuccessful()) {
-                    node.startExecution(this::recordNodeExecutionStarted);
-                } else {
-                    node.skipExecution(this::recordNodeCompleted);
-                }
-                iterator.remove();
-                return node;
+            if (node.allDependenciesSuccessful()) {
+                node.startExecution(this::recordNodeExecutionStarted);
+            } else {
+                node.skipExecution(this::recordNodeCompleted);
             }
+            iterator.remove();
+            executionQueue.remove(node);
+            return node;
         }
         LOGGER.debug("No node could be selected, nodes ready: {}", foundReadyNode);
         maybeNodesReady = foundReadyNode;
@@ -572,10 +619,20 @@ private boolean tryAcquireLocksForNode(Node node, WorkerLeaseRegistry.WorkerLeas
 
     private void updateAllDependenciesCompleteForPredecessors(Node node) {
         for (Node predecessor : node.getAllPredecessors()) {
-            maybeNodesReady |= predecessor.updateAllDependenciesComplete() && predecessor.isReady();
+            if (predecessor.updateAllDependenciesComplete()) {
+                maybeNodesReady |= addIfReady(predecessor);
+            }
         }
     }
 
+    private boolean addIfReady(Node node) {
+        if (node.isReady() && node.allDependenciesComplete() && executionQueue.contains(node)) {
+            readyNodes.add(node);
+            return true;
+        }
+        return false;
+    }
+
     private boolean tryLockProjectFor(Node node) {
         if (node.getProjectToLock() != null) {
             return getProjectLock(node.getProjectToLock()).tryLock();
@@ -733,6 +790,9 @@ private static String getOverLappedPath(String firstPath, String secondPath) {
 
     private void recordNodeExecutionStarted(Node node) {
         runningNodes.add(node);
+        if (prioritizer != null) {
+            prioritizer.nodeStarted(node);
+        }
     }
 
     private void recordNodeCompleted(Node node) {
@@ -766,6 +826,12 @@ public void finishedExecuting(Node node) {
                 }
 
                 runningNodes.remove(node);
+                if (prioritizer != null) {
+                    prioritizer.nodeFinished(node);
+                }
+                if (prefetcher != null) {
+                    prefetcher.nodeFinished();
+                }
                 node.finishExecution(this::recordNodeCompleted);
             } else {
                 LOGGER.debug("Already completed node {} reported as finished executing", node);
@@ -776,7 +842,7 @@ public void finishedExecuting(Node node) {
         }
     }
 
-    private static void enforceFinalizers(Node node) {
+    private void enforceFinalizers(Node node) {
         for (Node finalizerNode : node.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
                 Set<Node> enforcedNodes = Sets.newHashSet();
@@ -785,7 +851,7 @@ private static void enforceFinalizers(Node node) {
         }
     }
 
-    private static void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
+    private void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
         Deque<Node> candidateNodes = new ArrayDeque<>();
         candidateNodes.add(nodeInfo);
 
@@ -798,6 +864,7 @@ private static void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNod
 
                 if (node.isMustNotRun() || node.isRequired()) {
                     node.enforceRun();
+                    addIfReady(node);
                     // Completed changed from true to false - inform all nodes depending on this one.
                     for (Node predecessor : node.getAllPredecessors()) {
                         predecessor.forceAllDependenciesCompleteUpdate();
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.util.Path;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Keeps the build cache keys of tasks in the execution history cache.
+ */
+public class DefaultTaskCacheKeyHistory implements TaskCacheKeyHistory {
+
+    private final PersistentIndexedCache<String, PreviousCacheKey> store;
+
+    public DefaultTaskCacheKeyHistory(ExecutionHistoryCacheAccess executionHistoryCacheAccess) {
+        this.store = executionHistoryCacheAccess.createCache(
+            PersistentIndexedCacheParameters.of("taskCacheKeys", String.class, new PreviousCacheKeySerializer()),
+            10000,
+            false
+        );
+    }
+
+    @Nullable
+    @Override
+    public PreviousCacheKey getPreviousCacheKey(Path taskIdentityPath) {
+        return store.get(taskIdentityPath.getPath());
+    }
+
+    @Override
+    public void recordCacheKey(Path taskIdentityPath, HashCode key, ImmutableList<File> outputLocations) {
+        store.put(taskIdentityPath.getPath(), new PreviousCacheKey(key, outputLocations));
+    }
+
+    @Override
+    public void forgetCacheKey(Path taskIdentityPath) {
+        store.remove(taskIdentityPath.getPath());
+    }
+
+    private static class PreviousCacheKeySerializer extends AbstractSerializer<PreviousCacheKey> {
+        @Override
+        public PreviousCacheKey read(Decoder decoder) throws Exception {
+            HashCode key = BaseSerializerFactory.HASHCODE_SERIALIZER.read(decoder);
+            int outputCount = decoder.readSmallInt();
+            ImmutableList.Builder<File> outputLocations = ImmutableList.builderWithExpectedSize(outputCount);
+            for (int i = 0; i < outputCount; i++) {
+                outputLocations.add(BaseSerializerFactory.FILE_SERIALIZER.read(decoder));
+            }
+            return new PreviousCacheKey(key, outputLocations.build());
+        }
+
+        @Override
+        public void write(Encoder encoder, PreviousCacheKey value) throws Exception {
+            BaseSerializerFactory.HASHCODE_SERIALIZER.write(encoder, value.getKey());
+            encoder.writeSmallInt(value.getOutputLocations().size());
+            for (File outputLocation : value.getOutputLocations()) {
+                BaseSerializerFactory.FILE_SERIALIZER.write(encoder, outputLocation);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.util.Path;
+
+import java.util.Map;
+
+/**
+ * Keeps the task durations in the execution history cache.
+ *
+ * The expected duration is a moving average over the previous executions, so that a single unusually slow or fast execution does not flip the order of the plan.
+ */
+public class DefaultTaskDurationHistory implements TaskDurationHistory {
+
+    private final PersistentIndexedCache<String, Long> store;
+
+    public DefaultTaskDurationHistory(ExecutionHistoryCacheAccess executionHistoryCacheAccess) {
+        this.store = executionHistoryCacheAccess.createCache(
+            PersistentIndexedCacheParameters.of("taskDurations", String.class, BaseSerializerFactory.LONG_SERIALIZER),
+            10000,
+            false
+        );
+    }
+
+    @Override
+    public long getExpectedDuration(Path taskIdentityPath) {
+        Long duration = store.get(taskIdentityPath.getPath());
+        return duration == null ? -1 : duration;
+    }
+
+    @Override
+    public void recordDurations(Map<Path, Long> durations) {
+        for (Map.Entry<Path, Long> entry : durations.entrySet()) {
+            String key = entry.getKey().getPath();
+            Long previous = store.get(key);
+            long duration = entry.getValue();
+            store.put(key, previous == null ? duration : (previous + duration) / 2);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.util.Path;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Remembers the build cache keys that cacheable tasks had in previous builds.
+ */
+public interface TaskCacheKeyHistory {
+
+    /**
+     * Returns the build cache key of the task when it was last executed, or {@code null} if it was not cacheable then.
+     */
+    @Nullable
+    PreviousCacheKey getPreviousCacheKey(Path taskIdentityPath);
+
+    /**
+     * Records the build cache key of a cacheable task that has been executed, together with the locations of its outputs.
+     */
+    void recordCacheKey(Path taskIdentityPath, HashCode key, ImmutableList<File> outputLocations);
+
+    /**
+     * Forgets the build cache key of a task that has been executed without being cacheable.
+     */
+    void forgetCacheKey(Path taskIdentityPath);
+
+    class PreviousCacheKey {
+        private final HashCode key;
+        private final ImmutableList<File> outputLocations;
+
+        public PreviousCacheKey(HashCode key, ImmutableList<File> outputLocations) {
+            this.key = key;
+            this.outputLocations = outputLocations;
+        }
+
+        public HashCode getKey() {
+            return key;
+        }
+
+        /**
+         * The files and directories the task produced its outputs in.
+         */
+        public ImmutableList<File> getOutputLocations() {
+            return outputLocations;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import com.google.common.collect.Sets;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.controller.BuildCacheController;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.execution.caching.impl.DefaultBuildCacheKey;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.CurrentBuildOperationRef;
+import org.gradle.internal.service.ServiceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Starts downloading the remote build cache entries of the tasks at the front of an execution plan before they are executed.
+ *
+ * The key of a task is only known once its inputs have been fingerprinted, which happens when the task executes.
+ * So the key is predicted from the {@link TaskCacheKeyHistory}: a task whose outputs have been removed since it was last executed,
+ * for example by a {@code clean} task, is expected to load the same entry again. Tasks whose outputs are all present
+ * are expected to be up-to-date, and are not prefetched.
+ *
+ * Only the first {@value #MAX_UPCOMING_NODES} nodes of the plan that have not started yet are considered, each time a node finishes,
+ * since the outputs of the tasks further down the plan may still be removed before they execute.
+ * The downloads are children of the build operation that executes the plan, and the entries that were not loaded are discarded
+ * once the plan has finished.
+ *
+ * The candidates are picked while holding the lock of the execution plan, but their history is read and their outputs are checked
+ * by a separate thread, so that the lock is not held while accessing the disk. When nodes finish faster than that thread examines
+ * their successors, only the latest candidates are examined.
+ *
+ * All methods except {@link #start(BuildOperationRef)} and {@link #finish()} must be called while holding the lock of the execution plan.
+ */
+public class UpcomingTaskPrefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpcomingTaskPrefetcher.class);
+    static final int MAX_UPCOMING_NODES = 16;
+
+    private final TaskCacheKeyHistory cacheKeyHistory;
+    private final ServiceRegistry gradleScopedServices;
+    private final ExecutorFactory executorFactory;
+    private final AtomicReference<List<LocalTaskNode>> pendingCandidates = new AtomicReference<>();
+    // Only accessed by the prefetch thread, and after it has stopped
+    private final Set<Node> examinedNodes = Sets.newIdentityHashSet();
+    private final List<BuildCacheKey> prefetchedKeys = new ArrayList<>();
+
+    private BuildCacheController buildCache;
+    private BuildOperationRef parentOperation;
+    private ManagedExecutor prefetchExecutor;
+    private boolean nodesChanged;
+
+    public UpcomingTaskPrefetcher(TaskCacheKeyHistory cacheKeyHistory, ServiceRegistry gradleScopedServices, ExecutorFactory executorFactory) {
+        this.cacheKeyHistory = cacheKeyHistory;
+        this.gradleScopedServices = gradleScopedServices;
+        this.executorFactory = executorFactory;
+    }
+
+    /**
+     * Starts prefetching for the plan executed by the given build operation.
+     */
+    public void start(BuildOperationRef parentOperation) {
+        // Looked up lazily, as the build cache is configured after the task graph is created
+        BuildCacheController buildCache = gradleScopedServices.get(BuildCacheController.class);
+        if (buildCache.isEnabled()) {
+            this.buildCache = buildCache;
+            this.parentOperation = parentOperation;
+            this.prefetchExecutor = executorFactory.create("Build cache prefetch", 1);
+            this.nodesChanged = true;
+        }
+    }
+
+    /**
+     * Records that a node has finished, which may have removed the outputs of the nodes that have not started yet.
+     */
+    public void nodeFinished() {
+        nodesChanged = true;
+    }
+
+    /**
+     * Schedules prefetching the entries of the first nodes of the plan that are expected to load from the build cache.
+     *
+     * @param upcomingNodes the nodes that have not started yet, in execution order.
+     */
+    public void prefetchUpcoming(Iterable<Node> upcomingNodes) {
+        if (!nodesChanged || buildCache == null) {
+            return;
+        }
+        nodesChanged = false;
+        List<LocalTaskNode> candidates = new ArrayList<>(MAX_UPCOMING_NODES);
+        int count = 0;
+        for (Node node : upcomingNodes) {
+            if (count++ == MAX_UPCOMING_NODES) {
+                break;
+            }
+            if (node instanceof LocalTaskNode) {
+                candidates.add((LocalTaskNode) node);
+            }
+        }
+        if (!candidates.isEmpty() && pendingCandidates.getAndSet(candidates) == null) {
+            prefetchExecutor.execute(this::prefetchPendingCandidates);
+        }
+    }
+
+    private void prefetchPendingCandidates() {
+        List<LocalTaskNode> candidates = pendingCandidates.getAndSet(null);
+        BuildOperationRef previous = CurrentBuildOperationRef.instance().get();
+        CurrentBuildOperationRef.instance().set(parentOperation);
+        try {
+            for (LocalTaskNode node : candidates) {
+                if (!examinedNodes.contains(node)) {
+                    BuildCacheKey key = predictKeyToLoad(node);
+                    if (key != null) {
+                        examinedNodes.add(node);
+                        LOGGER.debug("Prefetching build cache entry {} for {}", key, node);
+                        buildCache.prefetch(key);
+                        prefetchedKeys.add(key);
+                    }
+                }
+            }
+        } finally {
+            CurrentBuildOperationRef.instance().set(previous);
+        }
+    }
+
+    @Nullable
+    private BuildCacheKey predictKeyToLoad(LocalTaskNode node) {
+        TaskCacheKeyHistory.PreviousCacheKey previousKey = cacheKeyHistory.getPreviousCacheKey(node.getTask().getIdentityPath());
+        if (previousKey == null) {
+            return null;
+        }
+        for (File outputLocation : previousKey.getOutputLocations()) {
+            if (!outputLocation.exists()) {
+                return new DefaultBuildCacheKey(previousKey.getKey());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discards the prefetched entries that were not loaded, waiting for the candidates that are still being examined and the downloads that are still in progress.
+     */
+    public void finish() {
+        if (buildCache != null) {
+            prefetchExecutor.stop();
+            for (BuildCacheKey key : prefetchedKeys) {
+                buildCache.discardPrefetched(key);
+            }
+        }
+        prefetchedKeys.clear();
+        examinedNodes.clear();
+        pendingCandidates.set(null);
+        buildCache = null;
+        parentOperation = null;
+        prefetchExecutor = null;
+    }
+}
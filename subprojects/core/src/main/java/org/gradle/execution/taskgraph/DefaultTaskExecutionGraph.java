@@ -37,6 +37,7 @@
 import org.gradle.api.tasks.TaskState;
 import org.gradle.configuration.internal.ListenerBuildOperationDecorator;
 import org.gradle.execution.ProjectExecutionServiceRegistry;
+import org.gradle.execution.plan.CriticalPathPrioritizer;
 import org.gradle.execution.plan.DefaultExecutionPlan;
 import org.gradle.execution.plan.Node;
 import org.gradle.execution.plan.NodeExecutor;
@@ -44,6 +45,7 @@
 import org.gradle.execution.plan.TaskDependencyResolver;
 import org.gradle.execution.plan.TaskNode;
 import org.gradle.execution.plan.TaskNodeFactory;
+import org.gradle.execution.plan.UpcomingTaskPrefetcher;
 import org.gradle.internal.Cast;
 import org.gradle.internal.event.ListenerBroadcast;
 import org.gradle.internal.operations.BuildOperationContext;
@@ -61,6 +63,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -85,6 +88,8 @@ private enum GraphState {
     private final DefaultExecutionPlan executionPlan;
     private final BuildOperationExecutor buildOperationExecutor;
     private final ListenerBuildOperationDecorator listenerBuildOperationDecorator;
+    @Nullable
+    private final UpcomingTaskPrefetcher prefetcher;
     private GraphState graphState = GraphState.EMPTY;
     private List<Task> allTasks;
     private boolean hasFiredWhenReady;
@@ -103,7 +108,9 @@ public DefaultTaskExecutionGraph(
         ListenerBroadcast<TaskExecutionGraphListener> graphListeners,
         ListenerBroadcast<TaskExecutionListener> taskListeners,
         ProjectStateRegistry projectStateRegistry,
-        ServiceRegistry globalServices
+        ServiceRegistry globalServices,
+        @Nullable CriticalPathPrioritizer prioritizer,
+        @Nullable UpcomingTaskPrefetcher prefetcher
     ) {
         this.planExecutor = planExecutor;
         this.nodeExecutors = nodeExecutors;
@@ -115,7 +122,8 @@ public DefaultTaskExecutionGraph(
         this.taskListeners = taskListeners;
         this.projectStateRegistry = projectStateRegistry;
         this.globalServices = globalServices;
-        this.executionPlan = new DefaultExecutionPlan(gradleInternal, taskNodeFactory, dependencyResolver);
+        this.prefetcher = prefetcher;
+        this.executionPlan = new DefaultExecutionPlan(gradleInternal, taskNodeFactory, dependencyResolver, prioritizer, prefetcher);
     }
 
     @Override
@@ -183,15 +191,22 @@ public void execute(Collection<? super Throwable> failures) {
 
     private void executeWithServices(ProjectExecutionServiceRegistry projectExecutionServices, Collection<? super Throwable> failures) {
         Timer clock = Time.startTimer();
+        BuildOperationRef currentOperation = buildOperationExecutor.getCurrentOperation();
+        if (prefetcher != null) {
+            prefetcher.start(currentOperation);
+        }
         try {
             planExecutor.process(executionPlan, failures,
                 new BuildOperationAwareExecutionAction(
-                    buildOperationExecutor.getCurrentOperation(),
+                    currentOperation,
                     new InvokeNodeExecutorsAction(nodeExecutors, projectExecutionServices)
                 )
             );
             LOGGER.debug("Timing: Executing the DAG took " + clock.getElapsed());
         } finally {
+            if (prefetcher != null) {
+                prefetcher.finish();
+            }
             coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
                 @Override
                 public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.buildevents;
+
+import com.google.common.collect.ImmutableSortedMap;
+import groovy.json.JsonOutput;
+import org.gradle.StartParameter;
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.initialization.RootBuildLifecycleListener;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.UnsafeFeatureFlags;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.scopeids.id.BuildInvocationScopeId;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the allocations, garbage collections and heap usage of each root build, along with the bytes allocated by each task.
+ *
+ * The telemetry is enabled by {@link #MEMORY_TELEMETRY_PROPERTY}. At the end of the build, it is emitted as a {@link BuildMemoryUsageBuildOperationType}
+ * operation and, when the property names a directory, written there as a JSON file named after the build invocation id.
+ *
+ * Allocations are measured with the per thread allocation counters of the JVM, so the allocations of threads that terminate during the build are not
+ * accounted for, and the allocations of a task only include those made on the thread executing its actions.
+ *
+ * The telemetry is a listener of each build session, registered when the session starts, so it takes a snapshot at the start of every root build.
+ */
+public class BuildMemoryTelemetry implements RootBuildLifecycleListener {
+    /**
+     * JVM system property to record the memory usage of builds. Set to {@code true} to emit it as a build operation, or to a directory to also write a JSON report there.
+     */
+    public static final String MEMORY_TELEMETRY_PROPERTY = "org.gradle.unsafe.memory-telemetry";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildMemoryTelemetry.class);
+
+    @Nullable
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final Map<String, Long> taskAllocatedBytes = new ConcurrentHashMap<String, Long>();
+    @Nullable
+    private volatile Snapshot buildStart;
+
+    public BuildMemoryTelemetry() {
+        this.threadMXBean = allocationCountingThreadMXBean();
+    }
+
+    @Nullable
+    private static com.sun.management.ThreadMXBean allocationCountingThreadMXBean() {
+        try {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocationCounting = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (allocationCounting.isThreadAllocatedMemorySupported() && allocationCounting.isThreadAllocatedMemoryEnabled()) {
+                    return allocationCounting;
+                }
+            }
+        } catch (LinkageError e) {
+            // Not a HotSpot compatible JVM
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the telemetry is enabled for builds with the given start parameter.
+     */
+    public static boolean isEnabled(StartParameter startParameter) {
+        return UnsafeFeatureFlags.isEnabled(MEMORY_TELEMETRY_PROPERTY, startParameter.getSystemPropertiesArgs());
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM does not measure allocations.
+     */
+    public long getCurrentThreadAllocatedBytes() {
+        return threadMXBean == null ? -1 : threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public void taskExecuted(String taskPath, long allocatedBytes) {
+        if (allocatedBytes >= 0) {
+            taskAllocatedBytes.merge(taskPath, allocatedBytes, Long::sum);
+        }
+    }
+
+    @Override
+    public void afterStart(GradleInternal gradle) {
+        taskAllocatedBytes.clear();
+        buildStart = isEnabled(gradle.getStartParameter()) ? takeSnapshot() : null;
+    }
+
+    @Override
+    public void beforeComplete(GradleInternal gradle) {
+        try {
+            StartParameter startParameter = gradle.getStartParameter();
+            if (isEnabled(startParameter) && buildStart != null) {
+                BuildMemoryUsage usage = new BuildMemoryUsage(buildStart, takeSnapshot(), ImmutableSortedMap.copyOf(taskAllocatedBytes));
+                gradle.getServices().get(BuildOperationExecutor.class).run(new RecordMemoryUsage(usage));
+                String setting = UnsafeFeatureFlags.getValue(MEMORY_TELEMETRY_PROPERTY, startParameter.getSystemPropertiesArgs());
+                if (!setting.isEmpty() && !setting.equalsIgnoreCase(Boolean.TRUE.toString())) {
+                    writeReport(new File(setting), gradle.getServices().get(BuildInvocationScopeId.class), usage);
+                }
+            }
+        } finally {
+            taskAllocatedBytes.clear();
+            buildStart = null;
+        }
+    }
+
+    private static void writeReport(File reportDir, BuildInvocationScopeId buildInvocationId, BuildMemoryUsage usage) {
+        File reportFile = new File(reportDir, buildInvocationId.getId().asString() + ".json");
+        try {
+            GFileUtils.mkdirs(reportDir);
+            Files.write(reportFile.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(usage.toMap())).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        LOGGER.info("Wrote build memory usage to {}", reportFile);
+    }
+
+    private Snapshot takeSnapshot() {
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, garbageCollector.getCollectionCount());
+            gcTime += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        Map<Long, Long> threadAllocatedBytes = new LinkedHashMap<Long, Long>();
+        if (threadMXBean != null) {
+            long[] threadIds = threadMXBean.getAllThreadIds();
+            long[] allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadIds);
+            for (int i = 0; i < threadIds.length; i++) {
+                if (allocatedBytes[i] >= 0) {
+                    threadAllocatedBytes.put(threadIds[i], allocatedBytes[i]);
+                }
+            }
+        }
+        return new Snapshot(System.currentTimeMillis(), gcCount, gcTime, threadAllocatedBytes);
+    }
+
+    private static class Snapshot {
+        final long timestamp;
+        final long gcCount;
+        final long gcTimeMillis;
+        final Map<Long, Long> threadAllocatedBytes;
+
+        Snapshot(long timestamp, long gcCount, long gcTimeMillis, Map<Long, Long> threadAllocatedBytes) {
+            this.timestamp = timestamp;
+            this.gcCount = gcCount;
+            this.gcTimeMillis = gcTimeMillis;
+            this.threadAllocatedBytes = threadAllocatedBytes;
+        }
+    }
+
+    private class BuildMemoryUsage implements BuildMemoryUsageBuildOperationType.Result {
+        private final long buildTimeMillis;
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcTimeMillis;
+        private final long heapUsedAfterLastGcBytes;
+        private final long usedHeapBytes;
+        private final long maxHeapBytes;
+        private final Map<String, Long> taskAllocatedBytes;
+
+        BuildMemoryUsage(Snapshot start, Snapshot end, Map<String, Long> taskAllocatedBytes) {
+            this.buildTimeMillis = Math.max(0, end.timestamp - start.timestamp);
+            this.allocatedBytes = threadMXBean == null ? -1 : allocatedBytesBetween(start, end);
+            this.gcCount = end.gcCount - start.gcCount;
+            this.gcTimeMillis = end.gcTimeMillis - start.gcTimeMillis;
+            MemoryUsage heapUsage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            this.usedHeapBytes = heapUsage.getUsed();
+            this.maxHeapBytes = heapUsage.getMax();
+            this.heapUsedAfterLastGcBytes = heapUsedAfterLastCollection();
+            this.taskAllocatedBytes = taskAllocatedBytes;
+        }
+
+        private long allocatedBytesBetween(Snapshot start, Snapshot end) {
+            long allocated = 0;
+            for (Map.Entry<Long, Long> entry : end.threadAllocatedBytes.entrySet()) {
+                Long allocatedAtStart = start.threadAllocatedBytes.get(entry.getKey());
+                allocated += entry.getValue() - (allocatedAtStart == null ? 0 : allocatedAtStart);
+            }
+            return allocated;
+        }
+
+        private long heapUsedAfterLastCollection() {
+            long used = 0;
+            for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (memoryPool.getType() == MemoryType.HEAP) {
+                    MemoryUsage collectionUsage = memoryPool.getCollectionUsage();
+                    if (collectionUsage != null) {
+                        used += collectionUsage.getUsed();
+                    }
+                }
+            }
+            return used;
+        }
+
+        @Override
+        public long getBuildTimeMillis() {
+            return buildTimeMillis;
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public long getAllocationRateBytesPerSecond() {
+            if (allocatedBytes < 0) {
+                return -1;
+            }
+            return buildTimeMillis == 0 ? allocatedBytes : allocatedBytes * 1000 / buildTimeMillis;
+        }
+
+        @Override
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        @Override
+        public long getGcTimeMillis() {
+            return gcTimeMillis;
+        }
+
+        @Override
+        public long getHeapUsedAfterLastGcBytes() {
+            return heapUsedAfterLastGcBytes;
+        }
+
+        @Override
+        public long getUsedHeapBytes() {
+            return usedHeapBytes;
+        }
+
+        @Override
+        public long getMaxHeapBytes() {
+            return maxHeapBytes;
+        }
+
+        @Override
+        public Map<String, Long> getTaskAllocatedBytes() {
+            return taskAllocatedBytes;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("buildTimeMillis", buildTimeMillis);
+            map.put("allocatedBytes", allocatedBytes);
+            map.put("allocationRateBytesPerSecond", getAllocationRateBytesPerSecond());
+            map.put("gcCount", gcCount);
+            map.put("gcTimeMillis", gcTimeMillis);
+            map.put("heapUsedAfterLastGcBytes", heapUsedAfterLastGcBytes);
+            map.put("usedHeapBytes", usedHeapBytes);
+            map.put("maxHeapBytes", maxHeapBytes);
+            map.put("taskAllocatedBytes", taskAllocatedBytes);
+            return map;
+        }
+    }
+
+    private static class RecordMemoryUsage implements RunnableBuildOperation {
+        private final BuildMemoryUsage usage;
+
+        RecordMemoryUsage(BuildMemoryUsage usage) {
+            this.usage = usage;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            context.setResult(usage);
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Record build memory usage").details(new BuildMemoryUsageBuildOperationType.Details() {
+            });
+        }
+    }
+}
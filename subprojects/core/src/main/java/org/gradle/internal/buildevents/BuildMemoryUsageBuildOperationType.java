@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.buildevents;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+import java.util.Map;
+
+/**
+ * An operation that records the memory usage of a build, emitted at the end of the build when {@link BuildMemoryTelemetry#MEMORY_TELEMETRY_PROPERTY} is set.
+ */
+public final class BuildMemoryUsageBuildOperationType implements BuildOperationType<BuildMemoryUsageBuildOperationType.Details, BuildMemoryUsageBuildOperationType.Result> {
+
+    public interface Details {
+    }
+
+    public interface Result {
+        /**
+         * The wall clock time of the build in milliseconds.
+         */
+        long getBuildTimeMillis();
+
+        /**
+         * The bytes allocated during the build by the threads alive at its end, or -1 if the JVM does not measure allocations.
+         */
+        long getAllocatedBytes();
+
+        /**
+         * The bytes allocated per second of the build, or -1 if the JVM does not measure allocations.
+         */
+        long getAllocationRateBytesPerSecond();
+
+        /**
+         * The number of garbage collections during the build.
+         */
+        long getGcCount();
+
+        /**
+         * The accumulated time spent in garbage collection during the build, in milliseconds.
+         */
+        long getGcTimeMillis();
+
+        /**
+         * The heap in use after the most recent garbage collection of each heap pool, which may have happened at any time before the end of the build.
+         */
+        long getHeapUsedAfterLastGcBytes();
+
+        long getUsedHeapBytes();
+
+        long getMaxHeapBytes();
+
+        /**
+         * The bytes allocated by the thread executing the actions of each task, keyed by task identity path.
+         */
+        Map<String, Long> getTaskAllocatedBytes();
+    }
+
+    private BuildMemoryUsageBuildOperationType() {
+    }
+}
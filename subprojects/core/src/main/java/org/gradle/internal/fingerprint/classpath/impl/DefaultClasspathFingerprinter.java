@@ -17,6 +17,7 @@
 package org.gradle.internal.fingerprint.classpath.impl;
 
 import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.changedetection.state.ParallelZipHashing;
 import org.gradle.api.internal.changedetection.state.ResourceFilter;
 import org.gradle.api.internal.changedetection.state.ResourceSnapshotterCacheService;
 import org.gradle.api.internal.changedetection.state.RuntimeClasspathResourceHasher;
@@ -32,13 +33,24 @@ public DefaultClasspathFingerprinter(
         FileCollectionSnapshotter fileCollectionSnapshotter,
         ResourceFilter classpathResourceFilter,
         StringInterner stringInterner
+    ) {
+        this(cacheService, fileCollectionSnapshotter, classpathResourceFilter, stringInterner, ParallelZipHashing.DISABLED);
+    }
+
+    public DefaultClasspathFingerprinter(
+        ResourceSnapshotterCacheService cacheService,
+        FileCollectionSnapshotter fileCollectionSnapshotter,
+        ResourceFilter classpathResourceFilter,
+        StringInterner stringInterner,
+        ParallelZipHashing parallelZipHashing
     ) {
         super(
             ClasspathFingerprintingStrategy.runtimeClasspath(
                 classpathResourceFilter,
                 new RuntimeClasspathResourceHasher(),
                 cacheService,
-                stringInterner
+                stringInterner,
+                parallelZipHashing
             ),
             fileCollectionSnapshotter
         );
@@ -19,6 +19,7 @@
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.changedetection.state.AbiExtractingClasspathResourceHasher;
 import org.gradle.api.internal.changedetection.state.CachingResourceHasher;
+import org.gradle.api.internal.changedetection.state.ParallelZipHashing;
 import org.gradle.api.internal.changedetection.state.ResourceSnapshotterCacheService;
 import org.gradle.api.tasks.CompileClasspathNormalizer;
 import org.gradle.api.tasks.FileNormalizer;
@@ -28,10 +29,15 @@
 
 public class DefaultCompileClasspathFingerprinter extends AbstractFileCollectionFingerprinter implements CompileClasspathFingerprinter {
     public DefaultCompileClasspathFingerprinter(ResourceSnapshotterCacheService cacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner) {
+        this(cacheService, fileCollectionSnapshotter, stringInterner, ParallelZipHashing.DISABLED);
+    }
+
+    public DefaultCompileClasspathFingerprinter(ResourceSnapshotterCacheService cacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, ParallelZipHashing parallelZipHashing) {
         super(ClasspathFingerprintingStrategy.compileClasspath(
                     new CachingResourceHasher(new AbiExtractingClasspathResourceHasher(), cacheService),
                     cacheService,
-                    stringInterner
+                    stringInterner,
+                    parallelZipHashing
                 ), fileCollectionSnapshotter);
     }
 
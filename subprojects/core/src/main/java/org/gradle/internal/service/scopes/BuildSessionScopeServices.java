@@ -45,6 +45,7 @@
 import org.gradle.initialization.layout.BuildLayoutConfiguration;
 import org.gradle.initialization.layout.BuildLayoutFactory;
 import org.gradle.initialization.layout.ProjectCacheDir;
+import org.gradle.internal.buildevents.BuildMemoryTelemetry;
 import org.gradle.internal.buildevents.BuildStartedTime;
 import org.gradle.internal.classpath.ClassPath;
 import org.gradle.internal.event.ListenerManager;
@@ -110,8 +111,11 @@ DefaultDeploymentRegistry createDeploymentRegistry(PendingChangesManager pending
         return new DefaultDeploymentRegistry(pendingChangesManager, buildOperationExecutor, objectFactory);
     }
 
-    ListenerManager createListenerManager(ListenerManager parent) {
-        return parent.createChild(Scopes.BuildSession);
+    ListenerManager createListenerManager(ListenerManager parent, BuildMemoryTelemetry buildMemoryTelemetry) {
+        ListenerManager listenerManager = parent.createChild(Scopes.BuildSession);
+        // Register the telemetry before the first build of the session starts, so it sees the start of that build
+        listenerManager.addListener(buildMemoryTelemetry);
+        return listenerManager;
     }
 
     CrossProjectConfigurator createCrossProjectConfigurator(BuildOperationExecutor buildOperationExecutor) {
@@ -27,7 +27,11 @@
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.concurrent.ParallelismConfiguration;
 import org.gradle.execution.plan.DefaultPlanExecutor;
+import org.gradle.execution.plan.DefaultTaskCacheKeyHistory;
+import org.gradle.execution.plan.DefaultTaskDurationHistory;
 import org.gradle.execution.plan.PlanExecutor;
+import org.gradle.execution.plan.TaskCacheKeyHistory;
+import org.gradle.execution.plan.TaskDurationHistory;
 import org.gradle.initialization.BuildCancellationToken;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerManager;
@@ -89,6 +93,14 @@ ExecutionHistoryStore createExecutionHistoryStore(ExecutionHistoryCacheAccess ex
         return new DefaultExecutionHistoryStore(executionHistoryCacheAccess, stringInterner);
     }
 
+    TaskDurationHistory createTaskDurationHistory(ExecutionHistoryCacheAccess executionHistoryCacheAccess) {
+        return new DefaultTaskDurationHistory(executionHistoryCacheAccess);
+    }
+
+    TaskCacheKeyHistory createTaskCacheKeyHistory(ExecutionHistoryCacheAccess executionHistoryCacheAccess) {
+        return new DefaultTaskCacheKeyHistory(executionHistoryCacheAccess);
+    }
+
     OutputFilesRepository createOutputFilesRepository(CacheRepository cacheRepository, Gradle gradle, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
         PersistentCache cacheAccess = cacheRepository
             .cache(gradle, "buildOutputCleanup")
@@ -38,6 +38,7 @@
 import org.gradle.cache.internal.FileContentCacheFactory;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.cache.internal.SplitFileContentCacheFactory;
+import org.gradle.caching.internal.BuildCacheServices;
 import org.gradle.composite.internal.IncludedBuildControllers;
 import org.gradle.composite.internal.IncludedBuildTaskGraph;
 import org.gradle.configuration.ConfigurationTargetIdentifier;
@@ -60,13 +61,17 @@
 import org.gradle.execution.TaskSelector;
 import org.gradle.execution.commandline.CommandLineTaskConfigurer;
 import org.gradle.execution.commandline.CommandLineTaskParser;
+import org.gradle.execution.plan.CriticalPathPrioritizer;
 import org.gradle.execution.plan.DependencyResolver;
 import org.gradle.execution.plan.LocalTaskNodeExecutor;
 import org.gradle.execution.plan.NodeExecutor;
 import org.gradle.execution.plan.PlanExecutor;
+import org.gradle.execution.plan.TaskCacheKeyHistory;
 import org.gradle.execution.plan.TaskDependencyResolver;
+import org.gradle.execution.plan.TaskDurationHistory;
 import org.gradle.execution.plan.TaskNodeDependencyResolver;
 import org.gradle.execution.plan.TaskNodeFactory;
+import org.gradle.execution.plan.UpcomingTaskPrefetcher;
 import org.gradle.execution.plan.WorkNodeDependencyResolver;
 import org.gradle.execution.plan.WorkNodeExecutor;
 import org.gradle.execution.taskgraph.DefaultTaskExecutionGraph;
@@ -76,10 +81,12 @@
 import org.gradle.initialization.DefaultTaskExecutionPreparer;
 import org.gradle.initialization.TaskExecutionPreparer;
 import org.gradle.internal.Factory;
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.build.BuildStateRegistry;
 import org.gradle.internal.cleanup.BuildOutputCleanupRegistry;
 import org.gradle.internal.cleanup.DefaultBuildOutputCleanupRegistry;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerBroadcast;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.id.UniqueId;
@@ -100,6 +107,7 @@
 import org.gradle.internal.scopeids.id.WorkspaceScopeId;
 import org.gradle.internal.service.DefaultServiceRegistry;
 import org.gradle.internal.service.ServiceRegistry;
+import org.gradle.internal.time.Clock;
 import org.gradle.internal.vfs.AdditiveCacheLocations;
 import org.gradle.internal.vfs.VirtualFileSystem;
 
@@ -243,9 +251,19 @@ TaskExecutionGraphInternal createTaskExecutionGraph(
         ListenerBroadcast<TaskExecutionListener> taskListeners,
         ListenerBroadcast<TaskExecutionGraphListener> graphListeners,
         ProjectStateRegistry projectStateRegistry,
-        ServiceRegistry gradleScopedServices
+        ServiceRegistry gradleScopedServices,
+        TaskDurationHistory taskDurationHistory,
+        TaskCacheKeyHistory taskCacheKeyHistory,
+        ExecutorFactory executorFactory,
+        Clock clock
     ) {
-        return new DefaultTaskExecutionGraph(planExecutor, nodeExecutors, buildOperationExecutor, listenerBuildOperationDecorator, coordinationService, gradleInternal, taskNodeFactory, dependencyResolver, graphListeners, taskListeners, projectStateRegistry, gradleScopedServices);
+        CriticalPathPrioritizer prioritizer = UnsafeFeatureFlags.isEnabled(CriticalPathPrioritizer.CRITICAL_PATH_SCHEDULING_PROPERTY)
+            ? new CriticalPathPrioritizer(taskDurationHistory, buildOperationExecutor, clock)
+            : null;
+        UpcomingTaskPrefetcher prefetcher = UnsafeFeatureFlags.getInt(BuildCacheServices.PREFETCH_PROPERTY, 0) > 0
+            ? new UpcomingTaskPrefetcher(taskCacheKeyHistory, gradleScopedServices, executorFactory)
+            : null;
+        return new DefaultTaskExecutionGraph(planExecutor, nodeExecutors, buildOperationExecutor, listenerBuildOperationDecorator, coordinationService, gradleInternal, taskNodeFactory, dependencyResolver, graphListeners, taskListeners, projectStateRegistry, gradleScopedServices, prioritizer, prefetcher);
     }
 
     ServiceRegistryFactory createServiceRegistryFactory(final ServiceRegistry services) {
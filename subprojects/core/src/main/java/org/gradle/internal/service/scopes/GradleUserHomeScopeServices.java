@@ -42,6 +42,7 @@
 import org.gradle.groovy.scripts.internal.ScriptSourceHasher;
 import org.gradle.initialization.ClassLoaderRegistry;
 import org.gradle.initialization.GradleUserHomeDirProvider;
+import org.gradle.internal.buildevents.BuildMemoryTelemetry;
 import org.gradle.internal.classloader.ClasspathHasher;
 import org.gradle.internal.classloader.DefaultHashingClassLoaderFactory;
 import org.gradle.internal.classloader.HashingClassLoaderFactory;
@@ -110,6 +111,10 @@ GlobalScopeFileTimeStampInspector createFileTimestampInspector(CacheScopeMapping
         return timeStampInspector;
     }
 
+    BuildMemoryTelemetry createBuildMemoryTelemetry() {
+        return new BuildMemoryTelemetry();
+    }
+
     ScriptSourceHasher createScriptSourceHasher() {
         return new DefaultScriptSourceHasher();
     }
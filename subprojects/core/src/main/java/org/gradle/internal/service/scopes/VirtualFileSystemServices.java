@@ -26,6 +26,7 @@
 import org.gradle.api.internal.changedetection.state.CrossBuildFileHashCache;
 import org.gradle.api.internal.changedetection.state.DefaultResourceSnapshotterCacheService;
 import org.gradle.api.internal.changedetection.state.GlobalScopeFileTimeStampInspector;
+import org.gradle.api.internal.changedetection.state.ParallelZipHashing;
 import org.gradle.api.internal.changedetection.state.ResourceFilter;
 import org.gradle.api.internal.changedetection.state.ResourceSnapshotterCacheService;
 import org.gradle.api.internal.changedetection.state.SplitFileHasher;
@@ -40,7 +41,11 @@
 import org.gradle.cache.internal.VersionStrategy;
 import org.gradle.initialization.RootBuildLifecycleListener;
 import org.gradle.initialization.layout.ProjectCacheDir;
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.classloader.ClasspathHasher;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.OutputChangeListener;
 import org.gradle.internal.file.Stat;
@@ -65,6 +70,7 @@
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.service.ServiceRegistration;
@@ -80,8 +86,10 @@
 import org.gradle.internal.watch.vfs.WatchingAwareVirtualFileSystem;
 import org.gradle.internal.watch.vfs.impl.DelegatingDiffCapturingUpdateFunctionDecorator;
 import org.gradle.internal.watch.vfs.impl.NonWatchingVirtualFileSystem;
+import org.gradle.internal.watch.vfs.impl.SnapshotHierarchyStore;
 import org.gradle.internal.watch.vfs.impl.WatchingVirtualFileSystem;
 
+import java.util.concurrent.ExecutorService;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.List;
@@ -122,23 +130,39 @@ public class VirtualFileSystemServices extends AbstractPluginServiceRegistry {
      */
     public static final String VFS_DROP_PROPERTY = "org.gradle.unsafe.vfs.drop";
 
+    /**
+     * Boolean JVM system property to keep the user home file hashes in a memory-mapped table, instead of in an indexed cache.
+     */
+    public static final String MAPPED_FILE_HASHES_PROPERTY = "org.gradle.unsafe.mapped-file-hashes";
+
+    private static final int MAPPED_FILE_HASHES_MAX_CAPACITY = 1 << 22;
+
+    /**
+     * Boolean JVM system property to hash the entries of classpath jars in parallel, reusing the hashes of unchanged entries.
+     */
+    public static final String PARALLEL_ZIP_HASHING_PROPERTY = "org.gradle.unsafe.parallel-zip-hashing";
+
+    private static final int ZIP_ENTRY_HASHES_CACHE_SIZE = 200000;
+
+    /**
+     * Boolean JVM system property to hash the files of snapshotted directories on a pool of threads.
+     */
+    public static final String VFS_PARALLEL_SNAPSHOTTING_PROPERTY = "org.gradle.unsafe.vfs.parallel-snapshotting";
+
+    /**
+     * Boolean JVM system property to store the file system state retained by watching when the daemon stops, and to load the still unchanged parts of it in the next daemon.
+     *
+     * @see #VFS_RETENTION_ENABLED_PROPERTY
+     */
+    public static final String VFS_PERSISTENCE_PROPERTY = "org.gradle.unsafe.vfs.persistence";
+
     public static boolean isPartialInvalidationEnabled(Map<String, String> systemPropertiesArgs) {
-        return isSystemPropertyEnabled(VFS_PARTIAL_INVALIDATION_ENABLED_PROPERTY, systemPropertiesArgs)
+        return UnsafeFeatureFlags.isEnabled(VFS_PARTIAL_INVALIDATION_ENABLED_PROPERTY, systemPropertiesArgs)
             || isRetentionEnabled(systemPropertiesArgs);
     }
 
     public static boolean isRetentionEnabled(Map<String, String> systemPropertiesArgs) {
-        return isSystemPropertyEnabled(VFS_RETENTION_ENABLED_PROPERTY, systemPropertiesArgs);
-    }
-
-    private static boolean isSystemPropertyEnabled(String systemProperty, Map<String, String> systemPropertiesArgs) {
-        String value = getSystemProperty(systemProperty, systemPropertiesArgs);
-        return value != null && !"false".equalsIgnoreCase(value);
-    }
-
-    @Nullable
-    private static String getSystemProperty(String systemProperty, Map<String, String> systemPropertiesArgs) {
-        return systemPropertiesArgs.getOrDefault(systemProperty, System.getProperty(systemProperty));
+        return UnsafeFeatureFlags.isEnabled(VFS_RETENTION_ENABLED_PROPERTY, systemPropertiesArgs);
     }
 
     @Override
@@ -151,15 +175,49 @@ public void registerBuildSessionServices(ServiceRegistration registration) {
         registration.addProvider(new BuildSessionServices());
     }
 
+    /**
+     * The executor that hashes the files of snapshotted directories when parallel snapshotting is enabled.
+     * It is shared by the virtual file systems of the Gradle user home and of the build sessions, and stopped with the Gradle user home services.
+     */
+    public static class SnapshottingExecutor implements Stoppable {
+        @Nullable
+        private final ManagedExecutor executor;
+
+        public SnapshottingExecutor(@Nullable ManagedExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Nullable
+        public ExecutorService getExecutor() {
+            return executor;
+        }
+
+        @Override
+        public void stop() {
+            if (executor != null) {
+                executor.stop();
+            }
+        }
+    }
+
     @VisibleForTesting
     static class GradleUserHomeServices {
 
+        SnapshottingExecutor createSnapshottingExecutor(ExecutorFactory executorFactory) {
+            if (!UnsafeFeatureFlags.isEnabled(VFS_PARALLEL_SNAPSHOTTING_PROPERTY)) {
+                return new SnapshottingExecutor(null);
+            }
+            return new SnapshottingExecutor(executorFactory.create("File system snapshotting", Runtime.getRuntime().availableProcessors()));
+        }
+
         CrossBuildFileHashCache createCrossBuildFileHashCache(CacheRepository cacheRepository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
             return new CrossBuildFileHashCache(null, cacheRepository, inMemoryCacheDecoratorFactory, CrossBuildFileHashCache.Kind.FILE_HASHES);
         }
 
         FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher) {
-            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
+            CachingFileHasher fileHasher = UnsafeFeatureFlags.isEnabled(MAPPED_FILE_HASHES_PROPERTY)
+                ? new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem, 1000, MAPPED_FILE_HASHES_MAX_CAPACITY)
+                : new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
             fileTimeStampInspector.attach(fileHasher);
             return fileHasher;
         }
@@ -170,7 +228,9 @@ WatchingAwareVirtualFileSystem createVirtualFileSystem(
             FileSystem fileSystem,
             Stat stat,
             StringInterner stringInterner,
-            ListenerManager listenerManager
+            ListenerManager listenerManager,
+            CacheScopeMapping cacheScopeMapping,
+            SnapshottingExecutor snapshottingExecutor
         ) {
             Predicate<String> watchFilter = path -> !additiveCacheLocations.isInsideAdditiveCache(path);
             DelegatingDiffCapturingUpdateFunctionDecorator updateFunctionDecorator = new DelegatingDiffCapturingUpdateFunctionDecorator(watchFilter);
@@ -180,6 +240,7 @@ WatchingAwareVirtualFileSystem createVirtualFileSystem(
                 stat,
                 fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE,
                 updateFunctionDecorator,
+                snapshottingExecutor.getExecutor(),
                 DirectoryScanner.getDefaultExcludes()
             );
             WatchingAwareVirtualFileSystem watchingAwareVirtualFileSystem = determineWatcherRegistryFactory(OperatingSystem.current())
@@ -187,18 +248,28 @@ WatchingAwareVirtualFileSystem createVirtualFileSystem(
                     watcherRegistryFactory,
                     delegate,
                     updateFunctionDecorator,
-                    watchFilter
+                    watchFilter,
+                    createSnapshotHierarchyStore(cacheScopeMapping, stat)
                 ))
                 .orElse(new NonWatchingVirtualFileSystem(delegate));
             listenerManager.addListener(new VirtualFileSystemBuildLifecycleListener(
                 watchingAwareVirtualFileSystem,
                 startParameter -> isRetentionEnabled(startParameter.getSystemPropertiesArgs()),
-                startParameter -> isSystemPropertyEnabled(VFS_DROP_PROPERTY, startParameter.getSystemPropertiesArgs()),
-                startParameter -> getSystemProperty(VFS_CHANGES_SINCE_LAST_BUILD_PROPERTY, startParameter.getSystemPropertiesArgs())
+                startParameter -> UnsafeFeatureFlags.isEnabled(VFS_DROP_PROPERTY, startParameter.getSystemPropertiesArgs()),
+                startParameter -> UnsafeFeatureFlags.getValue(VFS_CHANGES_SINCE_LAST_BUILD_PROPERTY, startParameter.getSystemPropertiesArgs())
             ));
             return watchingAwareVirtualFileSystem;
         }
 
+        @Nullable
+        private SnapshotHierarchyStore createSnapshotHierarchyStore(CacheScopeMapping cacheScopeMapping, Stat stat) {
+            if (!UnsafeFeatureFlags.isEnabled(VFS_PERSISTENCE_PROPERTY)) {
+                return null;
+            }
+            File stateDir = cacheScopeMapping.getBaseDirectory(null, "vfs-state", VersionStrategy.CachePerVersion);
+            return new SnapshotHierarchyStore(new File(stateDir, "vfs.bin"), stat);
+        }
+
         private Optional<FileWatcherRegistryFactory> determineWatcherRegistryFactory(OperatingSystem operatingSystem) {
             if (operatingSystem.isMacOsX()) {
                 return Optional.of(new DarwinFileWatcherRegistryFactory());
@@ -226,8 +297,15 @@ ResourceSnapshotterCacheService createResourceSnapshotterCacheService(CrossBuild
             return new DefaultResourceSnapshotterCacheService(resourceHashesCache);
         }
 
-        ClasspathFingerprinter createClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner) {
-            return new DefaultClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, ResourceFilter.FILTER_NOTHING, stringInterner);
+        ParallelZipHashing createParallelZipHashing() {
+            if (!UnsafeFeatureFlags.isEnabled(PARALLEL_ZIP_HASHING_PROPERTY)) {
+                return ParallelZipHashing.DISABLED;
+            }
+            return new ParallelZipHashing(ZIP_ENTRY_HASHES_CACHE_SIZE);
+        }
+
+        ClasspathFingerprinter createClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, ParallelZipHashing parallelZipHashing) {
+            return new DefaultClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, ResourceFilter.FILTER_NOTHING, stringInterner, parallelZipHashing);
         }
 
         ClasspathHasher createClasspathHasher(ClasspathFingerprinter fingerprinter, FileCollectionFactory fileCollectionFactory) {
@@ -263,7 +341,8 @@ VirtualFileSystem createVirtualFileSystem(
             StartParameter startParameter,
             Stat stat,
             StringInterner stringInterner,
-            VirtualFileSystem gradleUserHomeVirtualFileSystem
+            VirtualFileSystem gradleUserHomeVirtualFileSystem,
+            SnapshottingExecutor snapshottingExecutor
         ) {
             VirtualFileSystem buildSessionsScopedVirtualFileSystem = new DefaultVirtualFileSystem(
                 hasher,
@@ -271,6 +350,7 @@ VirtualFileSystem createVirtualFileSystem(
                 stat,
                 fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE,
                 SnapshotHierarchy.DiffCapturingUpdateFunctionDecorator.NOOP,
+                snapshottingExecutor.getExecutor(),
                 DirectoryScanner.getDefaultExcludes()
             );
             RoutingVirtualFileSystem routingVirtualFileSystem = new RoutingVirtualFileSystem(
@@ -348,8 +428,13 @@ ResourceSnapshotterCacheService createResourceSnapshotterCacheService(
             return new SplitResourceSnapshotterCacheService(globalCache, localCache, additiveCacheLocations);
         }
 
-        CompileClasspathFingerprinter createCompileClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner) {
-            return new DefaultCompileClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, stringInterner);
+        // Overrides the Gradle user home ParallelZipHashing, to hash zip entries with the build operation executor of the session
+        ParallelZipHashing createParallelZipHashing(ParallelZipHashing parent, BuildOperationExecutor buildOperationExecutor) {
+            return parent.withBuildOperationExecutor(buildOperationExecutor);
+        }
+
+        CompileClasspathFingerprinter createCompileClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, ParallelZipHashing parallelZipHashing) {
+            return new DefaultCompileClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, stringInterner, parallelZipHashing);
         }
 
     }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.taskgraph;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+import java.util.List;
+
+/**
+ * Ordering the task execution plan by the length of the critical path starting at each task,
+ * so that tasks which much other work waits for are started first.
+ */
+public final class CalculateTaskPrioritiesBuildOperationType implements BuildOperationType<CalculateTaskPrioritiesBuildOperationType.Details, CalculateTaskPrioritiesBuildOperationType.Result> {
+
+    public interface PrioritizedTask {
+
+        /**
+         * The identity path of the task.
+         */
+        String getTaskPath();
+
+        /**
+         * The expected duration of the task in milliseconds, based on previous executions, or -1 if unknown.
+         */
+        long getExpectedDuration();
+
+        /**
+         * The expected duration in milliseconds of the longest chain of work from the start of the task to the end of the plan.
+         */
+        long getCriticalPathDuration();
+
+    }
+
+    public interface Details {
+
+        /**
+         * The build path of the prioritized execution plan.
+         */
+        String getBuildPath();
+    }
+
+    public interface Result {
+
+        /**
+         * The tasks of the plan, in the order in which they are preferred for execution.
+         */
+        List<PrioritizedTask> getTaskOrder();
+    }
+
+    private CalculateTaskPrioritiesBuildOperationType() {
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.cache.CacheAccess
+import org.gradle.internal.Factory
+import org.gradle.internal.hash.Hashing
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class MappedFileHashStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def storeFile = tmpDir.file("fileHashes.bin")
+    def hash = Hashing.md5().hashString("content")
+    def fileLock = Mock(CacheAccess) {
+        _ * withFileLock(_ as Factory) >> { Factory action -> action.create() }
+        _ * withFileLock(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+    MappedFileHashStore store = new MappedFileHashStore(storeFile, fileLock, 1024, 4)
+
+    def cleanup() {
+        store.close()
+    }
+
+    def "returns stored hash when length and timestamp match"() {
+        when:
+        store.put("/some/file", 12, 34, hash)
+
+        then:
+        store.get("/some/file", 12, 34) == hash
+        store.get("/some/file", 13, 34) == null
+        store.get("/some/file", 12, 35) == null
+        store.get("/some/other-file", 12, 34) == null
+    }
+
+    def "replaces entry for the same path"() {
+        def newHash = Hashing.md5().hashString("new content")
+
+        when:
+        store.put("/some/file", 12, 34, hash)
+        store.put("/some/file", 14, 36, newHash)
+
+        then:
+        store.get("/some/file", 12, 34) == null
+        store.get("/some/file", 14, 36) == newHash
+    }
+
+    def "discards removed entries"() {
+        when:
+        store.put("/some/file", 12, 34, hash)
+        store.remove("/some/file")
+
+        then:
+        store.get("/some/file", 12, 34) == null
+
+        when:
+        store.put("/some/file", 12, 34, hash)
+
+        then:
+        store.get("/some/file", 12, 34) == hash
+    }
+
+    def "does not store hashes that are not 128 bits long"() {
+        expect:
+        !store.put("/some/file", 12, 34, Hashing.sha1().hashString("content"))
+        store.get("/some/file", 12, 34) == null
+    }
+
+    def "keeps entries when reopened"() {
+        when:
+        store.put("/some/file", 12, 34, hash)
+        store.close()
+        store = new MappedFileHashStore(storeFile, fileLock, 1024, 4)
+
+        then:
+        store.get("/some/file", 12, 34) == hash
+    }
+
+    def "starts empty when the file has a different format"() {
+        when:
+        store.put("/some/file", 12, 34, hash)
+        store.close()
+        storeFile.withDataOutputStream { it.writeInt(0) }
+        store = new MappedFileHashStore(storeFile, fileLock, 1024, 4)
+
+        then:
+        store.get("/some/file", 12, 34) == null
+    }
+
+    def "grows the file with the number of entries and keeps entries when growing"() {
+        given:
+        store.close()
+        storeFile.delete()
+        store = new MappedFileHashStore(storeFile, fileLock, 1 << 20, 4)
+        def initialLength = storeFile.length()
+
+        when:
+        (1..20000).each {
+            store.put("/file-$it", it, it, Hashing.md5().hashString("content-$it"))
+        }
+
+        then:
+        initialLength < 1024 * 1024 + 1024
+        storeFile.length() > initialLength
+        (1..20000).every { store.get("/file-$it", it, it) == Hashing.md5().hashString("content-$it") }
+    }
+
+    def "sees entries added by another store that has grown the same file"() {
+        given:
+        store.close()
+        storeFile.delete()
+        store = new MappedFileHashStore(storeFile, fileLock, 1 << 20, 4)
+        def other = new MappedFileHashStore(storeFile, fileLock, 1 << 20, 4)
+
+        when:
+        (1..20000).each {
+            other.put("/file-$it", it, it, Hashing.md5().hashString("content-$it"))
+        }
+        other.flush()
+
+        then:
+        store.get("/file-20000", 20000, 20000) == Hashing.md5().hashString("content-20000")
+
+        cleanup:
+        other.close()
+    }
+
+    def "looks up hashes without taking the file lock and writes recorded hashes in batches"() {
+        when:
+        (1..3).each {
+            store.put("/file-$it", it, it, Hashing.md5().hashString("content-$it"))
+        }
+        def result = store.get("/file-1", 1, 1)
+
+        then:
+        0 * fileLock._
+        result == Hashing.md5().hashString("content-1")
+
+        when:
+        store.flush()
+        store.flush()
+
+        then:
+        1 * fileLock.withFileLock(_ as Runnable) >> { Runnable action -> action.run() }
+        0 * fileLock._
+
+        when:
+        store.remove("/file-1")
+
+        then:
+        1 * fileLock.withFileLock(_ as Runnable) >> { Runnable action -> action.run() }
+        store.get("/file-1", 1, 1) == null
+        store.get("/file-2", 2, 2) == Hashing.md5().hashString("content-2")
+    }
+
+    def "another store sees recorded hashes once they are written"() {
+        def other = new MappedFileHashStore(storeFile, fileLock, 1024, 4)
+
+        when:
+        store.put("/some/file", 12, 34, hash)
+
+        then:
+        other.get("/some/file", 12, 34) == null
+
+        when:
+        store.flush()
+
+        then:
+        other.get("/some/file", 12, 34) == hash
+
+        cleanup:
+        other.close()
+    }
+
+    def "writes recorded hashes once a batch is full"() {
+        when:
+        (1..300).each {
+            store.put("/file-$it", it, it, Hashing.md5().hashString("content-$it"))
+        }
+
+        then:
+        1 * fileLock.withFileLock(_ as Runnable) >> { Runnable action -> action.run() }
+        0 * fileLock._
+    }
+
+    def "discards recorded hash that was not written yet"() {
+        when:
+        store.put("/some/file", 12, 34, hash)
+        store.remove("/some/file")
+        store.flush()
+
+        then:
+        store.get("/some/file", 12, 34) == null
+
+        when:
+        store.close()
+        store = new MappedFileHashStore(storeFile, fileLock, 1024, 4)
+
+        then:
+        store.get("/some/file", 12, 34) == null
+    }
+
+    def "keeps serving lookups when more entries are stored than the table holds"() {
+        when:
+        (1..5000).each {
+            store.put("/file-$it", it, it, Hashing.md5().hashString("content-$it"))
+        }
+        store.flush()
+
+        then:
+        store.get("/file-5000", 5000, 5000) == Hashing.md5().hashString("content-5000")
+        (1..5000).count { store.get("/file-$it", it, it) != null } <= 1024
+    }
+}
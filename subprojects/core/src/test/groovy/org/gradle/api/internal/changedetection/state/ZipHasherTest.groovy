@@ -16,12 +16,16 @@
 
 package org.gradle.api.internal.changedetection.state
 
+import org.gradle.api.internal.file.archive.ZipEntry
 import org.gradle.internal.file.FileMetadata.AccessType
 import org.gradle.internal.file.impl.DefaultFileMetadata
 import org.gradle.internal.hash.HashCode
+import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.snapshot.RegularFileSnapshot
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
 import org.junit.Rule
 import spock.lang.Specification
 
@@ -31,6 +35,9 @@ class ZipHasherTest extends Specification {
     TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
 
     ZipHasher zipHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING)
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+    ParallelZipHashing parallelZipHashing = new ParallelZipHashing(1000).withBuildOperationExecutor(buildOperationExecutor)
+    ZipHasher parallelZipHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING, parallelZipHashing)
 
     def "adding an empty jar inside another jar changes the hashcode"() {
         given:
@@ -74,6 +81,69 @@ class ZipHasherTest extends Specification {
         hash1 != hash2
     }
 
+    @Requires(TestPrecondition.JDK11_OR_LATER)
+    def "parallel hashing produces the same hash as sequential hashing"() {
+        given:
+        def content = tmpDir.createDir("content")
+        (1..300).each {
+            content.file("dir${it % 7}/file${it}.txt") << "content $it"
+        }
+        def innerContent = tmpDir.createDir("inner")
+        innerContent.file("foo") << "Foo"
+        innerContent.zipTo(content.file("lib/inner.jar"))
+        def zip = tmpDir.file("content.jar")
+        content.zipTo(zip)
+
+        expect:
+        parallelZipHasher.hash(snapshot(zip)) == zipHasher.hash(snapshot(zip))
+        buildOperationExecutor.operations*.displayName == ["Hash 128 zip entries", "Hash 128 zip entries", "Hash 45 zip entries"]
+    }
+
+    @Requires(TestPrecondition.JDK9_OR_EARLIER)
+    def "hashes entries on the calling thread when zip files are not safe to use in parallel"() {
+        given:
+        def content = tmpDir.createDir("content")
+        (1..300).each {
+            content.file("file${it}.txt") << "content $it"
+        }
+        def zip = tmpDir.file("content.jar")
+        content.zipTo(zip)
+
+        expect:
+        parallelZipHasher.hash(snapshot(zip)) == zipHasher.hash(snapshot(zip))
+        buildOperationExecutor.operations.empty
+    }
+
+    def "hashes entries on the calling thread when parallel hashing is disabled"() {
+        expect:
+        !ParallelZipHashing.DISABLED.isEnabled()
+        ParallelZipHashing.DISABLED.withBuildOperationExecutor(buildOperationExecutor) == ParallelZipHashing.DISABLED
+        !new ParallelZipHashing(1000).isEnabled()
+    }
+
+    @Requires(TestPrecondition.JDK11_OR_LATER)
+    def "parallel hashing reuses hashes of unchanged entries"() {
+        given:
+        def resourceHasher = Spy(RuntimeClasspathResourceHasher)
+        def hasher = new ZipHasher(resourceHasher, ResourceFilter.FILTER_NOTHING, parallelZipHashing)
+        def content = tmpDir.createDir("content")
+        (1..100).each {
+            content.file("file${it}.txt") << "content $it"
+        }
+        def zip = tmpDir.file("content.jar")
+        content.zipTo(zip)
+        hasher.hash(snapshot(zip))
+
+        when:
+        content.file("file1.txt").text = "changed"
+        content.zipTo(zip)
+        def hash = hasher.hash(snapshot(zip))
+
+        then:
+        1 * resourceHasher.hash(_ as ZipEntry)
+        hash == zipHasher.hash(snapshot(zip))
+    }
+
     private static RegularFileSnapshot snapshot(TestFile file) {
         new RegularFileSnapshot(file.path, file.name, HashCode.fromInt(0), DefaultFileMetadata.file(0, 0, AccessType.DIRECT))
     }
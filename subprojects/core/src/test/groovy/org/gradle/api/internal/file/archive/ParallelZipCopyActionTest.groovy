@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.archive
+package org.gradle.api.internal.file.archive
+
+import org.apache.tools.zip.ZipOutputStream
+import org.gradle.api.file.RelativePath
+import org.gradle.api.internal.DocumentationRegistry
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.test.fixtures.archive.ZipTestFixture
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.nio.charset.Charset
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+
+class ParallelZipCopyActionTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+    def random = new Random(1234)
+
+    def "writes entries in the order they were visited"() {
+        def zipFile = tmpDir.file("test.zip")
+        def files = [dir("dir")] + (0..<100).collect { file("dir/file$it", "contents of $it " * it) }
+
+        when:
+        zip(zipFile, ZipOutputStream.DEFLATED, files)
+
+        then:
+        def zip = new ZipFile(zipFile)
+        zip.entries()*.name == ["dir/"] + (0..<100).collect { "dir/file$it" }
+        (0..<100).every { zip.getInputStream(zip.getEntry("dir/file$it")).text == "contents of $it " * it }
+        new ZipTestFixture(zipFile).assertFileMode("dir/", 2)
+
+        cleanup:
+        zip?.close()
+    }
+
+    def "produces the same bytes on every run"() {
+        def files = (0..<50).collect { file("file$it", "contents of $it " * random.nextInt(1000)) }
+        def first = tmpDir.file("first.zip")
+        def second = tmpDir.file("second.zip")
+
+        when:
+        zip(first, ZipOutputStream.DEFLATED, files)
+        zip(second, ZipOutputStream.DEFLATED, files)
+
+        then:
+        first.bytes == second.bytes
+    }
+
+    def "stores entries that do not get smaller when deflated"() {
+        def zipFile = tmpDir.file("test.zip")
+        def incompressible = new byte[10_000]
+        random.nextBytes(incompressible)
+
+        when:
+        zip(zipFile, ZipOutputStream.DEFLATED, [file("random.bin", incompressible), file("text.txt", "text " * 1000)])
+
+        then:
+        def zip = new ZipFile(zipFile)
+        zip.getEntry("random.bin").method == ZipEntry.STORED
+        zip.getInputStream(zip.getEntry("random.bin")).bytes == incompressible
+        zip.getEntry("text.txt").method == ZipEntry.DEFLATED
+        zip.getInputStream(zip.getEntry("text.txt")).text == "text " * 1000
+
+        cleanup:
+        zip?.close()
+    }
+
+    def "compresses entries in batches"() {
+        def zipFile = tmpDir.file("test.zip")
+        def files = (0..<100).collect { file("file$it", "contents of $it") }
+
+        when:
+        zip(zipFile, ZipOutputStream.DEFLATED, files)
+
+        then:
+        buildOperationExecutor.operations*.displayName == ["Compress 64 zip entries", "Compress 36 zip entries"]
+    }
+
+    @Requires({ Charset.defaultCharset().newEncoder().canEncode("\u00e4\u00f6\u00fc") })
+    def "uses the platform charset for entry names when no charset is set"() {
+        def zipFile = tmpDir.file("test.zip")
+        def name = "\u00e4\u00f6\u00fc.txt"
+
+        when:
+        zip(zipFile, ZipOutputStream.DEFLATED, null, [file(name, "content")])
+
+        then:
+        def zip = new ZipFile(zipFile, Charset.defaultCharset())
+        zip.entries()*.name == [name]
+
+        cleanup:
+        zip?.close()
+    }
+
+    def "streams large entries"() {
+        def zipFile = tmpDir.file("test.zip")
+        def large = new byte[5 * 1024 * 1024]
+
+        when:
+        zip(zipFile, ZipOutputStream.DEFLATED, [file("small", "small"), file("large", large), file("other", "other")])
+
+        then:
+        def zip = new ZipFile(zipFile)
+        zip.entries()*.name == ["small", "large", "other"]
+        zip.getInputStream(zip.getEntry("large")).bytes == large
+
+        cleanup:
+        zip?.close()
+    }
+
+    def "wraps failure to add element"() {
+        def zipFile = tmpDir.file("test.zip")
+        def failure = new RuntimeException("broken")
+        def brokenFile = Mock(FileCopyDetailsInternal) {
+            getRelativePath() >> RelativePath.parse(true, "broken")
+            getSize() >> 10L
+            getMode() >> 1
+            copyTo(_ as OutputStream) >> { throw failure }
+        }
+
+        when:
+        zip(zipFile, ZipOutputStream.DEFLATED, [brokenFile])
+
+        then:
+        def e = thrown(Exception)
+        e.message == "Could not add $brokenFile to ZIP '$zipFile'."
+        e.cause.is(failure)
+    }
+
+    private void zip(TestFile zipFile, int method, List<FileCopyDetailsInternal> files) {
+        zip(zipFile, method, "UTF-8", files)
+    }
+
+    private void zip(TestFile zipFile, int method, String encoding, List<FileCopyDetailsInternal> files) {
+        new ParallelZipCopyAction(zipFile, false, method, new DocumentationRegistry(), encoding, false, buildOperationExecutor).execute(new CopyActionProcessingStream() {
+            void process(CopyActionProcessingStreamAction action) {
+                files.each { action.processFile(it) }
+            }
+        })
+    }
+
+    private FileCopyDetailsInternal file(String path, String content) {
+        file(path, content.bytes)
+    }
+
+    private FileCopyDetailsInternal file(String path, byte[] content) {
+        Mock(FileCopyDetailsInternal) {
+            getRelativePath() >> RelativePath.parse(true, path)
+            isDirectory() >> false
+            getMode() >> 1
+            getSize() >> (long) content.length
+            copyTo(_ as OutputStream) >> { OutputStream out -> out.write(content) }
+        }
+    }
+
+    private FileCopyDetailsInternal dir(String path) {
+        Mock(FileCopyDetailsInternal) {
+            getRelativePath() >> RelativePath.parse(false, path)
+            isDirectory() >> true
+            getMode() >> 2
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.copy
+
+import org.gradle.api.file.RelativePath
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.hash.Hashing
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.vfs.VirtualFileSystem
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.util.function.Function
+
+import static org.gradle.api.internal.file.copy.CopyActionExecuterUtil.visit
+import static org.gradle.api.internal.file.copy.ParallelFileCopyAction.TransferMode.HARD_LINK
+import static org.gradle.api.internal.file.copy.ParallelFileCopyAction.TransferMode.TRANSFER
+
+class ParallelFileCopyActionTest extends Specification {
+    @Rule
+    public TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def sourceDir = tmpDir.createDir("source")
+    def destDir = tmpDir.file("dest")
+    def fileSystem = TestFiles.fileSystem()
+    def updatedLocations = []
+    def virtualFileSystem = Stub(VirtualFileSystem) {
+        readRegularFileContentHash(_ as String, _ as Function) >> { String location, Function visitor ->
+            def file = new File(location)
+            file.isFile() ? Optional.of(visitor.apply(Hashing.hashBytes(file.bytes))) : Optional.empty()
+        }
+        update(_ as Iterable, _ as Runnable) >> { Iterable<String> locations, Runnable action ->
+            updatedLocations.addAll(locations)
+            action.run()
+        }
+    }
+
+    @Unroll
+    def "copies unfiltered files using #transferMode"() {
+        def files = (0..<600).collect { file("dir${it % 10}/file$it.txt", "content $it") }
+
+        when:
+        visit(action(transferMode), files)
+
+        then:
+        (0..<600).every { destDir.file("dir${it % 10}/file$it.txt").text == "content $it" }
+        updatedLocations.size() == 600
+
+        where:
+        transferMode << [TRANSFER, HARD_LINK]
+    }
+
+    def "does not write files that already have the same content"() {
+        def unchanged = file("unchanged.txt", "unchanged")
+        def changed = file("changed.txt", "changed")
+        destDir.file("unchanged.txt").text = "unchanged"
+        destDir.file("changed.txt").text = "old"
+
+        when:
+        visit(action(TRANSFER), unchanged, changed)
+
+        then:
+        updatedLocations == [destDir.file("changed.txt").absolutePath]
+        destDir.file("unchanged.txt").text == "unchanged"
+        destDir.file("changed.txt").text == "changed"
+    }
+
+    def "copies the last file visited for a target"() {
+        def first = sourceFile("first.txt", "first")
+        def second = sourceFile("second.txt", "second")
+
+        when:
+        visit(action(TRANSFER), details(first, "target.txt"), details(second, "target.txt"))
+
+        then:
+        destDir.file("target.txt").text == "second"
+    }
+
+    def "copies filtered files on the calling thread"() {
+        def filtered = Mock(FileCopyDetailsInternal) {
+            getRelativePath() >> RelativePath.parse(true, "filtered.txt")
+            getUnfilteredSourceFile() >> null
+        }
+
+        when:
+        visit(action(TRANSFER), filtered)
+
+        then:
+        1 * filtered.copyTo(destDir.file("filtered.txt")) >> true
+        updatedLocations.empty
+    }
+
+    def "does not write through a hard link to the source"() {
+        def source = sourceFile("file.txt", "content")
+
+        when:
+        visit(action(HARD_LINK), details(source, "file.txt", 0644))
+
+        then:
+        Files.isSameFile(destDir.file("file.txt").toPath(), source.toPath())
+
+        when:
+        visit(action(HARD_LINK), details(source, "file.txt", 0600))
+
+        then:
+        !Files.isSameFile(destDir.file("file.txt").toPath(), source.toPath())
+        fileSystem.getUnixMode(source) == 0644
+        fileSystem.getUnixMode(destDir.file("file.txt")) == 0600
+        destDir.file("file.txt").text == "content"
+    }
+
+    @Unroll
+    def "does not write through a hard link left by an earlier copy when it is copied #copy"() {
+        def source = sourceFile("file.txt", "content")
+        visit(action(HARD_LINK), details(source, "file.txt"))
+        assert Files.isSameFile(destDir.file("file.txt").toPath(), source.toPath())
+
+        when:
+        visit(followUp.call(), followUpDetails.call())
+
+        then:
+        source.text == "content"
+        fileSystem.getUnixMode(source) == 0644
+        destDir.file("file.txt").text == "changed"
+
+        where:
+        copy                          | followUp                                            | followUpDetails
+        "with transfer"               | { action(TRANSFER) }                                | { details(sourceFile("other.txt", "changed"), "file.txt") }
+        "filtered"                    | { action(TRANSFER) }                                | { filtered("file.txt", "changed") }
+        "without the parallel action" | { new FileCopyAction(TestFiles.resolver(destDir)) } | { filtered("file.txt", "changed") }
+    }
+
+    private ParallelFileCopyAction action(ParallelFileCopyAction.TransferMode transferMode) {
+        new ParallelFileCopyAction(TestFiles.resolver(destDir), transferMode, virtualFileSystem, fileSystem, new TestBuildOperationExecutor())
+    }
+
+    private TestFile sourceFile(String path, String content) {
+        def file = sourceDir.file(path)
+        file.text = content
+        fileSystem.chmod(file, 0644)
+        file
+    }
+
+    private FileCopyDetailsInternal file(String path, String content) {
+        details(sourceFile(path, content), path)
+    }
+
+    private FileCopyDetailsInternal filtered(String path, String content) {
+        Stub(FileCopyDetailsInternal) {
+            getRelativePath() >> RelativePath.parse(true, path)
+            getUnfilteredSourceFile() >> null
+            copyTo(_ as File) >> { File target ->
+                target.text = content
+                true
+            }
+        }
+    }
+
+    private FileCopyDetailsInternal details(File source, String path, int mode = 0644) {
+        Stub(FileCopyDetailsInternal) {
+            getRelativePath() >> RelativePath.parse(true, path)
+            getUnfilteredSourceFile() >> source
+            getMode() >> mode
+        }
+    }
+}
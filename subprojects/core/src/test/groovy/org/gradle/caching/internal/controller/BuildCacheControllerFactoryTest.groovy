@@ -30,6 +30,7 @@ import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperation
 import org.gradle.caching.internal.services.BuildCacheControllerFactory
 import org.gradle.caching.local.DirectoryBuildCache
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.util.Path
 import org.gradle.util.TestUtil
@@ -66,7 +67,9 @@ class BuildCacheControllerFactoryTest extends Specification {
             ONLINE,
             logStacktraces,
             emitDebugLogging,
-            TestUtil.instantiatorFactory().inject()
+            TestUtil.instantiatorFactory().inject(),
+            new DefaultExecutorFactory(),
+            0
         )
         assert controllerType.isInstance(controller)
         controllerType.cast(controller)
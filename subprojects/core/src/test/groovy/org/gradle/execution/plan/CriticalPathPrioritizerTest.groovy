@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan
+
+import org.gradle.api.Task
+import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.tasks.TaskExecutionOutcome
+import org.gradle.composite.internal.IncludedBuildTaskGraph
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.resources.ResourceLockState
+import org.gradle.internal.taskgraph.CalculateTaskPrioritiesBuildOperationType
+import org.gradle.internal.time.Clock
+import org.gradle.internal.work.WorkerLeaseRegistry
+import org.gradle.util.Path
+
+class CriticalPathPrioritizerTest extends AbstractExecutionPlanSpec {
+    def durations = [:]
+    def durationHistory = Mock(TaskDurationHistory) {
+        getExpectedDuration(_) >> { Path path -> durations.getOrDefault(path.path, -1L) }
+    }
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+    def currentTime = 0L
+    def clock = Stub(Clock) {
+        getCurrentTime() >> { currentTime }
+    }
+    def workerLease = Stub(WorkerLeaseRegistry.WorkerLease) {
+        tryLock() >> true
+    }
+    DefaultExecutionPlan executionPlan
+
+    def setup() {
+        def taskNodeFactory = new TaskNodeFactory(thisBuild, Stub(IncludedBuildTaskGraph))
+        def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
+        executionPlan = new DefaultExecutionPlan(thisBuild, taskNodeFactory, dependencyResolver, new CriticalPathPrioritizer(durationHistory, buildOperationExecutor, clock), null)
+    }
+
+    def "starts longest independent task first"() {
+        given:
+        durations[":a"] = 10L
+        durations[":b"] = 1000L
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [a, b])
+
+        when:
+        addToGraphAndPopulate([c])
+
+        then:
+        executedTasks == [b, a, c]
+    }
+
+    def "starts task with the longest chain of dependent work first"() {
+        given:
+        durations[":a"] = 10L
+        durations[":b"] = 10L
+        durations[":c"] = 500L
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [b])
+        Task d = task("d", dependsOn: [a, c])
+
+        when:
+        addToGraphAndPopulate([d])
+
+        then:
+        executedTasks == [b, c, a, d]
+    }
+
+    def "keeps #orderingRule ordering of tasks that take longer"() {
+        given:
+        durations[":a"] = 1000L
+        Task b = task("b")
+        Task a = task("a", (orderingRule): [b])
+
+        when:
+        addToGraphAndPopulate([a, b])
+
+        then:
+        executedTasks == [b, a]
+
+        where:
+        orderingRule << ['mustRunAfter', 'shouldRunAfter']
+    }
+
+    def "reports the chosen order"() {
+        given:
+        durations[":a"] = 10L
+        durations[":b"] = 1000L
+        Task a = task("a")
+        Task b = task("b")
+
+        when:
+        addToGraphAndPopulate([a, b])
+
+        then:
+        def result = buildOperationExecutor.log.mostRecentResult(CalculateTaskPrioritiesBuildOperationType)
+        result.taskOrder*.taskPath == [":b", ":a"]
+        result.taskOrder*.expectedDuration == [1000L, 10L]
+        result.taskOrder*.criticalPathDuration == [1000L, 10L]
+    }
+
+    def "records durations of executed tasks when plan is cleared"() {
+        given:
+        TaskInternal a = task("a")
+        TaskInternal b = task("b", dependsOn: [a])
+        a.state.outcome >> TaskExecutionOutcome.EXECUTED
+        b.state.outcome >> TaskExecutionOutcome.UP_TO_DATE
+        addToGraphAndPopulate([b])
+
+        when:
+        while (executionPlan.hasNodesRemaining()) {
+            def node = executionPlan.selectNext(workerLease, Stub(ResourceLockState))
+            currentTime += 25
+            executionPlan.finishedExecuting(node)
+        }
+        executionPlan.clear()
+
+        then:
+        1 * durationHistory.recordDurations([(Path.path(":a")): 25L])
+    }
+
+    private void addToGraphAndPopulate(List tasks) {
+        executionPlan.addEntryTasks(tasks)
+        executionPlan.determineExecutionPlan()
+    }
+
+    private List<Task> getExecutedTasks() {
+        def tasks = []
+        while (executionPlan.hasNodesRemaining()) {
+            def node = executionPlan.selectNext(workerLease, Stub(ResourceLockState))
+            assert node != null
+            tasks << node.task
+            executionPlan.finishedExecuting(node)
+        }
+        return tasks
+    }
+
+    private TaskInternal task(Map options = [:], String name) {
+        def task = createTask(name)
+        dependsOn(task, options.dependsOn ?: [])
+        mustRunAfter(task, options.mustRunAfter ?: [])
+        shouldRunAfter(task, options.shouldRunAfter ?: [])
+        finalizedBy(task, [])
+        task.getSharedResources() >> []
+        return task
+    }
+}
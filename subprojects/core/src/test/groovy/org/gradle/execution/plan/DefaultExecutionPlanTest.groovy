@@ -101,6 +101,35 @@ class DefaultExecutionPlanTest extends AbstractExecutionPlanSpec {
         executes(b, c, a, d)
     }
 
+    def "does not inspect nodes waiting for their dependencies when selecting the next node"() {
+        given:
+        def blocker = requiredNode()
+        def waiting = (1..5).collect { probedNode(blocker) }
+        def independent = (1..3).collect { requiredNode() }
+        executionPlan.addNodes([blocker] + waiting + independent)
+        executionPlan.determineExecutionPlan()
+
+        when:
+        def started = executionPlan.selectNext(workerLease, Mock(ResourceLockState))
+        waiting*.readinessChecks = 0
+        def selected = independent.collect {
+            def node = executionPlan.selectNext(workerLease, Mock(ResourceLockState))
+            executionPlan.finishedExecuting(node)
+            node
+        }
+
+        then:
+        started == blocker
+        selected == independent
+        waiting*.readinessChecks == [0] * waiting.size()
+
+        when:
+        executionPlan.finishedExecuting(blocker)
+
+        then:
+        executesNodes(*waiting)
+    }
+
     @Unroll
     def "schedules #orderingRule task dependencies in name order"() {
         given:
@@ -851,6 +880,18 @@ class DefaultExecutionPlanTest extends AbstractExecutionPlanSpec {
         }
     }
 
+    private ProbedNode probedNode(Node... dependencies) {
+        def action = Stub(WorkNodeAction)
+        _ * action.project >> null
+        def node = new ProbedNode(action)
+        dependencies.each {
+            node.addDependencySuccessor(it)
+        }
+        node.require()
+        node.dependenciesProcessed()
+        return node
+    }
+
     private Node node(Node... dependencies) {
         def action = Stub(WorkNodeAction)
         _ * action.project >> null
@@ -938,5 +979,19 @@ class DefaultExecutionPlanTest extends AbstractExecutionPlanSpec {
         task.getFinalizedBy() >> taskDependencyResolvingTo(task, [])
         return task
     }
+
+    private static class ProbedNode extends ActionNode {
+        int readinessChecks
+
+        ProbedNode(WorkNodeAction action) {
+            super(action)
+        }
+
+        @Override
+        boolean isReady() {
+            readinessChecks++
+            return super.isReady()
+        }
+    }
 }
 
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan
+
+import com.google.common.collect.ImmutableList
+import org.gradle.api.internal.TaskInternal
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.internal.controller.BuildCacheController
+import org.gradle.composite.internal.IncludedBuildTaskGraph
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.operations.BuildOperationRef
+import org.gradle.internal.resources.ResourceLockState
+import org.gradle.internal.service.ServiceRegistry
+import org.gradle.internal.work.WorkerLeaseRegistry
+import org.gradle.util.Path
+
+class UpcomingTaskPrefetcherTest extends AbstractExecutionPlanSpec {
+    def previousKeys = [:]
+    def readKeys = []
+    def cacheKeyHistory = Stub(TaskCacheKeyHistory) {
+        getPreviousCacheKey(_) >> { Path path ->
+            readKeys << path.path
+            previousKeys[path.path]
+        }
+    }
+    def buildCacheEnabled = true
+    def buildCache = Mock(BuildCacheController) {
+        isEnabled() >> { buildCacheEnabled }
+    }
+    def services = Stub(ServiceRegistry) {
+        get(BuildCacheController) >> buildCache
+    }
+    def scheduledPrefetches = []
+    def executorFactory = Stub(ExecutorFactory) {
+        create(_ as String, 1) >> Stub(ManagedExecutor) {
+            execute(_ as Runnable) >> { Runnable action -> scheduledPrefetches << action }
+        }
+    }
+    def prefetcher = new UpcomingTaskPrefetcher(cacheKeyHistory, services, executorFactory)
+    def workerLease = Stub(WorkerLeaseRegistry.WorkerLease) {
+        tryLock() >> true
+    }
+    DefaultExecutionPlan executionPlan
+
+    def setup() {
+        def taskNodeFactory = new TaskNodeFactory(thisBuild, Stub(IncludedBuildTaskGraph))
+        def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
+        executionPlan = new DefaultExecutionPlan(thisBuild, taskNodeFactory, dependencyResolver, null, prefetcher)
+    }
+
+    def "prefetches entries of upcoming tasks whose outputs were removed"() {
+        given:
+        def a = task("a")
+        def b = task("b", dependsOn: [a])
+        previousCacheKey(a, 1, temporaryFolder.file("a"))
+        previousCacheKey(b, 2, temporaryFolder.createFile("b"))
+        addToGraphAndPopulate([b])
+        prefetcher.start(Stub(BuildOperationRef))
+
+        when:
+        selectNext()
+        runScheduledPrefetches()
+
+        then:
+        1 * buildCache.prefetch({ BuildCacheKey key -> key.hashCode == HashCode.fromInt(1).toString() })
+        0 * buildCache.prefetch(_)
+    }
+
+    def "prefetches entry of an upcoming task once an earlier task removed its outputs"() {
+        given:
+        def clean = task("clean")
+        def b = task("b", mustRunAfter: [clean])
+        def output = temporaryFolder.createFile("b")
+        previousCacheKey(b, 2, output)
+        addToGraphAndPopulate([clean, b])
+        prefetcher.start(Stub(BuildOperationRef))
+
+        when:
+        def node = selectNext()
+        runScheduledPrefetches()
+
+        then:
+        node.task == clean
+        0 * buildCache.prefetch(_)
+
+        when:
+        output.delete()
+        executionPlan.finishedExecuting(node)
+        selectNext()
+        runScheduledPrefetches()
+
+        then:
+        1 * buildCache.prefetch({ BuildCacheKey key -> key.hashCode == HashCode.fromInt(2).toString() })
+    }
+
+    def "discards entries that were not loaded once the plan has finished"() {
+        given:
+        def a = task("a")
+        previousCacheKey(a, 1, temporaryFolder.file("a"))
+        addToGraphAndPopulate([a])
+        prefetcher.start(Stub(BuildOperationRef))
+        executionPlan.finishedExecuting(selectNext())
+        runScheduledPrefetches()
+
+        when:
+        prefetcher.finish()
+
+        then:
+        1 * buildCache.discardPrefetched({ BuildCacheKey key -> key.hashCode == HashCode.fromInt(1).toString() })
+    }
+
+    def "does not prefetch when the build cache is disabled"() {
+        given:
+        buildCacheEnabled = false
+        def a = task("a")
+        previousCacheKey(a, 1, temporaryFolder.file("a"))
+        addToGraphAndPopulate([a])
+        prefetcher.start(Stub(BuildOperationRef))
+
+        when:
+        selectNext()
+
+        then:
+        scheduledPrefetches.empty
+        0 * buildCache.prefetch(_)
+    }
+
+    def "examines upcoming tasks without holding the lock of the plan"() {
+        given:
+        def a = task("a")
+        def b = task("b", dependsOn: [a])
+        previousCacheKey(a, 1, temporaryFolder.file("a"))
+        previousCacheKey(b, 2, temporaryFolder.file("b"))
+        addToGraphAndPopulate([b])
+        prefetcher.start(Stub(BuildOperationRef))
+
+        when:
+        def node = selectNext()
+
+        then:
+        scheduledPrefetches.size() == 1
+        readKeys.empty
+        0 * buildCache.prefetch(_)
+
+        when:
+        executionPlan.finishedExecuting(node)
+        selectNext()
+
+        then:
+        // The candidates of the earlier selection have not been examined yet, so only the latest ones are
+        scheduledPrefetches.size() == 1
+        0 * buildCache.prefetch(_)
+
+        when:
+        runScheduledPrefetches()
+
+        then:
+        readKeys == [":b"]
+        1 * buildCache.prefetch({ BuildCacheKey key -> key.hashCode == HashCode.fromInt(2).toString() })
+        0 * buildCache.prefetch(_)
+    }
+
+    private void previousCacheKey(TaskInternal task, int key, File output) {
+        previousKeys[task.identityPath.path] = new TaskCacheKeyHistory.PreviousCacheKey(HashCode.fromInt(key), ImmutableList.of(output))
+    }
+
+    private void runScheduledPrefetches() {
+        def actions = new ArrayList<Runnable>(scheduledPrefetches)
+        scheduledPrefetches.clear()
+        actions*.run()
+    }
+
+    private Node selectNext() {
+        executionPlan.selectNext(workerLease, Stub(ResourceLockState))
+    }
+
+    private void addToGraphAndPopulate(List tasks) {
+        executionPlan.addEntryTasks(tasks)
+        executionPlan.determineExecutionPlan()
+    }
+
+    private TaskInternal task(Map options = [:], String name) {
+        def task = createTask(name)
+        dependsOn(task, options.dependsOn ?: [])
+        mustRunAfter(task, options.mustRunAfter ?: [])
+        shouldRunAfter(task, options.shouldRunAfter ?: [])
+        finalizedBy(task, [])
+        task.getSharedResources() >> []
+        return task
+    }
+}
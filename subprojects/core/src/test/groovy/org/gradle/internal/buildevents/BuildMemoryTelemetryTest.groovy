@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.archive
+package org.gradle.internal.buildevents
+
+import groovy.json.JsonSlurper
+import org.gradle.StartParameter
+import org.gradle.api.internal.GradleInternal
+import org.gradle.initialization.RootBuildLifecycleListener
+import org.gradle.internal.event.DefaultListenerManager
+import org.gradle.internal.id.UniqueId
+import org.gradle.internal.operations.BuildOperationExecutor
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.scopeids.id.BuildInvocationScopeId
+import org.gradle.internal.service.ServiceRegistry
+import org.gradle.internal.service.scopes.Scopes
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+
+class BuildMemoryTelemetryTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+    def buildInvocationId = new BuildInvocationScopeId(UniqueId.generate())
+    def startParameter = new StartParameter()
+    def gradle = Stub(GradleInternal) {
+        getStartParameter() >> startParameter
+        getServices() >> Stub(ServiceRegistry) {
+            get(BuildOperationExecutor) >> buildOperationExecutor
+            get(BuildInvocationScopeId) >> buildInvocationId
+        }
+    }
+    def telemetry = new BuildMemoryTelemetry()
+
+    def "records nothing when not enabled"() {
+        when:
+        telemetry.afterStart(gradle)
+        telemetry.taskExecuted(":compileJava", 100)
+        telemetry.beforeComplete(gradle)
+
+        then:
+        !BuildMemoryTelemetry.isEnabled(startParameter)
+        buildOperationExecutor.log.records.empty
+    }
+
+    def "emits memory usage of the build as a build operation"() {
+        startParameter.systemPropertiesArgs[BuildMemoryTelemetry.MEMORY_TELEMETRY_PROPERTY] = "true"
+
+        when:
+        telemetry.afterStart(gradle)
+        telemetry.taskExecuted(":compileJava", 100)
+        telemetry.taskExecuted(":test", 200)
+        telemetry.taskExecuted(":test", 50)
+        telemetry.taskExecuted(":unmeasured", -1)
+        telemetry.beforeComplete(gradle)
+
+        then:
+        def result = buildOperationExecutor.log.mostRecentResult(BuildMemoryUsageBuildOperationType)
+        result.taskAllocatedBytes == [":compileJava": 100L, ":test": 250L]
+        result.buildTimeMillis >= 0
+        result.gcCount >= 0
+        result.gcTimeMillis >= 0
+        result.maxHeapBytes != 0
+        result.usedHeapBytes > 0
+    }
+
+    def "writes memory usage of the build to the report directory"() {
+        def reportDir = tmpDir.file("reports")
+        startParameter.systemPropertiesArgs[BuildMemoryTelemetry.MEMORY_TELEMETRY_PROPERTY] = reportDir.absolutePath
+
+        when:
+        telemetry.afterStart(gradle)
+        telemetry.taskExecuted(":compileJava", 100)
+        telemetry.beforeComplete(gradle)
+
+        then:
+        def report = new JsonSlurper().parse(reportDir.file("${buildInvocationId.id.asString()}.json"))
+        report.taskAllocatedBytes == [":compileJava": 100]
+        report.containsKey("allocationRateBytesPerSecond")
+        report.containsKey("heapUsedAfterLastGcBytes")
+    }
+
+    def "measures the first build from its start"() {
+        startParameter.systemPropertiesArgs[BuildMemoryTelemetry.MEMORY_TELEMETRY_PROPERTY] = "true"
+        def processStart = ManagementFactory.runtimeMXBean.startTime
+
+        when:
+        def beforeStart = System.currentTimeMillis()
+        telemetry.afterStart(gradle)
+        telemetry.beforeComplete(gradle)
+        def afterComplete = System.currentTimeMillis()
+
+        then:
+        beforeStart > processStart
+        buildOperationExecutor.log.mostRecentResult(BuildMemoryUsageBuildOperationType).buildTimeMillis <= afterComplete - beforeStart
+    }
+
+    def "session listener manager notifies telemetry of the start of the first build"() {
+        def userHomeListenerManager = new DefaultListenerManager(Scopes.UserHome)
+        def sessionListenerManager = userHomeListenerManager.createChild(Scopes.BuildSession)
+        sessionListenerManager.addListener(telemetry)
+        def buildTreeListenerManager = sessionListenerManager.createChild(Scopes.BuildTree)
+        startParameter.systemPropertiesArgs[BuildMemoryTelemetry.MEMORY_TELEMETRY_PROPERTY] = "true"
+
+        when:
+        def beforeStart = System.currentTimeMillis()
+        buildTreeListenerManager.getBroadcaster(RootBuildLifecycleListener).afterStart(gradle)
+        buildTreeListenerManager.getBroadcaster(RootBuildLifecycleListener).beforeComplete(gradle)
+        def afterComplete = System.currentTimeMillis()
+
+        then:
+        buildOperationExecutor.log.mostRecentResult(BuildMemoryUsageBuildOperationType).buildTimeMillis <= afterComplete - beforeStart
+    }
+
+    def "records nothing when the start of the build was not seen"() {
+        startParameter.systemPropertiesArgs[BuildMemoryTelemetry.MEMORY_TELEMETRY_PROPERTY] = "true"
+
+        when:
+        telemetry.beforeComplete(gradle)
+
+        then:
+        buildOperationExecutor.log.records.empty
+    }
+
+    def "does not carry task allocations over to the next build"() {
+        startParameter.systemPropertiesArgs[BuildMemoryTelemetry.MEMORY_TELEMETRY_PROPERTY] = "true"
+
+        when:
+        telemetry.afterStart(gradle)
+        telemetry.taskExecuted(":compileJava", 100)
+        telemetry.beforeComplete(gradle)
+        telemetry.afterStart(gradle)
+        telemetry.taskExecuted(":test", 200)
+        telemetry.beforeComplete(gradle)
+
+        then:
+        buildOperationExecutor.log.mostRecentResult(BuildMemoryUsageBuildOperationType).taskAllocatedBytes == [":test": 200L]
+    }
+}
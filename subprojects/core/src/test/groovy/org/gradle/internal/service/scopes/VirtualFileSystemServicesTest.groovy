@@ -20,6 +20,7 @@ import org.gradle.StartParameter
 import org.gradle.api.internal.GradleInternal
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.initialization.RootBuildLifecycleListener
+import org.gradle.internal.concurrent.ManagedExecutor
 import org.gradle.internal.event.ListenerManager
 import org.gradle.internal.hash.FileHasher
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
@@ -54,7 +55,8 @@ class VirtualFileSystemServicesTest extends Specification {
             startParameter,
             fileSystem,
             stringInterner,
-            gradleUserHomeVirtualFileSystem
+            gradleUserHomeVirtualFileSystem,
+            new VirtualFileSystemServices.SnapshottingExecutor(null)
         )
         then:
         buildSessionScopedVirtualFileSystem instanceof RoutingVirtualFileSystem
@@ -100,6 +102,15 @@ class VirtualFileSystemServicesTest extends Specification {
         retentionEnabledString = retentionEnabled ? "enabled" : "disabled"
     }
 
+    def "shared snapshotting executor is stopped with its scope"() {
+        def executor = Mock(ManagedExecutor)
+
+        when:
+        new VirtualFileSystemServices.SnapshottingExecutor(executor).stop()
+        then:
+        1 * executor.stop()
+    }
+
     Map<String, String> systemPropertyArgs(boolean retentionEnabled) {
         retentionEnabled
             ? [(VirtualFileSystemServices.VFS_RETENTION_ENABLED_PROPERTY): "true"]
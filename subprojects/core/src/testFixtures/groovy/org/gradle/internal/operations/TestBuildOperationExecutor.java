@@ -123,6 +123,11 @@ public void add(O operation) {
             log.run(operation);
         }
 
+        @Override
+        public void addFirst(O operation) {
+            log.run(operation);
+        }
+
         @Override
         public void cancel() {
             throw new UnsupportedOperationException();
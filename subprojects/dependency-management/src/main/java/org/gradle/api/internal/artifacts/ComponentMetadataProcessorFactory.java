@@ -34,4 +34,11 @@ public interface ComponentMetadataProcessorFactory {
      * @return a {@code ComponentMetadataProcessor}
      */
     ComponentMetadataProcessor createComponentMetadataProcessor(MetadataResolutionContext resolutionContext);
+
+    /**
+     * Returns true when the processors created by this factory may apply component metadata rules.
+     */
+    default boolean hasRules() {
+        return true;
+    }
 }
@@ -32,6 +32,12 @@ public interface ConfigurationResolver {
      */
     void resolveGraph(ConfigurationInternal configuration, ResolverResults results) throws ResolveException;
 
+    /**
+     * Traverses the full dependency graph of the given configuration, for a consumer that only uses its resolution result. The graph may then be loaded from
+     * the resolved graph cache, in which case its artifacts and their task dependencies are only resolved once they are used. All failures are packaged in the result.
+     */
+    void resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) throws ResolveException;
+
     /**
      * Calculates the artifacts to include in the result for the given configuration. All failures are packaged in the result.
      * Must be called using the same result instance as was passed to {@link #resolveGraph(ConfigurationInternal, ResolverResults)}.
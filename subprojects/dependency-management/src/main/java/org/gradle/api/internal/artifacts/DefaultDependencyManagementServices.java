@@ -54,6 +54,7 @@
 import org.gradle.api.internal.artifacts.ivyservice.ErrorHandlingConfigurationResolver;
 import org.gradle.api.internal.artifacts.ivyservice.IvyContextManager;
 import org.gradle.api.internal.artifacts.ivyservice.IvyContextualArtifactPublisher;
+import org.gradle.api.internal.artifacts.ivyservice.ResolvedGraphCache;
 import org.gradle.api.internal.artifacts.ivyservice.ShortCircuitEmptyConfigurationResolver;
 import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionRules;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ResolveIvyFactory;
@@ -612,7 +613,8 @@ ConfigurationResolver createDependencyResolver(ArtifactDependencyResolver artifa
                                                        AttributeContainerSerializer attributeContainerSerializer,
                                                        BuildState currentBuild,
                                                        TransformationNodeRegistry transformationNodeRegistry,
-                                                       DependencyVerificationOverride dependencyVerificationOverride) {
+                                                       DependencyVerificationOverride dependencyVerificationOverride,
+                                                       ResolvedGraphCache resolvedGraphCache) {
             return new ErrorHandlingConfigurationResolver(
                     new ShortCircuitEmptyConfigurationResolver(
                         new DefaultConfigurationResolver(
@@ -638,7 +640,8 @@ ConfigurationResolver createDependencyResolver(ArtifactDependencyResolver artifa
                             attributeContainerSerializer,
                             currentBuild.getBuildIdentifier(),
                             new AttributeDesugaring(attributesFactory),
-                            dependencyVerificationOverride),
+                            dependencyVerificationOverride,
+                            resolvedGraphCache),
                         componentIdentifierFactory,
                         moduleIdentifierFactory,
                         currentBuild.getBuildIdentifier()));
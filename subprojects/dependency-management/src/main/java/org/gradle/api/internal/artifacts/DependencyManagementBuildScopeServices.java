@@ -30,6 +30,7 @@
 import org.gradle.api.internal.artifacts.ivyservice.ArtifactCacheLockingManager;
 import org.gradle.api.internal.artifacts.ivyservice.ArtifactCacheMetadata;
 import org.gradle.api.internal.artifacts.ivyservice.ArtifactCachesProvider;
+import org.gradle.api.internal.artifacts.ivyservice.ResolvedGraphCache;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConnectionFailureRepositoryBlacklister;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleDescriptorHashCodec;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleDescriptorHashModuleSource;
@@ -133,9 +134,11 @@
 import org.gradle.internal.component.external.model.ModuleComponentArtifactMetadata;
 import org.gradle.internal.component.external.model.PreferJavaRuntimeVariant;
 import org.gradle.internal.component.model.PersistentModuleSource;
+import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.file.FileAccessTimeJournal;
 import org.gradle.internal.hash.ChecksumService;
+import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.installation.CurrentGradleInstallation;
 import org.gradle.internal.instantiation.InstantiatorFactory;
@@ -279,7 +282,7 @@ ModuleRepositoryCacheProvider createModuleRepositoryCacheProvider(BuildCommenced
             new InMemoryModuleArtifactsCache(timeProvider),
             new InMemoryModuleArtifactCache(timeProvider)
         );
-        return new ModuleRepositoryCacheProvider(persistentCaches, inMemoryOnlyCaches);
+        return new ModuleRepositoryCacheProvider(persistentCaches, inMemoryOnlyCaches, CompositeStoppable.stoppable(writableCaches.moduleMetadataCache, readOnlyCaches.map(mrc -> mrc.moduleMetadataCache).orElse(null)));
     }
 
     private ModuleRepositoryCaches prepareModuleRepositoryCaches(ArtifactCacheMetadata artifactCacheMetadata, ArtifactCacheLockingManager artifactCacheLockingManager, BuildCommencedTimeProvider timeProvider, ImmutableModuleIdentifierFactory moduleIdentifierFactory, AttributeContainerSerializer attributeContainerSerializer, MavenMutableModuleMetadataFactory mavenMetadataFactory, IvyMutableModuleMetadataFactory ivyMetadataFactory, SimpleMapInterner stringInterner, ArtifactIdentifierFileStore artifactIdentifierFileStore, ModuleSourcesSerializer moduleSourcesSerializer, ChecksumService checksumService) {
@@ -457,6 +460,10 @@ StartParameterResolutionOverride createStartParameterResolutionOverride(StartPar
         return new StartParameterResolutionOverride(startParameter, gradleDir);
     }
 
+    ResolvedGraphCache createResolvedGraphCache(ArtifactCachesProvider artifactCaches, VersionSelectorScheme versionSelectorScheme, ValueSnapshotter valueSnapshotter, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, StartParameter startParameter) {
+        return artifactCaches.withWritableCache((md, manager) -> new ResolvedGraphCache(manager, versionSelectorScheme, valueSnapshotter, classLoaderHierarchyHasher, startParameter.isRefreshDependencies()));
+    }
+
     DependencyVerificationOverride createDependencyVerificationOverride(StartParameterResolutionOverride startParameterResolutionOverride,
                                                                         BuildOperationExecutor buildOperationExecutor,
                                                                         ChecksumService checksumService,
@@ -502,7 +509,8 @@ ArtifactDependencyResolver createArtifactDependencyResolver(ResolveIvyFactory re
                                                                 ImmutableAttributesFactory attributesFactory,
                                                                 VersionSelectorScheme versionSelectorScheme,
                                                                 VersionParser versionParser,
-                                                                ComponentMetadataSupplierRuleExecutor componentMetadataSupplierRuleExecutor) {
+                                                                ComponentMetadataSupplierRuleExecutor componentMetadataSupplierRuleExecutor,
+                                                                RepositoryBlacklister repositoryBlacklister) {
         return new DefaultArtifactDependencyResolver(
             buildOperationExecutor,
             resolverFactories,
@@ -515,7 +523,8 @@ ArtifactDependencyResolver createArtifactDependencyResolver(ResolveIvyFactory re
             attributesFactory,
             versionSelectorScheme,
             versionParser,
-            componentMetadataSupplierRuleExecutor);
+            componentMetadataSupplierRuleExecutor,
+            repositoryBlacklister);
     }
 
     ProjectPublicationRegistry createProjectPublicationRegistry() {
@@ -556,6 +556,13 @@ public ResolvedConfiguration getResolvedConfiguration() {
     }
 
     private void resolveToStateOrLater(final InternalState requestedState) {
+        resolveToStateOrLater(requestedState, false);
+    }
+
+    /**
+     * @param resolutionResultOnly whether only the resolution result is used, so that the graph may be loaded from the resolved graph cache.
+     */
+    private void resolveToStateOrLater(final InternalState requestedState, boolean resolutionResultOnly) {
         assertIsResolvable();
         warnIfConfigurationIsDeprecatedForResolving();
 
@@ -570,10 +577,10 @@ private void resolveToStateOrLater(final InternalState requestedState) {
                     .willBeRemovedInGradle7()
                     .withUserManual("viewing_debugging_dependencies", "sub:resolving-unsafe-configuration-resolution-errors")
                     .nagUser();
-                owner.getModel().withLenientState(() -> resolveExclusively(requestedState));
+                owner.getModel().withLenientState(() -> resolveExclusively(requestedState, resolutionResultOnly));
             }
         } else {
-            resolveExclusively(requestedState);
+            resolveExclusively(requestedState, resolutionResultOnly);
         }
     }
 
@@ -587,9 +594,13 @@ private void warnIfConfigurationIsDeprecatedForResolving() {
     }
 
     private void resolveExclusively(InternalState requestedState) {
+        resolveExclusively(requestedState, false);
+    }
+
+    private void resolveExclusively(InternalState requestedState, boolean resolutionResultOnly) {
         resolutionLock.withLock(() -> {
             if (requestedState == GRAPH_RESOLVED || requestedState == ARTIFACTS_RESOLVED) {
-                resolveGraphIfRequired(requestedState);
+                resolveGraphIfRequired(requestedState, resolutionResultOnly);
             }
             if (requestedState == ARTIFACTS_RESOLVED) {
                 resolveArtifactsIfRequired();
@@ -600,7 +611,7 @@ private void resolveExclusively(InternalState requestedState) {
     /**
      * Must be called from {@link #resolveExclusively(InternalState)} only.
      */
-    private void resolveGraphIfRequired(final InternalState requestedState) {
+    private void resolveGraphIfRequired(final InternalState requestedState, boolean resolutionResultOnly) {
         if (resolvedState == ARTIFACTS_RESOLVED || resolvedState == GRAPH_RESOLVED) {
             if (dependenciesModified) {
                 throw new InvalidUserDataException(String.format("Attempted to resolve %s that has been resolved previously.", getDisplayName()));
@@ -617,7 +628,11 @@ public void run(BuildOperationContext context) {
                 ResolvableDependenciesInternal incoming = (ResolvableDependenciesInternal) getIncoming();
                 performPreResolveActions(incoming);
                 DefaultResolverResults results = new DefaultResolverResults();
-                resolver.resolveGraph(DefaultConfiguration.this, results);
+                if (resolutionResultOnly) {
+                    resolver.resolveGraphForResolutionResult(DefaultConfiguration.this, results);
+                } else {
+                    resolver.resolveGraph(DefaultConfiguration.this, results);
+                }
                 dependenciesModified = false;
                 cachedResolverResults = results;
                 resolvedState = GRAPH_RESOLVED;
@@ -1528,10 +1543,6 @@ public FileCollection getFiles() {
             }
         }
 
-        private void assertArtifactsResolved() {
-            DefaultConfiguration.this.resolveToStateOrLater(ARTIFACTS_RESOLVED);
-        }
-
         private class LenientResolutionResult implements ResolutionResult {
             private final Action<? super Throwable> errorHandler;
             private volatile ResolutionResult delegate;
@@ -1544,7 +1555,7 @@ private void resolve() {
                 if (delegate == null) {
                     synchronized (this) {
                         if (delegate == null) {
-                            assertArtifactsResolved();
+                            DefaultConfiguration.this.resolveToStateOrLater(ARTIFACTS_RESOLVED, true);
                             delegate = cachedResolverResults.getResolutionResult();
                             Throwable failure = cachedResolverResults.consumeNonFatalFailure();
                             if (failure != null) {
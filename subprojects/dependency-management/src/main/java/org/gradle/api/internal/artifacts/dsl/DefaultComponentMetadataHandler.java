@@ -206,6 +206,11 @@ public ComponentMetadataProcessor createComponentMetadataProcessor(MetadataResol
         return new DefaultComponentMetadataProcessor(metadataRuleContainer, instantiator, dependencyMetadataNotationParser, dependencyConstraintMetadataNotationParser, componentIdentifierNotationParser, attributesFactory, ruleExecutor, platformSupport, resolutionContext);
     }
 
+    @Override
+    public boolean hasRules() {
+        return !metadataRuleContainer.isEmpty();
+    }
+
     @Override
     public void setVariantDerivationStrategy(VariantDerivationStrategy strategy) {
         metadataRuleContainer.setVariantDerivationStrategy(strategy);
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+
+import javax.annotation.Nullable;
+
+/**
+ * Checks whether a resolved graph can be stored in the {@link ResolvedGraphCache}, that is whether the graph only contains fixed versions of modules that are not changing and not involved in module replacements.
+ */
+class CacheableGraphVisitor implements DependencyGraphVisitor {
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ModuleReplacementsData moduleReplacements;
+    private boolean cacheable = true;
+
+    CacheableGraphVisitor(VersionSelectorScheme versionSelectorScheme, ModuleReplacementsData moduleReplacements) {
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.moduleReplacements = moduleReplacements;
+    }
+
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    @Override
+    public void start(RootGraphNode root) {
+    }
+
+    @Override
+    public void visitNode(DependencyGraphNode node) {
+        if (!cacheable || node.isRoot()) {
+            return;
+        }
+        DependencyGraphComponent component = node.getOwner();
+        ComponentResolveMetadata metadata = component.getMetadata();
+        if (!(component.getComponentId() instanceof ModuleComponentIdentifier)
+            || metadata == null
+            || metadata.isMissing()
+            || metadata.isChanging()
+            || component.getModuleVersion().getVersion().endsWith("-SNAPSHOT")
+            || moduleReplacements.participatesInReplacements(component.getModuleVersion().getModule())) {
+            cacheable = false;
+        }
+    }
+
+    @Override
+    public void visitSelector(DependencyGraphSelector selector) {
+        if (!cacheable) {
+            return;
+        }
+        ComponentSelector requested = selector.getRequested();
+        if (!(requested instanceof ModuleComponentSelector)) {
+            cacheable = false;
+            return;
+        }
+        VersionConstraint versionConstraint = ((ModuleComponentSelector) requested).getVersionConstraint();
+        if (versionConstraint.getBranch() != null
+            || isDynamic(versionConstraint.getRequiredVersion())
+            || isDynamic(versionConstraint.getPreferredVersion())
+            || isDynamic(versionConstraint.getStrictVersion())) {
+            cacheable = false;
+        }
+    }
+
+    private boolean isDynamic(@Nullable String version) {
+        return version != null && !version.isEmpty() && versionSelectorScheme.parseSelector(version).isDynamic();
+    }
+
+    @Override
+    public void visitEdges(DependencyGraphNode node) {
+        if (!cacheable) {
+            return;
+        }
+        for (DependencyGraphEdge edge : node.getOutgoingEdges()) {
+            if (edge.getFailure() != null) {
+                cacheable = false;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void finish(DependencyGraphNode root) {
+    }
+}
@@ -17,14 +17,22 @@
 package org.gradle.api.internal.artifacts.ivyservice;
 
 import com.google.common.collect.ImmutableList;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.LenientConfiguration;
 import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.ResolveException;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.ResolvedConfiguration;
+import org.gradle.api.artifacts.ResolvedDependency;
 import org.gradle.api.artifacts.UnresolvedDependency;
 import org.gradle.api.artifacts.component.BuildIdentifier;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
 import org.gradle.api.artifacts.result.ResolvedComponentResult;
 import org.gradle.api.internal.artifacts.ArtifactDependencyResolver;
 import org.gradle.api.internal.artifacts.ComponentSelectorConverter;
 import org.gradle.api.internal.artifacts.ConfigurationResolver;
+import org.gradle.api.internal.artifacts.DefaultResolverResults;
 import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
 import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
 import org.gradle.api.internal.artifacts.ResolverResults;
@@ -32,9 +40,12 @@
 import org.gradle.api.internal.artifacts.configurations.ConflictResolution;
 import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.verification.DependencyVerificationOverride;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.ArtifactVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.BuildDependenciesOnlyVisitedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DefaultResolvedArtifactsBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DependencyArtifactsVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.SelectedArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactsResults;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedFileDependencyResults;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.CompositeDependencyArtifactsVisitor;
@@ -52,13 +63,16 @@
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.FileDependencyCollectingGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.InMemoryBinaryStore;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.StoreSet;
 import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
 import org.gradle.api.internal.artifacts.transform.ArtifactTransforms;
 import org.gradle.api.internal.artifacts.type.ArtifactTypeRegistry;
+import org.gradle.api.internal.attributes.AttributeContainerInternal;
 import org.gradle.api.internal.attributes.AttributeDesugaring;
 import org.gradle.api.internal.attributes.AttributesSchemaInternal;
+import org.gradle.api.internal.tasks.TaskDependencyResolveContext;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.cache.internal.BinaryStore;
@@ -66,10 +80,13 @@
 import org.gradle.internal.Transformers;
 import org.gradle.internal.component.local.model.DslOriginDependencyMetadata;
 import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.locking.DependencyLockingArtifactVisitor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.util.CollectionUtils;
 
+import javax.annotation.Nullable;
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -91,6 +108,7 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
     private final BuildIdentifier currentBuild;
     private final AttributeDesugaring attributeDesugaring;
     private final DependencyVerificationOverride dependencyVerificationOverride;
+    private final ResolvedGraphCache resolvedGraphCache;
 
     public DefaultConfigurationResolver(ArtifactDependencyResolver resolver, RepositoryHandler repositories,
                                         GlobalDependencyResolutionRules metadataHandler,
@@ -104,7 +122,8 @@ public DefaultConfigurationResolver(ArtifactDependencyResolver resolver, Reposit
                                         ComponentSelectorConverter componentSelectorConverter,
                                         AttributeContainerSerializer attributeContainerSerializer,
                                         BuildIdentifier currentBuild, AttributeDesugaring attributeDesugaring,
-                                        DependencyVerificationOverride dependencyVerificationOverride) {
+                                        DependencyVerificationOverride dependencyVerificationOverride,
+                                        ResolvedGraphCache resolvedGraphCache) {
         this.resolver = resolver;
         this.repositories = repositories;
         this.metadataHandler = metadataHandler;
@@ -120,6 +139,7 @@ public DefaultConfigurationResolver(ArtifactDependencyResolver resolver, Reposit
         this.currentBuild = currentBuild;
         this.attributeDesugaring = attributeDesugaring;
         this.dependencyVerificationOverride = dependencyVerificationOverride;
+        this.resolvedGraphCache = resolvedGraphCache;
     }
 
     @Override
@@ -135,7 +155,36 @@ public void resolveBuildDependencies(ConfigurationInternal configuration, Resolv
 
     @Override
     public void resolveGraph(ConfigurationInternal configuration, ResolverResults results) {
+        resolveGraph(configuration, getRepositories(), null, results);
+    }
+
+    @Override
+    public void resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) {
         List<ResolutionAwareRepository> resolutionAwareRepositories = getRepositories();
+        HashCode graphCacheKey = resolvedGraphCache.keyFor(configuration, resolutionAwareRepositories, metadataHandler, attributesSchema, artifactTypeRegistry, dependencyVerificationOverride);
+        if (graphCacheKey != null) {
+            byte[] cachedGraph = resolvedGraphCache.load(graphCacheKey);
+            if (cachedGraph != null) {
+                replayGraph(configuration, cachedGraph, results);
+                return;
+            }
+        }
+        resolveGraph(configuration, resolutionAwareRepositories, graphCacheKey, results);
+    }
+
+    /**
+     * Creates the results of a graph that was resolved by an earlier build. Only the resolution result is available,
+     * the graph is resolved again once the artifacts or their task dependencies are used.
+     */
+    private void replayGraph(ConfigurationInternal configuration, byte[] graph, ResolverResults results) {
+        StoreSet stores = storeFactory.createStoreSet();
+        StreamingResolutionResultBuilder newModelBuilder = new StreamingResolutionResultBuilder(new InMemoryBinaryStore(graph), stores.newModelCache(), moduleIdentifierFactory, attributeContainerSerializer, attributeDesugaring);
+        DeferredGraphResolution deferredResolution = new DeferredGraphResolution(configuration);
+        results.graphResolved(newModelBuilder.replay(configuration.getAttributes().asImmutable()), new ResolvedLocalComponentsResultGraphVisitor(currentBuild), deferredResolution);
+        results.retainState(deferredResolution);
+    }
+
+    private void resolveGraph(ConfigurationInternal configuration, List<ResolutionAwareRepository> resolutionAwareRepositories, @Nullable HashCode graphCacheKey, ResolverResults results) {
         StoreSet stores = storeFactory.createStoreSet();
 
         BinaryStore oldModelStore = stores.nextBinaryStore();
@@ -144,7 +193,8 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         DefaultResolvedConfigurationBuilder oldModelBuilder = new DefaultResolvedConfigurationBuilder(oldTransientModelBuilder);
         ResolvedConfigurationDependencyGraphVisitor oldModelVisitor = new ResolvedConfigurationDependencyGraphVisitor(oldModelBuilder);
 
-        BinaryStore newModelStore = stores.nextBinaryStore();
+        // A graph that may be cached is kept in memory, so that it does not refer to the state of this build
+        BinaryStore newModelStore = graphCacheKey == null ? stores.nextBinaryStore() : new InMemoryBinaryStore();
         Store<ResolvedComponentResult> newModelCache = stores.newModelCache();
         StreamingResolutionResultBuilder newModelBuilder = new StreamingResolutionResultBuilder(newModelStore, newModelCache, moduleIdentifierFactory, attributeContainerSerializer, attributeDesugaring);
 
@@ -154,7 +204,10 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         DefaultResolvedArtifactsBuilder artifactsBuilder = new DefaultResolvedArtifactsBuilder(currentBuild, buildProjectDependencies, resolutionStrategy.getSortOrder());
         FileDependencyCollectingGraphVisitor fileDependencyVisitor = new FileDependencyCollectingGraphVisitor();
         ResolutionFailureCollector failureCollector = new ResolutionFailureCollector(componentSelectorConverter);
-        DependencyGraphVisitor graphVisitor = new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector);
+        CacheableGraphVisitor cacheableGraphVisitor = graphCacheKey == null ? null : resolvedGraphCache.createGraphVisitor(metadataHandler);
+        DependencyGraphVisitor graphVisitor = cacheableGraphVisitor == null
+            ? new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector)
+            : new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector, cacheableGraphVisitor);
 
         ImmutableList.Builder<DependencyArtifactsVisitor> visitors = new ImmutableList.Builder<>();
         visitors.add(oldModelVisitor);
@@ -187,6 +240,9 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         results.retainState(new ArtifactResolveState(graphResults, artifactsResults, fileDependencyResults, failures, oldTransientModelBuilder));
         if (!results.hasError() && failures.isEmpty()) {
             artifactsVisitor.complete();
+            if (cacheableGraphVisitor != null && cacheableGraphVisitor.isCacheable()) {
+                resolvedGraphCache.store(graphCacheKey, ((InMemoryBinaryStore) newModelStore).getContent());
+            }
         }
     }
 
@@ -197,7 +253,13 @@ public List<ResolutionAwareRepository> getRepositories() {
 
     @Override
     public void resolveArtifacts(ConfigurationInternal configuration, ResolverResults results) {
-        ArtifactResolveState resolveState = (ArtifactResolveState) results.getArtifactResolveState();
+        Object state = results.getArtifactResolveState();
+        if (state instanceof DeferredGraphResolution) {
+            DeferredGraphResolution deferredResolution = (DeferredGraphResolution) state;
+            results.artifactsResolved(new DeferredResolvedConfiguration(deferredResolution), deferredResolution);
+            return;
+        }
+        ArtifactResolveState resolveState = (ArtifactResolveState) state;
         ResolvedGraphResults graphResults = resolveState.graphResults;
         VisitedArtifactsResults artifactResults = resolveState.artifactsResults;
         TransientConfigurationResultsBuilder transientConfigurationResultsBuilder = resolveState.transientConfigurationResultsBuilder;
@@ -208,6 +270,100 @@ public void resolveArtifacts(ConfigurationInternal configuration, ResolverResult
         results.artifactsResolved(new DefaultResolvedConfiguration(result), result);
     }
 
+    /**
+     * Resolves the graph and the artifacts of a configuration whose resolution result was loaded from the {@link ResolvedGraphCache}, once its artifacts or their task dependencies are used.
+     * This is a full resolution: the artifacts of the graph cannot be selected without the metadata of its components, which is not cached.
+     */
+    private class DeferredGraphResolution implements VisitedArtifactSet {
+        private final ConfigurationInternal configuration;
+        private DefaultResolverResults results;
+
+        DeferredGraphResolution(ConfigurationInternal configuration) {
+            this.configuration = configuration;
+        }
+
+        private synchronized ResolverResults getResults() {
+            if (results == null) {
+                DefaultResolverResults results = new DefaultResolverResults();
+                resolveGraph(configuration, getRepositories(), null, results);
+                resolveArtifacts(configuration, results);
+                this.results = results;
+            }
+            return results;
+        }
+
+        ResolvedConfiguration getResolvedConfiguration() {
+            return getResults().getResolvedConfiguration();
+        }
+
+        @Override
+        public SelectedArtifactSet select(Spec<? super Dependency> dependencySpec, AttributeContainerInternal requestedAttributes, Spec<? super ComponentIdentifier> componentSpec, boolean allowNoMatchingVariant) {
+            return new SelectedArtifactSet() {
+                @Override
+                public void visitDependencies(TaskDependencyResolveContext context) {
+                    delegate().visitDependencies(context);
+                }
+
+                @Override
+                public void visitArtifacts(ArtifactVisitor visitor, boolean continueOnSelectionFailure) {
+                    delegate().visitArtifacts(visitor, continueOnSelectionFailure);
+                }
+
+                private SelectedArtifactSet delegate() {
+                    return getResults().getVisitedArtifacts().select(dependencySpec, requestedAttributes, componentSpec, allowNoMatchingVariant);
+                }
+            };
+        }
+    }
+
+    private static class DeferredResolvedConfiguration implements ResolvedConfiguration {
+        private final DeferredGraphResolution deferredResolution;
+
+        DeferredResolvedConfiguration(DeferredGraphResolution deferredResolution) {
+            this.deferredResolution = deferredResolution;
+        }
+
+        @Override
+        public boolean hasError() {
+            return deferredResolution.getResolvedConfiguration().hasError();
+        }
+
+        @Override
+        public LenientConfiguration getLenientConfiguration() {
+            return deferredResolution.getResolvedConfiguration().getLenientConfiguration();
+        }
+
+        @Override
+        public void rethrowFailure() throws ResolveException {
+            deferredResolution.getResolvedConfiguration().rethrowFailure();
+        }
+
+        @Override
+        public Set<File> getFiles() throws ResolveException {
+            return deferredResolution.getResolvedConfiguration().getFiles();
+        }
+
+        @Override
+        public Set<File> getFiles(Spec<? super Dependency> dependencySpec) throws ResolveException {
+            return deferredResolution.getResolvedConfiguration().getFiles(dependencySpec);
+        }
+
+        @Override
+        public Set<ResolvedDependency> getFirstLevelModuleDependencies() throws ResolveException {
+            return deferredResolution.getResolvedConfiguration().getFirstLevelModuleDependencies();
+        }
+
+        @Override
+        public Set<ResolvedDependency> getFirstLevelModuleDependencies(Spec<? super Dependency> dependencySpec) throws ResolveException {
+            return deferredResolution.getResolvedConfiguration().getFirstLevelModuleDependencies(dependencySpec);
+        }
+
+        @Override
+        public Set<ResolvedArtifact> getResolvedArtifacts() throws ResolveException {
+            return deferredResolution.getResolvedConfiguration().getResolvedArtifacts();
+        }
+    }
+
     private static class ArtifactResolveState {
         final ResolvedGraphResults graphResults;
         final VisitedArtifactsResults artifactsResults;
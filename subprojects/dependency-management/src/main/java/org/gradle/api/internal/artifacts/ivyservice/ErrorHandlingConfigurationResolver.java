@@ -44,6 +44,7 @@
 import java.io.File;
 import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 public class ErrorHandlingConfigurationResolver implements ConfigurationResolver {
     private final ConfigurationResolver delegate;
@@ -70,8 +71,17 @@ public void resolveBuildDependencies(ConfigurationInternal configuration, Resolv
 
     @Override
     public void resolveGraph(ConfigurationInternal configuration, ResolverResults results) throws ResolveException {
+        resolveGraph(configuration, results, delegate::resolveGraph);
+    }
+
+    @Override
+    public void resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) throws ResolveException {
+        resolveGraph(configuration, results, delegate::resolveGraphForResolutionResult);
+    }
+
+    private void resolveGraph(ConfigurationInternal configuration, ResolverResults results, BiConsumer<ConfigurationInternal, ResolverResults> resolveAction) {
         try {
-            delegate.resolveGraph(configuration, results);
+            resolveAction.accept(configuration, results);
         } catch (Exception e) {
             results.failed(wrapException(e, configuration));
             BrokenResolvedConfiguration broken = new BrokenResolvedConfiguration(e, configuration);
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.ClientModule;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.DependencyArtifact;
+import org.gradle.api.artifacts.DependencyConstraint;
+import org.gradle.api.artifacts.ExcludeRule;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.attributes.AttributeMatchingStrategy;
+import org.gradle.api.capabilities.Capability;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.Module;
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.dependencies.DefaultDependencyConstraint;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.verification.DependencyVerificationOverride;
+import org.gradle.api.internal.artifacts.repositories.AbstractArtifactRepository;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.api.internal.artifacts.repositories.descriptor.RepositoryDescriptor;
+import org.gradle.api.internal.artifacts.type.ArtifactTypeRegistry;
+import org.gradle.api.internal.attributes.AttributesSchemaInternal;
+import org.gradle.api.internal.attributes.DefaultAttributesSchema;
+import org.gradle.api.internal.attributes.DefaultCompatibilityRuleChain;
+import org.gradle.api.internal.attributes.DefaultDisambiguationRuleChain;
+import org.gradle.api.internal.attributes.DefaultOrderedCompatibilityRule;
+import org.gradle.api.internal.attributes.DefaultOrderedDisambiguationRule;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.UnsafeFeatureFlags;
+import org.gradle.internal.action.ConfigurableRule;
+import org.gradle.internal.action.InstantiatingAction;
+import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.snapshot.ValueSnapshotter;
+import org.gradle.internal.snapshot.ValueSnapshottingException;
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+import org.gradle.util.GradleVersion;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A persistent cache of resolved dependency graphs, which are stored in the format written by
+ * {@link org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder}.
+ *
+ * The graph of a configuration is keyed by a hash of everything declared that can affect the graph, including the attribute matching rules of the consumer schema
+ * and the artifact types. Configurations for which the declarations cannot be hashed, such as those with project dependencies, resolution rules or matching rules
+ * whose implementation is not known, are not cached. The same applies to graphs that contain dynamic versions or changing modules,
+ * so that these are always resolved and checked for updates as usual. The metadata of other modules is treated as immutable, as the module metadata cache does.
+ *
+ * Only the resolution result of a graph is cached. Selecting artifacts needs the metadata of the components, so the cache is only used when nothing but
+ * the resolution result of a configuration is requested, for example by dependency reports. Configurations that are resolved for their files or their
+ * task dependencies, such as classpaths, are resolved as usual without computing a key. Should the files or the task dependencies of a configuration whose
+ * graph was loaded from this cache be used later on, its graph is resolved again at that point.
+ */
+public class ResolvedGraphCache {
+    /**
+     * When set to true, the resolution results of dependency graphs are reused across builds. Configurations whose files are used are still resolved.
+     */
+    public static final String ENABLED_PROPERTY = "org.gradle.unsafe.dependency-resolution.graph-cache";
+
+    private final ArtifactCacheLockingManager artifactCacheLockingManager;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ValueSnapshotter valueSnapshotter;
+    private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
+    private final boolean enabled;
+    private PersistentIndexedCache<HashCode, byte[]> cache;
+
+    public ResolvedGraphCache(ArtifactCacheLockingManager artifactCacheLockingManager, VersionSelectorScheme versionSelectorScheme, ValueSnapshotter valueSnapshotter, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, boolean refreshDependencies) {
+        this.artifactCacheLockingManager = artifactCacheLockingManager;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.valueSnapshotter = valueSnapshotter;
+        this.classLoaderHierarchyHasher = classLoaderHierarchyHasher;
+        this.enabled = UnsafeFeatureFlags.isEnabled(ENABLED_PROPERTY) && !refreshDependencies;
+    }
+
+    private synchronized PersistentIndexedCache<HashCode, byte[]> getCache() {
+        if (cache == null) {
+            cache = artifactCacheLockingManager.createCache("resolved-graphs", BaseSerializerFactory.HASHCODE_SERIALIZER, BaseSerializerFactory.BYTE_ARRAY_SERIALIZER);
+        }
+        return cache;
+    }
+
+    @Nullable
+    public byte[] load(HashCode key) {
+        return getCache().get(key);
+    }
+
+    public void store(HashCode key, byte[] graph) {
+        getCache().put(key, graph);
+    }
+
+    /**
+     * Creates a visitor that checks whether the visited graph can be stored, once its configuration has a key.
+     */
+    CacheableGraphVisitor createGraphVisitor(GlobalDependencyResolutionRules globalRules) {
+        return new CacheableGraphVisitor(versionSelectorScheme, globalRules.getModuleMetadataProcessor().getModuleReplacements());
+    }
+
+    /**
+     * Returns the key of the graph of the given configuration, or null when the graph should not be cached.
+     */
+    @Nullable
+    public HashCode keyFor(ConfigurationInternal configuration, List<ResolutionAwareRepository> repositories, GlobalDependencyResolutionRules globalRules, AttributesSchemaInternal consumerSchema, ArtifactTypeRegistry artifactTypeRegistry, DependencyVerificationOverride dependencyVerificationOverride) {
+        if (!enabled) {
+            return null;
+        }
+        ResolutionStrategyInternal resolutionStrategy = configuration.getResolutionStrategy();
+        if (resolutionStrategy.resolveGraphToDetermineTaskDependencies()
+            || !resolutionStrategy.getComponentSelection().getRules().isEmpty()
+            || resolutionStrategy.getCapabilitiesResolutionRules().hasRules()
+            || resolutionStrategy.isDependencyLockingEnabled()
+            || (resolutionStrategy.isDependencyVerificationEnabled() && dependencyVerificationOverride != DependencyVerificationOverride.NO_VERIFICATION)
+            || globalRules.getDependencySubstitutionRules().hasRules()
+            || globalRules.getComponentMetadataProcessorFactory().hasRules()) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.newHasher();
+        hasher.putString(GradleVersion.current().getVersion());
+        Module module = configuration.getModule();
+        hasher.putString(configuration.getIdentityPath().getPath());
+        putNullableString(hasher, module.getProjectPath());
+        putNullableString(hasher, module.getGroup());
+        hasher.putString(module.getName());
+        putNullableString(hasher, module.getVersion());
+        putNullableString(hasher, module.getStatus());
+        hasher.putBoolean(configuration.isTransitive());
+        if (!putAttributes(hasher, configuration.getAttributes())) {
+            return null;
+        }
+        putCapabilities(hasher, configuration.getOutgoing().getCapabilities());
+        putExcludeRules(hasher, configuration.getAllExcludeRules());
+        if (!putSchema(hasher, consumerSchema) || !putArtifactTypes(hasher, artifactTypeRegistry)) {
+            return null;
+        }
+
+        hasher.putString(resolutionStrategy.getConflictResolution().name());
+        hasher.putBoolean(resolutionStrategy.isFailingOnDynamicVersions());
+        hasher.putBoolean(resolutionStrategy.isFailingOnChangingVersions());
+        List<String> forcedModules = resolutionStrategy.getForcedModules().stream()
+            .map(ResolvedGraphCache::toSelectorString)
+            .sorted()
+            .collect(Collectors.toList());
+        putStrings(hasher, forcedModules);
+
+        for (ResolutionAwareRepository repository : repositories) {
+            if (repository instanceof AbstractArtifactRepository && ((AbstractArtifactRepository) repository).getContentFilter() != null) {
+                return null;
+            }
+            RepositoryDescriptor descriptor = repository.getDescriptor();
+            hasher.putString(descriptor.getType().name());
+            hasher.putString(descriptor.name);
+            for (Map.Entry<String, ?> property : descriptor.getProperties().entrySet()) {
+                hasher.putString(property.getKey());
+                hasher.putString(String.valueOf(property.getValue()));
+            }
+        }
+
+        for (Dependency dependency : configuration.getAllDependencies()) {
+            if (!(dependency instanceof ExternalModuleDependency) || dependency instanceof ClientModule) {
+                return null;
+            }
+            ExternalModuleDependency moduleDependency = (ExternalModuleDependency) dependency;
+            if (moduleDependency.isChanging()) {
+                return null;
+            }
+            putNullableString(hasher, moduleDependency.getGroup());
+            hasher.putString(moduleDependency.getName());
+            putVersionConstraint(hasher, moduleDependency.getVersionConstraint());
+            putNullableString(hasher, moduleDependency.getTargetConfiguration());
+            putNullableString(hasher, moduleDependency.getReason());
+            hasher.putBoolean(moduleDependency.isTransitive());
+            hasher.putBoolean(moduleDependency.isForce());
+            hasher.putBoolean(moduleDependency.isEndorsingStrictVersions());
+            if (!putAttributes(hasher, moduleDependency.getAttributes())) {
+                return null;
+            }
+            putCapabilities(hasher, moduleDependency.getRequestedCapabilities());
+            putExcludeRules(hasher, moduleDependency.getExcludeRules());
+            for (DependencyArtifact artifact : moduleDependency.getArtifacts()) {
+                hasher.putString(artifact.getName());
+                hasher.putString(artifact.getType());
+                putNullableString(hasher, artifact.getExtension());
+                putNullableString(hasher, artifact.getClassifier());
+                putNullableString(hasher, artifact.getUrl());
+            }
+        }
+
+        for (DependencyConstraint constraint : configuration.getAllDependencyConstraints()) {
+            if (!(constraint instanceof DefaultDependencyConstraint)) {
+                return null;
+            }
+            putNullableString(hasher, constraint.getGroup());
+            hasher.putString(constraint.getName());
+            putVersionConstraint(hasher, constraint.getVersionConstraint());
+            putNullableString(hasher, constraint.getReason());
+            hasher.putBoolean(((DefaultDependencyConstraint) constraint).isForce());
+            if (!putAttributes(hasher, constraint.getAttributes())) {
+                return null;
+            }
+        }
+        return hasher.hash();
+    }
+
+    private static void putVersionConstraint(Hasher hasher, VersionConstraint versionConstraint) {
+        putNullableString(hasher, versionConstraint.getRequiredVersion());
+        putNullableString(hasher, versionConstraint.getPreferredVersion());
+        putNullableString(hasher, versionConstraint.getStrictVersion());
+        putNullableString(hasher, versionConstraint.getBranch());
+        putStrings(hasher, versionConstraint.getRejectedVersions());
+    }
+
+    /**
+     * Hashes the given attributes, returning false when some value cannot be snapshotted.
+     */
+    private boolean putAttributes(Hasher hasher, AttributeContainer attributes) {
+        List<Attribute<?>> keys = sortedByName(attributes.keySet());
+        hasher.putInt(keys.size());
+        for (Attribute<?> key : keys) {
+            hasher.putString(key.getName());
+            hasher.putString(key.getType().getName());
+            try {
+                valueSnapshotter.snapshot(attributes.getAttribute(key)).appendToHasher(hasher);
+            } catch (ValueSnapshottingException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the attributes of the consumer schema along with their compatibility and disambiguation rules, returning false when some rule cannot be hashed.
+     */
+    private boolean putSchema(Hasher hasher, AttributesSchemaInternal consumerSchema) {
+        if (!(consumerSchema instanceof DefaultAttributesSchema)) {
+            return false;
+        }
+        DefaultAttributesSchema schema = (DefaultAttributesSchema) consumerSchema;
+        List<Attribute<?>> attributes = sortedByName(schema.getAttributes());
+        hasher.putInt(attributes.size());
+        for (Attribute<?> attribute : attributes) {
+            hasher.putString(attribute.getName());
+            hasher.putString(attribute.getType().getName());
+            AttributeMatchingStrategy<?> matchingStrategy = schema.getMatchingStrategy(attribute);
+            if (!putMatchingRules(hasher, ((DefaultCompatibilityRuleChain<?>) matchingStrategy.getCompatibilityRules()).getRules())
+                || !putMatchingRules(hasher, ((DefaultDisambiguationRuleChain<?>) matchingStrategy.getDisambiguationRules()).getRules())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean putMatchingRules(Hasher hasher, List<? extends Action<?>> rules) {
+        hasher.putInt(rules.size());
+        for (Action<?> rule : rules) {
+            if (rule instanceof InstantiatingAction) {
+                for (ConfigurableRule<?> configurableRule : ((InstantiatingAction<?>) rule).getRules().getConfigurableRules()) {
+                    if (!putImplementation(hasher, configurableRule.getRuleClass())) {
+                        return false;
+                    }
+                    configurableRule.getRuleParams().appendToHasher(hasher);
+                }
+            } else if (rule instanceof DefaultOrderedCompatibilityRule) {
+                DefaultOrderedCompatibilityRule<?> orderedRule = (DefaultOrderedCompatibilityRule<?>) rule;
+                if (!putComparator(hasher, orderedRule.getComparator())) {
+                    return false;
+                }
+                hasher.putBoolean(orderedRule.isReverse());
+            } else if (rule instanceof DefaultOrderedDisambiguationRule) {
+                DefaultOrderedDisambiguationRule<?> orderedRule = (DefaultOrderedDisambiguationRule<?>) rule;
+                if (!putComparator(hasher, orderedRule.getComparator())) {
+                    return false;
+                }
+                hasher.putBoolean(orderedRule.isPickFirst());
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the implementation and the serialized state of a comparator, which is only possible for serializable comparators like {@code Ordering.natural()}.
+     */
+    private boolean putComparator(Hasher hasher, Comparator<?> comparator) {
+        if (!(comparator instanceof Serializable) || !putImplementation(hasher, comparator.getClass())) {
+            return false;
+        }
+        try {
+            valueSnapshotter.snapshot(comparator).appendToHasher(hasher);
+        } catch (ValueSnapshottingException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean putImplementation(Hasher hasher, Class<?> type) {
+        ImplementationSnapshot implementation = ImplementationSnapshot.of(type, classLoaderHierarchyHasher);
+        if (implementation.isUnknown()) {
+            return false;
+        }
+        implementation.appendToHasher(hasher);
+        return true;
+    }
+
+    private boolean putArtifactTypes(Hasher hasher, ArtifactTypeRegistry artifactTypeRegistry) {
+        List<ArtifactTypeDefinition> artifactTypes = artifactTypeRegistry.create().stream()
+            .sorted(Comparator.comparing(ArtifactTypeDefinition::getName))
+            .collect(Collectors.toList());
+        hasher.putInt(artifactTypes.size());
+        for (ArtifactTypeDefinition artifactType : artifactTypes) {
+            hasher.putString(artifactType.getName());
+            if (!putAttributes(hasher, artifactType.getAttributes())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Attribute<?>> sortedByName(Collection<Attribute<?>> attributes) {
+        return attributes.stream()
+            .sorted(Comparator.comparing(Attribute::getName))
+            .collect(Collectors.toList());
+    }
+
+    private static void putCapabilities(Hasher hasher, Collection<? extends Capability> capabilities) {
+        hasher.putInt(capabilities.size());
+        for (Capability capability : capabilities) {
+            hasher.putString(capability.getGroup());
+            hasher.putString(capability.getName());
+            putNullableString(hasher, capability.getVersion());
+        }
+    }
+
+    private static void putExcludeRules(Hasher hasher, Collection<ExcludeRule> excludeRules) {
+        hasher.putInt(excludeRules.size());
+        for (ExcludeRule excludeRule : excludeRules) {
+            putNullableString(hasher, excludeRule.getGroup());
+            putNullableString(hasher, excludeRule.getModule());
+        }
+    }
+
+    private static void putStrings(Hasher hasher, List<String> values) {
+        hasher.putInt(values.size());
+        for (String value : values) {
+            hasher.putString(value);
+        }
+    }
+
+    private static void putNullableString(Hasher hasher, @Nullable String value) {
+        if (value == null) {
+            hasher.putNull();
+        } else {
+            hasher.putString(value);
+        }
+    }
+
+    private static String toSelectorString(ModuleVersionSelector selector) {
+        return selector.getGroup() + ":" + selector.getName() + ":" + selector.getVersion();
+    }
+}
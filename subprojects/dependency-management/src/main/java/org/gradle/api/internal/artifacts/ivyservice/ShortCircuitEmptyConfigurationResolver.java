@@ -86,6 +86,15 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         }
     }
 
+    @Override
+    public void resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) throws ResolveException {
+        if (configuration.getAllDependencies().isEmpty()) {
+            emptyGraph(configuration, results, true);
+        } else {
+            delegate.resolveGraphForResolutionResult(configuration, results);
+        }
+    }
+
     private void emptyGraph(ConfigurationInternal configuration, ResolverResults results, boolean verifyLocking) {
         if (verifyLocking && configuration.getResolutionStrategy().isDependencyLockingEnabled()) {
             DependencyLockingProvider dependencyLockingProvider = configuration.getResolutionStrategy().getDependencyLockingProvider();
@@ -19,6 +19,7 @@
 import com.google.common.collect.Sets;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
+import org.gradle.internal.Factory;
 
 import java.util.Set;
 
@@ -28,6 +29,7 @@ public class ConnectionFailureRepositoryBlacklister implements RepositoryBlackli
     private static final Logger LOGGER = Logging.getLogger(ConnectionFailureRepositoryBlacklister.class);
 
     private final Set<String> blacklistedRepositories = Sets.newConcurrentHashSet();
+    private final ThreadLocal<Boolean> suspended = ThreadLocal.withInitial(() -> false);
 
     @Override
     public boolean isBlacklisted(String repositoryId) {
@@ -42,6 +44,10 @@ public boolean blacklistRepository(String repositoryId, Throwable throwable) {
             return true;
         }
 
+        if (suspended.get()) {
+            return false;
+        }
+
         if (isCriticalFailure(throwable)) {
             LOGGER.debug("Repository {} has been blacklisted for this build due to connectivity issues", repositoryId);
             blacklistedRepositories.add(repositoryId);
@@ -55,4 +61,15 @@ public boolean blacklistRepository(String repositoryId, Throwable throwable) {
     public Set<String> getBlacklistedRepositories() {
         return blacklistedRepositories;
     }
+
+    @Override
+    public <T> T withoutBlacklisting(Factory<T> action) {
+        boolean wasSuspended = suspended.get();
+        suspended.set(true);
+        try {
+            return action.create();
+        } finally {
+            suspended.set(wasSuspended);
+        }
+    }
 }
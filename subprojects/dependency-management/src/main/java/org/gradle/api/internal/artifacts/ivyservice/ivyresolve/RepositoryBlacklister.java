@@ -16,6 +16,8 @@
 
 package org.gradle.api.internal.artifacts.ivyservice.ivyresolve;
 
+import org.gradle.internal.Factory;
+
 import java.util.Collections;
 import java.util.Set;
 
@@ -27,6 +29,12 @@ public interface RepositoryBlacklister {
 
     Set<String> getBlacklistedRepositories();
 
+    /**
+     * Runs the given action on the current thread, without blacklisting any repository for the failures that happen while it runs.
+     * Repositories that are already blacklisted remain so.
+     */
+    <T> T withoutBlacklisting(Factory<T> action);
+
     enum NoOpBlacklister implements RepositoryBlacklister {
         INSTANCE;
 
@@ -44,5 +52,10 @@ public boolean blacklistRepository(String repositoryId, Throwable throwable) {
         public Set<String> getBlacklistedRepositories() {
             return Collections.emptySet();
         }
+
+        @Override
+        public <T> T withoutBlacklisting(Factory<T> action) {
+            return action.create();
+        }
     }
 }
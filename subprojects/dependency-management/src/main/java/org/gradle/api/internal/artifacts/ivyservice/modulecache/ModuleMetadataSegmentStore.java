@@ -0,0 +1,383 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Maps;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
+import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the module metadata of each repository in a single append-only segment file, instead of a file per module version.
+ *
+ * A segment starts with a header that identifies its format, followed by the records. Each record holds the length of the serialized metadata, the coordinates of the module version and the serialized metadata.
+ * The index from coordinates to records is kept in memory and built by reading the record headers only. Since records are only ever appended,
+ * the index is brought up to date with the records appended by other processes by reading the headers past the end of the indexed part.
+ * A record that was only partially written, by a process that crashed, is overwritten by the next append.
+ *
+ * Storing the metadata of a module version again appends a new record, which replaces the previous one in the index.
+ * Once the replaced records take up more space than the live ones, and at least {@code minimumDeadBytesToCompact}, the segment is compacted:
+ * the live records are copied to a new file, which replaces the segment. Other processes that have the segment open notice that its header
+ * was marked as replaced and reopen it. When the segment cannot be replaced, for example on Windows while another process has it open,
+ * the segment is kept as it is and this store does not try to compact it again.
+ *
+ * All methods must be called while holding the lock of the artifact cache.
+ */
+public class ModuleMetadataSegmentStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleMetadataSegmentStore.class);
+    private static final int CURRENT_FORMAT = 1;
+    private static final int REPLACED = -1;
+    private static final int HEADER_LENGTH = 4;
+    private static final long DEFAULT_MINIMUM_DEAD_BYTES_TO_COMPACT = 1024 * 1024;
+
+    private final File segmentsDir;
+    private final ModuleMetadataSerializer moduleMetadataSerializer;
+    private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+    private final Interner<String> stringInterner;
+    private final long minimumDeadBytesToCompact;
+    private final Map<String, Segment> segments = new HashMap<>();
+
+    public ModuleMetadataSegmentStore(File segmentsDir,
+                                      ModuleMetadataSerializer moduleMetadataSerializer,
+                                      ImmutableModuleIdentifierFactory moduleIdentifierFactory,
+                                      Interner<String> stringInterner) {
+        this(segmentsDir, moduleMetadataSerializer, moduleIdentifierFactory, stringInterner, DEFAULT_MINIMUM_DEAD_BYTES_TO_COMPACT);
+    }
+
+    ModuleMetadataSegmentStore(File segmentsDir,
+                               ModuleMetadataSerializer moduleMetadataSerializer,
+                               ImmutableModuleIdentifierFactory moduleIdentifierFactory,
+                               Interner<String> stringInterner,
+                               long minimumDeadBytesToCompact) {
+        this.minimumDeadBytesToCompact = minimumDeadBytesToCompact;
+        this.segmentsDir = segmentsDir;
+        this.moduleMetadataSerializer = moduleMetadataSerializer;
+        this.moduleIdentifierFactory = moduleIdentifierFactory;
+        this.stringInterner = stringInterner;
+    }
+
+    @Nullable
+    public synchronized MutableModuleComponentResolveMetadata getModuleDescriptor(ModuleComponentAtRepositoryKey component) {
+        Segment segment = segments.computeIfAbsent(component.getRepositoryId(), Segment::new);
+        try {
+            byte[] content = segment.read(component.getComponentId());
+            if (content == null) {
+                return null;
+            }
+            try (StringDeduplicatingDecoder decoder = new StringDeduplicatingDecoder(new KryoBackedDecoder(new ByteArrayInputStream(content)), stringInterner)) {
+                return moduleMetadataSerializer.read(decoder, moduleIdentifierFactory, Maps.newHashMap());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not load module metadata for " + component.getComponentId().getDisplayName() + " from " + segment.file, e);
+        }
+    }
+
+    public synchronized void putModuleDescriptor(ModuleComponentAtRepositoryKey component, ModuleComponentResolveMetadata metadata) {
+        Segment segment = segments.computeIfAbsent(component.getRepositoryId(), Segment::new);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            try (KryoBackedEncoder encoder = new KryoBackedEncoder(content)) {
+                moduleMetadataSerializer.write(encoder, metadata, Maps.newHashMap());
+            }
+            segment.append(component.getComponentId(), content.toByteArray());
+        } catch (Exception e) {
+            throw new RuntimeException("Could not store module metadata for " + component.getComponentId().getDisplayName() + " to " + segment.file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        CompositeStoppable.stoppable(segments.values()).stop();
+        segments.clear();
+    }
+
+    void replaceSegment(Path compacted, Path segment) throws IOException {
+        Files.move(compacted, segment, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private class Segment implements Closeable {
+        private final File file;
+        private final Map<ModuleComponentIdentifier, Record> index = new HashMap<>();
+        private FileChannel channel;
+        private boolean writable;
+        private long indexedLength = HEADER_LENGTH;
+        private long liveLength;
+        private boolean compactionFailed;
+
+        Segment(String repositoryId) {
+            this.file = new File(segmentsDir, repositoryId + ".bin");
+        }
+
+        @Nullable
+        byte[] read(ModuleComponentIdentifier id) throws IOException {
+            if (channel == null && !file.exists()) {
+                return null;
+            }
+            updateIndex(false);
+            Record record = index.get(id);
+            if (record == null) {
+                return null;
+            }
+            ByteBuffer content = ByteBuffer.allocate(record.length);
+            while (content.hasRemaining()) {
+                if (channel.read(content, record.offset + content.position()) < 0) {
+                    throw new EOFException("Unexpected end of segment.");
+                }
+            }
+            return content.array();
+        }
+
+        void append(ModuleComponentIdentifier id, byte[] content) throws IOException {
+            updateIndex(true);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(content.length + 64);
+            DataOutputStream output = new DataOutputStream(record);
+            output.writeInt(content.length);
+            writeString(output, id.getGroup());
+            writeString(output, id.getModule());
+            writeString(output, id.getVersion());
+            int headerLength = output.size();
+            output.write(content);
+
+            // Overwrites whatever follows the last complete record
+            channel.truncate(indexedLength);
+            ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+            long position = indexedLength;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            addToIndex(id, new Record(indexedLength + headerLength, content.length, headerLength));
+            indexedLength = position;
+
+            long deadLength = indexedLength - HEADER_LENGTH - liveLength;
+            if (!compactionFailed && deadLength >= minimumDeadBytesToCompact && deadLength > liveLength) {
+                compact();
+            }
+        }
+
+        private void compact() throws IOException {
+            List<Map.Entry<ModuleComponentIdentifier, Record>> records = new ArrayList<>(index.entrySet());
+            records.sort(Comparator.comparingLong(entry -> entry.getValue().offset));
+            File compacted = new File(segmentsDir, file.getName() + ".compacted");
+            Map<ModuleComponentIdentifier, Record> compactedIndex = new HashMap<>(index.size());
+            long position = HEADER_LENGTH;
+            try (FileChannel output = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeHeader(output, CURRENT_FORMAT);
+                for (Map.Entry<ModuleComponentIdentifier, Record> entry : records) {
+                    Record record = entry.getValue();
+                    long recordStart = record.offset - record.headerLength;
+                    long recordLength = record.headerLength + record.length;
+                    long copied = 0;
+                    while (copied < recordLength) {
+                        copied += channel.transferTo(recordStart + copied, recordLength - copied, output.position(position + copied));
+                    }
+                    compactedIndex.put(entry.getKey(), new Record(position + record.headerLength, record.length, record.headerLength));
+                    position += recordLength;
+                }
+            }
+
+            // Mark the segment as replaced before replacing it, so that other processes that have it open reopen it.
+            // Should the process crash before the replacement, the segment is started over the next time it is opened
+            writeHeader(channel, REPLACED);
+            close();
+            try {
+                replaceSegment(compacted.toPath(), file.toPath());
+            } catch (IOException e) {
+                // Keep using the segment as it is. No other process reads it in the meantime, as they all hold the lock of the artifact cache
+                LOGGER.debug("Could not replace module metadata segment {} with its compacted copy.", file, e);
+                compactionFailed = true;
+                open(true);
+                writeHeader(channel, CURRENT_FORMAT);
+                Files.deleteIfExists(compacted.toPath());
+                return;
+            }
+            open(true);
+            index.clear();
+            index.putAll(compactedIndex);
+            indexedLength = position;
+            liveLength = position - HEADER_LENGTH;
+        }
+
+        private void updateIndex(boolean forWriting) throws IOException {
+            if (channel == null || (forWriting && !writable)) {
+                open(forWriting);
+            }
+            if (readHeader() != CURRENT_FORMAT) {
+                // The segment was compacted by another process, or was abandoned, so start over
+                open(forWriting);
+                index.clear();
+                liveLength = 0;
+                indexedLength = HEADER_LENGTH;
+                if (readHeader() != CURRENT_FORMAT) {
+                    if (!forWriting) {
+                        return;
+                    }
+                    channel.truncate(0);
+                    writeHeader(channel, CURRENT_FORMAT);
+                }
+            }
+            long length = channel.size();
+            if (length < indexedLength) {
+                // The segment was replaced, so start over
+                index.clear();
+                liveLength = 0;
+                indexedLength = HEADER_LENGTH;
+            }
+            if (length == indexedLength) {
+                return;
+            }
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(indexedLength))));
+            long position = indexedLength;
+            try {
+                while (position < length) {
+                    int contentLength = input.readInt();
+                    byte[] group = readString(input);
+                    byte[] module = readString(input);
+                    byte[] version = readString(input);
+                    int headerLength = 4 + 6 + group.length + module.length + version.length;
+                    long contentOffset = position + headerLength;
+                    if (contentOffset + contentLength > length) {
+                        break;
+                    }
+                    ModuleComponentIdentifier id = DefaultModuleComponentIdentifier.newId(moduleIdentifierFactory.module(decodeString(group), decodeString(module)), decodeString(version));
+                    addToIndex(id, new Record(contentOffset, contentLength, headerLength));
+                    skipFully(input, contentLength);
+                    position = contentOffset + contentLength;
+                }
+            } catch (EOFException e) {
+                // Ignore a partially written record
+            }
+            indexedLength = position;
+        }
+
+        private void addToIndex(ModuleComponentIdentifier id, Record record) {
+            Record previous = index.put(id, record);
+            if (previous != null) {
+                liveLength -= previous.headerLength + previous.length;
+            }
+            liveLength += record.headerLength + record.length;
+        }
+
+        private int readHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return REPLACED;
+                }
+            }
+            return header.getInt(0);
+        }
+
+        private void open(boolean forWriting) throws IOException {
+            close();
+            if (forWriting) {
+                if (!segmentsDir.isDirectory() && !segmentsDir.mkdirs()) {
+                    throw new IOException("Could not create directory " + segmentsDir);
+                }
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+            writable = forWriting;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, int value) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(0, value);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static byte[] readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readUnsignedShort()];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static String decodeString(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipFully(DataInputStream input, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static class Record {
+        private final long offset;
+        private final int length;
+        private final int headerLength;
+
+        private Record(long offset, int length, int headerLength) {
+            this.offset = offset;
+            this.length = length;
+            this.headerLength = headerLength;
+        }
+    }
+}
@@ -15,14 +15,26 @@
  */
 package org.gradle.api.internal.artifacts.ivyservice.modulecache;
 
-public class ModuleRepositoryCacheProvider {
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
+
+public class ModuleRepositoryCacheProvider implements Stoppable {
     private final ModuleRepositoryCaches caches;
     private final ModuleRepositoryCaches inMemoryCaches;
     private final ResolvedArtifactCaches resolvedArtifactCaches = new ResolvedArtifactCaches();
+    private final Stoppable resources;
 
     public ModuleRepositoryCacheProvider(ModuleRepositoryCaches caches, ModuleRepositoryCaches inMemoryCaches) {
+        this(caches, inMemoryCaches, CompositeStoppable.NO_OP_STOPPABLE);
+    }
+
+    /**
+     * @param resources the resources used by the caches, which are released when this provider is stopped.
+     */
+    public ModuleRepositoryCacheProvider(ModuleRepositoryCaches caches, ModuleRepositoryCaches inMemoryCaches, Stoppable resources) {
         this.caches = caches;
         this.inMemoryCaches = inMemoryCaches;
+        this.resources = resources;
     }
 
     /**
@@ -43,4 +55,9 @@ public ModuleRepositoryCaches getInMemoryOnlyCaches() {
     public ResolvedArtifactCaches getResolvedArtifactCaches() {
         return resolvedArtifactCaches;
     }
+
+    @Override
+    public void stop() {
+        resources.stop();
+    }
 }
@@ -26,6 +26,7 @@
 import org.gradle.api.internal.artifacts.repositories.metadata.IvyMutableModuleMetadataFactory;
 import org.gradle.api.internal.artifacts.repositories.metadata.MavenMutableModuleMetadataFactory;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
 import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
 import org.gradle.internal.hash.ChecksumService;
@@ -35,10 +36,18 @@
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.util.BuildCommencedTimeProvider;
 
-public class PersistentModuleMetadataCache extends AbstractModuleMetadataCache {
+import java.io.Closeable;
+import java.io.File;
+
+public class PersistentModuleMetadataCache extends AbstractModuleMetadataCache implements Closeable {
+    /**
+     * Stores the module metadata of each repository in a single segment file, see {@link ModuleMetadataSegmentStore}.
+     */
+    public static final String SEGMENTED_STORE_PROPERTY = "org.gradle.unsafe.dependency-resolution.metadata-segments";
 
     private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> cache;
     private final ModuleMetadataStore moduleMetadataStore;
+    private final ModuleMetadataSegmentStore moduleMetadataSegmentStore;
     private final ArtifactCacheLockingManager artifactCacheLockingManager;
 
     public PersistentModuleMetadataCache(BuildCommencedTimeProvider timeProvider,
@@ -52,7 +61,11 @@ public PersistentModuleMetadataCache(BuildCommencedTimeProvider timeProvider,
                                          ModuleSourcesSerializer moduleSourcesSerializer,
                                          ChecksumService checksumService) {
         super(timeProvider);
-        moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(checksumService, artifactCacheMetadata.getMetaDataStoreDirectory()), new ModuleMetadataSerializer(attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory, moduleSourcesSerializer), moduleIdentifierFactory, stringInterner);
+        ModuleMetadataSerializer moduleMetadataSerializer = new ModuleMetadataSerializer(attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory, moduleSourcesSerializer);
+        moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(checksumService, artifactCacheMetadata.getMetaDataStoreDirectory()), moduleMetadataSerializer, moduleIdentifierFactory, stringInterner);
+        moduleMetadataSegmentStore = UnsafeFeatureFlags.isEnabled(SEGMENTED_STORE_PROPERTY)
+            ? new ModuleMetadataSegmentStore(new File(artifactCacheMetadata.getMetaDataStoreDirectory().getParentFile(), "descriptor-segments"), moduleMetadataSerializer, moduleIdentifierFactory, stringInterner)
+            : null;
         this.artifactCacheLockingManager = artifactCacheLockingManager;
     }
 
@@ -78,7 +91,7 @@ protected CachedMetadata get(ModuleComponentAtRepositoryKey key) {
             if (entry.isMissing()) {
                 return new DefaultCachedMetadata(entry, null, timeProvider);
             }
-            MutableModuleComponentResolveMetadata metadata = moduleMetadataStore.getModuleDescriptor(key);
+            MutableModuleComponentResolveMetadata metadata = moduleMetadataSegmentStore != null ? moduleMetadataSegmentStore.getModuleDescriptor(key) : moduleMetadataStore.getModuleDescriptor(key);
             if (metadata == null) {
                 // Descriptor file has been deleted - ignore the entry
                 cache.remove(key);
@@ -96,12 +109,23 @@ protected void store(final ModuleComponentAtRepositoryKey key, final ModuleMetad
             // Need to lock the cache in order to write to the module metadata store
             artifactCacheLockingManager.useCache(() -> {
                 final ModuleComponentResolveMetadata metadata = cachedMetadata.getMetadata();
-                moduleMetadataStore.putModuleDescriptor(key, metadata);
+                if (moduleMetadataSegmentStore != null) {
+                    moduleMetadataSegmentStore.putModuleDescriptor(key, metadata);
+                } else {
+                    moduleMetadataStore.putModuleDescriptor(key, metadata);
+                }
                 getCache().put(key, entry);
             });
         }
     }
 
+    @Override
+    public void close() {
+        if (moduleMetadataSegmentStore != null) {
+            moduleMetadataSegmentStore.close();
+        }
+    }
+
     private static class RevisionKeySerializer extends AbstractSerializer<ModuleComponentAtRepositoryKey> {
         private final ComponentIdentifierSerializer componentIdSerializer = new ComponentIdentifierSerializer();
 
@@ -19,6 +19,7 @@
 import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories.CachingExcludeFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories.ExcludeFactory;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories.InterningExcludeFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories.LoggingExcludeFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories.NormalizingExcludeFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories.OptimizingExcludeFactory;
@@ -39,7 +40,9 @@ public class ModuleExclusions {
         new CachingExcludeFactory(// caches the result of TL operations
             LoggingExcludeFactory.maybeLog(new NormalizingExcludeFactory(// performs algebra
                 new CachingExcludeFactory(// caches the result of optimization operations
-                    new DefaultExcludeFactory(), // the end of the chain, mandatory
+                    new InterningExcludeFactory(// makes equal specs identical, so that comparisons in caches are cheap
+                        new DefaultExcludeFactory() // the end of the chain, mandatory
+                    ),
                     mergeCaches // shares the same caches as the top level one as after reducing we can find already cached merge operations
                 )
             )),
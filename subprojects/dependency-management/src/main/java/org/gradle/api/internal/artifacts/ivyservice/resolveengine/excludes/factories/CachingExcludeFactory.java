@@ -15,9 +15,9 @@
  */
 package org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories;
 
-import com.google.common.collect.Maps;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ExcludeSpec;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
@@ -145,6 +145,9 @@ public int hashCode() {
      * Synchronization is ad-hoc, since `computeIfAbsent` on a concurrent hash map
      * will not allow for recursion, which is the case for us whenever a cache is
      * found at different levels.
+     *
+     * Each cache is bounded and evicts the least recently used results, since the caches live
+     * as long as the build and are shared by the resolution of all configurations.
      */
     public static class MergeCaches {
         private final ConcurrentCache<ExcludePair, ExcludeSpec> allOfPairCache = ConcurrentCache.of();
@@ -170,7 +173,14 @@ ExcludeSpec getAllOf(ExcludesKey list, Function<ExcludesKey, ExcludeSpec> onMiss
     }
 
     private static class ConcurrentCache<K, V> {
-        private final Map<K, V> backingMap = Maps.newHashMap();
+        private static final int MAX_ENTRIES = 50_000;
+
+        private final Map<K, V> backingMap = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
 
         static <K, V> ConcurrentCache<K, V> of() {
             return new ConcurrentCache<>();
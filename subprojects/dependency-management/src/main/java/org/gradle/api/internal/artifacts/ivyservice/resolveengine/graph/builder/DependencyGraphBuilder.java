@@ -34,6 +34,7 @@
 import org.gradle.api.internal.artifacts.ResolvedVersionConstraint;
 import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
 import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionApplicator;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.RepositoryBlacklister;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.Version;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
@@ -49,6 +50,7 @@
 import org.gradle.api.internal.attributes.ImmutableAttributes;
 import org.gradle.api.internal.attributes.ImmutableAttributesFactory;
 import org.gradle.api.specs.Spec;
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.component.IncompatibleVariantsSelectionException;
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
 import org.gradle.internal.component.model.ComponentResolveMetadata;
@@ -75,9 +77,16 @@
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class DependencyGraphBuilder {
+    /**
+     * Fetches the metadata of the fixed versions a component depends on as soon as the metadata of the component is available, instead of
+     * when the traversal reaches them.
+     */
+    public static final String SPECULATIVE_METADATA_PROPERTY = "org.gradle.unsafe.dependency-resolution.speculative-metadata";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraphBuilder.class);
     private final ModuleConflictHandler moduleConflictHandler;
     private final Spec<? super DependencyMetadata> edgeFilter;
@@ -94,6 +103,7 @@ public class DependencyGraphBuilder {
     private final VersionSelectorScheme versionSelectorScheme;
     private final Comparator<Version> versionComparator;
     private final VersionParser versionParser;
+    private final RepositoryBlacklister repositoryBlacklister;
 
     final static Spec<EdgeState> ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC = dependencyState -> dependencyState.getDependencyState().getDependency().isEndorsingStrictVersions();
     final static Spec<EdgeState> NOT_ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC = dependencyState -> !dependencyState.getDependencyState().getDependency().isEndorsingStrictVersions();
@@ -112,7 +122,8 @@ public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolve
                                   ImmutableAttributesFactory attributesFactory,
                                   VersionSelectorScheme versionSelectorScheme,
                                   Comparator<Version> versionComparator,
-                                  VersionParser versionParser) {
+                                  VersionParser versionParser,
+                                  RepositoryBlacklister repositoryBlacklister) {
         this.idResolver = componentIdResolver;
         this.metaDataResolver = componentMetaDataResolver;
         this.moduleResolver = resolveContextToComponentResolver;
@@ -128,6 +139,7 @@ public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolve
         this.versionSelectorScheme = versionSelectorScheme;
         this.versionComparator = versionComparator;
         this.versionParser = versionParser;
+        this.repositoryBlacklister = repositoryBlacklister;
     }
 
     public void resolve(final ResolveContext resolveContext, final DependencyGraphVisitor modelVisitor) {
@@ -139,10 +151,32 @@ public void resolve(final ResolveContext resolveContext, final DependencyGraphVi
         int graphSize = estimateSize(resolveContext);
         ResolutionStrategyInternal resolutionStrategy = resolveContext.getResolutionStrategy();
 
-        final ResolveState resolveState = new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, metaDataResolver, edgeFilter, attributesSchema, moduleExclusions, componentSelectorConverter, attributesFactory, dependencySubstitutionApplicator, versionSelectorScheme, versionComparator, versionParser, moduleConflictHandler.getResolver(), graphSize);
-
-        Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache = Maps.newHashMapWithExpectedSize(graphSize / 2);
-        traverseGraph(resolveState, componentIdentifierCache);
+        final ResolveState resolveState;
+        if (UnsafeFeatureFlags.isEnabled(SPECULATIVE_METADATA_PROPERTY)) {
+            // Failures of the traversal are rethrown as they are, rather than as failures of the build operation queue
+            AtomicReference<ResolveState> traversed = new AtomicReference<>();
+            AtomicReference<RuntimeException> traversalFailure = new AtomicReference<>();
+            buildOperationExecutor.runAll(buildOperationQueue -> {
+                SpeculativeComponentMetaDataResolver speculativeMetaDataResolver = new SpeculativeComponentMetaDataResolver(metaDataResolver, versionSelectorScheme, repositoryBlacklister, buildOperationQueue);
+                try {
+                    ResolveState state = newResolveState(resolveContext, idGenerator, rootModule, speculativeMetaDataResolver, graphSize);
+                    speculativeMetaDataResolver.prefetchDependenciesOf(state.getRoot().getMetadata());
+                    traverseGraph(state, Maps.newHashMapWithExpectedSize(graphSize / 2));
+                    traversed.set(state);
+                } catch (RuntimeException e) {
+                    traversalFailure.set(e);
+                } finally {
+                    speculativeMetaDataResolver.stop();
+                }
+            });
+            if (traversalFailure.get() != null) {
+                throw traversalFailure.get();
+            }
+            resolveState = traversed.get();
+        } else {
+            resolveState = newResolveState(resolveContext, idGenerator, rootModule, metaDataResolver, graphSize);
+            traverseGraph(resolveState, Maps.newHashMapWithExpectedSize(graphSize / 2));
+        }
 
         validateGraph(resolveState, resolutionStrategy.isFailingOnDynamicVersions(), resolutionStrategy.isFailingOnChangingVersions());
 
@@ -150,6 +184,10 @@ public void resolve(final ResolveContext resolveContext, final DependencyGraphVi
 
     }
 
+    private ResolveState newResolveState(ResolveContext resolveContext, IdGenerator<Long> idGenerator, DefaultBuildableComponentResolveResult rootModule, ComponentMetaDataResolver componentMetaDataResolver, int graphSize) {
+        return new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, componentMetaDataResolver, edgeFilter, attributesSchema, moduleExclusions, componentSelectorConverter, attributesFactory, dependencySubstitutionApplicator, versionSelectorScheme, versionComparator, versionParser, moduleConflictHandler.getResolver(), graphSize);
+    }
+
     /**
      * This method is a heuristic that gives an idea of the "size" of the graph. The larger
      * the graph is, the higher the risk of internal resizes exists, so we try to estimate
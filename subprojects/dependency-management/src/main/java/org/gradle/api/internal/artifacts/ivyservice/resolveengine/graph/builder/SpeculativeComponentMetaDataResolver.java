@@ -0,0 +1,287 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.RepositoryBlacklister;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ComponentMetaDataResolver} that fetches the metadata of the dependencies of each resolved component ahead of the graph traversal.
+ *
+ * Whenever the metadata of a module component is available, the fixed versions it depends on are submitted to a build operation queue, whose workers
+ * resolve their metadata and in turn submit their dependencies. The traversal still asks for metadata one component at a time, in its usual order:
+ * it picks up a fetched result, waits for a fetch that is in progress, or claims a fetch that has not started yet and runs it itself. So the graph
+ * is the same as without prefetching, even though some metadata may be fetched for components that the traversal ends up not using, for example
+ * versions that lose a conflict.
+ *
+ * Since a prefetch may be for a component that is not used, its failures must not affect the resolution. Prefetches run without blacklisting
+ * repositories, and the traversal resolves a component again itself when its prefetch failed.
+ *
+ * Prefetching reads ahead at most {@value #MAX_READ_AHEAD_DEPTH} levels of dependencies past the components the traversal has resolved, and
+ * submits no more prefetches while {@value #MAX_PENDING_PREFETCHES} are pending. The skipped dependencies of the components the traversal has
+ * resolved are submitted the next times the traversal asks for metadata, and the other skipped dependencies once the traversal reaches the
+ * component that declares them. This bounds both the work spent on components that are not used and the downloads
+ * that are still running when the traversal completes.
+ */
+class SpeculativeComponentMetaDataResolver implements ComponentMetaDataResolver {
+    static final int MAX_READ_AHEAD_DEPTH = 2;
+    static final int MAX_PENDING_PREFETCHES = 64;
+
+    private final ComponentMetaDataResolver delegate;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final RepositoryBlacklister repositoryBlacklister;
+    private final BuildOperationQueue<RunnableBuildOperation> queue;
+    private final ConcurrentMap<ComponentIdentifier, MetadataPrefetch> prefetches = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingPrefetches = new AtomicInteger();
+    // The configurations resolved by the traversal whose dependencies may not all have been submitted yet, only used by the traversal
+    private final Deque<ConfigurationMetadata> readAheadFrom = new ArrayDeque<>();
+    private volatile boolean stopped;
+
+    SpeculativeComponentMetaDataResolver(ComponentMetaDataResolver delegate, VersionSelectorScheme versionSelectorScheme, RepositoryBlacklister repositoryBlacklister, BuildOperationQueue<RunnableBuildOperation> queue) {
+        this.delegate = delegate;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.repositoryBlacklister = repositoryBlacklister;
+        this.queue = queue;
+    }
+
+    @Override
+    public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+        if (!isDefault(componentOverrideMetadata)) {
+            delegate.resolve(identifier, componentOverrideMetadata, result);
+            readAheadFrom(result);
+            return;
+        }
+        // Registers the fetch even when no prefetch was submitted yet, so that a prefetch submitted later does not fetch the same metadata again
+        DefaultBuildableComponentResolveResult prefetched = prefetches.computeIfAbsent(identifier, id -> new MetadataPrefetch(id, 0)).join();
+        if (prefetched == null) {
+            // The prefetch failed, so resolve the component as if it was never prefetched
+            delegate.resolve(identifier, componentOverrideMetadata, result);
+        } else {
+            prefetched.applyTo(result);
+            if (prefetched.getFailure() != null) {
+                result.failed(prefetched.getFailure());
+            } else {
+                result.resolved(prefetched.getMetadata());
+            }
+        }
+        readAheadFrom(result);
+    }
+
+    @Override
+    public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+        return delegate.isFetchingMetadataCheap(identifier);
+    }
+
+    /**
+     * Stops submitting prefetches, and turns the ones that have not started yet into no-ops.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    private void readAheadFrom(BuildableComponentResolveResult result) {
+        if (result.hasResult() && result.getFailure() == null) {
+            readAheadFrom.addAll(configurationsOf(result.getMetadata()));
+        }
+        readAhead();
+    }
+
+    /**
+     * Submits prefetches for the dependencies of a configuration that the traversal has resolved, for example the root configuration.
+     */
+    void prefetchDependenciesOf(ConfigurationMetadata configuration) {
+        readAheadFrom.add(configuration);
+        readAhead();
+    }
+
+    private void readAhead() {
+        while (!readAheadFrom.isEmpty() && prefetchDependenciesOf(readAheadFrom.peek(), 1)) {
+            readAheadFrom.remove();
+        }
+    }
+
+    private static List<? extends ConfigurationMetadata> configurationsOf(ComponentResolveMetadata metadata) {
+        if (metadata.getVariantsForGraphTraversal().isPresent()) {
+            return metadata.getVariantsForGraphTraversal().get();
+        }
+        ConfigurationMetadata defaultConfiguration = metadata.getConfiguration(Dependency.DEFAULT_CONFIGURATION);
+        return defaultConfiguration == null ? Collections.emptyList() : Collections.singletonList(defaultConfiguration);
+    }
+
+    /**
+     * Submits prefetches for the dependencies of the given configuration, returning false when some were skipped because too many prefetches are pending.
+     */
+    private boolean prefetchDependenciesOf(ConfigurationMetadata configuration, int depth) {
+        if (stopped || depth > MAX_READ_AHEAD_DEPTH) {
+            return true;
+        }
+        for (DependencyMetadata dependency : configuration.getDependencies()) {
+            ComponentIdentifier identifier = fixedTargetOf(dependency);
+            if (identifier == null || prefetches.containsKey(identifier) || delegate.isFetchingMetadataCheap(identifier)) {
+                continue;
+            }
+            if (pendingPrefetches.get() >= MAX_PENDING_PREFETCHES) {
+                return false;
+            }
+            MetadataPrefetch prefetch = new MetadataPrefetch(identifier, depth);
+            if (prefetches.putIfAbsent(identifier, prefetch) == null) {
+                pendingPrefetches.incrementAndGet();
+                queue.add(prefetch);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the component that a dependency targets when it can be known without resolving anything, that is a fixed version
+     * of a module that is fetched with default overrides.
+     */
+    @Nullable
+    private ComponentIdentifier fixedTargetOf(DependencyMetadata dependency) {
+        ComponentSelector selector = dependency.getSelector();
+        if (dependency.isConstraint() || dependency.isChanging() || !dependency.getArtifacts().isEmpty() || !(selector instanceof ModuleComponentSelector)) {
+            return null;
+        }
+        ModuleComponentSelector moduleSelector = (ModuleComponentSelector) selector;
+        VersionConstraint versionConstraint = moduleSelector.getVersionConstraint();
+        String version = versionConstraint.getRequiredVersion().isEmpty() ? versionConstraint.getPreferredVersion() : versionConstraint.getRequiredVersion();
+        if (version.isEmpty() || versionConstraint.getBranch() != null || versionSelectorScheme.parseSelector(version).isDynamic()) {
+            return null;
+        }
+        return DefaultModuleComponentIdentifier.newId(moduleSelector.getModuleIdentifier(), version);
+    }
+
+    private static boolean isDefault(ComponentOverrideMetadata componentOverrideMetadata) {
+        return !componentOverrideMetadata.isChanging() && componentOverrideMetadata.getArtifacts().isEmpty() && componentOverrideMetadata.getClientModule() == null;
+    }
+
+    private class MetadataPrefetch implements RunnableBuildOperation {
+        private final ComponentIdentifier identifier;
+        private final int depth;
+        private final DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+        private boolean started;
+        private boolean speculative;
+        private boolean completed;
+        private Throwable unexpectedFailure;
+
+        MetadataPrefetch(ComponentIdentifier identifier, int depth) {
+            this.identifier = identifier;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            try {
+                if (!stopped && start()) {
+                    speculative = true;
+                    repositoryBlacklister.withoutBlacklisting(() -> {
+                        resolveAndComplete();
+                        return null;
+                    });
+                }
+            } finally {
+                pendingPrefetches.decrementAndGet();
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Prefetch metadata of " + identifier.getDisplayName());
+        }
+
+        /**
+         * Returns the result of this prefetch, running it on the calling thread when no worker has picked it up yet,
+         * or null when a worker ran it and it failed.
+         */
+        @Nullable
+        DefaultBuildableComponentResolveResult join() {
+            if (start()) {
+                resolveAndComplete();
+            } else {
+                synchronized (this) {
+                    while (!completed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            throw UncheckedException.throwAsUncheckedException(e);
+                        }
+                    }
+                }
+            }
+            if (speculative && (unexpectedFailure != null || result.getFailure() != null)) {
+                return null;
+            }
+            if (unexpectedFailure != null) {
+                throw UncheckedException.throwAsUncheckedException(unexpectedFailure);
+            }
+            return result;
+        }
+
+        private synchronized boolean start() {
+            if (started) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        private void resolveAndComplete() {
+            try {
+                delegate.resolve(identifier, DefaultComponentOverrideMetadata.EMPTY, result);
+            } catch (Throwable t) {
+                unexpectedFailure = t;
+            } finally {
+                synchronized (this) {
+                    completed = true;
+                    notifyAll();
+                }
+            }
+            if (speculative && unexpectedFailure == null && result.hasResult() && result.getFailure() == null) {
+                for (ConfigurationMetadata configuration : configurationsOf(result.getMetadata())) {
+                    prefetchDependenciesOf(configuration, depth + 1);
+                }
+            }
+        }
+    }
+}
@@ -33,6 +33,7 @@
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode;
 import org.gradle.api.internal.artifacts.result.DefaultResolutionResult;
 import org.gradle.api.internal.attributes.AttributeDesugaring;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.cache.internal.BinaryStore;
@@ -45,6 +46,7 @@
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -94,6 +96,14 @@ public ResolutionResult complete(Set<UnresolvedDependency> extraFailures) {
         return new DefaultResolutionResult(rootSource, rootAttributes);
     }
 
+    /**
+     * Creates the result from the content of the store of this builder without visiting the graph, for a store that was written by another builder.
+     */
+    public ResolutionResult replay(ImmutableAttributes requestedAttributes) {
+        rootAttributes = desugaring.desugar(requestedAttributes);
+        return complete(Collections.emptySet());
+    }
+
     @Override
     public void start(final RootGraphNode root) {
         rootAttributes = desugaring.desugar(root.getMetadata().getAttributes());
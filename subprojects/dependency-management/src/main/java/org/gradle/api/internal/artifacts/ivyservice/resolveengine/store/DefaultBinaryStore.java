@@ -19,9 +19,11 @@
 import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.io.RandomAccessFileInputStream;
 import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.SharedStringTable;
 import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -31,19 +33,29 @@
 import static org.gradle.internal.UncheckedException.throwAsUncheckedException;
 
 class DefaultBinaryStore implements BinaryStore, Closeable {
+    private static final int BUFFER_SIZE = 4096;
     private File file;
+    private final SharedStringTable sharedStrings;
     private StringDeduplicatingKryoBackedEncoder encoder;
     private long offset = -1;
 
     public DefaultBinaryStore(File file) {
+        this(file, null);
+    }
+
+    /**
+     * @param sharedStrings - table to write strings to instead of the file, which must live as long as the data in this store is read.
+     */
+    public DefaultBinaryStore(File file, @Nullable SharedStringTable sharedStrings) {
         this.file = file;
+        this.sharedStrings = sharedStrings;
     }
 
     @Override
     public void write(WriteAction write) {
         if (encoder == null) {
             try {
-                encoder = new StringDeduplicatingKryoBackedEncoder(new FileOutputStream(file));
+                encoder = new StringDeduplicatingKryoBackedEncoder(new FileOutputStream(file), BUFFER_SIZE, sharedStrings);
             } catch (FileNotFoundException e) {
                 throw throwAsUncheckedException(e);
             }
@@ -77,7 +89,7 @@ public BinaryData done() {
                 encoder.done();
                 encoder.flush();
             }
-            return new SimpleBinaryData(file, offset);
+            return new SimpleBinaryData(file, offset, sharedStrings);
         } finally {
             offset = -1;
         }
@@ -109,13 +121,15 @@ long getSize() {
     private static class SimpleBinaryData implements BinaryStore.BinaryData {
         private final long offset;
         private final File inputFile;
+        private final SharedStringTable sharedStrings;
 
         private Decoder decoder;
         private CompositeStoppable resources;
 
-        public SimpleBinaryData(File inputFile, long offset) {
+        public SimpleBinaryData(File inputFile, long offset, @Nullable SharedStringTable sharedStrings) {
             this.inputFile = inputFile;
             this.offset = offset;
+            this.sharedStrings = sharedStrings;
         }
 
         @Override
@@ -124,7 +138,7 @@ public <T> T read(BinaryStore.ReadAction<T> readAction) {
                 if (decoder == null) {
                     RandomAccessFile randomAccess = new RandomAccessFile(inputFile, "r");
                     randomAccess.seek(offset);
-                    decoder = new StringDeduplicatingKryoBackedDecoder(new RandomAccessFileInputStream(randomAccess));
+                    decoder = new StringDeduplicatingKryoBackedDecoder(new RandomAccessFileInputStream(randomAccess), BUFFER_SIZE, sharedStrings);
                     resources = new CompositeStoppable().add(randomAccess, decoder);
                 }
                 return readAction.read(decoder);
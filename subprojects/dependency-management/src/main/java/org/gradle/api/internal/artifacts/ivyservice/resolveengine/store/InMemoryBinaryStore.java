@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.cache.internal.BinaryStore;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link BinaryStore} that keeps its content in memory. Unlike {@link DefaultBinaryStore}, the content does not depend on any other state of the build,
+ * so that it can be kept after the build and used to create a new store with the same content in a later build.
+ */
+public class InMemoryBinaryStore implements BinaryStore {
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private StringDeduplicatingKryoBackedEncoder encoder;
+    private byte[] content;
+
+    public InMemoryBinaryStore() {
+    }
+
+    /**
+     * Creates a store that has been completed with the given content, as returned by {@link #getContent()}.
+     */
+    public InMemoryBinaryStore(byte[] content) {
+        this.content = content;
+    }
+
+    @Override
+    public void write(WriteAction write) {
+        if (content != null) {
+            throw new IllegalStateException("Cannot write to " + this + " after it has been completed.");
+        }
+        if (encoder == null) {
+            encoder = new StringDeduplicatingKryoBackedEncoder(output);
+        }
+        try {
+            write.write(encoder);
+        } catch (Exception e) {
+            throw new RuntimeException("Problems writing to " + this, e);
+        }
+    }
+
+    @Override
+    public BinaryData done() {
+        return new ByteArrayBinaryData(getContent());
+    }
+
+    /**
+     * Returns the content written to this store, completing the store.
+     */
+    public byte[] getContent() {
+        if (content == null) {
+            if (encoder != null) {
+                encoder.done();
+                encoder.flush();
+            }
+            content = output.toByteArray();
+        }
+        return content;
+    }
+
+    public String toString() {
+        return "In-memory binary store";
+    }
+
+    private static class ByteArrayBinaryData implements BinaryData {
+        private final byte[] content;
+        private StringDeduplicatingKryoBackedDecoder decoder;
+
+        ByteArrayBinaryData(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public <T> T read(ReadAction<T> readAction) {
+            try {
+                if (decoder == null) {
+                    decoder = new StringDeduplicatingKryoBackedDecoder(new ByteArrayInputStream(content));
+                }
+                return readAction.read(decoder);
+            } catch (Exception e) {
+                throw new RuntimeException("Problems reading data from " + this, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoder != null) {
+                decoder.close();
+                decoder = null;
+            }
+        }
+
+        public String toString() {
+            return "In-memory binary data (" + content.length + " bytes)";
+        }
+    }
+}
@@ -23,6 +23,7 @@
 import org.gradle.api.logging.Logging;
 import org.gradle.cache.internal.Store;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.serialize.SharedStringTable;
 import org.gradle.internal.time.Time;
 import org.gradle.internal.time.Timer;
 
@@ -35,6 +36,7 @@
 public class ResolutionResultsStoreFactory implements Closeable {
     private final static Logger LOG = Logging.getLogger(ResolutionResultsStoreFactory.class);
     private static final int DEFAULT_MAX_SIZE = 2000000000; //2 gigs
+    private static final int MAX_SHARED_STRINGS = 100000;
 
     private final TemporaryFileProvider temp;
     private final int maxSize;
@@ -44,6 +46,10 @@ public class ResolutionResultsStoreFactory implements Closeable {
 
     private final AtomicInteger storeSetBaseId = new AtomicInteger(0);
 
+    // Module ids, versions and reasons repeat across configurations, so all binary stores of the build tree share one table.
+    // The table is bounded so that a very large build does not keep every string it has resolved on the heap, strings that do not fit are written to the store files
+    private final SharedStringTable sharedStrings = new SharedStringTable(MAX_SHARED_STRINGS);
+
     public ResolutionResultsStoreFactory(TemporaryFileProvider temp) {
         this(temp, DEFAULT_MAX_SIZE);
     }
@@ -65,7 +71,7 @@ private synchronized DefaultBinaryStore createBinaryStore(String storeKey) {
         if (store == null || isFull(store)) {
             File storeFile = temp.createTemporaryFile("gradle", ".bin");
             storeFile.deleteOnExit();
-            store = new DefaultBinaryStore(storeFile);
+            store = new DefaultBinaryStore(storeFile, sharedStrings);
             stores.put(storeKey, store);
             cleanUpLater.add(store);
         }
@@ -81,7 +81,9 @@ private TransformationResult createTransformationResult(TransformationSubject in
             .<TransformationResult>map(PrecomputedTransformationResult::new)
             .orElseGet(() -> {
                 TransformationOperation operation = new TransformationOperation(invocation, "Transform " + initialSubject.getDisplayName() + " with " + transformation.getDisplayName());
-                actions.add(operation);
+                // Usually called when the artifact has just been downloaded by an operation of the same queue.
+                // Start the transform before the queued downloads, so that transforms run while artifacts are being downloaded.
+                actions.addFirst(operation);
                 return operation;
             });
     }
@@ -1075,9 +1075,11 @@ class DefaultConfigurationSpec extends Specification {
             collectFiles(_) >> { return it[0] }
         }
 
-        resolver.resolveGraph(config, _) >> { ConfigurationInternal conf, DefaultResolverResults res ->
+        def resolveGraph = { ConfigurationInternal conf, DefaultResolverResults res ->
             res.graphResolved(resolutionResult, localComponentsResult, visitedArtifactSet)
         }
+        resolver.resolveGraph(config, _) >> resolveGraph
+        resolver.resolveGraphForResolutionResult(config, _) >> resolveGraph
         resolver.resolveArtifacts(config, _) >> { ConfigurationInternal conf, DefaultResolverResults res ->
             res.artifactsResolved(resolvedConfiguration, visitedArtifactSet)
         }
@@ -1219,7 +1221,7 @@ class DefaultConfigurationSpec extends Specification {
         config.state == RESOLVED
 
         and:
-        1 * resolver.resolveGraph(config, _) >> { ConfigurationInternal c, ResolverResults r ->
+        1 * resolver.resolveGraphForResolutionResult(config, _) >> { ConfigurationInternal c, ResolverResults r ->
             r.graphResolved(Stub(ResolutionResult), Stub(ResolvedLocalComponentsResult), visitedArtifacts())
         }
         1 * resolver.resolveArtifacts(config, _) >> { ConfigurationInternal c, ResolverResults r ->
@@ -1243,7 +1245,7 @@ class DefaultConfigurationSpec extends Specification {
         config.state == RESOLVED
 
         and:
-        1 * resolver.resolveGraph(config, _) >> { ConfigurationInternal c, ResolverResults r ->
+        1 * resolver.resolveGraphForResolutionResult(config, _) >> { ConfigurationInternal c, ResolverResults r ->
             r.graphResolved(Stub(ResolutionResult), Stub(ResolvedLocalComponentsResult), visitedArtifacts())
         }
         1 * resolver.resolveArtifacts(config, _) >> { ConfigurationInternal c, ResolverResults r ->
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.gradle.api.internal.artifacts.DefaultBuildIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.DefaultProjectComponentIdentifier
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.resolve.ModuleVersionResolveException
+import org.gradle.util.Path
+import spock.lang.Specification
+
+class CacheableGraphVisitorTest extends Specification {
+    def moduleReplacements = Stub(ModuleReplacementsData)
+    def visitor = new CacheableGraphVisitor(new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser()), moduleReplacements)
+
+    def "graph of fixed versions is cacheable"() {
+        when:
+        visitor.visitNode(node("foo", "1.0"))
+        visitor.visitSelector(selector("foo", "1.0"))
+        visitor.visitEdges(node("foo", "1.0"))
+
+        then:
+        visitor.cacheable
+    }
+
+    def "graph with a dynamic version is not cacheable"() {
+        when:
+        visitor.visitSelector(selector("foo", version))
+
+        then:
+        !visitor.cacheable
+
+        where:
+        version << ["1.+", "[1.0,2.0)", "latest.release"]
+    }
+
+    def "graph with a changing module is not cacheable"() {
+        when:
+        visitor.visitNode(node("foo", "1.0", true))
+
+        then:
+        !visitor.cacheable
+    }
+
+    def "graph with a snapshot version is not cacheable"() {
+        when:
+        visitor.visitNode(node("foo", "1.0-SNAPSHOT"))
+
+        then:
+        !visitor.cacheable
+    }
+
+    def "graph with a module that participates in replacements is not cacheable"() {
+        moduleReplacements.participatesInReplacements(DefaultModuleIdentifier.newId("org", "foo")) >> true
+
+        when:
+        visitor.visitNode(node("foo", "1.0"))
+
+        then:
+        !visitor.cacheable
+    }
+
+    def "graph with a project component is not cacheable"() {
+        def component = Stub(DependencyGraphComponent) {
+            getComponentId() >> new DefaultProjectComponentIdentifier(DefaultBuildIdentifier.ROOT, Path.path(":foo"), Path.path(":foo"), "foo")
+            getMetadata() >> Stub(ComponentResolveMetadata)
+        }
+
+        when:
+        visitor.visitNode(Stub(DependencyGraphNode) {
+            getOwner() >> component
+        })
+
+        then:
+        !visitor.cacheable
+    }
+
+    def "graph with a failed edge is not cacheable"() {
+        def edge = Stub(DependencyGraphEdge) {
+            getFailure() >> new ModuleVersionResolveException(selector("foo", "1.0").requested, new RuntimeException())
+        }
+
+        when:
+        visitor.visitEdges(Stub(DependencyGraphNode) {
+            getOutgoingEdges() >> [edge]
+        })
+
+        then:
+        !visitor.cacheable
+    }
+
+    private DependencyGraphNode node(String name, String version, boolean changing = false) {
+        def metadata = Stub(ComponentResolveMetadata) {
+            isChanging() >> changing
+        }
+        def component = Stub(DependencyGraphComponent) {
+            getComponentId() >> DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", name), version)
+            getModuleVersion() >> DefaultModuleVersionIdentifier.newId(DefaultModuleIdentifier.newId("org", name), version)
+            getMetadata() >> metadata
+        }
+        return Stub(DependencyGraphNode) {
+            getOwner() >> component
+            getOutgoingEdges() >> []
+        }
+    }
+
+    private DependencyGraphSelector selector(String name, String version) {
+        return Stub(DependencyGraphSelector) {
+            getRequested() >> DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId("org", name), new DefaultMutableVersionConstraint(version))
+        }
+    }
+}
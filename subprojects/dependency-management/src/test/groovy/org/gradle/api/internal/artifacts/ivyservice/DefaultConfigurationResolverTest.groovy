@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.gradle.api.artifacts.dsl.RepositoryHandler
+import org.gradle.api.artifacts.result.ResolutionResult
+import org.gradle.api.internal.artifacts.ArtifactDependencyResolver
+import org.gradle.api.internal.artifacts.ComponentSelectorConverter
+import org.gradle.api.internal.artifacts.DefaultBuildIdentifier
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.DefaultResolverResults
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.verification.DependencyVerificationOverride
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DesugaredAttributeContainerSerializer
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DummyBinaryStore
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DummyStore
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.InMemoryBinaryStore
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.StoreSet
+import org.gradle.api.internal.artifacts.transform.ArtifactTransforms
+import org.gradle.api.internal.artifacts.type.ArtifactTypeRegistry
+import org.gradle.api.internal.attributes.AttributeDesugaring
+import org.gradle.api.internal.attributes.AttributesSchemaInternal
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.local.model.RootConfigurationMetadata
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.operations.BuildOperationExecutor
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.TestUtil
+import spock.lang.Specification
+
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons.root
+
+class DefaultConfigurationResolverTest extends Specification {
+    def rootId = DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", "root"), "1.0")
+    def key = HashCode.fromInt(123)
+    def resolver = Mock(ArtifactDependencyResolver)
+    def repositories = Stub(RepositoryHandler) {
+        iterator() >> { [].iterator() }
+    }
+    def globalRules = Stub(GlobalDependencyResolutionRules)
+    def storeFactory = Stub(ResolutionResultsStoreFactory) {
+        createStoreSet() >> Stub(StoreSet) {
+            nextBinaryStore() >> { new DummyBinaryStore() }
+            oldModelCache() >> { new DummyStore() }
+            newModelCache() >> { new DummyStore() }
+        }
+    }
+    def attributesSchema = Stub(AttributesSchemaInternal)
+    def artifactTypeRegistry = Stub(ArtifactTypeRegistry)
+    def graphCache = Mock(ResolvedGraphCache)
+    def configuration = Stub(ConfigurationInternal) {
+        getAttributes() >> AttributeTestUtil.attributes(["org.foo": "v1"])
+        getResolutionStrategy() >> Stub(ResolutionStrategyInternal) {
+            getConflictResolution() >> ConflictResolution.latest
+        }
+    }
+    def configurationResolver = new DefaultConfigurationResolver(
+        resolver,
+        repositories,
+        globalRules,
+        storeFactory,
+        true,
+        attributesSchema,
+        Stub(ArtifactTransforms),
+        new DefaultImmutableModuleIdentifierFactory(),
+        Stub(BuildOperationExecutor),
+        artifactTypeRegistry,
+        Stub(ComponentSelectorConverter),
+        new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+        DefaultBuildIdentifier.ROOT,
+        new AttributeDesugaring(AttributeTestUtil.attributesFactory()),
+        DependencyVerificationOverride.NO_VERIFICATION,
+        graphCache
+    )
+
+    def "resolves and stores a graph that is not cached"() {
+        def results = new DefaultResolverResults()
+        byte[] stored = null
+
+        when:
+        configurationResolver.resolveGraphForResolutionResult(configuration, results)
+
+        then:
+        1 * graphCache.keyFor(configuration, [], globalRules, attributesSchema, artifactTypeRegistry, DependencyVerificationOverride.NO_VERIFICATION) >> key
+        1 * graphCache.load(key) >> null
+        1 * graphCache.createGraphVisitor(globalRules) >> cacheableGraphVisitor()
+        1 * resolver.resolve(configuration, [], globalRules, _, _, _, attributesSchema, artifactTypeRegistry) >> { args -> visitGraph(args[4]) }
+        1 * graphCache.store(key, _) >> { HashCode storedKey, byte[] graph -> stored = graph }
+        0 * graphCache._
+
+        and:
+        results.resolutionResult.root.id == rootId
+        replay(stored).root.id == rootId
+    }
+
+    def "does not use the cache for a configuration without key"() {
+        def results = new DefaultResolverResults()
+
+        when:
+        configurationResolver.resolveGraphForResolutionResult(configuration, results)
+
+        then:
+        1 * graphCache.keyFor(*_) >> null
+        1 * resolver.resolve(*_) >> { args -> visitGraph(args[4]) }
+        0 * graphCache._
+
+        and:
+        results.resolutionResult.root.id == rootId
+    }
+
+    def "does not use the cache when more than the resolution result is required"() {
+        def results = new DefaultResolverResults()
+
+        when:
+        configurationResolver.resolveGraph(configuration, results)
+
+        then:
+        1 * resolver.resolve(*_) >> { args -> visitGraph(args[4]) }
+        0 * graphCache._
+
+        and:
+        results.resolutionResult.root.id == rootId
+    }
+
+    def "replays a cached graph without resolving it"() {
+        def results = new DefaultResolverResults()
+
+        when:
+        configurationResolver.resolveGraphForResolutionResult(configuration, results)
+
+        then:
+        1 * graphCache.keyFor(*_) >> key
+        1 * graphCache.load(key) >> recordGraph()
+        0 * graphCache._
+        0 * resolver._
+
+        and:
+        results.resolutionResult.root.id == rootId
+        results.resolutionResult.root.dependencies.empty
+    }
+
+    def "resolves a cached graph again once its artifacts are used"() {
+        def results = new DefaultResolverResults()
+
+        given:
+        graphCache.keyFor(*_) >> key
+        graphCache.load(key) >> recordGraph()
+        configurationResolver.resolveGraphForResolutionResult(configuration, results)
+
+        when:
+        configurationResolver.resolveArtifacts(configuration, results)
+
+        then:
+        0 * resolver._
+
+        when:
+        def hasError = results.resolvedConfiguration.hasError()
+        results.resolvedConfiguration.hasError()
+
+        then:
+        1 * resolver.resolve(configuration, [], globalRules, _, _, _, attributesSchema, artifactTypeRegistry) >> { args -> visitGraph(args[4]) }
+        0 * graphCache.store(_, _)
+
+        and:
+        !hasError
+    }
+
+    private CacheableGraphVisitor cacheableGraphVisitor() {
+        new CacheableGraphVisitor(new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser()), ModuleReplacementsData.NO_OP)
+    }
+
+    private byte[] recordGraph() {
+        def store = new InMemoryBinaryStore()
+        visitGraph(newResultBuilder(store))
+        return store.content
+    }
+
+    private ResolutionResult replay(byte[] graph) {
+        newResultBuilder(new InMemoryBinaryStore(graph)).replay(AttributeTestUtil.attributes(["org.foo": "v1"]))
+    }
+
+    private StreamingResolutionResultBuilder newResultBuilder(InMemoryBinaryStore store) {
+        new StreamingResolutionResultBuilder(
+            store,
+            new DummyStore(),
+            new DefaultImmutableModuleIdentifierFactory(),
+            new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+            new AttributeDesugaring(AttributeTestUtil.attributesFactory())
+        )
+    }
+
+    private void visitGraph(DependencyGraphVisitor visitor) {
+        def component = Stub(DependencyGraphComponent) {
+            getResultId() >> 1L
+            getModuleVersion() >> DefaultModuleVersionIdentifier.newId(rootId.moduleIdentifier, rootId.version)
+            getComponentId() >> rootId
+            getSelectionReason() >> root()
+        }
+        def rootNode = Stub(RootGraphNode) {
+            getOwner() >> component
+            isRoot() >> true
+            getOutgoingEdges() >> []
+            getMetadata() >> Stub(RootConfigurationMetadata) {
+                getAttributes() >> AttributeTestUtil.attributes(["org.foo": "v1"])
+            }
+        }
+        visitor.start(rootNode)
+        visitor.visitNode(rootNode)
+        visitor.visitEdges(rootNode)
+        visitor.finish(rootNode)
+    }
+}
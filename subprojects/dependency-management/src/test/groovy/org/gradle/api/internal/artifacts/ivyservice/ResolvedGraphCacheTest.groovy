@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice
+
+import com.google.common.collect.Ordering
+import org.gradle.api.artifacts.ConfigurationPublications
+import org.gradle.api.artifacts.Dependency
+import org.gradle.api.artifacts.DependencyConstraintSet
+import org.gradle.api.artifacts.DependencySet
+import org.gradle.api.artifacts.ProjectDependency
+import org.gradle.api.attributes.Attribute
+import org.gradle.api.attributes.AttributeCompatibilityRule
+import org.gradle.api.attributes.CompatibilityCheckDetails
+import org.gradle.api.internal.CollectionCallbackActionDecorator
+import org.gradle.api.internal.artifacts.ComponentMetadataProcessorFactory
+import org.gradle.api.internal.artifacts.ComponentSelectionRulesInternal
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.Module
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dependencies.DefaultExternalModuleDependency
+import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionRules
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.verification.DependencyVerificationOverride
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.CapabilitiesResolutionInternal
+import org.gradle.api.internal.artifacts.type.DefaultArtifactTypeRegistry
+import org.gradle.api.internal.attributes.DefaultAttributesSchema
+import org.gradle.api.internal.attributes.DefaultMutableAttributeContainer
+import org.gradle.internal.component.model.ComponentAttributeMatcher
+import org.gradle.internal.hash.ClassLoaderHierarchyHasher
+import org.gradle.internal.hash.HashCode
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.Path
+import org.gradle.util.SetSystemProperties
+import org.gradle.util.SnapshotTestUtil
+import org.gradle.util.TestUtil
+import org.junit.Rule
+import spock.lang.Specification
+
+class ResolvedGraphCacheTest extends Specification {
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties([(ResolvedGraphCache.ENABLED_PROPERTY): "true"])
+
+    static final Attribute<String> USAGE = Attribute.of("usage", String)
+
+    def classLoaderHasher = Stub(ClassLoaderHierarchyHasher) {
+        getClassLoaderHash(_) >> HashCode.fromInt(123)
+    }
+    def cache = new ResolvedGraphCache(Stub(ArtifactCacheLockingManager), Stub(VersionSelectorScheme), SnapshotTestUtil.valueSnapshotter(), classLoaderHasher, false)
+    def attributes = new DefaultMutableAttributeContainer(AttributeTestUtil.attributesFactory())
+    def schema = new DefaultAttributesSchema(new ComponentAttributeMatcher(), TestUtil.instantiatorFactory(), SnapshotTestUtil.valueSnapshotter())
+    def artifactTypeRegistry = new DefaultArtifactTypeRegistry(TestUtil.instantiatorFactory().decorateLenient(), AttributeTestUtil.attributesFactory(), CollectionCallbackActionDecorator.NOOP)
+    List<Dependency> dependencies = [new DefaultExternalModuleDependency("org", "foo", "1.0")]
+    def resolutionStrategy = Stub(ResolutionStrategyInternal) {
+        getComponentSelection() >> Stub(ComponentSelectionRulesInternal) {
+            getRules() >> []
+        }
+        getCapabilitiesResolutionRules() >> Stub(CapabilitiesResolutionInternal)
+        getConflictResolution() >> ConflictResolution.latest
+        getForcedModules() >> ([] as Set)
+    }
+    def configuration = Stub(ConfigurationInternal) {
+        getResolutionStrategy() >> resolutionStrategy
+        getIdentityPath() >> Path.path(":compileClasspath")
+        getModule() >> Stub(Module) {
+            getGroup() >> "org"
+            getName() >> "root"
+            getVersion() >> "1.0"
+        }
+        getAttributes() >> attributes
+        getOutgoing() >> Stub(ConfigurationPublications) {
+            getCapabilities() >> []
+        }
+        getAllExcludeRules() >> ([] as Set)
+        getAllDependencies() >> Stub(DependencySet) {
+            iterator() >> { dependencies.iterator() }
+        }
+        getAllDependencyConstraints() >> Stub(DependencyConstraintSet) {
+            iterator() >> { [].iterator() }
+        }
+    }
+    def globalRules = Stub(GlobalDependencyResolutionRules) {
+        getDependencySubstitutionRules() >> Stub(DependencySubstitutionRules)
+        getComponentMetadataProcessorFactory() >> Stub(ComponentMetadataProcessorFactory)
+    }
+
+    def "declarations that are the same have the same key"() {
+        expect:
+        def key = keyFor()
+        key != null
+        keyFor() == key
+    }
+
+    def "key changes when a dependency changes"() {
+        def key = keyFor()
+
+        when:
+        dependencies = [new DefaultExternalModuleDependency("org", "foo", "2.0")]
+
+        then:
+        keyFor() != key
+    }
+
+    def "key changes when an attribute value changes"() {
+        attributes.attribute(USAGE, "api")
+        def key = keyFor()
+
+        when:
+        attributes.attribute(USAGE, "runtime")
+
+        then:
+        keyFor() != key
+    }
+
+    def "key changes when a compatibility rule is added to the consumer schema"() {
+        schema.attribute(USAGE)
+        def key = keyFor()
+
+        when:
+        schema.attribute(USAGE).compatibilityRules.add(UsageCompatibilityRule)
+
+        then:
+        keyFor() != key
+    }
+
+    def "key changes when an ordered rule is added to the consumer schema"() {
+        schema.attribute(USAGE)
+        def key = keyFor()
+
+        when:
+        schema.attribute(USAGE).ordered(Ordering.natural())
+
+        then:
+        keyFor() != key
+    }
+
+    def "key changes when an artifact type is registered"() {
+        def key = keyFor()
+
+        when:
+        artifactTypeRegistry.create().create("aar") {
+            it.attributes.attribute(USAGE, "android")
+        }
+
+        then:
+        keyFor() != key
+    }
+
+    def "does not cache when the implementation of a matching rule is not known"() {
+        def cache = new ResolvedGraphCache(Stub(ArtifactCacheLockingManager), Stub(VersionSelectorScheme), SnapshotTestUtil.valueSnapshotter(), Stub(ClassLoaderHierarchyHasher), false)
+        schema.attribute(USAGE).compatibilityRules.add(UsageCompatibilityRule)
+
+        expect:
+        cache.keyFor(configuration, [], globalRules, schema, artifactTypeRegistry, DependencyVerificationOverride.NO_VERIFICATION) == null
+    }
+
+    def "key changes when the comparator of an ordered rule changes"() {
+        schema.attribute(USAGE).ordered(Ordering.natural())
+        def key = keyFor()
+
+        when:
+        schema = new DefaultAttributesSchema(new ComponentAttributeMatcher(), TestUtil.instantiatorFactory(), SnapshotTestUtil.valueSnapshotter())
+        schema.attribute(USAGE).ordered(Ordering.natural().reverse())
+
+        then:
+        key != null
+        keyFor() != key
+    }
+
+    def "does not cache when an ordered rule uses a comparator that cannot be serialized"() {
+        schema.attribute(USAGE).ordered({ a, b -> a <=> b } as Comparator)
+
+        expect:
+        keyFor() == null
+    }
+
+    def "does not cache project dependencies"() {
+        dependencies << Stub(ProjectDependency)
+
+        expect:
+        keyFor() == null
+    }
+
+    def "does not cache when dependencies are refreshed"() {
+        def cache = new ResolvedGraphCache(Stub(ArtifactCacheLockingManager), Stub(VersionSelectorScheme), SnapshotTestUtil.valueSnapshotter(), classLoaderHasher, true)
+
+        expect:
+        cache.keyFor(configuration, [], globalRules, schema, artifactTypeRegistry, DependencyVerificationOverride.NO_VERIFICATION) == null
+    }
+
+    private HashCode keyFor() {
+        cache.keyFor(configuration, [], globalRules, schema, artifactTypeRegistry, DependencyVerificationOverride.NO_VERIFICATION)
+    }
+
+    static class UsageCompatibilityRule implements AttributeCompatibilityRule<String> {
+        @Override
+        void execute(CompatibilityCheckDetails<String> details) {
+        }
+    }
+}
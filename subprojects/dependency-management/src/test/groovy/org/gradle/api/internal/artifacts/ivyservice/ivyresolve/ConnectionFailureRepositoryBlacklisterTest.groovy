@@ -75,6 +75,22 @@ class ConnectionFailureRepositoryBlacklisterTest extends Specification {
         'HttpErrorStatusCodeException with status ' | createUnauthorizedException()
     }
 
+    def "does not blacklist repository for failures that happen without blacklisting"() {
+        when:
+        boolean blacklisted = blacklister.withoutBlacklisting { blacklister.blacklistRepository('abc', createTimeoutException()) }
+
+        then:
+        !blacklisted
+        blacklister.blacklistedRepositories.empty
+
+        when:
+        blacklisted = blacklister.blacklistRepository('abc', createTimeoutException())
+
+        then:
+        blacklisted
+        blacklister.withoutBlacklisting { blacklister.isBlacklisted('abc') }
+    }
+
     static RuntimeException createInternalServerException() {
         createHttpErrorStatusCodeException(500)
     }
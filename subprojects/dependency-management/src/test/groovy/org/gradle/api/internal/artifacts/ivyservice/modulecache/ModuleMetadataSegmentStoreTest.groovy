@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache
+
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata
+import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata
+import org.gradle.internal.serialize.Decoder
+import org.gradle.internal.serialize.Encoder
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.internal.SimpleMapInterner
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.nio.file.AccessDeniedException
+import java.nio.file.Path
+
+class ModuleMetadataSegmentStoreTest extends Specification {
+
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+    def segmentsDir = temporaryFolder.file("segments")
+    def moduleIdentifierFactory = Mock(ImmutableModuleIdentifierFactory) {
+        module(_, _) >> { args -> DefaultModuleIdentifier.newId(*args) }
+    }
+    def serializer = Mock(ModuleMetadataSerializer) {
+        write(_, _, _) >> { Encoder encoder, ModuleComponentResolveMetadata metadata, Map cache -> encoder.writeString(descriptions[metadata]) }
+        read(_, _, _) >> { Decoder decoder, ImmutableModuleIdentifierFactory factory, Map cache -> metadata(decoder.readString()) }
+    }
+    def descriptions = new IdentityHashMap<ModuleComponentResolveMetadata, String>()
+    def stores = []
+
+    def cleanup() {
+        stores*.close()
+    }
+
+    def "returns null for metadata that was not stored"() {
+        expect:
+        newStore().getModuleDescriptor(key("repo", "a", "1.0")) == null
+        !segmentsDir.exists()
+    }
+
+    def "loads stored metadata"() {
+        def store = newStore()
+
+        when:
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        store.putModuleDescriptor(key("repo", "b", "1.0"), metadata("b-1.0"))
+        store.putModuleDescriptor(key("other", "a", "1.0"), metadata("a-1.0 from other"))
+
+        then:
+        description(store.getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0"
+        description(store.getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+        description(store.getModuleDescriptor(key("other", "a", "1.0"))) == "a-1.0 from other"
+        store.getModuleDescriptor(key("other", "b", "1.0")) == null
+        segmentsDir.list() as Set == ["repo.bin", "other.bin"] as Set
+    }
+
+    def "sees metadata appended by another store"() {
+        def first = newStore()
+        def second = newStore()
+
+        when:
+        first.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        first.getModuleDescriptor(key("repo", "a", "1.0"))
+        second.putModuleDescriptor(key("repo", "b", "1.0"), metadata("b-1.0"))
+        second.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0 again"))
+
+        then:
+        description(first.getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+        description(first.getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0 again"
+    }
+
+    def "overwrites partially written record"() {
+        def store = newStore()
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        store.close()
+
+        when:
+        segmentsDir.file("repo.bin") << ([0, 0, 1, 0, 0, 3, 111] as byte[])
+        store = newStore()
+        store.putModuleDescriptor(key("repo", "b", "1.0"), metadata("b-1.0"))
+
+        then:
+        description(store.getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0"
+        description(newStore().getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+    }
+
+    def "compacts segment once replaced records take up more space than live ones"() {
+        def store = newStore(100)
+        def segment = segmentsDir.file("repo.bin")
+
+        when:
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a" * 50))
+        store.putModuleDescriptor(key("repo", "b", "1.0"), metadata("b-1.0"))
+        def lengthBeforeReplacing = segment.length()
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0 again"))
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0 once more"))
+
+        then:
+        segment.length() < lengthBeforeReplacing
+        segmentsDir.list() as Set == ["repo.bin"] as Set
+        description(store.getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0 once more"
+        description(store.getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+        description(newStore().getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0 once more"
+    }
+
+    def "does not compact segment while replaced records take up less space than the threshold"() {
+        def store = newStore()
+        def segment = segmentsDir.file("repo.bin")
+
+        when:
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        def lengthBeforeReplacing = segment.length()
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0 again"))
+
+        then:
+        segment.length() > lengthBeforeReplacing
+        description(store.getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0 again"
+    }
+
+    def "keeps segment that cannot be replaced by its compacted copy"() {
+        def replaceAttempts = 0
+        def store = new ModuleMetadataSegmentStore(segmentsDir, serializer, moduleIdentifierFactory, SimpleMapInterner.notThreadSafe(), 100) {
+            @Override
+            void replaceSegment(Path compacted, Path segment) throws IOException {
+                replaceAttempts++
+                throw new AccessDeniedException(segment.toString())
+            }
+        }
+        stores << store
+        def segment = segmentsDir.file("repo.bin")
+
+        when:
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a" * 50))
+        store.putModuleDescriptor(key("repo", "b", "1.0"), metadata("b-1.0"))
+        def lengthBeforeReplacing = segment.length()
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0 again"))
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0 once more"))
+
+        then:
+        replaceAttempts == 1
+        segment.length() > lengthBeforeReplacing
+        segmentsDir.list() as Set == ["repo.bin"] as Set
+        description(store.getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0 once more"
+        description(store.getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+        description(newStore().getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0 once more"
+        description(newStore().getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+    }
+
+    def "reopens segment that was compacted by another store"() {
+        def first = newStore()
+        def second = newStore(100)
+
+        when:
+        first.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a" * 100))
+        first.putModuleDescriptor(key("repo", "b", "1.0"), metadata("b-1.0"))
+        second.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        second.putModuleDescriptor(key("repo", "c", "1.0"), metadata("c-1.0"))
+
+        then:
+        description(first.getModuleDescriptor(key("repo", "a", "1.0"))) == "a-1.0"
+        description(first.getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+        description(first.getModuleDescriptor(key("repo", "c", "1.0"))) == "c-1.0"
+
+        when:
+        first.putModuleDescriptor(key("repo", "d", "1.0"), metadata("d-1.0"))
+
+        then:
+        description(second.getModuleDescriptor(key("repo", "d", "1.0"))) == "d-1.0"
+    }
+
+    def "starts over segment that has a different format"() {
+        def store = newStore()
+        store.putModuleDescriptor(key("repo", "a", "1.0"), metadata("a-1.0"))
+        store.close()
+        segmentsDir.file("repo.bin").withDataOutputStream { it.writeInt(0) }
+
+        when:
+        store = newStore()
+
+        then:
+        store.getModuleDescriptor(key("repo", "a", "1.0")) == null
+
+        when:
+        store.putModuleDescriptor(key("repo", "b", "1.0"), metadata("b-1.0"))
+
+        then:
+        description(newStore().getModuleDescriptor(key("repo", "b", "1.0"))) == "b-1.0"
+    }
+
+    private ModuleMetadataSegmentStore newStore(long minimumDeadBytesToCompact = 1024 * 1024) {
+        def store = new ModuleMetadataSegmentStore(segmentsDir, serializer, moduleIdentifierFactory, SimpleMapInterner.notThreadSafe(), minimumDeadBytesToCompact)
+        stores << store
+        return store
+    }
+
+    private static ModuleComponentAtRepositoryKey key(String repository, String module, String version) {
+        new ModuleComponentAtRepositoryKey(repository, DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", module), version))
+    }
+
+    private MutableModuleComponentResolveMetadata metadata(String description) {
+        def metadata = Stub(MutableModuleComponentResolveMetadata)
+        descriptions[metadata] = description
+        return metadata
+    }
+
+    private String description(ModuleComponentResolveMetadata metadata) {
+        descriptions[metadata]
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class InterningExcludeFactoryTest extends Specification implements ExcludeTestSupport {
+
+    def setup() {
+        factory = new InterningExcludeFactory(factory)
+    }
+
+    @Unroll
+    def "creates a single instance of equal #description specs"() {
+        when:
+        def first = spec()
+        def second = spec()
+
+        then:
+        first.is(second)
+
+        where:
+        description        | spec
+        "group"            | { group("foo") }
+        "module"           | { module("foo") }
+        "module id"        | { moduleId("org", "foo") }
+        "group set"        | { groupSet("foo", "bar", "baz") }
+        "module set"       | { moduleSet("foo", "bar", "baz") }
+        "module id set"    | { moduleIdSet("org:foo", "org:bar") }
+        "ivy pattern"      | { ivy("org", "foo", artifact("foo"), "regexp") }
+        "union"            | { anyOf(group("foo"), module("bar")) }
+        "intersection"     | { allOf(group("foo"), module("bar")) }
+        "union of many"    | { anyOf(group("foo"), module("bar"), moduleId("org", "baz")) }
+        "nested specs"     | { allOf(anyOf(group("foo"), module("bar")), anyOf(group("bar"), module("foo"))) }
+    }
+
+    def "does not merge different specs"() {
+        expect:
+        !group("foo").is(group("bar"))
+        !anyOf(group("foo"), module("bar")).is(allOf(group("foo"), module("bar")))
+    }
+}
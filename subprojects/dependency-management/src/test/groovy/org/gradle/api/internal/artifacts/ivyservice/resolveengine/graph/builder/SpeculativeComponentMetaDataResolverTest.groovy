@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder
+
+import com.google.common.base.Optional
+import com.google.common.collect.ImmutableList
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.RepositoryBlacklister
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.internal.Factory
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.ConfigurationMetadata
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.operations.BuildOperationQueue
+import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.internal.resolve.ModuleVersionResolveException
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
+import spock.lang.Specification
+
+class SpeculativeComponentMetaDataResolverTest extends Specification {
+    def delegate = Mock(ComponentMetaDataResolver)
+    def queued = []
+    def queue = Mock(BuildOperationQueue) {
+        add(_) >> { RunnableBuildOperation operation -> queued << operation }
+    }
+    def repositoryBlacklister = Mock(RepositoryBlacklister) {
+        withoutBlacklisting(_) >> { Factory action -> action.create() }
+    }
+    def resolver = new SpeculativeComponentMetaDataResolver(delegate, new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser()), repositoryBlacklister, queue)
+
+    def "prefetches fixed versions the resolved component depends on"() {
+        def a = id("a", "1.0")
+        def b = id("b", "1.0")
+        def aMetadata = metadata(dependency("b", "1.0"), dependency("c", "[1.0,2.0)"), dependency("d", "latest.release"))
+        def bMetadata = metadata()
+        def result = new DefaultBuildableComponentResolveResult()
+
+        when:
+        resolver.resolve(a, DefaultComponentOverrideMetadata.EMPTY, result)
+
+        then:
+        1 * delegate.resolve(a, _, _) >> { args -> args[2].resolved(aMetadata) }
+        queued.size() == 1
+
+        when:
+        queued[0].run(null)
+
+        then:
+        1 * delegate.resolve(b, DefaultComponentOverrideMetadata.EMPTY, _) >> { args -> args[2].resolved(bMetadata) }
+
+        when:
+        def prefetched = new DefaultBuildableComponentResolveResult()
+        resolver.resolve(b, DefaultComponentOverrideMetadata.EMPTY, prefetched)
+
+        then:
+        0 * delegate.resolve(_, _, _)
+        prefetched.metadata == bMetadata
+    }
+
+    def "resolves prefetch that has not started yet on the calling thread"() {
+        def b = id("b", "1.0")
+        def bMetadata = metadata()
+        resolver.prefetchDependenciesOf(configuration(dependency("b", "1.0")))
+
+        when:
+        def result = new DefaultBuildableComponentResolveResult()
+        resolver.resolve(b, DefaultComponentOverrideMetadata.EMPTY, result)
+
+        then:
+        1 * delegate.resolve(b, DefaultComponentOverrideMetadata.EMPTY, _) >> { args -> args[2].resolved(bMetadata) }
+        result.metadata == bMetadata
+
+        when:
+        queued[0].run(null)
+
+        then:
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "does not use prefetched metadata when resolving with overrides"() {
+        def b = id("b", "1.0")
+        def override = DefaultComponentOverrideMetadata.forDependency(true, null, null)
+        def bMetadata = metadata()
+        resolver.prefetchDependenciesOf(configuration(dependency("b", "1.0")))
+
+        when:
+        resolver.resolve(b, override, new DefaultBuildableComponentResolveResult())
+
+        then:
+        1 * delegate.resolve(b, override, _) >> { args -> args[2].resolved(bMetadata) }
+    }
+
+    def "does not prefetch once stopped"() {
+        resolver.prefetchDependenciesOf(configuration(dependency("b", "1.0")))
+
+        when:
+        resolver.stop()
+        queued[0].run(null)
+        resolver.prefetchDependenciesOf(configuration(dependency("c", "1.0")))
+
+        then:
+        0 * delegate.resolve(_, _, _)
+        queued.size() == 1
+    }
+
+    def "runs prefetches without blacklisting repositories"() {
+        def b = id("b", "1.0")
+        resolver.prefetchDependenciesOf(configuration(dependency("b", "1.0")))
+
+        when:
+        queued[0].run(null)
+
+        then:
+        1 * repositoryBlacklister.withoutBlacklisting(_) >> { Factory action -> action.create() }
+        1 * delegate.resolve(b, DefaultComponentOverrideMetadata.EMPTY, _) >> { args -> args[2].resolved(metadata()) }
+    }
+
+    def "resolves component again when its prefetch failed"() {
+        def b = id("b", "1.0")
+        def bMetadata = metadata()
+        resolver.prefetchDependenciesOf(configuration(dependency("b", "1.0")))
+
+        when:
+        queued[0].run(null)
+
+        then:
+        1 * delegate.resolve(b, DefaultComponentOverrideMetadata.EMPTY, _) >> { args -> args[2].failed(new ModuleVersionResolveException(b, { "broken" } as Factory)) }
+
+        when:
+        def result = new DefaultBuildableComponentResolveResult()
+        resolver.resolve(b, DefaultComponentOverrideMetadata.EMPTY, result)
+
+        then:
+        1 * delegate.resolve(b, DefaultComponentOverrideMetadata.EMPTY, _) >> { args -> args[2].resolved(bMetadata) }
+        0 * repositoryBlacklister.withoutBlacklisting(_)
+        result.metadata == bMetadata
+    }
+
+    def "reads ahead a limited number of levels past the resolved components"() {
+        def c = id("c", "1.0")
+        resolver.prefetchDependenciesOf(configuration(dependency("b", "1.0")))
+
+        when:
+        queued[0].run(null)
+        queued[1].run(null)
+
+        then:
+        1 * delegate.resolve(id("b", "1.0"), _, _) >> { args -> args[2].resolved(metadata(dependency("c", "1.0"))) }
+        1 * delegate.resolve(c, _, _) >> { args -> args[2].resolved(metadata(dependency("d", "1.0"))) }
+        queued.size() == 2
+
+        when:
+        resolver.resolve(c, DefaultComponentOverrideMetadata.EMPTY, new DefaultBuildableComponentResolveResult())
+
+        then:
+        0 * delegate.resolve(_, _, _)
+        queued.size() == 3
+    }
+
+    def "submits skipped dependencies once fewer prefetches are pending"() {
+        def count = SpeculativeComponentMetaDataResolver.MAX_PENDING_PREFETCHES + 1
+        def dependencies = (1..count).collect { dependency("m$it", "1.0") } as DependencyMetadata[]
+
+        when:
+        resolver.prefetchDependenciesOf(configuration(dependencies))
+
+        then:
+        queued.size() == SpeculativeComponentMetaDataResolver.MAX_PENDING_PREFETCHES
+
+        when:
+        queued[0].run(null)
+        resolver.resolve(id("m1", "1.0"), DefaultComponentOverrideMetadata.EMPTY, new DefaultBuildableComponentResolveResult())
+
+        then:
+        1 * delegate.resolve(id("m1", "1.0"), _, _) >> { args -> args[2].resolved(metadata()) }
+        queued.size() == count
+    }
+
+    private static ComponentIdentifier id(String name, String version) {
+        DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", name), version)
+    }
+
+    private ComponentResolveMetadata metadata(DependencyMetadata... dependencies) {
+        def variant = configuration(dependencies)
+        Mock(ComponentResolveMetadata) {
+            getVariantsForGraphTraversal() >> Optional.of(ImmutableList.of(variant))
+        }
+    }
+
+    private ConfigurationMetadata configuration(DependencyMetadata... dependencies) {
+        Mock(ConfigurationMetadata) {
+            getDependencies() >> (dependencies as List)
+        }
+    }
+
+    private DependencyMetadata dependency(String name, String version) {
+        Mock(DependencyMetadata) {
+            getSelector() >> DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId("org", name), version)
+            getArtifacts() >> []
+        }
+    }
+}
@@ -27,7 +27,9 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.Dependen
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.InMemoryBinaryStore
 import org.gradle.api.internal.attributes.AttributeDesugaring
+import org.gradle.cache.internal.BinaryStore
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
 import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
 import org.gradle.internal.component.local.model.RootConfigurationMetadata
@@ -211,6 +213,48 @@ class StreamingResolutionResultBuilderTest extends Specification {
 """
     }
 
+    def "result can be replayed from the content of an in-memory store"() {
+        def store = new InMemoryBinaryStore()
+        def recorder = newBuilder(store)
+        def root = rootNode(1, "org", "root", "1.0")
+        def selector1 = selector(10, "org", "dep1", "1.0")
+        root.outgoingEdges >> [dep(selector1, 2)]
+        def dep1 = node(2, "org", "dep1", "1.0")
+        def selector2 = selector(11, "org", "dep2", "2.0")
+        dep1.outgoingEdges >> [dep(selector2, 3)]
+
+        recorder.start(root)
+        recorder.visitNode(root)
+        recorder.visitNode(dep1)
+        recorder.visitNode(node(3, "org", "dep2", "2.0"))
+        recorder.visitSelector(selector1)
+        recorder.visitSelector(selector2)
+        recorder.visitEdges(root)
+        recorder.visitEdges(dep1)
+        recorder.finish(root)
+        def content = store.content
+
+        when:
+        def result = newBuilder(new InMemoryBinaryStore(content)).replay(AttributeTestUtil.attributes(["org.foo": "v1"]))
+
+        then:
+        result.requestedAttributes.keySet()*.name == ["org.foo"]
+        printGraph(result.root) == """org:root:1.0
+  org:dep1:1.0 [root]
+    org:dep2:2.0 [dep1]
+"""
+    }
+
+    private StreamingResolutionResultBuilder newBuilder(BinaryStore store) {
+        new StreamingResolutionResultBuilder(
+            store,
+            new DummyStore(),
+            moduleIdentifierFactory,
+            new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+            new AttributeDesugaring(AttributeTestUtil.attributesFactory())
+        )
+    }
+
     private DependencyGraphEdge dep(DependencyGraphSelector selector, Long selectedId) {
         def edge = Stub(DependencyGraphEdge)
         _ * edge.selector >> selector
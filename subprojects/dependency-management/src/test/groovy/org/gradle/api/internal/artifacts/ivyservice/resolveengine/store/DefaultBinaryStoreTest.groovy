@@ -17,6 +17,7 @@
 package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
 
 import org.gradle.cache.internal.BinaryStore
+import org.gradle.internal.serialize.SharedStringTable
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.junit.Rule
 import spock.lang.Specification
@@ -70,6 +71,32 @@ class DefaultBinaryStoreTest extends Specification {
 
     }
 
+    def "stores strings in shared table"() {
+        def sharedStrings = new SharedStringTable()
+        def store1 = new DefaultBinaryStore(temp.file("foo.bin"), sharedStrings)
+        def store2 = new DefaultBinaryStore(temp.file("bar.bin"), sharedStrings)
+        def longString = "org.gradle:some-module:" + ("1" * 1000)
+
+        when:
+        store1.write({ it.writeString(longString) } as BinaryStore.WriteAction)
+        def data1 = store1.done()
+        store2.write({ it.writeString(longString); it.writeNullableString(null) } as BinaryStore.WriteAction)
+        def data2 = store2.done()
+
+        then:
+        store1.size < 10
+        store2.size < 10
+        data1.read({ it.readString() } as BinaryStore.ReadAction) == longString
+        data2.read({ it.readString() } as BinaryStore.ReadAction) == longString
+        data2.read({ it.readNullableString() } as BinaryStore.ReadAction) == null
+        data1.close()
+        data2.close()
+
+        cleanup:
+        store1.close()
+        store2.close()
+    }
+
     class SomeException extends RuntimeException {}
 
     def "write action exception is propagated to the client"() {
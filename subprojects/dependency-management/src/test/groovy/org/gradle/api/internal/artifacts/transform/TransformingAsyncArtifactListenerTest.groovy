@@ -40,7 +40,7 @@ class TransformingAsyncArtifactListenerTest extends Specification {
     }
     def node = Mock(TransformationNode)
 
-    def "adds expensive artifact transformations to the build operation queue"() {
+    def "adds expensive artifact transformations to the front of the build operation queue"() {
         when:
         listener.artifactAvailable(artifact)
 
@@ -48,7 +48,7 @@ class TransformingAsyncArtifactListenerTest extends Specification {
         1 * transformationNodeRegistry.getIfExecuted(artifactId, transformation) >> Optional.empty()
         1 * transformation.createInvocation(_, _, _) >> invocation
         1 * invocation.getCachedResult() >> Optional.empty()
-        1 * operationQueue.add(_ as BuildOperation)
+        1 * operationQueue.addFirst(_ as BuildOperation)
     }
 
     def "runs cheap artifact transformations immediately when not scheduled"() {
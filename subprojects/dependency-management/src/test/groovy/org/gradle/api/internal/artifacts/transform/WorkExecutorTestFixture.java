@@ -17,6 +17,7 @@
 package org.gradle.api.internal.artifacts.transform;
 
 import org.apache.commons.io.FileUtils;
+import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.internal.controller.BuildCacheCommandFactory;
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.caching.internal.controller.BuildCacheLoadCommand;
@@ -68,6 +69,16 @@ public boolean isEmitDebugLogging() {
                 return false;
             }
 
+            @Override
+            public void prefetch(BuildCacheKey key) {
+
+            }
+
+            @Override
+            public void discardPrefetched(BuildCacheKey key) {
+
+            }
+
             @Override
             public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
                 return Optional.empty();
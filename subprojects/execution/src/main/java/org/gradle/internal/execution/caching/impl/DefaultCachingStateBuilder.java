@@ -246,34 +246,6 @@ public Optional<CachingInputs> getInputs() {
         }
     }
 
-    private static class DefaultBuildCacheKey implements BuildCacheKey {
-        private final HashCode hashCode;
-
-        public DefaultBuildCacheKey(HashCode hashCode) {
-            this.hashCode = hashCode;
-        }
-
-        @Override
-        public String getHashCode() {
-            return hashCode.toString();
-        }
-
-        @Override
-        public byte[] toByteArray() {
-            return hashCode.toByteArray();
-        }
-
-        @Override
-        public String getDisplayName() {
-            return getHashCode();
-        }
-
-        @Override
-        public String toString() {
-            return getHashCode();
-        }
-    }
-
     private static class DefaultCachingInputs implements CachingInputs {
         ImplementationSnapshot implementation;
         ImmutableList<ImplementationSnapshot> additionalImplementations;
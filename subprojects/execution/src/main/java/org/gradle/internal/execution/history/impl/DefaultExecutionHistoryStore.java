@@ -37,6 +37,9 @@
 
 public class DefaultExecutionHistoryStore implements ExecutionHistoryStore {
 
+    // Changed whenever the format of the stored history changes, so that history stored in an older format by the same Gradle version is not read back
+    private static final String CACHE_NAME = "executionHistory-2";
+
     private final PersistentIndexedCache<String, AfterPreviousExecutionState> store;
 
     public DefaultExecutionHistoryStore(ExecutionHistoryCacheAccess executionHistoryCacheAccess, StringInterner stringInterner) {
@@ -44,7 +47,7 @@ public DefaultExecutionHistoryStore(ExecutionHistoryCacheAccess executionHistory
             new FileCollectionFingerprintSerializer(stringInterner));
 
         this.store = executionHistoryCacheAccess.createCache(
-            PersistentIndexedCacheParameters.of("executionHistory", String.class, serializer),
+            PersistentIndexedCacheParameters.of(CACHE_NAME, String.class, serializer),
             10000,
             false
         );
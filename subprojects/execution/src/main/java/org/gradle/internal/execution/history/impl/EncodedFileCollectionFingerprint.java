@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableMultimap;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A file collection fingerprint loaded from the execution history, whose file fingerprints are only decoded when they are first requested,
+ * typically when changes to the inputs or outputs are resolved. Until then only the encoded bytes are kept.
+ */
+class EncodedFileCollectionFingerprint implements FileCollectionFingerprint {
+    private final byte[] encodedFingerprints;
+    private final ImmutableMultimap<String, HashCode> rootHashes;
+    private final FingerprintMapSerializer fingerprintMapSerializer;
+    private volatile Map<String, FileSystemLocationFingerprint> fingerprints;
+
+    EncodedFileCollectionFingerprint(byte[] encodedFingerprints, ImmutableMultimap<String, HashCode> rootHashes, FingerprintMapSerializer fingerprintMapSerializer) {
+        this.encodedFingerprints = encodedFingerprints;
+        this.rootHashes = rootHashes;
+        this.fingerprintMapSerializer = fingerprintMapSerializer;
+    }
+
+    @Override
+    public Map<String, FileSystemLocationFingerprint> getFingerprints() {
+        Map<String, FileSystemLocationFingerprint> fingerprints = this.fingerprints;
+        if (fingerprints == null) {
+            // Decoding is idempotent, so concurrent callers may at worst decode twice
+            fingerprints = decodeFingerprints();
+            this.fingerprints = fingerprints;
+        }
+        return fingerprints;
+    }
+
+    private Map<String, FileSystemLocationFingerprint> decodeFingerprints() {
+        try (KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(encodedFingerprints))) {
+            return fingerprintMapSerializer.read(decoder);
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    @Override
+    public ImmutableMultimap<String, HashCode> getRootHashes() {
+        return rootHashes;
+    }
+}
@@ -26,7 +26,9 @@
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
 
@@ -44,12 +46,13 @@ public FileCollectionFingerprintSerializer(StringInterner stringInterner) {
 
     @Override
     public FileCollectionFingerprint read(Decoder decoder) throws IOException {
-        Map<String, FileSystemLocationFingerprint> fingerprints = fingerprintMapSerializer.read(decoder);
-        if (fingerprints.isEmpty()) {
+        boolean empty = !decoder.readBoolean();
+        if (empty) {
             return FileCollectionFingerprint.EMPTY;
         }
+        byte[] encodedFingerprints = decoder.readBinary();
         ImmutableMultimap<String, HashCode> rootHashes = readRootHashes(decoder);
-        return new SerializableFileCollectionFingerprint(fingerprints, rootHashes);
+        return new EncodedFileCollectionFingerprint(encodedFingerprints, rootHashes, fingerprintMapSerializer);
     }
 
     private ImmutableMultimap<String, HashCode> readRootHashes(Decoder decoder) throws IOException {
@@ -68,10 +71,21 @@ private ImmutableMultimap<String, HashCode> readRootHashes(Decoder decoder) thro
 
     @Override
     public void write(Encoder encoder, FileCollectionFingerprint value) throws Exception {
-        fingerprintMapSerializer.write(encoder, value.getFingerprints());
-        if (!value.getFingerprints().isEmpty()) {
-            writeRootHashes(encoder, value.getRootHashes());
+        if (value.getFingerprints().isEmpty()) {
+            encoder.writeBoolean(false);
+            return;
         }
+        encoder.writeBoolean(true);
+        encoder.writeBinary(encodeFingerprints(value.getFingerprints()));
+        writeRootHashes(encoder, value.getRootHashes());
+    }
+
+    private byte[] encodeFingerprints(Map<String, FileSystemLocationFingerprint> fingerprints) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (KryoBackedEncoder encoder = new KryoBackedEncoder(output)) {
+            fingerprintMapSerializer.write(encoder, fingerprints);
+        }
+        return output.toByteArray();
     }
 
     private void writeRootHashes(Encoder encoder, ImmutableMultimap<String, HashCode> rootHashes) throws IOException {
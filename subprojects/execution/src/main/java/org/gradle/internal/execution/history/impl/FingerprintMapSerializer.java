@@ -16,7 +16,6 @@
 
 package org.gradle.internal.execution.history.impl;
 
-import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMap;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.internal.file.FileType;
@@ -27,20 +26,36 @@
 import org.gradle.internal.serialize.AbstractSerializer;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
-import org.gradle.internal.serialize.HashCodeSerializer;
 
 import java.io.IOException;
 import java.util.Map;
 
+/**
+ * Serializes fingerprints column by column instead of entry by entry:
+ *
+ * <ul>
+ *     <li>the absolute paths, each stored as the length of the prefix it shares with the previous path followed by the remaining suffix,</li>
+ *     <li>one byte per entry for the file type and the normalization,</li>
+ *     <li>the normalized paths, stored as a length when they are a suffix of the absolute path,</li>
+ *     <li>the content hashes of the regular files, packed one after the other.</li>
+ * </ul>
+ *
+ * Fingerprints are mostly for files in the same few directory trees, so the shared prefixes and suffixes make up most of the paths.
+ */
 public class FingerprintMapSerializer extends AbstractSerializer<Map<String, FileSystemLocationFingerprint>> {
-    private static final byte DEFAULT_NORMALIZATION = 1;
-    private static final byte IGNORED_PATH_NORMALIZATION = 2;
 
-    private static final byte DIR_FINGERPRINT = 1;
-    private static final byte MISSING_FILE_FINGERPRINT = 2;
-    private static final byte REGULAR_FILE_FINGERPRINT = 3;
+    private static final int DIR_FINGERPRINT = 1;
+    private static final int MISSING_FILE_FINGERPRINT = 2;
+    private static final int REGULAR_FILE_FINGERPRINT = 3;
+    private static final int FILE_TYPE_MASK = 0x0f;
+
+    private static final int DEFAULT_NORMALIZATION = 0x10;
+    private static final int IGNORED_PATH_NORMALIZATION = 0x20;
+    private static final int NORMALIZATION_MASK = 0xf0;
+
+    private static final int EXPLICIT_NORMALIZED_PATH = 0;
+    private static final int VARIABLE_HASH_LENGTH = 0;
 
-    private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
     private final StringInterner stringInterner;
 
     public FingerprintMapSerializer(StringInterner stringInterner) {
@@ -50,24 +65,59 @@ public FingerprintMapSerializer(StringInterner stringInterner) {
     @Override
     public Map<String, FileSystemLocationFingerprint> read(Decoder decoder) throws IOException {
         int fingerprintCount = decoder.readSmallInt();
+        if (fingerprintCount == 0) {
+            return ImmutableMap.of();
+        }
+        String[] absolutePaths = readAbsolutePaths(decoder, fingerprintCount);
+        byte[] kinds = new byte[fingerprintCount];
+        decoder.readBytes(kinds);
+        String[] normalizedPaths = readNormalizedPaths(decoder, absolutePaths, kinds);
+
+        int hashLength = decoder.readSmallInt();
         ImmutableMap.Builder<String, FileSystemLocationFingerprint> fingerprints = ImmutableMap.builderWithExpectedSize(fingerprintCount);
         for (int i = 0; i < fingerprintCount; i++) {
-            String absolutePath = stringInterner.intern(decoder.readString());
-            FileSystemLocationFingerprint fingerprint = readFingerprint(decoder);
-            fingerprints.put(absolutePath, fingerprint);
+            FileType fileType = readFileType(kinds[i]);
+            HashCode contentHash = readContentHash(fileType, hashLength, decoder);
+            fingerprints.put(absolutePaths[i], createFingerprint(kinds[i], normalizedPaths[i], fileType, contentHash));
         }
         return fingerprints.build();
     }
 
-    private FileSystemLocationFingerprint readFingerprint(Decoder decoder) throws IOException {
-        FileType fileType = readFileType(decoder);
-        HashCode contentHash = readContentHash(fileType, decoder);
+    private String[] readAbsolutePaths(Decoder decoder, int fingerprintCount) throws IOException {
+        String[] absolutePaths = new String[fingerprintCount];
+        String previous = "";
+        for (int i = 0; i < fingerprintCount; i++) {
+            int sharedPrefixLength = decoder.readSmallInt();
+            String absolutePath = stringInterner.intern(previous.substring(0, sharedPrefixLength) + decoder.readString());
+            absolutePaths[i] = absolutePath;
+            previous = absolutePath;
+        }
+        return absolutePaths;
+    }
 
-        byte fingerprintKind = decoder.readByte();
-        switch (fingerprintKind) {
+    private String[] readNormalizedPaths(Decoder decoder, String[] absolutePaths, byte[] kinds) throws IOException {
+        String[] normalizedPaths = new String[absolutePaths.length];
+        for (int i = 0; i < absolutePaths.length; i++) {
+            if ((kinds[i] & NORMALIZATION_MASK) != DEFAULT_NORMALIZATION) {
+                continue;
+            }
+            int suffixLength = decoder.readSmallInt();
+            String normalizedPath;
+            if (suffixLength == EXPLICIT_NORMALIZED_PATH) {
+                normalizedPath = decoder.readString();
+            } else {
+                String absolutePath = absolutePaths[i];
+                normalizedPath = absolutePath.substring(absolutePath.length() - (suffixLength - 1));
+            }
+            normalizedPaths[i] = stringInterner.intern(normalizedPath);
+        }
+        return normalizedPaths;
+    }
+
+    private static FileSystemLocationFingerprint createFingerprint(byte kind, String normalizedPath, FileType fileType, HashCode contentHash) {
+        switch (kind & NORMALIZATION_MASK) {
             case DEFAULT_NORMALIZATION:
-                String normalizedPath = decoder.readString();
-                return new DefaultFileSystemLocationFingerprint(stringInterner.intern(normalizedPath), fileType, contentHash);
+                return new DefaultFileSystemLocationFingerprint(normalizedPath, fileType, contentHash);
             case IGNORED_PATH_NORMALIZATION:
                 return IgnoredPathFileSystemLocationFingerprint.create(fileType, contentHash);
             default:
@@ -75,22 +125,23 @@ private FileSystemLocationFingerprint readFingerprint(Decoder decoder) throws IO
         }
     }
 
-    private HashCode readContentHash(FileType fileType, Decoder decoder) throws IOException {
+    private static HashCode readContentHash(FileType fileType, int hashLength, Decoder decoder) throws IOException {
         switch (fileType) {
             case Directory:
                 return FileSystemLocationFingerprint.DIR_SIGNATURE;
             case Missing:
                 return FileSystemLocationFingerprint.MISSING_FILE_SIGNATURE;
             case RegularFile:
-                return hashCodeSerializer.read(decoder);
+                byte[] hash = new byte[hashLength == VARIABLE_HASH_LENGTH ? decoder.readByte() & 0xff : hashLength];
+                decoder.readBytes(hash);
+                return HashCode.fromBytes(hash);
             default:
                 throw new RuntimeException("Unable to read serialized file fingerprint. Unrecognized value found in the data stream.");
         }
     }
 
-    private FileType readFileType(Decoder decoder) throws IOException {
-        byte fileKind = decoder.readByte();
-        switch (fileKind) {
+    private static FileType readFileType(byte kind) {
+        switch (kind & FILE_TYPE_MASK) {
             case DIR_FINGERPRINT:
                 return FileType.Directory;
             case MISSING_FILE_FINGERPRINT:
@@ -105,51 +156,97 @@ private FileType readFileType(Decoder decoder) throws IOException {
     @Override
     public void write(Encoder encoder, Map<String, FileSystemLocationFingerprint> value) throws Exception {
         encoder.writeSmallInt(value.size());
-        for (String key : value.keySet()) {
-            encoder.writeString(key);
-            FileSystemLocationFingerprint fingerprint = value.get(key);
-            writeFingerprint(encoder, fingerprint);
+        if (value.isEmpty()) {
+            return;
+        }
+        writeAbsolutePaths(encoder, value);
+        for (FileSystemLocationFingerprint fingerprint : value.values()) {
+            encoder.writeByte(kindOf(fingerprint));
         }
+        writeNormalizedPaths(encoder, value);
+        writeContentHashes(encoder, value);
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (!super.equals(obj)) {
-            return false;
+    private static void writeAbsolutePaths(Encoder encoder, Map<String, FileSystemLocationFingerprint> fingerprints) throws IOException {
+        String previous = "";
+        for (String absolutePath : fingerprints.keySet()) {
+            int sharedPrefixLength = sharedPrefixLength(previous, absolutePath);
+            encoder.writeSmallInt(sharedPrefixLength);
+            encoder.writeString(absolutePath.substring(sharedPrefixLength));
+            previous = absolutePath;
         }
-
-        FingerprintMapSerializer rhs = (FingerprintMapSerializer) obj;
-        return Objects.equal(hashCodeSerializer, rhs.hashCodeSerializer);
     }
 
-    @Override
-    public int hashCode() {
-        return Objects.hashCode(super.hashCode(), hashCodeSerializer);
+    private static int sharedPrefixLength(String previous, String current) {
+        int maxLength = Math.min(previous.length(), current.length());
+        int length = 0;
+        while (length < maxLength && previous.charAt(length) == current.charAt(length)) {
+            length++;
+        }
+        // Do not split a surrogate pair between the prefix and the suffix
+        if (length > 0 && Character.isHighSurrogate(current.charAt(length - 1))) {
+            length--;
+        }
+        return length;
     }
 
-    private void writeFingerprint(Encoder encoder, FileSystemLocationFingerprint value) throws IOException {
-        switch (value.getType()) {
+    private static byte kindOf(FileSystemLocationFingerprint fingerprint) {
+        int fileType;
+        switch (fingerprint.getType()) {
             case Directory:
-                encoder.writeByte(DIR_FINGERPRINT);
+                fileType = DIR_FINGERPRINT;
                 break;
             case Missing:
-                encoder.writeByte(MISSING_FILE_FINGERPRINT);
+                fileType = MISSING_FILE_FINGERPRINT;
                 break;
             case RegularFile:
-                encoder.writeByte(REGULAR_FILE_FINGERPRINT);
-                hashCodeSerializer.write(encoder, value.getNormalizedContentHash());
+                fileType = REGULAR_FILE_FINGERPRINT;
                 break;
             default:
                 throw new AssertionError();
         }
-
-        if (value instanceof DefaultFileSystemLocationFingerprint) {
-            encoder.writeByte(DEFAULT_NORMALIZATION);
-            encoder.writeString(value.getNormalizedPath());
-        } else if (value instanceof IgnoredPathFileSystemLocationFingerprint) {
-            encoder.writeByte(IGNORED_PATH_NORMALIZATION);
+        if (fingerprint instanceof DefaultFileSystemLocationFingerprint) {
+            return (byte) (DEFAULT_NORMALIZATION | fileType);
+        } else if (fingerprint instanceof IgnoredPathFileSystemLocationFingerprint) {
+            return (byte) (IGNORED_PATH_NORMALIZATION | fileType);
         } else {
             throw new AssertionError();
         }
     }
+
+    private static void writeNormalizedPaths(Encoder encoder, Map<String, FileSystemLocationFingerprint> fingerprints) throws IOException {
+        for (Map.Entry<String, FileSystemLocationFingerprint> entry : fingerprints.entrySet()) {
+            FileSystemLocationFingerprint fingerprint = entry.getValue();
+            if (!(fingerprint instanceof DefaultFileSystemLocationFingerprint)) {
+                continue;
+            }
+            String normalizedPath = fingerprint.getNormalizedPath();
+            if (entry.getKey().endsWith(normalizedPath)) {
+                encoder.writeSmallInt(normalizedPath.length() + 1);
+            } else {
+                encoder.writeSmallInt(EXPLICIT_NORMALIZED_PATH);
+                encoder.writeString(normalizedPath);
+            }
+        }
+    }
+
+    private static void writeContentHashes(Encoder encoder, Map<String, FileSystemLocationFingerprint> fingerprints) throws IOException {
+        int hashLength = -1;
+        for (FileSystemLocationFingerprint fingerprint : fingerprints.values()) {
+            if (fingerprint.getType() == FileType.RegularFile) {
+                int length = fingerprint.getNormalizedContentHash().length();
+                hashLength = hashLength == -1 || hashLength == length ? length : VARIABLE_HASH_LENGTH;
+            }
+        }
+        encoder.writeSmallInt(Math.max(hashLength, VARIABLE_HASH_LENGTH));
+        for (FileSystemLocationFingerprint fingerprint : fingerprints.values()) {
+            if (fingerprint.getType() == FileType.RegularFile) {
+                byte[] hash = fingerprint.getNormalizedContentHash().toByteArray();
+                if (hashLength == VARIABLE_HASH_LENGTH) {
+                    encoder.writeByte((byte) hash.length);
+                }
+                encoder.writeBytes(hash);
+            }
+        }
+    }
 }
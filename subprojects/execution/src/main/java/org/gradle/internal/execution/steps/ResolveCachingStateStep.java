@@ -37,6 +37,7 @@
 import org.gradle.internal.execution.caching.impl.LoggingCachingStateBuilder;
 import org.gradle.internal.execution.history.AfterPreviousExecutionState;
 import org.gradle.internal.execution.history.BeforeExecutionState;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
 import org.gradle.internal.fingerprint.overlap.OverlappingOutputs;
 import org.slf4j.Logger;
@@ -44,6 +45,7 @@
 
 import java.util.Formatter;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class ResolveCachingStateStep implements Step<BeforeExecutionContext, CachingResult> {
@@ -84,65 +86,122 @@ public CachingResult execute(BeforeExecutionContext context) {
         }
 
         ImmutableList<CachingDisabledReason> disabledReasons = cachingState.getDisabledReasons();
+        BuildCacheKey prefetchedKey = null;
         if (disabledReasons.isEmpty()) {
             //noinspection OptionalGetWithoutIsPresent
-            logCacheKey(cachingState.getKey().get(), work);
+            BuildCacheKey cacheKey = cachingState.getKey().get();
+            logCacheKey(cacheKey, work);
+            if (isLikelyToLoadFromCache(context, work)) {
+                // Start fetching the entry while the work is checked for being up-to-date
+                buildCache.prefetch(cacheKey);
+                prefetchedKey = cacheKey;
+            }
         } else {
             logDisabledReasons(disabledReasons, work);
         }
 
-        UpToDateResult result = delegate.execute(new CachingContext() {
+        UpToDateResult result;
+        try {
+            result = executeDelegate(context, work, cachingState);
+        } finally {
+            if (prefetchedKey != null) {
+                buildCache.discardPrefetched(prefetchedKey);
+            }
+        }
+        return new CachingResult() {
             @Override
             public CachingState getCachingState() {
                 return cachingState;
             }
 
             @Override
-            public Optional<String> getRebuildReason() {
-                return context.getRebuildReason();
+            public ImmutableList<String> getExecutionReasons() {
+                return result.getExecutionReasons();
             }
 
             @Override
-            public Optional<AfterPreviousExecutionState> getAfterPreviousExecutionState() {
-                return context.getAfterPreviousExecutionState();
+            public ImmutableSortedMap<String, ? extends FileCollectionFingerprint> getFinalOutputs() {
+                return result.getFinalOutputs();
             }
 
             @Override
-            public Optional<BeforeExecutionState> getBeforeExecutionState() {
-                return context.getBeforeExecutionState();
+            public Optional<OriginMetadata> getReusedOutputOriginMetadata() {
+                return result.getReusedOutputOriginMetadata();
             }
 
             @Override
-            public UnitOfWork getWork() {
-                return work;
+            public Try<ExecutionOutcome> getOutcome() {
+                return result.getOutcome();
             }
-        });
-        return new CachingResult() {
+        };
+    }
+
+    /**
+     * Work that has no execution history, is known to have to rebuild, or whose inputs changed since its previous execution will not be up-to-date
+     * and so is going to load from the cache. The inputs are compared by their hashes only, which is much cheaper than the full change detection,
+     * so the download overlaps with it. Work whose inputs did not change may still be up-to-date, so its entry is not prefetched to avoid downloading
+     * entries of up-to-date work.
+     */
+    private boolean isLikelyToLoadFromCache(BeforeExecutionContext context, UnitOfWork work) {
+        if (!buildCache.isEnabled() || !work.isAllowedToLoadFromCache()) {
+            return false;
+        }
+        if (context.getRebuildReason().isPresent()) {
+            return true;
+        }
+        return context.getAfterPreviousExecutionState()
+            .map(afterPreviousExecutionState -> context.getBeforeExecutionState()
+                .map(beforeExecutionState -> hasChangedInputs(beforeExecutionState, afterPreviousExecutionState))
+                .orElse(false))
+            .orElse(true);
+    }
+
+    private static boolean hasChangedInputs(BeforeExecutionState current, AfterPreviousExecutionState previous) {
+        if (!current.getImplementation().equals(previous.getImplementation())
+            || !current.getAdditionalImplementations().equals(previous.getAdditionalImplementations())
+            || !current.getInputProperties().equals(previous.getInputProperties())) {
+            return true;
+        }
+        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> currentInputFiles = current.getInputFileProperties();
+        ImmutableSortedMap<String, FileCollectionFingerprint> previousInputFiles = previous.getInputFileProperties();
+        if (!currentInputFiles.keySet().equals(previousInputFiles.keySet())) {
+            return true;
+        }
+        for (Map.Entry<String, CurrentFileCollectionFingerprint> entry : currentInputFiles.entrySet()) {
+            if (!entry.getValue().getRootHashes().equals(previousInputFiles.get(entry.getKey()).getRootHashes())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private UpToDateResult executeDelegate(BeforeExecutionContext context, UnitOfWork work, CachingState cachingState) {
+        return delegate.execute(new CachingContext() {
             @Override
             public CachingState getCachingState() {
                 return cachingState;
             }
 
             @Override
-            public ImmutableList<String> getExecutionReasons() {
-                return result.getExecutionReasons();
+            public Optional<String> getRebuildReason() {
+                return context.getRebuildReason();
             }
 
             @Override
-            public ImmutableSortedMap<String, ? extends FileCollectionFingerprint> getFinalOutputs() {
-                return result.getFinalOutputs();
+            public Optional<AfterPreviousExecutionState> getAfterPreviousExecutionState() {
+                return context.getAfterPreviousExecutionState();
             }
 
             @Override
-            public Optional<OriginMetadata> getReusedOutputOriginMetadata() {
-                return result.getReusedOutputOriginMetadata();
+            public Optional<BeforeExecutionState> getBeforeExecutionState() {
+                return context.getBeforeExecutionState();
             }
 
             @Override
-            public Try<ExecutionOutcome> getOutcome() {
-                return result.getOutcome();
+            public UnitOfWork getWork() {
+                return work;
             }
-        };
+        });
     }
 
     private CachingState calculateCachingState(BeforeExecutionState executionState, UnitOfWork work) {
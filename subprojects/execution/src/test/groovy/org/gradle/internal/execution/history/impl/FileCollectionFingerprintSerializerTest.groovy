@@ -90,4 +90,49 @@ class FileCollectionFingerprintSerializerTest extends SerializerSpec {
         out.fingerprints.keySet() as List == ["/3", "/2", "/1"]
         out.rootHashes.keySet() as List == ["/3", "/2", "/1"]
     }
+
+    def "reads and writes fingerprints with shared path prefixes and hashes of different lengths"() {
+        def fingerprints = [
+            '/root/dir': new DefaultFileSystemLocationFingerprint("dir", FileType.Directory, FileSystemLocationFingerprint.DIR_SIGNATURE),
+            '/root/dir/file.txt': new DefaultFileSystemLocationFingerprint("dir/file.txt", FileType.RegularFile, HashCode.fromInt(1234)),
+            '/root/dir/other.txt': new DefaultFileSystemLocationFingerprint("renamed.txt", FileType.RegularFile, HashCode.fromString("0123456789abcdef0123456789abcdef")),
+            '/root/dir2': IgnoredPathFileSystemLocationFingerprint.create(FileType.Missing, FileSystemLocationFingerprint.MISSING_FILE_SIGNATURE),
+        ]
+
+        when:
+        def out = serialize(new SerializableFileCollectionFingerprint(fingerprints, ImmutableMultimap.of("/root", HashCode.fromInt(1))), serializer)
+
+        then:
+        out.fingerprints.keySet() as List == fingerprints.keySet() as List
+        fingerprints.each { path, expected ->
+            def actual = out.fingerprints[path]
+            assert actual.class == expected.class
+            assert actual.type == expected.type
+            assert actual.normalizedPath == expected.normalizedPath
+            assert actual.normalizedContentHash == expected.normalizedContentHash
+        }
+    }
+
+    def "decodes fingerprints only when requested"() {
+        def hash = HashCode.fromInt(1234)
+        def fingerprint = new SerializableFileCollectionFingerprint(
+            '/1': new DefaultFileSystemLocationFingerprint("1", FileType.RegularFile, hash),
+            ImmutableMultimap.of("/1", hash)
+        )
+
+        when:
+        def out = serialize(fingerprint, serializer)
+
+        then:
+        out instanceof EncodedFileCollectionFingerprint
+        out.@fingerprints == null
+        out.rootHashes == fingerprint.rootHashes
+
+        when:
+        def reserialized = serialize(out, serializer)
+
+        then:
+        reserialized.fingerprints['/1'].normalizedContentHash == hash
+        reserialized.fingerprints['/1'].normalizedPath == "1"
+    }
 }
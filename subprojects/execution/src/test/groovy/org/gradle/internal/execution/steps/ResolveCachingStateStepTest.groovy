@@ -16,11 +16,20 @@
 
 package org.gradle.internal.execution.steps
 
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableMultimap
+import com.google.common.collect.ImmutableSortedMap
 import org.gradle.caching.internal.controller.BuildCacheController
 import org.gradle.internal.execution.BeforeExecutionContext
 import org.gradle.internal.execution.CachingContext
 import org.gradle.internal.execution.caching.CachingDisabledReason
 import org.gradle.internal.execution.caching.CachingDisabledReasonCategory
+import org.gradle.internal.execution.history.AfterPreviousExecutionState
+import org.gradle.internal.execution.history.BeforeExecutionState
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
+import org.gradle.internal.fingerprint.FileCollectionFingerprint
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
 
 class ResolveCachingStateStepTest extends StepSpec<BeforeExecutionContext> {
 
@@ -56,4 +65,64 @@ class ResolveCachingStateStepTest extends StepSpec<BeforeExecutionContext> {
             assert context.cachingState.disabledReasons.get(0) == disabledReason
         }
     }
+
+    def "prefetches entry of work whose input files changed since its previous execution"() {
+        def beforeExecutionState = beforeExecutionState(HashCode.fromInt(2))
+
+        when:
+        step.execute(context)
+        then:
+        _ * buildCache.enabled >> true
+        _ * context.beforeExecutionState >> Optional.of(beforeExecutionState)
+        _ * context.afterPreviousExecutionState >> Optional.of(afterPreviousExecutionState(HashCode.fromInt(1)))
+        _ * context.rebuildReason >> Optional.empty()
+        _ * work.shouldDisableCaching(_) >> Optional.empty()
+        _ * work.allowedToLoadFromCache >> true
+        1 * buildCache.prefetch(_)
+        1 * delegate.execute(_)
+        1 * buildCache.discardPrefetched(_)
+    }
+
+    def "does not prefetch entry of work whose inputs did not change since its previous execution"() {
+        def beforeExecutionState = beforeExecutionState(HashCode.fromInt(1))
+
+        when:
+        step.execute(context)
+        then:
+        _ * buildCache.enabled >> true
+        _ * context.beforeExecutionState >> Optional.of(beforeExecutionState)
+        _ * context.afterPreviousExecutionState >> Optional.of(afterPreviousExecutionState(HashCode.fromInt(1)))
+        _ * context.rebuildReason >> Optional.empty()
+        _ * work.shouldDisableCaching(_) >> Optional.empty()
+        _ * work.allowedToLoadFromCache >> true
+        0 * buildCache.prefetch(_)
+        1 * delegate.execute(_)
+    }
+
+    private BeforeExecutionState beforeExecutionState(HashCode inputFileHash) {
+        def inputFiles = Stub(CurrentFileCollectionFingerprint) {
+            getHash() >> inputFileHash
+            getRootHashes() >> ImmutableMultimap.of("input", inputFileHash)
+        }
+        Stub(BeforeExecutionState) {
+            getImplementation() >> ImplementationSnapshot.of("Work", HashCode.fromInt(123))
+            getAdditionalImplementations() >> ImmutableList.of()
+            getInputProperties() >> ImmutableSortedMap.of()
+            getInputFileProperties() >> ImmutableSortedMap.of("input", inputFiles)
+            getOutputFileProperties() >> ImmutableSortedMap.of()
+            getDetectedOverlappingOutputs() >> Optional.empty()
+        }
+    }
+
+    private AfterPreviousExecutionState afterPreviousExecutionState(HashCode inputFileHash) {
+        def inputFiles = Stub(FileCollectionFingerprint) {
+            getRootHashes() >> ImmutableMultimap.of("input", inputFileHash)
+        }
+        Stub(AfterPreviousExecutionState) {
+            getImplementation() >> ImplementationSnapshot.of("Work", HashCode.fromInt(123))
+            getAdditionalImplementations() >> ImmutableList.of()
+            getInputProperties() >> ImmutableSortedMap.of()
+            getInputFileProperties() >> ImmutableSortedMap.of("input", inputFiles)
+        }
+    }
 }
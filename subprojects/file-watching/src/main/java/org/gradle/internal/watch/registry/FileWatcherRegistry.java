@@ -19,12 +19,16 @@
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Optional;
 
 public interface FileWatcherRegistry extends Closeable {
 
     interface ChangeHandler {
-        void handleChange(Type type, Path path);
+        /**
+         * Handles a batch of changes received together. None of the changed paths is below another one.
+         */
+        void handleChanges(Collection<Path> changedPaths);
 
         void handleLostState();
     }
@@ -53,5 +57,15 @@ interface FileWatchingStatistics {
         Optional<Throwable> getErrorWhileReceivingFileChanges();
         boolean isUnknownEventEncountered();
         int getNumberOfReceivedEvents();
+
+        /**
+         * The number of changes which did not need to be handled since they were covered by another change in the same batch.
+         */
+        int getNumberOfCoalescedEvents();
+
+        /**
+         * The number of changes passed to the {@link ChangeHandler}.
+         */
+        int getNumberOfAppliedChanges();
     }
 }
@@ -18,6 +18,7 @@
 
 import net.rubygrapefruit.platform.file.FileWatchEvent;
 import net.rubygrapefruit.platform.file.FileWatcher;
+import org.gradle.internal.MutableBoolean;
 import org.gradle.internal.watch.registry.FileWatcherRegistry;
 import org.gradle.internal.watch.registry.FileWatcherUpdater;
 import org.slf4j.Logger;
@@ -26,7 +27,10 @@
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -39,6 +43,7 @@
 
 public class DefaultFileWatcherRegistry implements FileWatcherRegistry {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileWatcherRegistry.class);
+    private static final int MAX_EVENTS_PER_BATCH = 100_000;
 
     private final FileWatcher watcher;
     private final BlockingQueue<FileWatchEvent> fileEvents;
@@ -58,45 +63,18 @@ public DefaultFileWatcherRegistry(FileWatcher watcher, ChangeHandler handler, Fi
 
     private Thread createAndStartEventConsumerThread(ChangeHandler handler) {
         Thread thread = new Thread(() -> {
+            List<FileWatchEvent> events = new ArrayList<>();
+            FileChangeBatch changes = new FileChangeBatch();
             try {
                 while (consumeEvents) {
-                    FileWatchEvent nextEvent = fileEvents.take();
+                    // Handle all the events which arrived while the previous ones were handled at once
+                    events.add(fileEvents.take());
+                    fileEvents.drainTo(events, MAX_EVENTS_PER_BATCH - 1);
                     if (!stopping) {
-                        nextEvent.handleEvent(new FileWatchEvent.Handler() {
-                            @Override
-                            public void handleChangeEvent(FileWatchEvent.ChangeType type, String absolutePath) {
-                                fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::eventReceived);
-                                handler.handleChange(convertType(type), Paths.get(absolutePath));
-                            }
-
-                            @Override
-                            public void handleUnknownEvent(String absolutePath) {
-                                fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::unknownEventEncountered);
-                                handler.handleLostState();
-                            }
-
-                            @Override
-                            public void handleOverflow(FileWatchEvent.OverflowType type, @Nullable String absolutePath) {
-                                if (absolutePath == null) {
-                                    handler.handleLostState();
-                                } else {
-                                    handler.handleChange(INVALIDATED, Paths.get(absolutePath));
-                                }
-                            }
-
-                            @Override
-                            public void handleFailure(Throwable failure) {
-                                LOGGER.error("Error while receiving file changes", failure);
-                                fileWatchingStatistics.updateAndGet(statistics -> statistics.errorWhileReceivingFileChanges(failure));
-                                handler.handleLostState();
-                            }
-
-                            @Override
-                            public void handleTerminated() {
-                                consumeEvents = false;
-                            }
-                        });
+                        handleEvents(events, changes, handler);
                     }
+                    events.clear();
+                    changes.clear();
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -109,6 +87,56 @@ public void handleTerminated() {
         return thread;
     }
 
+    private void handleEvents(List<FileWatchEvent> events, FileChangeBatch changes, ChangeHandler handler) {
+        MutableBoolean lostState = new MutableBoolean();
+        for (FileWatchEvent event : events) {
+            event.handleEvent(new FileWatchEvent.Handler() {
+                @Override
+                public void handleChangeEvent(FileWatchEvent.ChangeType type, String absolutePath) {
+                    LOGGER.debug("Received file system event {} {}", convertType(type), absolutePath);
+                    fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::eventReceived);
+                    changes.add(Paths.get(absolutePath));
+                }
+
+                @Override
+                public void handleUnknownEvent(String absolutePath) {
+                    fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::unknownEventEncountered);
+                    lostState.set(true);
+                }
+
+                @Override
+                public void handleOverflow(FileWatchEvent.OverflowType type, @Nullable String absolutePath) {
+                    if (absolutePath == null) {
+                        lostState.set(true);
+                    } else {
+                        changes.add(Paths.get(absolutePath));
+                    }
+                }
+
+                @Override
+                public void handleFailure(Throwable failure) {
+                    LOGGER.error("Error while receiving file changes", failure);
+                    fileWatchingStatistics.updateAndGet(statistics -> statistics.errorWhileReceivingFileChanges(failure));
+                    lostState.set(true);
+                }
+
+                @Override
+                public void handleTerminated() {
+                    consumeEvents = false;
+                }
+            });
+        }
+        if (!changes.isEmpty()) {
+            List<Path> coalescedPaths = changes.getCoalescedPaths();
+            int coalescedEvents = changes.getNumberOfEvents() - coalescedPaths.size();
+            fileWatchingStatistics.updateAndGet(statistics -> statistics.changesApplied(coalescedEvents, coalescedPaths.size()));
+            handler.handleChanges(coalescedPaths);
+        }
+        if (lostState.get()) {
+            handler.handleLostState();
+        }
+    }
+
     @Override
     public FileWatcherUpdater getFileWatcherUpdater() {
         return fileWatcherUpdater;
@@ -154,6 +182,8 @@ public void close() throws IOException {
     private static class MutableFileWatchingStatistics implements FileWatchingStatistics {
         private boolean unknownEventEncountered;
         private int numberOfReceivedEvents;
+        private int numberOfCoalescedEvents;
+        private int numberOfAppliedChanges;
         private Throwable errorWhileReceivingFileChanges;
 
         @Override
@@ -171,11 +201,27 @@ public int getNumberOfReceivedEvents() {
             return numberOfReceivedEvents;
         }
 
+        @Override
+        public int getNumberOfCoalescedEvents() {
+            return numberOfCoalescedEvents;
+        }
+
+        @Override
+        public int getNumberOfAppliedChanges() {
+            return numberOfAppliedChanges;
+        }
+
         public MutableFileWatchingStatistics eventReceived() {
             numberOfReceivedEvents++;
             return this;
         }
 
+        public MutableFileWatchingStatistics changesApplied(int coalescedEvents, int appliedChanges) {
+            numberOfCoalescedEvents += coalescedEvents;
+            numberOfAppliedChanges += appliedChanges;
+            return this;
+        }
+
         public MutableFileWatchingStatistics errorWhileReceivingFileChanges(Throwable error) {
             if (errorWhileReceivingFileChanges != null) {
                 errorWhileReceivingFileChanges = error;
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.registry.impl;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the paths of file system events received together, so they can be handled in one update of the virtual file system.
+ */
+class FileChangeBatch {
+    private final Set<Path> changedPaths = new LinkedHashSet<>();
+    private int numberOfEvents;
+
+    public void add(Path changedPath) {
+        numberOfEvents++;
+        changedPaths.add(changedPath);
+    }
+
+    public boolean isEmpty() {
+        return numberOfEvents == 0;
+    }
+
+    public int getNumberOfEvents() {
+        return numberOfEvents;
+    }
+
+    /**
+     * Returns the changed paths in the order they were first reported, leaving out duplicates and paths below another changed path.
+     *
+     * Invalidating a path invalidates everything below it, so the remaining paths cover all the changes.
+     */
+    public List<Path> getCoalescedPaths() {
+        List<Path> coalescedPaths = new ArrayList<>(changedPaths.size());
+        for (Path changedPath : changedPaths) {
+            if (!hasChangedAncestor(changedPath)) {
+                coalescedPaths.add(changedPath);
+            }
+        }
+        return coalescedPaths;
+    }
+
+    private boolean hasChangedAncestor(Path path) {
+        for (Path ancestor = path.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            if (changedPaths.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        changedPaths.clear();
+        numberOfEvents = 0;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl;
+
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.file.Stat;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.SnapshotHierarchy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the complete snapshots of a {@link SnapshotHierarchy} in a file, so a new daemon can start with the snapshots of the previous one.
+ *
+ * Loaded snapshots are validated against the file system by comparing the type, length and modification time of every file and
+ * the modification time of every directory, which is much cheaper than hashing them again.
+ * A directory whose content changed is not loaded, but its unchanged children are.
+ */
+public class SnapshotHierarchyStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotHierarchyStore.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final byte DIRECTORY = 1;
+    private static final byte REGULAR_FILE = 2;
+    private static final byte MISSING = 3;
+
+    /**
+     * Files modified this recently are not stored, since a later modification may not change their modification time.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION_MILLIS = 2000;
+
+    private final File stateFile;
+    private final Stat stat;
+
+    public SnapshotHierarchyStore(File stateFile, Stat stat) {
+        this.stateFile = stateFile;
+        this.stat = stat;
+    }
+
+    /**
+     * Stores the snapshots of the given hierarchy, replacing the previously stored ones.
+     */
+    public void store(SnapshotHierarchy root) {
+        long modifiedBefore = System.currentTimeMillis() - MODIFICATION_TIME_RESOLUTION_MILLIS;
+        Map<String, Long> directoryModificationTimes = new HashMap<>();
+        List<CompleteFileSystemLocationSnapshot> stableSnapshots = new ArrayList<>();
+        root.visitSnapshotRoots(snapshotRoot -> addUnchangedParts(snapshotRoot, stableSnapshots, snapshot -> {
+            if (snapshot.getAccessType() != AccessType.DIRECT) {
+                return false;
+            }
+            switch (snapshot.getType()) {
+                case RegularFile:
+                    return ((RegularFileSnapshot) snapshot).getMetadata().getLastModified() < modifiedBefore;
+                case Directory:
+                    long lastModified = new File(snapshot.getAbsolutePath()).lastModified();
+                    directoryModificationTimes.put(snapshot.getAbsolutePath(), lastModified);
+                    return lastModified != 0 && lastModified < modifiedBefore;
+                default:
+                    return true;
+            }
+        }));
+
+        try {
+            File parentDir = stateFile.getParentFile();
+            Files.createDirectories(parentDir.toPath());
+            File tempFile = File.createTempFile(stateFile.getName(), ".tmp", parentDir);
+            try {
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                    output.writeInt(FORMAT_VERSION);
+                    output.writeInt(stableSnapshots.size());
+                    for (CompleteFileSystemLocationSnapshot snapshot : stableSnapshots) {
+                        output.writeUTF(snapshot.getAbsolutePath());
+                        write(output, snapshot, directoryModificationTimes);
+                    }
+                }
+                Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+            LOGGER.info("Stored {} virtual file system snapshot roots to {}", stableSnapshots.size(), stateFile);
+        } catch (IOException e) {
+            LOGGER.warn("Could not store virtual file system state to {}", stateFile, e);
+        }
+    }
+
+    private static void write(DataOutputStream output, CompleteFileSystemLocationSnapshot snapshot, Map<String, Long> directoryModificationTimes) throws IOException {
+        switch (snapshot.getType()) {
+            case Directory:
+                output.writeByte(DIRECTORY);
+                writeHash(output, snapshot.getHash());
+                output.writeLong(directoryModificationTimes.get(snapshot.getAbsolutePath()));
+                List<CompleteFileSystemLocationSnapshot> children = ((CompleteDirectorySnapshot) snapshot).getChildren();
+                output.writeInt(children.size());
+                for (CompleteFileSystemLocationSnapshot child : children) {
+                    output.writeUTF(child.getName());
+                    write(output, child, directoryModificationTimes);
+                }
+                break;
+            case RegularFile:
+                output.writeByte(REGULAR_FILE);
+                writeHash(output, snapshot.getHash());
+                FileMetadata metadata = ((RegularFileSnapshot) snapshot).getMetadata();
+                output.writeLong(metadata.getLastModified());
+                output.writeLong(metadata.getLength());
+                break;
+            case Missing:
+                output.writeByte(MISSING);
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private static void writeHash(DataOutputStream output, HashCode hash) throws IOException {
+        byte[] bytes = hash.toByteArray();
+        output.writeByte(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Loads the stored snapshots which still match the file system.
+     */
+    public List<CompleteFileSystemLocationSnapshot> loadUnchangedSnapshots() {
+        List<CompleteFileSystemLocationSnapshot> unchangedSnapshots = new ArrayList<>();
+        if (!stateFile.isFile()) {
+            return unchangedSnapshots;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                return unchangedSnapshots;
+            }
+            int rootCount = input.readInt();
+            for (int i = 0; i < rootCount; i++) {
+                String absolutePath = input.readUTF();
+                CompleteFileSystemLocationSnapshot snapshot = readIfUnchanged(input, absolutePath, new File(absolutePath).getName(), unchangedSnapshots);
+                if (snapshot != null) {
+                    unchangedSnapshots.add(snapshot);
+                }
+            }
+            LOGGER.info("Loaded {} unchanged virtual file system snapshot roots from {}", unchangedSnapshots.size(), stateFile);
+            return unchangedSnapshots;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not load virtual file system state from {}", stateFile, e);
+            unchangedSnapshots.clear();
+            return unchangedSnapshots;
+        }
+    }
+
+    /**
+     * Reads the next snapshot and returns it if it still matches the file system.
+     * Otherwise, adds its unchanged descendants to {@code unchangedParts} and returns {@code null}.
+     */
+    @Nullable
+    private CompleteFileSystemLocationSnapshot readIfUnchanged(DataInputStream input, String absolutePath, String name, List<CompleteFileSystemLocationSnapshot> unchangedParts) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case DIRECTORY:
+                HashCode directoryHash = readHash(input);
+                long lastModified = input.readLong();
+                int childCount = input.readInt();
+                List<CompleteFileSystemLocationSnapshot> children = new ArrayList<>(childCount);
+                List<CompleteFileSystemLocationSnapshot> unchangedDescendants = new ArrayList<>();
+                for (int i = 0; i < childCount; i++) {
+                    String childName = input.readUTF();
+                    CompleteFileSystemLocationSnapshot child = readIfUnchanged(input, childPath(absolutePath, childName), childName, unchangedDescendants);
+                    if (child != null) {
+                        children.add(child);
+                    }
+                }
+                File directory = new File(absolutePath);
+                boolean directoryUnchanged = children.size() == childCount
+                    && currentType(directory) == FileType.Directory
+                    && directory.lastModified() == lastModified;
+                if (directoryUnchanged) {
+                    return new CompleteDirectorySnapshot(absolutePath, name, children, directoryHash, AccessType.DIRECT);
+                }
+                unchangedParts.addAll(children);
+                unchangedParts.addAll(unchangedDescendants);
+                return null;
+            case REGULAR_FILE:
+                HashCode contentHash = readHash(input);
+                FileMetadata metadata = DefaultFileMetadata.file(input.readLong(), input.readLong(), AccessType.DIRECT);
+                return metadata.equals(currentMetadata(new File(absolutePath)))
+                    ? new RegularFileSnapshot(absolutePath, name, contentHash, metadata)
+                    : null;
+            case MISSING:
+                return currentType(new File(absolutePath)) == FileType.Missing
+                    ? new MissingFileSnapshot(absolutePath, name, AccessType.DIRECT)
+                    : null;
+            default:
+                throw new IOException("Unexpected snapshot type " + type);
+        }
+    }
+
+    private static String childPath(String parentPath, String childName) {
+        return parentPath.endsWith(File.separator)
+            ? parentPath + childName
+            : parentPath + File.separatorChar + childName;
+    }
+
+    private static HashCode readHash(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readUnsignedByte()];
+        input.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    @Nullable
+    private FileMetadata currentMetadata(File file) {
+        try {
+            return stat.stat(file);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private FileType currentType(File file) {
+        FileMetadata metadata = currentMetadata(file);
+        return metadata == null ? null : metadata.getType();
+    }
+
+    /**
+     * Adds the given snapshot to {@code unchangedParts} if it and all its descendants are unchanged, and returns {@code true}.
+     * Otherwise, adds the largest unchanged parts of its descendants and returns {@code false}.
+     */
+    private static boolean addUnchangedParts(CompleteFileSystemLocationSnapshot snapshot, List<CompleteFileSystemLocationSnapshot> unchangedParts, Predicate<CompleteFileSystemLocationSnapshot> isUnchanged) {
+        if (snapshot.getType() == FileType.Directory) {
+            int firstChildPart = unchangedParts.size();
+            boolean allChildrenUnchanged = true;
+            for (CompleteFileSystemLocationSnapshot child : ((CompleteDirectorySnapshot) snapshot).getChildren()) {
+                allChildrenUnchanged &= addUnchangedParts(child, unchangedParts, isUnchanged);
+            }
+            if (!allChildrenUnchanged || !isUnchanged.test(snapshot)) {
+                return false;
+            }
+            unchangedParts.subList(firstChildPart, unchangedParts.size()).clear();
+        } else if (!isUnchanged.test(snapshot)) {
+            return false;
+        }
+        unchangedParts.add(snapshot);
+        return true;
+    }
+}
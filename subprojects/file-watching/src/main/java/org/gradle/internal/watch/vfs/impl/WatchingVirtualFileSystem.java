@@ -35,6 +35,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -55,8 +56,10 @@ public class WatchingVirtualFileSystem extends AbstractDelegatingVirtualFileSyst
     private final DelegatingDiffCapturingUpdateFunctionDecorator delegatingUpdateFunctionDecorator;
     private final AtomicReference<FileHierarchySet> producedByCurrentBuild = new AtomicReference<>(DefaultFileHierarchySet.of());
     private final Predicate<String> watchFilter;
+    private final SnapshotHierarchyStore snapshotHierarchyStore;
 
     private FileWatcherRegistry watchRegistry;
+    private boolean storedSnapshotsLoaded;
 
     private final SnapshotHierarchy.SnapshotDiffListener snapshotDiffListener = (removedSnapshots, addedSnapshots) -> {
         if (watchRegistry != null) {
@@ -71,11 +74,22 @@ public WatchingVirtualFileSystem(
         AbstractVirtualFileSystem delegate,
         DelegatingDiffCapturingUpdateFunctionDecorator delegatingUpdateFunctionDecorator,
         Predicate<String> watchFilter
+    ) {
+        this(watcherRegistryFactory, delegate, delegatingUpdateFunctionDecorator, watchFilter, null);
+    }
+
+    public WatchingVirtualFileSystem(
+        FileWatcherRegistryFactory watcherRegistryFactory,
+        AbstractVirtualFileSystem delegate,
+        DelegatingDiffCapturingUpdateFunctionDecorator delegatingUpdateFunctionDecorator,
+        Predicate<String> watchFilter,
+        @Nullable SnapshotHierarchyStore snapshotHierarchyStore
     ) {
         super(delegate);
         this.watcherRegistryFactory = watcherRegistryFactory;
         this.delegatingUpdateFunctionDecorator = delegatingUpdateFunctionDecorator;
         this.watchFilter = watchFilter;
+        this.snapshotHierarchyStore = snapshotHierarchyStore;
     }
 
     @Override
@@ -154,20 +168,23 @@ private SnapshotHierarchy startWatching(SnapshotHierarchy currentRoot) {
             long startTime = System.currentTimeMillis();
             watchRegistry = watcherRegistryFactory.createFileWatcherRegistry(new FileWatcherRegistry.ChangeHandler() {
                 @Override
-                public void handleChange(FileWatcherRegistry.Type type, Path path) {
+                public void handleChanges(Collection<Path> changedPaths) {
                     try {
-                        LOGGER.debug("Handling VFS change {} {}", type, path);
-                        String absolutePath = path.toString();
-                        if (!(buildRunning && producedByCurrentBuild.get().contains(absolutePath))) {
-                            getRoot().update(root -> {
-                                SnapshotCollectingDiffListener diffListener = new SnapshotCollectingDiffListener(watchFilter);
-                                SnapshotHierarchy newRoot = root.invalidate(absolutePath, diffListener);
-                                return handleWatcherChangeErrors(
-                                    newRoot,
-                                    () -> diffListener.publishSnapshotDiff(snapshotDiffListener)
-                                );
-                            });
-                        }
+                        getRoot().update(root -> {
+                            SnapshotCollectingDiffListener diffListener = new SnapshotCollectingDiffListener(watchFilter);
+                            SnapshotHierarchy newRoot = root;
+                            for (Path path : changedPaths) {
+                                String absolutePath = path.toString();
+                                if (!(buildRunning && producedByCurrentBuild.get().contains(absolutePath))) {
+                                    LOGGER.debug("Handling VFS change {}", absolutePath);
+                                    newRoot = newRoot.invalidate(absolutePath, diffListener);
+                                }
+                            }
+                            return handleWatcherChangeErrors(
+                                newRoot,
+                                () -> diffListener.publishSnapshotDiff(snapshotDiffListener)
+                            );
+                        });
                     } catch (Exception e) {
                         LOGGER.error("Error while processing file events", e);
                         stopWatchingAndInvalidateHierarchy();
@@ -184,7 +201,7 @@ public void handleLostState() {
             long endTime = System.currentTimeMillis() - startTime;
             LOGGER.warn("Spent {} ms registering watches for file system events", endTime);
             // TODO: Move start watching early enough so that the root is always empty
-            return currentRoot.empty();
+            return loadStoredSnapshots(currentRoot.empty());
         } catch (Exception ex) {
             LOGGER.error("Couldn't create watch service, not tracking changes between builds", ex);
             closeUnderLock();
@@ -192,6 +209,27 @@ public void handleLostState() {
         }
     }
 
+    /**
+     * Adds the snapshots stored by a previous daemon which still match the file system.
+     *
+     * Only done once per daemon, after the watches have been registered, so changes happening while the snapshots are validated are not missed.
+     */
+    private SnapshotHierarchy loadStoredSnapshots(SnapshotHierarchy currentRoot) {
+        if (snapshotHierarchyStore == null || storedSnapshotsLoaded) {
+            return currentRoot;
+        }
+        storedSnapshotsLoaded = true;
+        SnapshotCollectingDiffListener diffListener = new SnapshotCollectingDiffListener(watchFilter);
+        SnapshotHierarchy newRoot = currentRoot;
+        for (CompleteFileSystemLocationSnapshot snapshot : snapshotHierarchyStore.loadUnchangedSnapshots()) {
+            newRoot = newRoot.store(snapshot.getAbsolutePath(), snapshot, diffListener);
+        }
+        return handleWatcherChangeErrors(
+            newRoot,
+            () -> diffListener.publishSnapshotDiff(snapshotDiffListener)
+        );
+    }
+
     private SnapshotHierarchy handleWatcherChangeErrors(SnapshotHierarchy currentRoot, Runnable runnable) {
         try {
             runnable.run();
@@ -233,7 +271,8 @@ private SnapshotHierarchy handleWatcherRegistryEvents(SnapshotHierarchy currentR
             return currentRoot.empty();
         }
         FileWatcherRegistry.FileWatchingStatistics statistics = watchRegistry.getAndResetStatistics();
-        LOGGER.warn("Received {} file system events {}", statistics.getNumberOfReceivedEvents(), eventsFor);
+        LOGGER.warn("Received {} file system events {}, invalidated {} locations after coalescing {} events",
+            statistics.getNumberOfReceivedEvents(), eventsFor, statistics.getNumberOfAppliedChanges(), statistics.getNumberOfCoalescedEvents());
         if (statistics.isUnknownEventEncountered()) {
             LOGGER.warn("Dropped VFS state due to lost state");
             return stopWatchingAndInvalidateHierarchy(currentRoot);
@@ -307,11 +346,26 @@ public void update(Iterable<String> locations, Runnable action) {
     @Override
     public void close() {
         getRoot().update(currentRoot -> {
+            storeSnapshots(currentRoot);
             closeUnderLock();
             return currentRoot.empty();
         });
     }
 
+    /**
+     * Stores the snapshots for the next daemon, as long as file events have been received for all changes made to them.
+     */
+    private void storeSnapshots(SnapshotHierarchy currentRoot) {
+        if (snapshotHierarchyStore == null || watchRegistry == null || buildRunning) {
+            return;
+        }
+        FileWatcherRegistry.FileWatchingStatistics statistics = watchRegistry.getAndResetStatistics();
+        if (statistics.isUnknownEventEncountered() || statistics.getErrorWhileReceivingFileChanges().isPresent()) {
+            return;
+        }
+        snapshotHierarchyStore.store(currentRoot);
+    }
+
     private void closeUnderLock() {
         producedByCurrentBuild.set(DefaultFileHierarchySet.of());
         if (watchRegistry != null) {
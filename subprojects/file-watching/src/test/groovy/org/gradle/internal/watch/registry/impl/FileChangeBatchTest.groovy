@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.registry.impl
+
+import spock.lang.Specification
+
+import java.nio.file.Paths
+
+class FileChangeBatchTest extends Specification {
+    def batch = new FileChangeBatch()
+
+    def "removes duplicate paths and keeps the order in which paths were reported"() {
+        when:
+        add("/root/b", "/root/a", "/root/b", "/root/c", "/root/a")
+
+        then:
+        batch.numberOfEvents == 5
+        batch.coalescedPaths == paths("/root/b", "/root/a", "/root/c")
+    }
+
+    def "removes paths below another changed path"() {
+        when:
+        add("/root/dir/sub/file", "/root/other", "/root/dir", "/root/dir/file", "/root/dirWithSamePrefix/file")
+
+        then:
+        batch.numberOfEvents == 5
+        batch.coalescedPaths == paths("/root/other", "/root/dir", "/root/dirWithSamePrefix/file")
+    }
+
+    def "is empty after clearing"() {
+        add("/root/file")
+
+        when:
+        batch.clear()
+
+        then:
+        batch.empty
+        batch.numberOfEvents == 0
+        batch.coalescedPaths.empty
+    }
+
+    private void add(String... changedPaths) {
+        changedPaths.each { batch.add(Paths.get(it)) }
+    }
+
+    private static List paths(String... paths) {
+        paths.collect { Paths.get(it) }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.file.FileMetadata.AccessType
+import org.gradle.internal.snapshot.CaseSensitivity
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
+import org.gradle.internal.snapshot.FileSystemSnapshotVisitor
+import org.gradle.internal.snapshot.MissingFileSnapshot
+import org.gradle.internal.snapshot.SnapshotHierarchy
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter
+import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+@CleanupTestDirectory
+class SnapshotHierarchyStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def directorySnapshotter = new DirectorySnapshotter(TestFiles.fileHasher(), new StringInterner())
+    def store = new SnapshotHierarchyStore(file("state/vfs.bin"), TestFiles.fileSystem())
+    def root = DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE)
+    def longAgo = System.currentTimeMillis() - 60_000
+
+    def "loads stored snapshots which did not change"() {
+        def directory = file("dir")
+        directory.file("a.txt").text = "a"
+        directory.file("sub/b.txt").text = "b"
+        def missingFile = file("missing.txt")
+        makeOld(directory)
+        def directorySnapshot = snapshotDirectory(directory)
+        addSnapshot(directorySnapshot)
+        addSnapshot(new MissingFileSnapshot(missingFile.absolutePath, AccessType.DIRECT))
+
+        when:
+        store.store(root)
+        def loaded = store.loadUnchangedSnapshots()
+
+        then:
+        loaded*.absolutePath as Set == [directory.absolutePath, missingFile.absolutePath] as Set
+        def loadedDirectory = loaded.find { it.absolutePath == directory.absolutePath } as CompleteDirectorySnapshot
+        loadedDirectory.hash == directorySnapshot.hash
+        fileHashes(loadedDirectory) == fileHashes(directorySnapshot)
+    }
+
+    def "loads unchanged parts of changed directories"() {
+        def directory = file("dir")
+        def changedFile = directory.file("sub/changed.txt")
+        changedFile.text = "changed"
+        directory.file("sub/unchanged.txt").text = "unchanged"
+        directory.file("other/unchanged.txt").text = "unchanged"
+        def missingFile = file("missing.txt")
+        makeOld(directory)
+        addSnapshot(snapshotDirectory(directory))
+        addSnapshot(new MissingFileSnapshot(missingFile.absolutePath, AccessType.DIRECT))
+        store.store(root)
+
+        when:
+        changedFile.text = "changed again"
+        missingFile.text = "created"
+        def loaded = store.loadUnchangedSnapshots()
+
+        then:
+        loaded*.absolutePath as Set == [
+            directory.file("sub/unchanged.txt").absolutePath,
+            directory.file("other").absolutePath
+        ] as Set
+    }
+
+    def "does not store recently modified files"() {
+        def directory = file("dir")
+        directory.file("old.txt").text = "old"
+        directory.file("sub/old.txt").text = "old"
+        makeOld(directory)
+        directory.file("recent.txt").text = "recent"
+        addSnapshot(snapshotDirectory(directory))
+
+        when:
+        store.store(root)
+        def loaded = store.loadUnchangedSnapshots()
+
+        then:
+        loaded*.absolutePath as Set == [
+            directory.file("old.txt").absolutePath,
+            directory.file("sub").absolutePath
+        ] as Set
+    }
+
+    def "loads nothing when state is missing or corrupt"() {
+        expect:
+        store.loadUnchangedSnapshots().empty
+
+        when:
+        file("state/vfs.bin").text = "corrupt"
+
+        then:
+        store.loadUnchangedSnapshots().empty
+    }
+
+    private void makeOld(TestFile directory) {
+        // Children first, since changing them would change the modification time of their parent
+        directory.listFiles().each {
+            if (it.directory) {
+                makeOld(it)
+            } else {
+                it.lastModified = longAgo
+            }
+        }
+        directory.lastModified = longAgo
+    }
+
+    private CompleteDirectorySnapshot snapshotDirectory(File directory) {
+        directorySnapshotter.snapshot(directory.absolutePath, null, new AtomicBoolean(false)) as CompleteDirectorySnapshot
+    }
+
+    private void addSnapshot(CompleteFileSystemLocationSnapshot snapshot) {
+        root = root.store(snapshot.absolutePath, snapshot, SnapshotHierarchy.NodeDiffListener.NOOP)
+    }
+
+    private static Map<String, Object> fileHashes(CompleteFileSystemLocationSnapshot snapshot) {
+        def hashes = [:]
+        snapshot.accept(new FileSystemSnapshotVisitor() {
+            @Override
+            boolean preVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+                hashes[directorySnapshot.absolutePath] = directorySnapshot.hash
+                return true
+            }
+
+            @Override
+            void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+                hashes[fileSnapshot.absolutePath] = fileSnapshot.hash
+            }
+
+            @Override
+            void postVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+            }
+        })
+        return hashes
+    }
+
+    private TestFile file(Object... path) {
+        temporaryFolder.testDirectory.file(path)
+    }
+}
@@ -56,6 +56,15 @@ public static HashCode fromInt(int value) {
         return fromBytesNoCopy(bytes);
     }
 
+    public static HashCode fromLongs(long first, long second) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (first >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (second >>> (56 - 8 * i));
+        }
+        return fromBytesNoCopy(bytes);
+    }
+
     public static HashCode fromString(String string) {
         int length = string.length();
 
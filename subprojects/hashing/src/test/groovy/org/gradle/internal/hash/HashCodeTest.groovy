@@ -72,6 +72,15 @@ class HashCodeTest extends Specification {
         toBytes([0xAB] * 255)           | 255    | "ab" * 255     | 0xABABABAB | toBytes([0xAB] * 255)
     }
 
+    def "can create from longs"() {
+        def hash = HashCode.fromLongs(0x0123456789abcdefL, 0x7edcba9876543210L)
+
+        expect:
+        hash.toString() == "0123456789abcdef7edcba9876543210"
+        hash.length() == 16
+        hash == HashCode.fromString("0123456789abcdef7edcba9876543210")
+    }
+
     def "#a == #b: #equals"() {
         def hashA = HashCode.fromString(a)
         def hashB = HashCode.fromString(b)
@@ -57,7 +57,7 @@ class CacheProjectIntegrationTest extends AbstractIntegrationTest {
         userHomeDir = executer.gradleUserHomeDir
         buildFile = projectDir.file('build.gradle')
 
-        artifactsCache = projectDir.file(".gradle/$version/executionHistory/executionHistory.bin")
+        artifactsCache = projectDir.file(".gradle/$version/executionHistory/executionHistory-2.bin")
 
         repo = new MavenHttpRepository(server, mavenRepo)
 
@@ -13,6 +13,7 @@ dependencies {
     implementation(project(":files"))
     implementation(project(":fileCollections"))
     implementation(project(":persistentCache"))
+    implementation(project(":resources"))
     implementation(project(":jvmServices"))
     implementation(project(":coreApi"))
     implementation(project(":modelCore"))
@@ -21,6 +21,7 @@
 import org.gradle.api.internal.tasks.compile.JavaCompileSpec;
 import org.gradle.api.internal.tasks.compile.incremental.cache.TaskScopedCompileCaches;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathSnapshotMaker;
+import org.gradle.api.internal.tasks.compile.incremental.recomp.ClassDependencyGraphUpdater;
 import org.gradle.api.internal.tasks.compile.incremental.recomp.PreviousCompilation;
 import org.gradle.api.internal.tasks.compile.incremental.recomp.PreviousCompilationData;
 import org.gradle.api.internal.tasks.compile.incremental.recomp.PreviousCompilationOutputAnalyzer;
@@ -29,6 +30,8 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 /**
  * Decorates a non-incremental Java compiler (like javac) so that it can be invoked incrementally.
  */
@@ -41,24 +44,27 @@
     private final Compiler<T> rebuildAllCompiler;
     private final PreviousCompilationOutputAnalyzer previousCompilationOutputAnalyzer;
     private StringInterner interner;
+    private final ClassDependencyGraphUpdater classDependencyGraphUpdater;
 
     public IncrementalCompilerDecorator(ClasspathSnapshotMaker classpathSnapshotMaker,
                                         TaskScopedCompileCaches compileCaches,
                                         CleaningJavaCompiler<T> cleaningCompiler,
                                         Compiler<T> rebuildAllCompiler,
                                         PreviousCompilationOutputAnalyzer previousCompilationOutputAnalyzer,
-                                        StringInterner interner) {
+                                        StringInterner interner,
+                                        @Nullable ClassDependencyGraphUpdater classDependencyGraphUpdater) {
         this.classpathSnapshotMaker = classpathSnapshotMaker;
         this.compileCaches = compileCaches;
         this.cleaningCompiler = cleaningCompiler;
         this.rebuildAllCompiler = rebuildAllCompiler;
         this.previousCompilationOutputAnalyzer = previousCompilationOutputAnalyzer;
         this.interner = interner;
+        this.classDependencyGraphUpdater = classDependencyGraphUpdater;
     }
 
     public Compiler<T> prepareCompiler(RecompilationSpecProvider recompilationSpecProvider) {
         Compiler<T> compiler = getCompiler(recompilationSpecProvider);
-        return new IncrementalResultStoringCompiler<>(compiler, classpathSnapshotMaker, compileCaches.getPreviousCompilationStore(), interner);
+        return new IncrementalResultStoringCompiler<>(compiler, classpathSnapshotMaker, compileCaches.getPreviousCompilationStore(), interner, classDependencyGraphUpdater);
     }
 
     private Compiler<T> getCompiler(RecompilationSpecProvider recompilationSpecProvider) {
@@ -32,9 +32,11 @@
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathEntrySnapshotter;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathSnapshotFactory;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathSnapshotMaker;
+import org.gradle.api.internal.tasks.compile.incremental.recomp.ClassDependencyGraphUpdater;
 import org.gradle.api.internal.tasks.compile.incremental.recomp.PreviousCompilationOutputAnalyzer;
 import org.gradle.api.internal.tasks.compile.incremental.recomp.PreviousCompilationStore;
 import org.gradle.api.internal.tasks.compile.incremental.recomp.RecompilationSpecProvider;
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -42,6 +44,12 @@
 import org.gradle.language.base.internal.compile.Compiler;
 
 public class IncrementalCompilerFactory {
+    /**
+     * Enables keeping a class dependency graph of the compiled classes after each compilation, which is queried by the next incremental compilation
+     * instead of analyzing all classes in the destination directory.
+     */
+    public static final String CLASS_DEPENDENCY_GRAPH_PROPERTY = "org.gradle.unsafe.java.class-dependency-graph";
+
     private final FileOperations fileOperations;
     private final StreamHasher streamHasher;
     private final GeneralCompileCaches generalCompileCaches;
@@ -67,7 +75,10 @@ public <T extends JavaCompileSpec> Compiler<T> makeIncremental(CleaningJavaCompi
         ClasspathEntrySnapshotter classpathEntrySnapshotter = new CachingClasspathEntrySnapshotter(fileHasher, streamHasher, virtualFileSystem, analyzer, compileCaches.getClasspathEntrySnapshotCache(), fileOperations);
         ClasspathSnapshotMaker classpathSnapshotMaker = new ClasspathSnapshotMaker(new ClasspathSnapshotFactory(classpathEntrySnapshotter, buildOperationExecutor));
         PreviousCompilationOutputAnalyzer previousCompilationOutputAnalyzer = new PreviousCompilationOutputAnalyzer(fileHasher, streamHasher, analyzer, fileOperations);
-        IncrementalCompilerDecorator<T> incrementalSupport = new IncrementalCompilerDecorator<>(classpathSnapshotMaker, compileCaches, cleaningJavaCompiler, rebuildAllCompiler, previousCompilationOutputAnalyzer, interner);
+        ClassDependencyGraphUpdater classDependencyGraphUpdater = UnsafeFeatureFlags.isEnabled(CLASS_DEPENDENCY_GRAPH_PROPERTY)
+            ? new ClassDependencyGraphUpdater(compileCaches.getPreviousCompilationStore(), previousCompilationOutputAnalyzer)
+            : null;
+        IncrementalCompilerDecorator<T> incrementalSupport = new IncrementalCompilerDecorator<>(classpathSnapshotMaker, compileCaches, cleaningJavaCompiler, rebuildAllCompiler, previousCompilationOutputAnalyzer, interner, classDependencyGraphUpdater);
         return incrementalSupport.prepareCompiler(recompilationSpecProvider);
     }
 
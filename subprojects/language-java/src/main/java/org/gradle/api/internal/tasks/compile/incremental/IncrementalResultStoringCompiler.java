@@ -29,12 +29,15 @@
 import org.gradle.api.internal.tasks.compile.incremental.processing.AnnotationProcessingData;
 import org.gradle.api.internal.tasks.compile.incremental.processing.AnnotationProcessingResult;
 import org.gradle.api.internal.tasks.compile.incremental.processing.GeneratedResource;
+import org.gradle.api.internal.tasks.compile.incremental.recomp.ClassDependencyGraphUpdater;
 import org.gradle.api.internal.tasks.compile.incremental.recomp.PreviousCompilationData;
 import org.gradle.api.internal.tasks.compile.processing.AnnotationProcessorDeclaration;
 import org.gradle.api.tasks.WorkResult;
 import org.gradle.cache.internal.Stash;
 import org.gradle.language.base.internal.compile.Compiler;
 
+import javax.annotation.Nullable;
+import java.io.File;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,12 +50,14 @@
     private final ClasspathSnapshotProvider classpathSnapshotProvider;
     private final Stash<PreviousCompilationData> stash;
     private final StringInterner interner;
+    private final ClassDependencyGraphUpdater classDependencyGraphUpdater;
 
-    IncrementalResultStoringCompiler(Compiler<T> delegate, ClasspathSnapshotProvider classpathSnapshotProvider, Stash<PreviousCompilationData> stash, StringInterner interner) {
+    IncrementalResultStoringCompiler(Compiler<T> delegate, ClasspathSnapshotProvider classpathSnapshotProvider, Stash<PreviousCompilationData> stash, StringInterner interner, @Nullable ClassDependencyGraphUpdater classDependencyGraphUpdater) {
         this.delegate = delegate;
         this.classpathSnapshotProvider = classpathSnapshotProvider;
         this.stash = stash;
         this.interner = interner;
+        this.classDependencyGraphUpdater = classDependencyGraphUpdater;
     }
 
     @Override
@@ -68,8 +73,12 @@ public WorkResult execute(T spec) {
     private void storeResult(JavaCompileSpec spec, WorkResult result) {
         ClasspathSnapshotData classpathSnapshot = classpathSnapshotProvider.getClasspathSnapshot(Iterables.concat(spec.getCompileClasspath(), spec.getModulePath())).getData();
         AnnotationProcessingData annotationProcessingData = getAnnotationProcessingResult(spec, result);
-        PreviousCompilationData data = new PreviousCompilationData(spec.getDestinationDir(), annotationProcessingData, classpathSnapshot, spec.getAnnotationProcessorPath());
+        File classDependencyGraph = classDependencyGraphUpdater == null ? null : classDependencyGraphUpdater.update(spec.getDestinationDir());
+        PreviousCompilationData data = new PreviousCompilationData(spec.getDestinationDir(), annotationProcessingData, classpathSnapshot, spec.getAnnotationProcessorPath(), classDependencyGraph);
         stash.put(data);
+        if (classDependencyGraphUpdater != null) {
+            classDependencyGraphUpdater.retainOnly(classDependencyGraph);
+        }
     }
 
     private AnnotationProcessingData getAnnotationProcessingResult(JavaCompileSpec spec, WorkResult result) {
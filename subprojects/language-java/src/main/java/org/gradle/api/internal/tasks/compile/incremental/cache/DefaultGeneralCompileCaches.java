@@ -34,17 +34,26 @@
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.FilesFinder;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.resource.local.ModificationTimeFileAccessTimeJournal;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.vfs.AdditiveCacheLocations;
 import org.gradle.internal.vfs.VirtualFileSystem;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
 
+import static org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup.DEFAULT_MAX_AGE_IN_DAYS_FOR_RECREATABLE_CACHE_ENTRIES;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class DefaultGeneralCompileCaches implements GeneralCompileCaches, Closeable {
+    private static final String CLASS_DEPENDENCY_GRAPHS_DIR = "classDependencyGraphs";
+
     private final ClassAnalysisCache classAnalysisCache;
     private final ClasspathEntrySnapshotCache classpathEntrySnapshotCache;
     private final PersistentCache cache;
@@ -62,6 +71,8 @@ public DefaultGeneralCompileCaches(
         cache = cacheRepository
             .cache(gradle, "javaCompile")
             .withDisplayName("Java compile cache")
+            // Removes the graphs of tasks that have not compiled for a while, including tasks that no longer exist. Each compilation writes a new graph
+            .withCleanup(new LeastRecentlyUsedCacheCleanup(new ClassDependencyGraphFilesFinder(), new ModificationTimeFileAccessTimeJournal(), DEFAULT_MAX_AGE_IN_DAYS_FOR_RECREATABLE_CACHE_ENTRIES))
             .withLockOptions(mode(FileLockManager.LockMode.OnDemand)) // Lock on demand
             .open();
         PersistentIndexedCacheParameters<HashCode, ClassAnalysis> classCacheParameters = PersistentIndexedCacheParameters.of("classAnalysis", new HashCodeSerializer(), new ClassAnalysisSerializer(interner))
@@ -94,6 +105,18 @@ public ClasspathEntrySnapshotCache getClasspathEntrySnapshotCache() {
 
     @Override
     public PreviousCompilationStore createPreviousCompilationStore(String taskPath) {
-        return new PreviousCompilationStore(taskPath, previousCompilationCache);
+        return new PreviousCompilationStore(taskPath, previousCompilationCache, new File(cache.getBaseDir(), CLASS_DEPENDENCY_GRAPHS_DIR));
+    }
+
+    /**
+     * Finds the class dependency graphs of the tasks, which are the only files of this cache that are cleaned up by age.
+     */
+    private static class ClassDependencyGraphFilesFinder implements FilesFinder {
+        private final FilesFinder delegate = new SingleDepthFilesFinder(1);
+
+        @Override
+        public Iterable<File> find(File baseDir, FileFilter filter) {
+            return delegate.find(new File(baseDir, CLASS_DEPENDENCY_GRAPHS_DIR), filter);
+        }
     }
 }
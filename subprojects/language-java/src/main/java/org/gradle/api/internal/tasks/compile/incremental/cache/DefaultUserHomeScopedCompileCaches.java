@@ -21,32 +21,59 @@
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathEntrySnapshotData;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathEntrySnapshotDataSerializer;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.DefaultClasspathEntrySnapshotCache;
+import org.gradle.api.internal.tasks.compile.incremental.classpath.MappedClasspathEntrySnapshotCache;
+import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.FileLockManager;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.FilesFinder;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.gradle.internal.UnsafeFeatureFlags;
+import org.gradle.internal.file.FileAccessTimeJournal;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.resource.local.SingleDepthFileAccessTracker;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.vfs.VirtualFileSystem;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
 
+import static org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup.DEFAULT_MAX_AGE_IN_DAYS_FOR_RECREATABLE_CACHE_ENTRIES;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class DefaultUserHomeScopedCompileCaches implements UserHomeScopedCompileCaches, Closeable {
+    /**
+     * Enables keeping the snapshots of shared classpath entries in memory-mapped files instead of the serialized jar analysis cache.
+     */
+    public static final String MAPPED_CLASSPATH_SNAPSHOTS_PROPERTY = "org.gradle.unsafe.java.mapped-classpath-snapshots";
+    private static final String CLASSPATH_ENTRY_SNAPSHOTS_DIR = "classpathEntrySnapshots";
+    private static final int FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 1;
+
     private final ClasspathEntrySnapshotCache classpathEntrySnapshotCache;
     private final PersistentCache cache;
 
-    public DefaultUserHomeScopedCompileCaches(VirtualFileSystem virtualFileSystem, CacheRepository cacheRepository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, StringInterner interner) {
-        cache = cacheRepository
+    public DefaultUserHomeScopedCompileCaches(VirtualFileSystem virtualFileSystem, CacheRepository cacheRepository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, StringInterner interner, FileAccessTimeJournal fileAccessTimeJournal) {
+        boolean mappedSnapshots = UnsafeFeatureFlags.isEnabled(MAPPED_CLASSPATH_SNAPSHOTS_PROPERTY);
+        CacheBuilder cacheBuilder = cacheRepository
             .cache("javaCompile")
             .withDisplayName("Java compile cache")
-            .withLockOptions(mode(FileLockManager.LockMode.OnDemand)) // Lock on demand
-            .open();
-        PersistentIndexedCacheParameters<HashCode, ClasspathEntrySnapshotData> jarCacheParameters = PersistentIndexedCacheParameters.of("jarAnalysis", new HashCodeSerializer(), new ClasspathEntrySnapshotDataSerializer(interner))
-            .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(20000, true));
-        this.classpathEntrySnapshotCache = new DefaultClasspathEntrySnapshotCache(virtualFileSystem, cache.createCache(jarCacheParameters));
+            .withLockOptions(mode(FileLockManager.LockMode.OnDemand)); // Lock on demand
+        if (mappedSnapshots) {
+            cacheBuilder.withCleanup(new LeastRecentlyUsedCacheCleanup(new ClasspathEntrySnapshotFilesFinder(), fileAccessTimeJournal, DEFAULT_MAX_AGE_IN_DAYS_FOR_RECREATABLE_CACHE_ENTRIES));
+        }
+        cache = cacheBuilder.open();
+        if (mappedSnapshots) {
+            File snapshotsDir = new File(cache.getBaseDir(), CLASSPATH_ENTRY_SNAPSHOTS_DIR);
+            this.classpathEntrySnapshotCache = new MappedClasspathEntrySnapshotCache(snapshotsDir, virtualFileSystem, new SingleDepthFileAccessTracker(fileAccessTimeJournal, snapshotsDir, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP));
+        } else {
+            PersistentIndexedCacheParameters<HashCode, ClasspathEntrySnapshotData> jarCacheParameters = PersistentIndexedCacheParameters.of("jarAnalysis", new HashCodeSerializer(), new ClasspathEntrySnapshotDataSerializer(interner))
+                .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(20000, true));
+            this.classpathEntrySnapshotCache = new DefaultClasspathEntrySnapshotCache(virtualFileSystem, cache.createCache(jarCacheParameters));
+        }
     }
 
     @Override
@@ -58,4 +85,16 @@ public void close() {
     public ClasspathEntrySnapshotCache getClasspathEntrySnapshotCache() {
         return classpathEntrySnapshotCache;
     }
+
+    /**
+     * Finds the memory-mapped classpath entry snapshots, which are the only files of this cache that are cleaned up by age.
+     */
+    private static class ClasspathEntrySnapshotFilesFinder implements FilesFinder {
+        private final FilesFinder delegate = new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+
+        @Override
+        public Iterable<File> find(File baseDir, FileFilter filter) {
+            return delegate.find(new File(baseDir, CLASSPATH_ENTRY_SNAPSHOTS_DIR), filter);
+        }
+    }
 }
@@ -20,6 +20,7 @@
 import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.ints.IntSets;
 import org.gradle.api.internal.tasks.compile.incremental.deps.ClassChanges;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyGraph;
 import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysis;
 import org.gradle.api.internal.tasks.compile.incremental.deps.DependentsSet;
 import org.gradle.internal.hash.HashCode;
@@ -71,6 +72,9 @@ public IntSet getRelevantConstants(ClasspathEntrySnapshot other, Set<String> aff
     }
 
     public ClassChanges getChangedClassesSince(ClasspathEntrySnapshot other) {
+        if (data.getClassAnalysis() instanceof ClassDependencyGraph && other.getData().getClassAnalysis() instanceof ClassDependencyGraph) {
+            return ((ClassDependencyGraph) data.getClassAnalysis()).getChangedClassesSince((ClassDependencyGraph) other.getData().getClassAnalysis());
+        }
         Set<String> modifiedClasses = modifiedSince(other);
         Set<String> addedClasses = addedSince(other);
         return new ClassChanges(modifiedClasses, addedClasses);
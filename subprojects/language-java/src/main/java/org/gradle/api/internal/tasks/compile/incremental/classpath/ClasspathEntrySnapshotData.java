@@ -16,7 +16,7 @@
 
 package org.gradle.api.internal.tasks.compile.incremental.classpath;
 
-import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysisData;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyInfo;
 import org.gradle.internal.hash.HashCode;
 
 import java.util.Map;
@@ -24,7 +24,7 @@
 public class ClasspathEntrySnapshotData {
 
     private final Map<String, HashCode> hashes;
-    private final ClassSetAnalysisData classAnalysis;
+    private final ClassDependencyInfo classAnalysis;
     private final HashCode hash;
 
     /**
@@ -32,7 +32,7 @@ public class ClasspathEntrySnapshotData {
      * @param hashes hashes of all classes from the entry
      * @param classAnalysis of classes analysis in this entry
      */
-    public ClasspathEntrySnapshotData(HashCode hash, Map<String, HashCode> hashes, ClassSetAnalysisData classAnalysis) {
+    public ClasspathEntrySnapshotData(HashCode hash, Map<String, HashCode> hashes, ClassDependencyInfo classAnalysis) {
         assert hash != null;
         assert hashes != null;
         assert classAnalysis != null;
@@ -46,7 +46,7 @@ public Map<String, HashCode> getHashes() {
         return hashes;
     }
 
-    public ClassSetAnalysisData getClassAnalysis() {
+    public ClassDependencyInfo getClassAnalysis() {
         return classAnalysis;
     }
 
@@ -18,6 +18,7 @@
 
 import com.google.common.base.Objects;
 import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyInfo;
 import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysisData;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.serialize.AbstractSerializer;
@@ -54,7 +55,12 @@ public ClasspathEntrySnapshotData read(Decoder decoder) throws Exception {
     public void write(Encoder encoder, ClasspathEntrySnapshotData value) throws Exception {
         hashCodeSerializer.write(encoder, value.getHash());
         mapSerializer.write(encoder, value.getHashes());
-        analysisSerializer.write(encoder, value.getClassAnalysis());
+        ClassDependencyInfo classAnalysis = value.getClassAnalysis();
+        if (!(classAnalysis instanceof ClassSetAnalysisData)) {
+            // Snapshots backed by a class dependency graph are kept in their own files, by MappedClasspathEntrySnapshotCache
+            throw new IllegalArgumentException("Cannot serialize class analysis of type " + classAnalysis.getClass().getName());
+        }
+        analysisSerializer.write(encoder, (ClassSetAnalysisData) classAnalysis);
     }
 
     @Override
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile.incremental.classpath;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyGraph;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyGraphWriter;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysisData;
+import org.gradle.internal.Factory;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.resource.local.FileAccessTracker;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.vfs.VirtualFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link ClasspathEntrySnapshotCache} that keeps each snapshot as a {@link ClassDependencyGraph} file named after the hash of the classpath entry.
+ *
+ * The files are memory-mapped instead of deserialized, so all builds in a daemon share a single mapping of each entry,
+ * and daemons share the pages of the file through the operating system.
+ * Comparing two snapshots of the same entry only decodes the names of the classes that changed.
+ * Each use of a snapshot is recorded with the given {@link FileAccessTracker}, so that unused snapshot files can be cleaned up.
+ */
+public class MappedClasspathEntrySnapshotCache implements ClasspathEntrySnapshotCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedClasspathEntrySnapshotCache.class);
+    private static final int MAX_MAPPED_SNAPSHOTS = 10000;
+
+    private final File snapshotsDir;
+    private final VirtualFileSystem virtualFileSystem;
+    private final FileAccessTracker fileAccessTracker;
+    private final Cache<HashCode, ClasspathEntrySnapshot> mappedSnapshots = CacheBuilder.newBuilder().maximumSize(MAX_MAPPED_SNAPSHOTS).build();
+
+    public MappedClasspathEntrySnapshotCache(File snapshotsDir, VirtualFileSystem virtualFileSystem, FileAccessTracker fileAccessTracker) {
+        this.snapshotsDir = snapshotsDir;
+        this.virtualFileSystem = virtualFileSystem;
+        this.fileAccessTracker = fileAccessTracker;
+    }
+
+    @Override
+    public ClasspathEntrySnapshot get(File file, HashCode hash) {
+        ClasspathEntrySnapshot snapshot = mappedSnapshots.getIfPresent(hash);
+        if (snapshot == null) {
+            snapshot = open(hash);
+            if (snapshot != null) {
+                mappedSnapshots.put(hash, snapshot);
+            }
+        }
+        if (snapshot != null) {
+            fileAccessTracker.markAccessed(snapshotFile(hash));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public ClasspathEntrySnapshot get(File entry, Factory<ClasspathEntrySnapshot> factory) {
+        HashCode hash = virtualFileSystem.read(
+            entry.getAbsolutePath(),
+            CompleteFileSystemLocationSnapshot::getHash
+        );
+        try {
+            ClasspathEntrySnapshot snapshot = mappedSnapshots.get(hash, () -> {
+                ClasspathEntrySnapshot mappedSnapshot = open(hash);
+                return mappedSnapshot != null ? mappedSnapshot : create(hash, factory);
+            });
+            fileAccessTracker.markAccessed(snapshotFile(hash));
+            return snapshot;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+
+    private ClasspathEntrySnapshot create(HashCode hash, Factory<ClasspathEntrySnapshot> factory) {
+        ClasspathEntrySnapshot snapshot = factory.create();
+        File snapshotFile = snapshotFile(hash);
+        try {
+            snapshotsDir.mkdirs();
+            ClassDependencyGraphWriter writer = new ClassDependencyGraphWriter(null);
+            // The factory analyzes the classpath entry in memory
+            writer.addClasses(snapshot.getHashes(), (ClassSetAnalysisData) snapshot.getData().getClassAnalysis());
+            writer.writeTo(snapshotFile);
+        } catch (IOException e) {
+            // Another process may have written the same snapshot in the meantime
+            LOGGER.debug("Could not write classpath entry snapshot {}", snapshotFile, e);
+        }
+        ClasspathEntrySnapshot mappedSnapshot = open(hash);
+        return mappedSnapshot != null ? mappedSnapshot : snapshot;
+    }
+
+    @Nullable
+    private ClasspathEntrySnapshot open(HashCode hash) {
+        File snapshotFile = snapshotFile(hash);
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        try {
+            ClassDependencyGraph graph = ClassDependencyGraph.open(snapshotFile);
+            return new ClasspathEntrySnapshot(new ClasspathEntrySnapshotData(hash, graph.getClassFileHashes(), graph));
+        } catch (IOException e) {
+            LOGGER.debug("Could not read classpath entry snapshot {}", snapshotFile, e);
+            return null;
+        }
+    }
+
+    private File snapshotFile(HashCode hash) {
+        return new File(snapshotsDir, hash + ".bin");
+    }
+}
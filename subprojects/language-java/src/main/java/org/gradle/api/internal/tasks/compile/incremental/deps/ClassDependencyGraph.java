@@ -0,0 +1,468 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile.incremental.deps;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+import org.apache.commons.lang.StringUtils;
+import org.gradle.internal.hash.HashCode;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The class dependencies of a classes directory, read from a memory-mapped file written by {@link ClassDependencyGraphWriter}.
+ *
+ * Each class name has an id, and the file keeps the forward dependencies as well as the private and accessible dependents of every id.
+ * Queries only read the records of the classes they ask for, so nothing has to be loaded up front.
+ * Answers the same queries as the {@link ClassSetAnalysisData} built by a {@link ClassDependentsAccumulator} for the same classes.
+ *
+ * The file starts with a header of ints, followed by the name data, the records, the full rebuild cause and the tables:
+ *
+ * <pre>
+ * header:  magic, version, name count, dead id count, slot count, name hashes offset, name offsets offset, record offsets offset, slots offset, full rebuild cause offset
+ * name:    length, UTF-8 bytes
+ * record:  flags (byte), class file hash (length byte, bytes), private dependencies, accessible dependencies, constants, private dependents, accessible dependents
+ * </pre>
+ *
+ * Each list in a record is an int count followed by the values. The name offsets and record offsets tables have one more entry than there are ids,
+ * so that the length of a record is the difference between two consecutive offsets. The slots are an open-addressing hash table from name hash to id + 1.
+ */
+public class ClassDependencyGraph implements ClassDependencyInfo {
+    static final int MAGIC = 0x47434447;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 10 * 4;
+    static final byte PRESENT = 1;
+    static final byte DEPENDENCY_TO_ALL = 2;
+
+    private final ByteBuffer buffer;
+    private final int nameCount;
+    private final int deadCount;
+    private final int slotCount;
+    private final int nameHashesOffset;
+    private final int nameOffsetsOffset;
+    private final int recordOffsetsOffset;
+    private final int slotsOffset;
+    private final String fullRebuildCause;
+    private Map<String, HashCode> classFileHashes;
+
+    private ClassDependencyGraph(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a class dependency graph");
+        }
+        this.nameCount = buffer.getInt(8);
+        this.deadCount = buffer.getInt(12);
+        this.slotCount = buffer.getInt(16);
+        this.nameHashesOffset = buffer.getInt(20);
+        this.nameOffsetsOffset = buffer.getInt(24);
+        this.recordOffsetsOffset = buffer.getInt(28);
+        this.slotsOffset = buffer.getInt(32);
+        int fullRebuildCauseOffset = buffer.getInt(36);
+        if (Integer.bitCount(slotCount) != 1 || slotsOffset + slotCount * 4 != buffer.capacity()) {
+            throw new IOException("Truncated class dependency graph");
+        }
+        this.fullRebuildCause = fullRebuildCauseOffset < 0 ? null : readString(fullRebuildCauseOffset);
+    }
+
+    /**
+     * Maps the given graph file. The mapping stays valid when the file is deleted or replaced afterwards.
+     */
+    public static ClassDependencyGraph open(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new ClassDependencyGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @Override
+    public DependentsSet getDependents(String className) {
+        if (fullRebuildCause != null) {
+            return DependentsSet.dependencyToAll(fullRebuildCause);
+        }
+        if (className.endsWith(ClassSetAnalysisData.PACKAGE_INFO)) {
+            String packageName = className.equals(ClassSetAnalysisData.PACKAGE_INFO) ? null : StringUtils.removeEnd(className, "." + ClassSetAnalysisData.PACKAGE_INFO);
+            return getDependentsOfPackage(packageName);
+        }
+        int id = getId(className);
+        if (id < 0) {
+            return DependentsSet.empty();
+        }
+        if ((getFlags(id) & DEPENDENCY_TO_ALL) != 0) {
+            return DependentsSet.dependencyToAll();
+        }
+        int privateDependents = getPrivateDependentsPosition(id);
+        int accessibleDependents = skipList(privateDependents);
+        if (buffer.getInt(privateDependents) == 0 && buffer.getInt(accessibleDependents) == 0) {
+            return DependentsSet.empty();
+        }
+        return DependentsSet.dependentClasses(readNames(privateDependents), readNames(accessibleDependents));
+    }
+
+    private DependentsSet getDependentsOfPackage(@Nullable String packageName) {
+        ImmutableSet.Builder<String> typesInPackage = ImmutableSet.builder();
+        for (int id = 0; id < nameCount; id++) {
+            if ((getFlags(id) & PRESENT) == 0) {
+                continue;
+            }
+            String type = getName(id);
+            int i = type.lastIndexOf(".");
+            if (i < 0 && packageName == null || i > 0 && type.substring(0, i).equals(packageName)) {
+                typesInPackage.add(type);
+            }
+        }
+        return DependentsSet.dependentClasses(ImmutableSet.of(), typesInPackage.build());
+    }
+
+    @Override
+    public IntSet getConstants(String className) {
+        int id = getId(className);
+        if (id < 0) {
+            return IntSets.EMPTY_SET;
+        }
+        int constants = skipList(skipList(getPrivateDependenciesPosition(id)));
+        int count = buffer.getInt(constants);
+        if (count == 0) {
+            return IntSets.EMPTY_SET;
+        }
+        IntSet result = new IntOpenHashSet(count);
+        for (int i = 0; i < count; i++) {
+            result.add(buffer.getInt(constants + 4 + i * 4));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the class file hashes of the classes in the graph. The map is a view on the graph, so looking up a class only reads its record.
+     */
+    public Map<String, HashCode> getClassFileHashes() {
+        if (classFileHashes == null) {
+            classFileHashes = new ClassFileHashes();
+        }
+        return classFileHashes;
+    }
+
+    /**
+     * Returns the classes whose class file is different in the given previous graph, and the classes that were not in the previous graph.
+     * Only the names of changed classes are decoded.
+     */
+    public ClassChanges getChangedClassesSince(ClassDependencyGraph previous) {
+        Set<String> modified = new HashSet<>();
+        for (int previousId = 0; previousId < previous.nameCount; previousId++) {
+            if (!previous.isPresent(previousId)) {
+                continue;
+            }
+            int id = getId(previous.getNameBytesWithoutLength(previousId));
+            if (id < 0 || !isPresent(id) || !getClassFileHashBytes(id).equals(previous.getClassFileHashBytes(previousId))) {
+                modified.add(previous.getName(previousId));
+            }
+        }
+        Set<String> added = new HashSet<>();
+        for (int id = 0; id < nameCount; id++) {
+            if (!isPresent(id)) {
+                continue;
+            }
+            int previousId = previous.getId(getNameBytesWithoutLength(id));
+            if (previousId < 0 || !previous.isPresent(previousId)) {
+                added.add(getName(id));
+            }
+        }
+        return new ClassChanges(modified, added);
+    }
+
+    @Nullable
+    @Override
+    public String getFullRebuildCause() {
+        return fullRebuildCause;
+    }
+
+    int getNameCount() {
+        return nameCount;
+    }
+
+    int getDeadCount() {
+        return deadCount;
+    }
+
+    /**
+     * Returns the id of the given class name, or -1 when the graph does not know the name.
+     */
+    int getId(String className) {
+        return getId(className.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int getId(byte[] name) {
+        int hash = hash(name);
+        int mask = slotCount - 1;
+        for (int slot = ClassDependencyGraphWriter.slotFor(hash, slotCount); ; slot = (slot + 1) & mask) {
+            int entry = buffer.getInt(slotsOffset + slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (buffer.getInt(nameHashesOffset + id * 4) == hash && nameEquals(id, name)) {
+                return id;
+            }
+        }
+    }
+
+    String getName(int id) {
+        return readString(buffer.getInt(nameOffsetsOffset + id * 4));
+    }
+
+    int getNameHash(int id) {
+        return buffer.getInt(nameHashesOffset + id * 4);
+    }
+
+    boolean isPresent(int id) {
+        return (getFlags(id) & PRESENT) != 0;
+    }
+
+    boolean isDependencyToAll(int id) {
+        return (getFlags(id) & DEPENDENCY_TO_ALL) != 0;
+    }
+
+    private ByteBuffer getClassFileHashBytes(int id) {
+        int position = getRecordOffset(id) + 1;
+        return slice(position + 1, buffer.get(position) & 0xff);
+    }
+
+    private byte[] getNameBytesWithoutLength(int id) {
+        int offset = buffer.getInt(nameOffsetsOffset + id * 4);
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        slice(offset + 4, bytes.length).get(bytes);
+        return bytes;
+    }
+
+    HashCode getClassFileHash(int id) {
+        int position = getRecordOffset(id) + 1;
+        byte[] bytes = new byte[buffer.get(position) & 0xff];
+        slice(position + 1, bytes.length).get(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    boolean hasClassFileHash(int id, HashCode hash) {
+        int position = getRecordOffset(id) + 1;
+        byte[] expected = hash.toByteArray();
+        if ((buffer.get(position) & 0xff) != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(position + 1 + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int[] getPrivateDependencies(int id) {
+        return readInts(getPrivateDependenciesPosition(id));
+    }
+
+    int[] getAccessibleDependencies(int id) {
+        return readInts(skipList(getPrivateDependenciesPosition(id)));
+    }
+
+    int[] getConstants(int id) {
+        return readInts(skipList(skipList(getPrivateDependenciesPosition(id))));
+    }
+
+    int[] getPrivateDependents(int id) {
+        return readInts(getPrivateDependentsPosition(id));
+    }
+
+    int[] getAccessibleDependents(int id) {
+        return readInts(skipList(getPrivateDependentsPosition(id)));
+    }
+
+    /**
+     * Returns the analysis of a class that is present in the graph, with the dependencies that were recorded for it.
+     */
+    ClassAnalysis getClassAnalysis(int id) {
+        return new ClassAnalysis(getName(id), namesOf(getPrivateDependencies(id)), namesOf(getAccessibleDependencies(id)), isDependencyToAll(id), new IntOpenHashSet(getConstants(id)));
+    }
+
+    /**
+     * Returns the raw bytes of the given name in the name data, including their length prefix.
+     */
+    ByteBuffer getNameBytes(int id) {
+        int offset = buffer.getInt(nameOffsetsOffset + id * 4);
+        return slice(offset, 4 + buffer.getInt(offset));
+    }
+
+    /**
+     * Returns the raw bytes of the record of the given id.
+     */
+    ByteBuffer getRecordBytes(int id) {
+        int offset = getRecordOffset(id);
+        return slice(offset, getRecordOffset(id + 1) - offset);
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    private Set<String> namesOf(int[] ids) {
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        for (int id : ids) {
+            names.add(getName(id));
+        }
+        return names.build();
+    }
+
+    private Set<String> readNames(int position) {
+        int count = buffer.getInt(position);
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        for (int i = 0; i < count; i++) {
+            names.add(getName(buffer.getInt(position + 4 + i * 4)));
+        }
+        return names.build();
+    }
+
+    private int[] readInts(int position) {
+        int[] values = new int[buffer.getInt(position)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getInt(position + 4 + i * 4);
+        }
+        return values;
+    }
+
+    private byte getFlags(int id) {
+        return buffer.get(getRecordOffset(id));
+    }
+
+    private int getRecordOffset(int id) {
+        return buffer.getInt(recordOffsetsOffset + id * 4);
+    }
+
+    private int getPrivateDependenciesPosition(int id) {
+        int position = getRecordOffset(id) + 1;
+        return position + 1 + (buffer.get(position) & 0xff);
+    }
+
+    private int getPrivateDependentsPosition(int id) {
+        return skipList(skipList(skipList(getPrivateDependenciesPosition(id))));
+    }
+
+    private int skipList(int position) {
+        return position + 4 + buffer.getInt(position) * 4;
+    }
+
+    private boolean nameEquals(int id, byte[] name) {
+        int offset = buffer.getInt(nameOffsetsOffset + id * 4);
+        if (buffer.getInt(offset) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(offset + 4 + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        slice(offset + 4, bytes.length).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int hash(byte[] name) {
+        return Arrays.hashCode(name);
+    }
+
+    private class ClassFileHashes extends AbstractMap<String, HashCode> {
+        private int size = -1;
+
+        @Override
+        public HashCode get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int id = getId((String) key);
+            return id >= 0 && isPresent(id) ? getClassFileHash(id) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+            int id = getId((String) key);
+            return id >= 0 && isPresent(id);
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                int count = 0;
+                for (int id = 0; id < nameCount; id++) {
+                    if (isPresent(id)) {
+                        count++;
+                    }
+                }
+                size = count;
+            }
+            return size;
+        }
+
+        @Override
+        public Set<Entry<String, HashCode>> entrySet() {
+            return new AbstractSet<Entry<String, HashCode>>() {
+                @Override
+                public Iterator<Entry<String, HashCode>> iterator() {
+                    return new AbstractIterator<Entry<String, HashCode>>() {
+                        private int id;
+
+                        @Override
+                        protected Entry<String, HashCode> computeNext() {
+                            while (id < nameCount) {
+                                int current = id++;
+                                if (isPresent(current)) {
+                                    return new SimpleImmutableEntry<>(getName(current), getClassFileHash(current));
+                                }
+                            }
+                            return endOfData();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ClassFileHashes.this.size();
+                }
+            };
+        }
+    }
+}
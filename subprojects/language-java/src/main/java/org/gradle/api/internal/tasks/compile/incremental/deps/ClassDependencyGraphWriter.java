@@ -0,0 +1,493 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile.incremental.deps;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.gradle.internal.hash.HashCode;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a {@link ClassDependencyGraph}, starting from the graph of the previous compilation.
+ *
+ * Classes whose class file did not change keep their id and their recorded dependencies. Only the records of classes that were added, changed or removed,
+ * and of the classes they depended on before or depend on now, are written from scratch; all other records are copied over from the previous graph as they are.
+ * Ids of removed classes are kept, so the graph is rewritten without the previous one once most of its ids are no longer used.
+ */
+public class ClassDependencyGraphWriter {
+    private static final int MIN_DEAD_COUNT_FOR_COMPACTION = 1024;
+    private static final int[] NO_IDS = new int[0];
+
+    private final ClassDependencyGraph previous;
+    private final IntSet reusedIds = new IntOpenHashSet();
+    private final Map<String, AnalyzedClass> analyzedClasses = new LinkedHashMap<>();
+    private String fullRebuildCause;
+
+    public ClassDependencyGraphWriter(@Nullable ClassDependencyGraph previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Keeps the dependencies recorded in the previous graph for the given class, if its class file has not changed since.
+     *
+     * @return whether the dependencies were kept. If not, the class needs to be analyzed and added via {@link #addClass(HashCode, ClassAnalysis)}.
+     */
+    public boolean reuseClass(String className, HashCode classFileHash) {
+        return reuse(className, classFileHash);
+    }
+
+    /**
+     * Reuses the record of a class whose class file is known not to have changed since the previous graph was written, without comparing its hash.
+     */
+    public boolean reuseUnchangedClass(String className) {
+        return reuse(className, null);
+    }
+
+    private boolean reuse(String className, @Nullable HashCode classFileHash) {
+        if (previous == null || previous.getFullRebuildCause() != null) {
+            return false;
+        }
+        int id = previous.getId(className);
+        if (id < 0 || !previous.isPresent(id) || classFileHash != null && !previous.hasClassFileHash(id, classFileHash)) {
+            return false;
+        }
+        reusedIds.add(id);
+        return true;
+    }
+
+    public void addClass(HashCode classFileHash, ClassAnalysis classAnalysis) {
+        // same classes may be found more than once and we keep only the first one
+        analyzedClasses.putIfAbsent(classAnalysis.getClassName(), new AnalyzedClass(classFileHash, classAnalysis));
+    }
+
+    /**
+     * Adds the classes of an analysis accumulated by a {@link ClassDependentsAccumulator}, turning its dependents back into dependencies.
+     * The accumulated analysis does not keep the dependents of classes that are a dependency to all, which does not change the answers of the graph.
+     */
+    public void addClasses(Map<String, HashCode> classFileHashes, ClassSetAnalysisData analysis) {
+        if (analysis.getFullRebuildCause() != null) {
+            fullRebuildNeeded(analysis.getFullRebuildCause());
+        }
+        Map<String, Set<String>> privateDependencies = new HashMap<>();
+        Map<String, Set<String>> accessibleDependencies = new HashMap<>();
+        for (Map.Entry<String, DependentsSet> entry : analysis.getDependentsMap().entrySet()) {
+            DependentsSet dependents = entry.getValue();
+            if (dependents.isDependencyToAll()) {
+                continue;
+            }
+            for (String dependent : dependents.getPrivateDependentClasses()) {
+                privateDependencies.computeIfAbsent(dependent, k -> new HashSet<>()).add(entry.getKey());
+            }
+            for (String dependent : dependents.getAccessibleDependentClasses()) {
+                accessibleDependencies.computeIfAbsent(dependent, k -> new HashSet<>()).add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, HashCode> entry : classFileHashes.entrySet()) {
+            String className = entry.getKey();
+            DependentsSet dependents = analysis.getDependentsMap().get(className);
+            addClass(entry.getValue(), new ClassAnalysis(
+                className,
+                privateDependencies.getOrDefault(className, Collections.emptySet()),
+                accessibleDependencies.getOrDefault(className, Collections.emptySet()),
+                dependents != null && dependents.isDependencyToAll(),
+                analysis.getConstants(className)
+            ));
+        }
+    }
+
+    public void fullRebuildNeeded(String fullRebuildCause) {
+        this.fullRebuildCause = fullRebuildCause;
+    }
+
+    /**
+     * Writes the graph to the given file, replacing it atomically.
+     */
+    public void writeTo(File file) throws IOException {
+        ClassDependencyGraph previous = this.previous;
+        if (previous != null && previous.getDeadCount() >= MIN_DEAD_COUNT_FOR_COMPACTION && previous.getDeadCount() > previous.getNameCount() / 2) {
+            for (int id : reusedIds) {
+                ClassAnalysis classAnalysis = previous.getClassAnalysis(id);
+                analyzedClasses.putIfAbsent(classAnalysis.getClassName(), new AnalyzedClass(previous.getClassFileHash(id), classAnalysis));
+            }
+            reusedIds.clear();
+            previous = null;
+        }
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                new Delta(previous).write(new Output(channel));
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw e;
+        }
+    }
+
+    static int slotFor(int hash, int slotCount) {
+        // Use the high bits of a multiplicative hash, as the low bits of String-like hashes of similar names are often equal
+        return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(slotCount));
+    }
+
+    private class Delta {
+        private final ClassDependencyGraph previous;
+        private final int previousCount;
+        private final List<byte[]> newNames = new ArrayList<>();
+        private final Object2IntMap<String> newIds = new Object2IntOpenHashMap<>();
+        private final Int2ObjectMap<Record> records = new Int2ObjectOpenHashMap<>();
+        private final IntSet changedIds = new IntOpenHashSet();
+        private final IntSet affectedIds = new IntOpenHashSet();
+        private final Int2ObjectMap<IntSet> addedPrivateDependents = new Int2ObjectOpenHashMap<>();
+        private final Int2ObjectMap<IntSet> addedAccessibleDependents = new Int2ObjectOpenHashMap<>();
+
+        Delta(@Nullable ClassDependencyGraph previous) {
+            this.previous = previous;
+            this.previousCount = previous == null ? 0 : previous.getNameCount();
+            newIds.defaultReturnValue(-1);
+            for (AnalyzedClass analyzedClass : analyzedClasses.values()) {
+                int id = idOf(analyzedClass.analysis.getClassName());
+                if (!reusedIds.contains(id) && !records.containsKey(id)) {
+                    records.put(id, new Record(analyzedClass));
+                }
+            }
+            changedIds.addAll(records.keySet());
+            for (int id = 0; id < previousCount; id++) {
+                if (!reusedIds.contains(id) && previous.isPresent(id)) {
+                    changedIds.add(id);
+                }
+            }
+            for (int id : changedIds) {
+                if (id < previousCount && previous.isPresent(id)) {
+                    addAll(affectedIds, previous.getPrivateDependencies(id));
+                    addAll(affectedIds, previous.getAccessibleDependencies(id));
+                }
+                Record record = records.get(id);
+                if (record != null) {
+                    addDependents(addedPrivateDependents, record.privateDependencies, id);
+                    addDependents(addedAccessibleDependents, record.accessibleDependencies, id);
+                }
+            }
+        }
+
+        private int idOf(String className) {
+            int id = previous == null ? -1 : previous.getId(className);
+            if (id < 0) {
+                id = newIds.getInt(className);
+                if (id < 0) {
+                    id = previousCount + newNames.size();
+                    newIds.put(className, id);
+                    newNames.add(className.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return id;
+        }
+
+        private int[] idsOf(Set<String> classNames) {
+            int[] ids = new int[classNames.size()];
+            int i = 0;
+            for (String className : classNames) {
+                ids[i++] = idOf(className);
+            }
+            return ids;
+        }
+
+        private void addDependents(Int2ObjectMap<IntSet> addedDependents, int[] dependencies, int dependent) {
+            for (int dependency : dependencies) {
+                if (dependency != dependent) {
+                    IntSet dependents = addedDependents.get(dependency);
+                    if (dependents == null) {
+                        dependents = new IntOpenHashSet();
+                        addedDependents.put(dependency, dependents);
+                    }
+                    dependents.add(dependent);
+                    affectedIds.add(dependency);
+                }
+            }
+        }
+
+        void write(Output output) throws IOException {
+            int count = previousCount + newNames.size();
+            output.position(ClassDependencyGraph.HEADER_SIZE);
+
+            int[] nameOffsets = new int[count + 1];
+            int[] nameHashes = new int[count];
+            for (int id = 0; id < count; id++) {
+                nameOffsets[id] = output.position();
+                if (id < previousCount) {
+                    output.put(previous.getNameBytes(id));
+                    nameHashes[id] = previous.getNameHash(id);
+                } else {
+                    byte[] name = newNames.get(id - previousCount);
+                    output.putInt(name.length);
+                    output.put(name);
+                    nameHashes[id] = ClassDependencyGraph.hash(name);
+                }
+            }
+            nameOffsets[count] = output.position();
+
+            int[] recordOffsets = new int[count + 1];
+            int deadCount = 0;
+            for (int id = 0; id < count; id++) {
+                recordOffsets[id] = output.position();
+                if (id < previousCount && !changedIds.contains(id) && !affectedIds.contains(id)) {
+                    output.put(previous.getRecordBytes(id));
+                    if (!previous.isPresent(id) && previous.getPrivateDependents(id).length == 0 && previous.getAccessibleDependents(id).length == 0) {
+                        deadCount++;
+                    }
+                    continue;
+                }
+                Record record = records.get(id);
+                if (record == null && reusedIds.contains(id)) {
+                    record = new Record(previous, id);
+                }
+                int[] privateDependents = dependentsOf(id, addedPrivateDependents, true);
+                int[] accessibleDependents = dependentsOf(id, addedAccessibleDependents, false);
+                if (record == null) {
+                    output.put((byte) 0);
+                    output.put((byte) 0);
+                    output.putInts(NO_IDS);
+                    output.putInts(NO_IDS);
+                    output.putInts(NO_IDS);
+                    if (privateDependents.length == 0 && accessibleDependents.length == 0) {
+                        deadCount++;
+                    }
+                } else {
+                    output.put(record.flags);
+                    output.put((byte) record.hash.length);
+                    output.put(record.hash);
+                    output.putInts(record.privateDependencies);
+                    output.putInts(record.accessibleDependencies);
+                    output.putInts(record.constants);
+                }
+                output.putInts(privateDependents);
+                output.putInts(accessibleDependents);
+            }
+            recordOffsets[count] = output.position();
+
+            int fullRebuildCauseOffset = -1;
+            if (fullRebuildCause != null) {
+                fullRebuildCauseOffset = output.position();
+                byte[] bytes = fullRebuildCause.getBytes(StandardCharsets.UTF_8);
+                output.putInt(bytes.length);
+                output.put(bytes);
+            }
+
+            int nameHashesOffset = output.position();
+            for (int hash : nameHashes) {
+                output.putInt(hash);
+            }
+            int nameOffsetsOffset = output.position();
+            for (int offset : nameOffsets) {
+                output.putInt(offset);
+            }
+            int recordOffsetsOffset = output.position();
+            for (int offset : recordOffsets) {
+                output.putInt(offset);
+            }
+            int slotsOffset = output.position();
+            int[] slots = createSlots(nameHashes);
+            for (int slot : slots) {
+                output.putInt(slot);
+            }
+            output.flush();
+
+            output.position(0);
+            output.putInt(ClassDependencyGraph.MAGIC);
+            output.putInt(ClassDependencyGraph.VERSION);
+            output.putInt(count);
+            output.putInt(deadCount);
+            output.putInt(slots.length);
+            output.putInt(nameHashesOffset);
+            output.putInt(nameOffsetsOffset);
+            output.putInt(recordOffsetsOffset);
+            output.putInt(slotsOffset);
+            output.putInt(fullRebuildCauseOffset);
+            output.flush();
+        }
+
+        private int[] dependentsOf(int id, Int2ObjectMap<IntSet> addedDependents, boolean privateDependents) {
+            IntSet dependents = new IntOpenHashSet();
+            if (id < previousCount) {
+                for (int dependent : privateDependents ? previous.getPrivateDependents(id) : previous.getAccessibleDependents(id)) {
+                    if (!changedIds.contains(dependent)) {
+                        dependents.add(dependent);
+                    }
+                }
+            }
+            IntSet added = addedDependents.get(id);
+            if (added != null) {
+                dependents.addAll(added);
+            }
+            int[] result = dependents.toIntArray();
+            Arrays.sort(result);
+            return result;
+        }
+
+        private int[] createSlots(int[] nameHashes) {
+            int slotCount = 2;
+            while (slotCount < nameHashes.length * 2) {
+                slotCount <<= 1;
+            }
+            int[] slots = new int[slotCount];
+            int mask = slotCount - 1;
+            for (int id = 0; id < nameHashes.length; id++) {
+                int slot = slotFor(nameHashes[id], slotCount);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id + 1;
+            }
+            return slots;
+        }
+
+        private class Record {
+            final byte flags;
+            final byte[] hash;
+            final int[] privateDependencies;
+            final int[] accessibleDependencies;
+            final int[] constants;
+
+            Record(AnalyzedClass analyzedClass) {
+                ClassAnalysis analysis = analyzedClass.analysis;
+                this.flags = flagsOf(analysis.isDependencyToAll());
+                this.hash = analyzedClass.hash.toByteArray();
+                this.privateDependencies = idsOf(analysis.getPrivateClassDependencies());
+                this.accessibleDependencies = idsOf(analysis.getAccessibleClassDependencies());
+                this.constants = analysis.getConstants().toIntArray();
+            }
+
+            Record(ClassDependencyGraph previous, int id) {
+                this.flags = flagsOf(previous.isDependencyToAll(id));
+                this.hash = previous.getClassFileHash(id).toByteArray();
+                this.privateDependencies = previous.getPrivateDependencies(id);
+                this.accessibleDependencies = previous.getAccessibleDependencies(id);
+                this.constants = previous.getConstants(id);
+            }
+        }
+    }
+
+    private static byte flagsOf(boolean dependencyToAll) {
+        return dependencyToAll ? (byte) (ClassDependencyGraph.PRESENT | ClassDependencyGraph.DEPENDENCY_TO_ALL) : ClassDependencyGraph.PRESENT;
+    }
+
+    private static void addAll(IntSet set, int[] values) {
+        for (int value : values) {
+            set.add(value);
+        }
+    }
+
+    private static class AnalyzedClass {
+        final HashCode hash;
+        final ClassAnalysis analysis;
+
+        AnalyzedClass(HashCode hash, ClassAnalysis analysis) {
+            this.hash = hash;
+            this.analysis = analysis;
+        }
+    }
+
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private long flushedPosition;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        int position() throws IOException {
+            long position = flushedPosition + buffer.position();
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Class dependency graph is too large");
+            }
+            return (int) position;
+        }
+
+        void position(long position) throws IOException {
+            flush();
+            channel.position(position);
+            flushedPosition = position;
+        }
+
+        void put(byte value) throws IOException {
+            ensureRemaining(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        void putInts(int[] values) throws IOException {
+            putInt(values.length);
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        void put(byte[] bytes) throws IOException {
+            put(ByteBuffer.wrap(bytes));
+        }
+
+        void put(ByteBuffer bytes) throws IOException {
+            if (bytes.remaining() <= buffer.remaining()) {
+                buffer.put(bytes);
+                return;
+            }
+            flush();
+            while (bytes.hasRemaining()) {
+                flushedPosition += channel.write(bytes);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushedPosition += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int count) throws IOException {
+            if (buffer.remaining() < count) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.compile.incremental.deps;
+
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import javax.annotation.Nullable;
+
+/**
+ * The dependents and constants of the classes of a class set, as answered by an in-memory {@link ClassSetAnalysisData} or a memory-mapped {@link ClassDependencyGraph}.
+ */
+public interface ClassDependencyInfo {
+    DependentsSet getDependents(String className);
+
+    IntSet getConstants(String className);
+
+    @Nullable
+    String getFullRebuildCause();
+}
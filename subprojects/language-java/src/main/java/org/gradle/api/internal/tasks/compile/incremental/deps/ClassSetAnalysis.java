@@ -30,16 +30,16 @@
 
 public class ClassSetAnalysis {
 
-    private final ClassSetAnalysisData classAnalysis;
+    private final ClassDependencyInfo classAnalysis;
     private final AnnotationProcessingData annotationProcessingData;
     private final ImmutableSetMultimap<String, String> classDependenciesFromAnnotationProcessing;
     private final ImmutableSetMultimap<String, GeneratedResource> resourceDependenciesFromAnnotationProcessing;
 
-    public ClassSetAnalysis(ClassSetAnalysisData classAnalysis) {
+    public ClassSetAnalysis(ClassDependencyInfo classAnalysis) {
         this(classAnalysis, new AnnotationProcessingData());
     }
 
-    public ClassSetAnalysis(ClassSetAnalysisData classAnalysis, AnnotationProcessingData annotationProcessingData) {
+    public ClassSetAnalysis(ClassDependencyInfo classAnalysis, AnnotationProcessingData annotationProcessingData) {
         this.classAnalysis = classAnalysis;
         this.annotationProcessingData = annotationProcessingData;
         ImmutableSetMultimap.Builder<String, String> classDependenciesFromAnnotationProcessing = ImmutableSetMultimap.builder();
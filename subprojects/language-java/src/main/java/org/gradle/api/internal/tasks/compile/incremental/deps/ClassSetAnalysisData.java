@@ -28,13 +28,14 @@
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.IntSetSerializer;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
-public class ClassSetAnalysisData {
+public class ClassSetAnalysisData implements ClassDependencyInfo {
     public static final String PACKAGE_INFO = "package-info";
 
     private final Set<String> classes;
@@ -49,6 +50,7 @@ public ClassSetAnalysisData(Set<String> classes, Map<String, DependentsSet> depe
         this.fullRebuildCause = fullRebuildCause;
     }
 
+    @Override
     public DependentsSet getDependents(String className) {
         if (fullRebuildCause != null) {
             return DependentsSet.dependencyToAll(fullRebuildCause);
@@ -72,6 +74,7 @@ private DependentsSet getDependentsOfPackage(String packageName) {
         return DependentsSet.dependentClasses(Collections.emptySet(), typesInPackage);
     }
 
+    @Override
     public IntSet getConstants(String className) {
         IntSet integers = classesToConstants.get(className);
         if (integers == null) {
@@ -80,6 +83,16 @@ public IntSet getConstants(String className) {
         return integers;
     }
 
+    Map<String, DependentsSet> getDependentsMap() {
+        return dependents;
+    }
+
+    @Nullable
+    @Override
+    public String getFullRebuildCause() {
+        return fullRebuildCause;
+    }
+
     public static class Serializer extends AbstractSerializer<ClassSetAnalysisData> {
 
         private final StringInterner interner;
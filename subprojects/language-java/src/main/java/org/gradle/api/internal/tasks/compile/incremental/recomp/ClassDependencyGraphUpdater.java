@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.compile.incremental.recomp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Writes the class dependency graph of a task's destination directory after compilation, so that the next incremental compilation
+ * can query the graph instead of analyzing the whole directory.
+ */
+public class ClassDependencyGraphUpdater {
+    private static final Logger LOG = LoggerFactory.getLogger(ClassDependencyGraphUpdater.class);
+
+    private final PreviousCompilationStore previousCompilationStore;
+    private final PreviousCompilationOutputAnalyzer previousCompilationOutputAnalyzer;
+
+    public ClassDependencyGraphUpdater(PreviousCompilationStore previousCompilationStore, PreviousCompilationOutputAnalyzer previousCompilationOutputAnalyzer) {
+        this.previousCompilationStore = previousCompilationStore;
+        this.previousCompilationOutputAnalyzer = previousCompilationOutputAnalyzer;
+    }
+
+    /**
+     * Writes the graph of the given destination directory, starting from the graph of the previous compilation.
+     *
+     * @return the new graph file, or {@code null} if the graph could not be written, in which case the next compilation analyzes the directory itself.
+     */
+    @Nullable
+    public File update(File destinationDir) {
+        PreviousCompilationData previous = previousCompilationStore.get();
+        File previousGraph = previous == null ? null : previous.getClassDependencyGraph();
+        File graph = previousCompilationStore.newClassDependencyGraphFile();
+        try {
+            graph.getParentFile().mkdirs();
+            previousCompilationOutputAnalyzer.writeClassDependencyGraph(destinationDir, previousGraph, graph);
+            return graph;
+        } catch (Exception e) {
+            LOG.info("Could not write the class dependency graph for incremental compilation of {}.", destinationDir);
+            LOG.debug("Could not write the class dependency graph {}", graph, e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the graphs of previous compilations, after the data referring to the given graph has been stored.
+     */
+    public void retainOnly(@Nullable File graph) {
+        previousCompilationStore.deleteClassDependencyGraphsExcept(graph);
+    }
+}
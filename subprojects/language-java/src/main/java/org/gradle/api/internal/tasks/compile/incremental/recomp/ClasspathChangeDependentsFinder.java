@@ -21,7 +21,7 @@
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathEntrySnapshot;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathSnapshot;
 import org.gradle.api.internal.tasks.compile.incremental.deps.ClassChanges;
-import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysisData;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyInfo;
 import org.gradle.api.internal.tasks.compile.incremental.deps.DependentsSet;
 import org.gradle.api.tasks.incremental.InputFileDetails;
 
@@ -124,7 +124,7 @@ private DependentsSet collectDependentsFromClasspath(Set<String> modified) {
 
     private DependentsSet collectDependentsFromClasspathEntry(String dependentClass, File entry) {
         ClasspathEntrySnapshot entrySnapshot = classpathSnapshot.getSnapshot(entry);
-        ClassSetAnalysisData data = entrySnapshot.getData().getClassAnalysis();
+        ClassDependencyInfo data = entrySnapshot.getData().getClassAnalysis();
         return data.getDependents(dependentClass);
     }
 
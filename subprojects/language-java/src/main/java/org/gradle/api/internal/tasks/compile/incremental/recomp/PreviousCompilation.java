@@ -46,7 +46,7 @@ public DependentsSet getDependents(Set<String> allClasses, IntSet constants) {
 
     private ClassSetAnalysis getClassAnalysis() {
         if (classAnalysis == null) {
-            classAnalysis = previousCompilationOutputAnalyzer.getAnalysis(data.getDestinationDir()).withAnnotationProcessingData(data.getAnnotationProcessingData());
+            classAnalysis = previousCompilationOutputAnalyzer.getAnalysis(data.getDestinationDir(), data.getClassDependencyGraph()).withAnnotationProcessingData(data.getAnnotationProcessingData());
         }
         return classAnalysis;
     }
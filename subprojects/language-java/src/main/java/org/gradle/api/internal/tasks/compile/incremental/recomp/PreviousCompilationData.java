@@ -26,6 +26,7 @@
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.ListSerializer;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.List;
 
@@ -34,12 +35,14 @@ public class PreviousCompilationData {
     private final AnnotationProcessingData annotationProcessingData;
     private final ClasspathSnapshotData classpathSnapshot;
     private final List<File> annotationProcessorPath;
+    private final File classDependencyGraph;
 
-    public PreviousCompilationData(File destinationDir, AnnotationProcessingData annotationProcessingData, ClasspathSnapshotData classpathSnapshot, List<File> annotationProcessorPath) {
+    public PreviousCompilationData(File destinationDir, AnnotationProcessingData annotationProcessingData, ClasspathSnapshotData classpathSnapshot, List<File> annotationProcessorPath, @Nullable File classDependencyGraph) {
         this.destinationDir = destinationDir;
         this.annotationProcessingData = annotationProcessingData;
         this.classpathSnapshot = classpathSnapshot;
         this.annotationProcessorPath = annotationProcessorPath;
+        this.classDependencyGraph = classDependencyGraph;
     }
 
     public File getDestinationDir() {
@@ -58,6 +61,14 @@ public List<File> getAnnotationProcessorPath() {
         return annotationProcessorPath;
     }
 
+    /**
+     * The class dependency graph of the destination directory after the compilation, if one was written.
+     */
+    @Nullable
+    public File getClassDependencyGraph() {
+        return classDependencyGraph;
+    }
+
     public static class Serializer extends AbstractSerializer<PreviousCompilationData> {
         private final ClasspathSnapshotDataSerializer classpathSnapshotDataSerializer;
         private final ListSerializer<File> processorPathSerializer;
@@ -75,7 +86,8 @@ public PreviousCompilationData read(Decoder decoder) throws Exception {
             ClasspathSnapshotData classpathSnapshot = classpathSnapshotDataSerializer.read(decoder);
             List<File> processorPath = processorPathSerializer.read(decoder);
             AnnotationProcessingData annotationProcessingData = annotationProcessingDataSerializer.read(decoder);
-            return new PreviousCompilationData(destinationDir, annotationProcessingData, classpathSnapshot, processorPath);
+            File classDependencyGraph = decoder.readBoolean() ? BaseSerializerFactory.FILE_SERIALIZER.read(decoder) : null;
+            return new PreviousCompilationData(destinationDir, annotationProcessingData, classpathSnapshot, processorPath, classDependencyGraph);
         }
 
         @Override
@@ -84,6 +96,10 @@ public void write(Encoder encoder, PreviousCompilationData value) throws Excepti
             classpathSnapshotDataSerializer.write(encoder, value.classpathSnapshot);
             processorPathSerializer.write(encoder, value.annotationProcessorPath);
             annotationProcessingDataSerializer.write(encoder, value.annotationProcessingData);
+            encoder.writeBoolean(value.classDependencyGraph != null);
+            if (value.classDependencyGraph != null) {
+                BaseSerializerFactory.FILE_SERIALIZER.write(encoder, value.classDependencyGraph);
+            }
         }
     }
 }
@@ -16,10 +16,14 @@
 
 package org.gradle.api.internal.tasks.compile.incremental.recomp;
 
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
 import org.gradle.api.internal.file.FileOperations;
 import org.gradle.api.internal.tasks.compile.incremental.analyzer.ClassDependenciesAnalyzer;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.ClasspathEntrySnapshot;
 import org.gradle.api.internal.tasks.compile.incremental.classpath.DefaultClasspathEntrySnapshotter;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyGraph;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependencyGraphWriter;
 import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysis;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
@@ -29,15 +33,24 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
 
 //TODO reuse cached result from downstream users of our classes directory
 public class PreviousCompilationOutputAnalyzer {
     private static final Logger LOG = LoggerFactory.getLogger(PreviousCompilationOutputAnalyzer.class);
+    private static final long MODIFICATION_TIME_GRANULARITY_MILLIS = 2000;
 
+    private final FileHasher fileHasher;
+    private final ClassDependenciesAnalyzer analyzer;
+    private final FileOperations fileOperations;
     private final DefaultClasspathEntrySnapshotter snapshotter;
 
     public PreviousCompilationOutputAnalyzer(FileHasher fileHasher, StreamHasher streamHasher, ClassDependenciesAnalyzer analyzer, FileOperations fileOperations) {
+        this.fileHasher = fileHasher;
+        this.analyzer = analyzer;
+        this.fileOperations = fileOperations;
         this.snapshotter = new DefaultClasspathEntrySnapshotter(fileHasher, streamHasher, analyzer, fileOperations);
     }
 
@@ -49,4 +62,90 @@ public ClassSetAnalysis getAnalysis(File classesDirectory) {
         return snapshot.getClassAnalysis();
     }
 
+    /**
+     * Returns the analysis of the given classes directory, using the given class dependency graph of the directory when it can be read.
+     */
+    public ClassSetAnalysis getAnalysis(File classesDirectory, @Nullable File classDependencyGraph) {
+        if (classDependencyGraph != null) {
+            try {
+                return new ClassSetAnalysis(ClassDependencyGraph.open(classDependencyGraph));
+            } catch (IOException e) {
+                LOG.info("Could not read the class dependency graph {}, analyzing {} instead.", classDependencyGraph, classesDirectory);
+            }
+        }
+        return getAnalysis(classesDirectory);
+    }
+
+    /**
+     * Writes the class dependency graph of the given classes directory. Only classes that have changed compared to the given previous graph are analyzed.
+     * Class files that were last modified before the previous graph was written are not even hashed, their records in the previous graph are reused.
+     */
+    public void writeClassDependencyGraph(File classesDirectory, @Nullable File previousClassDependencyGraph, File classDependencyGraph) throws IOException {
+        Timer clock = Time.startTimer();
+        ClassDependencyGraph previous = openPrevious(previousClassDependencyGraph);
+        ClassDependencyGraphWriter writer = new ClassDependencyGraphWriter(previous);
+        // Leaves a margin for file systems that only keep modification times in seconds
+        long unchangedBefore = previous == null ? Long.MIN_VALUE : previousClassDependencyGraph.lastModified() - MODIFICATION_TIME_GRANULARITY_MILLIS;
+        GraphVisitor visitor = new GraphVisitor(writer, unchangedBefore);
+        if (classesDirectory.isDirectory()) {
+            fileOperations.fileTree(classesDirectory).visit(visitor);
+        }
+        writer.writeTo(classDependencyGraph);
+        LOG.info("Updating the class dependency graph for incremental compilation took {}, {} classes were hashed and {} analyzed.", clock.getElapsed(), visitor.hashedClasses, visitor.analyzedClasses);
+    }
+
+    @Nullable
+    private static ClassDependencyGraph openPrevious(@Nullable File previousClassDependencyGraph) {
+        if (previousClassDependencyGraph == null || !previousClassDependencyGraph.isFile()) {
+            return null;
+        }
+        try {
+            return ClassDependencyGraph.open(previousClassDependencyGraph);
+        } catch (IOException e) {
+            LOG.debug("Could not read the previous class dependency graph {}", previousClassDependencyGraph, e);
+            return null;
+        }
+    }
+
+    private class GraphVisitor implements FileVisitor {
+        private final ClassDependencyGraphWriter writer;
+        private final long unchangedBefore;
+        private int hashedClasses;
+        private int analyzedClasses;
+
+        GraphVisitor(ClassDependencyGraphWriter writer, long unchangedBefore) {
+            this.writer = writer;
+            this.unchangedBefore = unchangedBefore;
+        }
+
+        @Override
+        public void visitDir(FileVisitDetails dirDetails) {
+        }
+
+        @Override
+        public void visitFile(FileVisitDetails fileDetails) {
+            String path = fileDetails.getRelativePath().getPathString();
+            if (!path.endsWith(".class")) {
+                return;
+            }
+            String className = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+            if (fileDetails.getLastModified() < unchangedBefore && writer.reuseUnchangedClass(className)) {
+                return;
+            }
+            hashedClasses++;
+            HashCode classFileHash = fileHasher.hash(fileDetails.getFile(), fileDetails.getSize(), fileDetails.getLastModified());
+            if (writer.reuseClass(className, classFileHash)) {
+                return;
+            }
+            analyzedClasses++;
+            try {
+                writer.addClass(classFileHash, analyzer.getClassAnalysis(classFileHash, fileDetails));
+            } catch (Exception e) {
+                writer.fullRebuildNeeded(fileDetails.getName() + " could not be analyzed for incremental compilation. See the debug log for more details");
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Could not analyze " + fileDetails.getName() + " for incremental compilation", e);
+                }
+            }
+        }
+    }
 }
@@ -19,15 +19,22 @@
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.internal.Loader;
 import org.gradle.cache.internal.Stash;
+import org.gradle.internal.hash.Hashing;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.UUID;
 
 //Keeps the class set analysis of the given JavaCompile task
 public class PreviousCompilationStore implements Loader<PreviousCompilationData>, Stash<PreviousCompilationData> {
     private final String taskPath;
     private final PersistentIndexedCache<String, PreviousCompilationData> cache;
+    private final File classDependencyGraphsDir;
 
-    public PreviousCompilationStore(String taskPath, PersistentIndexedCache<String, PreviousCompilationData> cache) {
+    public PreviousCompilationStore(String taskPath, PersistentIndexedCache<String, PreviousCompilationData> cache, File classDependencyGraphsDir) {
         this.taskPath = taskPath;
         this.cache = cache;
+        this.classDependencyGraphsDir = classDependencyGraphsDir;
     }
 
     @Override
@@ -39,4 +46,33 @@ public void put(PreviousCompilationData analysis) {
     public PreviousCompilationData get() {
         return cache.get(taskPath);
     }
+
+    /**
+     * Returns a new file for the class dependency graph of the task.
+     * Every compilation writes a new file, since the graph of the previous compilation may still be mapped into memory.
+     */
+    public File newClassDependencyGraphFile() {
+        return new File(classDependencyGraphsDir, classDependencyGraphPrefix() + UUID.randomUUID() + ".bin");
+    }
+
+    /**
+     * Deletes the class dependency graphs of the task other than the given one, as far as they are not in use anymore.
+     */
+    public void deleteClassDependencyGraphsExcept(@Nullable File classDependencyGraph) {
+        final String prefix = classDependencyGraphPrefix();
+        File[] graphs = classDependencyGraphsDir.listFiles((dir, name) -> name.startsWith(prefix));
+        if (graphs == null) {
+            return;
+        }
+        for (File graph : graphs) {
+            if (!graph.equals(classDependencyGraph)) {
+                // Deleting fails while the file is still mapped on some platforms, so it is retried after the next compilation
+                graph.delete();
+            }
+        }
+    }
+
+    private String classDependencyGraphPrefix() {
+        return Hashing.hashString(taskPath).toString() + "-";
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile.incremental.classpath
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import it.unimi.dsi.fastutil.ints.IntSets
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependentsAccumulator
+import org.gradle.internal.Factory
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.resource.local.FileAccessTracker
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
+import org.gradle.internal.vfs.VirtualFileSystem
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.function.Function
+
+class MappedClasspathEntrySnapshotCacheTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temp = new TestNameTestDirectoryProvider(getClass())
+
+    def jar = temp.file("lib.jar")
+    def jarHash = HashCode.fromInt(0x1234)
+    def virtualFileSystem = Stub(VirtualFileSystem) {
+        read(jar.absolutePath, _ as Function) >> { String location, Function visitor ->
+            visitor.apply(Stub(CompleteFileSystemLocationSnapshot) { getHash() >> jarHash })
+        }
+    }
+    def snapshotsDir = temp.file("snapshots")
+    def fileAccessTracker = Mock(FileAccessTracker)
+    def cache = new MappedClasspathEntrySnapshotCache(snapshotsDir, virtualFileSystem, fileAccessTracker)
+
+    def "stores snapshot as memory-mapped file named after the entry hash"() {
+        def factory = Mock(Factory)
+
+        when:
+        def snapshot = cache.get(jar, factory)
+
+        then:
+        1 * factory.create() >> snapshot(["A": 0xaa, "B": 0xbb]) { addClass("A", false, ["B"], [], new IntOpenHashSet([1, 2])) }
+        1 * fileAccessTracker.markAccessed(new File(snapshotsDir, "${jarHash}.bin"))
+        new File(snapshotsDir, "${jarHash}.bin").file
+        snapshot.hash == jarHash
+        snapshot.classes == ["A", "B"] as Set
+        snapshot.classAnalysis.getRelevantDependents("B", IntSets.EMPTY_SET).privateDependentClasses == ["A"] as Set
+        snapshot.classAnalysis.getConstants("A") == [1, 2] as Set
+
+        when:
+        def reloaded = new MappedClasspathEntrySnapshotCache(snapshotsDir, virtualFileSystem, fileAccessTracker).get(jar, factory)
+
+        then:
+        0 * factory.create()
+        1 * fileAccessTracker.markAccessed(new File(snapshotsDir, "${jarHash}.bin"))
+        reloaded.hashes == ["A": HashCode.fromInt(0xaa), "B": HashCode.fromInt(0xbb)]
+    }
+
+    def "finds stored snapshot by hash"() {
+        cache.get(jar, { snapshot(["A": 0xaa]) {} } as Factory)
+
+        when:
+        def found = cache.get(jar, jarHash)
+        def missing = cache.get(jar, HashCode.fromInt(0x5678))
+
+        then:
+        found.classes == ["A"] as Set
+        missing == null
+        1 * fileAccessTracker.markAccessed(new File(snapshotsDir, "${jarHash}.bin"))
+        0 * fileAccessTracker._
+    }
+
+    def "compares mapped snapshots"() {
+        def otherCache = new MappedClasspathEntrySnapshotCache(temp.file("otherSnapshots"), virtualFileSystem, fileAccessTracker)
+        def previous = cache.get(jar, { snapshot(["A": 0xaa, "B": 0xbb, "C": 0xcc]) {} } as Factory)
+        def current = otherCache.get(jar, { snapshot(["A": 0xaa, "B": 0xbbbb, "D": 0xdd]) {} } as Factory)
+
+        when:
+        def changes = current.getChangedClassesSince(previous)
+
+        then:
+        changes.modified == ["B", "C"] as Set
+        changes.added == ["D"] as Set
+    }
+
+    private ClasspathEntrySnapshot snapshot(Map<String, Integer> hashes, @DelegatesTo(ClassDependentsAccumulator) Closure classes) {
+        def accumulator = new ClassDependentsAccumulator()
+        accumulator.with(classes)
+        hashes.keySet().each { className ->
+            accumulator.addClass(className, false, [], [], IntSets.EMPTY_SET)
+        }
+        new ClasspathEntrySnapshot(new ClasspathEntrySnapshotData(jarHash, hashes.collectEntries { k, v -> [k, HashCode.fromInt(v)] }, accumulator.analysis))
+    }
+}
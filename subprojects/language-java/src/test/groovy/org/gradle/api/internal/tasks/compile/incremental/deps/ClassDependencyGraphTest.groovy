@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile.incremental.deps
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import it.unimi.dsi.fastutil.ints.IntSets
+import org.gradle.internal.hash.HashCode
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class ClassDependencyGraphTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temp = new TestNameTestDirectoryProvider(getClass())
+
+    Map<String, ClassAnalysis> classes = [:]
+    Map<String, HashCode> hashes = [:]
+    int generation
+
+    def "answers the same queries as the accumulated analysis"() {
+        addClass("a", ["b"], ["c"], false, [1, 2])
+        addClass("b", ["c"], ["a"])
+        addClass("c", ["c"], ["java.lang.String"])
+        addClass("d", [], ["x"], true)
+        addClass("p.Q", ["d"], [])
+        addClass("p.package-info", [], [])
+
+        when:
+        def graph = writeGraph(null)
+
+        then:
+        assertSameAsAccumulated(graph, ["a", "b", "c", "d", "x", "p.Q", "p.package-info", "package-info", "java.lang.String", "unknown"])
+        graph.getConstants("a") == [1, 2] as Set
+        graph.getDependents("c").privateDependentClasses == ["b"] as Set
+        graph.getDependents("c").accessibleDependentClasses == ["a"] as Set
+        graph.getDependents("d").dependencyToAll
+        graph.getDependents("p.package-info").accessibleDependentClasses == ["p.Q", "p.package-info"] as Set
+    }
+
+    def "only analyzes changed classes when updating the previous graph"() {
+        addClass("a", ["b"], [])
+        addClass("b", [], ["c"])
+        addClass("c", [], [])
+        def previous = writeGraph(null)
+
+        when:
+        addClass("b", ["a"], [], false, [5])
+        addClass("e", [], ["c"])
+        classes.remove("a")
+        hashes.remove("a")
+        def analyzed = []
+        def graph = writeGraph(previous, analyzed)
+
+        then:
+        analyzed == ["b", "e"]
+        assertSameAsAccumulated(graph, ["a", "b", "c", "e"])
+        graph.getDependents("b").empty
+        graph.getDependents("c").accessibleDependentClasses == ["e"] as Set
+        graph.getDependents("a").privateDependentClasses == ["b"] as Set
+        graph.getConstants("b") == [5] as Set
+    }
+
+    def "reports full rebuild cause for all classes"() {
+        addClass("a", ["b"], [])
+        def writer = new ClassDependencyGraphWriter(null)
+        writer.addClass(hashes["a"], classes["a"])
+        writer.fullRebuildNeeded("b.class could not be analyzed")
+        def file = temp.file("graph.bin")
+
+        when:
+        writer.writeTo(file)
+        def graph = ClassDependencyGraph.open(file)
+
+        then:
+        graph.getDependents("b").dependencyToAll
+        graph.getDependents("b").description == "b.class could not be analyzed"
+    }
+
+    def "reuses unchanged classes without comparing their hashes"() {
+        addClass("a", [], ["b"])
+        addClass("b", [], [])
+        def previous = writeGraph(null)
+        def writer = new ClassDependencyGraphWriter(previous)
+        def file = temp.file("graph.bin")
+
+        when:
+        def reusedA = writer.reuseUnchangedClass("a")
+        def reusedB = writer.reuseUnchangedClass("b")
+        def reusedC = writer.reuseUnchangedClass("c")
+        writer.writeTo(file)
+
+        then:
+        reusedA
+        reusedB
+        !reusedC
+        assertSameAsAccumulated(ClassDependencyGraph.open(file), ["a", "b"])
+    }
+
+    def "does not open files that are not class dependency graphs"() {
+        def file = temp.file("graph.bin") << "not a graph"
+
+        when:
+        ClassDependencyGraph.open(file)
+
+        then:
+        thrown(IOException)
+    }
+
+    private void addClass(String name, List<String> privateDependencies, List<String> accessibleDependencies, boolean dependencyToAll = false, List<Integer> constants = []) {
+        classes[name] = new ClassAnalysis(name, privateDependencies as Set, accessibleDependencies as Set, dependencyToAll, constants.empty ? IntSets.EMPTY_SET : new IntOpenHashSet(constants))
+        hashes[name] = HashCode.fromInt(Objects.hash(name, privateDependencies, accessibleDependencies, dependencyToAll, constants))
+    }
+
+    private ClassDependencyGraph writeGraph(ClassDependencyGraph previous, List<String> analyzed = []) {
+        def writer = new ClassDependencyGraphWriter(previous)
+        classes.each { name, analysis ->
+            if (!writer.reuseClass(name, hashes[name])) {
+                analyzed << name
+                writer.addClass(hashes[name], analysis)
+            }
+        }
+        def file = temp.file("graph-${generation++}.bin")
+        writer.writeTo(file)
+        return ClassDependencyGraph.open(file)
+    }
+
+    private void assertSameAsAccumulated(ClassDependencyGraph graph, List<String> classNames) {
+        def accumulator = new ClassDependentsAccumulator()
+        classes.values().each { accumulator.addClass(it) }
+        def expected = accumulator.analysis
+        classNames.each { className ->
+            def expectedDependents = expected.getDependents(className)
+            def actualDependents = graph.getDependents(className)
+            assert actualDependents.dependencyToAll == expectedDependents.dependencyToAll
+            if (!expectedDependents.dependencyToAll) {
+                assert actualDependents.privateDependentClasses == expectedDependents.privateDependentClasses
+                assert actualDependents.accessibleDependentClasses == expectedDependents.accessibleDependentClasses
+            }
+            assert graph.getConstants(className) == expected.getConstants(className)
+        }
+    }
+}
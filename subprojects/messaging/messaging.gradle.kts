@@ -19,3 +19,8 @@ dependencies {
 
     integTestRuntimeOnly(project(":runtimeApiInfo"))
 }
+
+jmh {
+    include = listOf("SocketConnectionBenchmark")
+    profilers = listOf("gc")
+}
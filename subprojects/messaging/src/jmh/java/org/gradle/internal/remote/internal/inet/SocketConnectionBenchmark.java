@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.remote.internal.inet;
+
+import org.gradle.internal.remote.internal.KryoBackedMessageSerializer;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.Serializers;
+import org.gradle.internal.serialize.StatefulSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+/**
+ * Measures how many messages per second a {@link SocketConnection} can send to a reader that discards them.
+ *
+ * Each invocation dispatches a batch of messages and flushes once, like the dispatch thread of a message hub does under load.
+ * Run with the GC profiler to see the bytes allocated per message ({@code gc.alloc.rate.norm}).
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+public class SocketConnectionBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"stream", "direct-framing"})
+    String framing;
+
+    @Param({"80", "2000"})
+    int messageLength;
+
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private Thread reader;
+    private SocketConnection<String> connection;
+    private String[] messages;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        final SocketChannel accepted = server.accept();
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+                try {
+                    while (accepted.read(buffer) >= 0) {
+                        buffer.clear();
+                    }
+                    accepted.close();
+                } catch (IOException e) {
+                    // Connection closed
+                }
+            }
+        });
+        reader.start();
+
+        StatefulSerializer<String> serializer = Serializers.stateful(BaseSerializerFactory.STRING_SERIALIZER);
+        DirectBufferPool bufferPool = framing.equals("direct-framing") ? DirectBufferPool.SHARED : null;
+        connection = new SocketConnection<String>(client, new KryoBackedMessageSerializer(), serializer, bufferPool);
+
+        Random random = new Random(1234L);
+        messages = new String[BATCH_SIZE];
+        for (int i = 0; i < messages.length; i++) {
+            StringBuilder message = new StringBuilder(messageLength);
+            for (int j = 0; j < messageLength; j++) {
+                message.append((char) ('a' + random.nextInt(26)));
+            }
+            messages[i] = message.toString();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.stop();
+        reader.join();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void sendBatch() {
+        for (String message : messages) {
+            connection.dispatch(message);
+        }
+        connection.flush();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.remote.internal.inet;
+
+import org.gradle.internal.io.BufferCaster;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A bounded pool of direct buffers of a fixed size, shared by the connections of a process.
+ *
+ * Direct buffers are expensive to allocate and are only freed when they are garbage collected, so connections that come and go, such as those to test workers,
+ * borrow them from here instead of allocating their own.
+ */
+class DirectBufferPool {
+    static final DirectBufferPool SHARED = new DirectBufferPool(32 * 1024, 64);
+
+    private final int bufferSize;
+    private final int maxRetained;
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+
+    DirectBufferPool(int bufferSize, int maxRetained) {
+        this.bufferSize = bufferSize;
+        this.maxRetained = maxRetained;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns an empty buffer, which should be given back using {@link #release(ByteBuffer)} once it is no longer used.
+     */
+    ByteBuffer take() {
+        ByteBuffer buffer;
+        synchronized (buffers) {
+            buffer = buffers.pollLast();
+        }
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        BufferCaster.cast(buffer).clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        synchronized (buffers) {
+            if (buffers.size() < maxRetained) {
+                buffers.addLast(buffer);
+            }
+        }
+    }
+
+    int getRetainedCount() {
+        synchronized (buffers) {
+            return buffers.size();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.remote.internal.inet;
+
+import org.gradle.internal.io.BufferCaster;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Writes to a socket from buffers borrowed from a {@link DirectBufferPool}.
+ *
+ * Filled buffers are queued rather than written one by one, and are written to the socket using a single gathering write when the stream is flushed or when too many of them are pending.
+ * This way all messages dispatched between two flushes are sent together, however many buffers they take.
+ */
+class FramedSocketOutputStream extends OutputStream {
+    private static final int RETRIES_WHEN_BUFFER_FULL = 2;
+    private static final int MAX_PENDING_BUFFERS = 8;
+    private final SocketChannel socket;
+    private final DirectBufferPool bufferPool;
+    private final ByteBuffer[] pending = new ByteBuffer[MAX_PENDING_BUFFERS];
+    private final byte[] writeBuffer = new byte[1];
+    private int pendingCount;
+    private ByteBuffer current;
+    private Selector selector;
+
+    FramedSocketOutputStream(SocketChannel socket, DirectBufferPool bufferPool) {
+        this.socket = socket;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        writeBuffer[0] = (byte) b;
+        write(writeBuffer);
+    }
+
+    @Override
+    public void write(byte[] src, int offset, int max) throws IOException {
+        int remaining = max;
+        int currentPos = offset;
+        while (remaining > 0) {
+            if (current == null) {
+                current = bufferPool.take();
+            }
+            int count = Math.min(remaining, current.remaining());
+            current.put(src, currentPos, count);
+            remaining -= count;
+            currentPos += count;
+            if (!current.hasRemaining()) {
+                queueCurrent();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        queueCurrent();
+        writePending();
+    }
+
+    private void queueCurrent() throws IOException {
+        if (current != null && current.position() > 0) {
+            ByteBuffer buffer = current;
+            current = null;
+            queue(buffer);
+        }
+    }
+
+    private void queue(ByteBuffer buffer) throws IOException {
+        BufferCaster.cast(buffer).flip();
+        pending[pendingCount++] = buffer;
+        if (pendingCount == MAX_PENDING_BUFFERS) {
+            writePending();
+        }
+    }
+
+    private void writePending() throws IOException {
+        int first = 0;
+        while (first < pendingCount) {
+            long count = writeWithNonBlockingRetry(first);
+            if (count == 0) {
+                // socket buffer was still full after non-blocking retries, now block
+                waitForWriteBufferToDrain();
+            }
+            while (first < pendingCount && !pending[first].hasRemaining()) {
+                bufferPool.release(pending[first]);
+                pending[first] = null;
+                first++;
+            }
+        }
+        pendingCount = 0;
+    }
+
+    private long writeWithNonBlockingRetry(int first) throws IOException {
+        long count = 0;
+        int retryCount = 0;
+        while (count == 0 && retryCount++ < RETRIES_WHEN_BUFFER_FULL) {
+            count = socket.write(pending, first, pendingCount - first);
+            if (count < 0) {
+                throw new EOFException();
+            } else if (count == 0) {
+                // socket buffer was full, just call Thread.yield
+                Thread.yield();
+            }
+        }
+        return count;
+    }
+
+    private void waitForWriteBufferToDrain() throws IOException {
+        if (selector == null) {
+            selector = Selector.open();
+        }
+        SelectionKey key = socket.register(selector, SelectionKey.OP_WRITE);
+        // block until ready for write operations
+        selector.select();
+        // cancel OP_WRITE selection
+        key.cancel();
+        // complete cancelling key
+        selector.selectNow();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < pendingCount; i++) {
+            bufferPool.release(pending[i]);
+            pending[i] = null;
+        }
+        pendingCount = 0;
+        if (current != null) {
+            bufferPool.release(current);
+            current = null;
+        }
+        if (selector != null) {
+            selector.close();
+            selector = null;
+        }
+    }
+}
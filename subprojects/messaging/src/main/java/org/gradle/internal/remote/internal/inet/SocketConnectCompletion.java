@@ -16,6 +16,7 @@
 
 package org.gradle.internal.remote.internal.inet;
 
+import org.gradle.internal.UnsafeFeatureFlags;
 import org.gradle.internal.remote.internal.KryoBackedMessageSerializer;
 import org.gradle.internal.remote.internal.RemoteConnection;
 import org.gradle.internal.serialize.StatefulSerializer;
@@ -37,6 +38,7 @@ public String toString() {
 
     @Override
     public <T> RemoteConnection<T> create(StatefulSerializer<T> serializer) {
-        return new SocketConnection<T>(socket, new KryoBackedMessageSerializer(), serializer);
+        DirectBufferPool bufferPool = UnsafeFeatureFlags.isEnabled(SocketConnection.DIRECT_FRAMING_PROPERTY) ? DirectBufferPool.SHARED : null;
+        return new SocketConnection<T>(socket, new KryoBackedMessageSerializer(), serializer, bufferPool);
     }
 }
@@ -31,6 +31,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
@@ -40,6 +41,10 @@
 import java.nio.channels.SocketChannel;
 
 public class SocketConnection<T> implements RemoteConnection<T> {
+    /**
+     * When set to true, outgoing messages are buffered in pooled direct buffers and written using gathering writes, see {@link FramedSocketOutputStream}.
+     */
+    public static final String DIRECT_FRAMING_PROPERTY = "org.gradle.unsafe.messaging.direct-framing";
     private static final Logger LOGGER = LoggerFactory.getLogger(SocketConnection.class);
     private final SocketChannel socket;
     private final SocketInetAddress localAddress;
@@ -51,12 +56,19 @@
     private final FlushableEncoder encoder;
 
     public SocketConnection(SocketChannel socket, MessageSerializer streamSerializer, StatefulSerializer<T> messageSerializer) {
+        this(socket, streamSerializer, messageSerializer, null);
+    }
+
+    /**
+     * Creates a connection that buffers outgoing messages in direct buffers borrowed from the given pool, if any. The bytes sent are the same either way.
+     */
+    SocketConnection(SocketChannel socket, MessageSerializer streamSerializer, StatefulSerializer<T> messageSerializer, @Nullable DirectBufferPool bufferPool) {
         this.socket = socket;
         try {
             // NOTE: we use non-blocking IO as there is no reliable way when using blocking IO to shutdown reads while
             // keeping writes active. For example, Socket.shutdownInput() does not work on Windows.
             socket.configureBlocking(false);
-            outstr = new SocketOutputStream(socket);
+            outstr = bufferPool == null ? new SocketOutputStream(socket) : new FramedSocketOutputStream(socket, bufferPool);
             instr = new SocketInputStream(socket);
         } catch (IOException e) {
             throw UncheckedException.throwAsUncheckedException(e);
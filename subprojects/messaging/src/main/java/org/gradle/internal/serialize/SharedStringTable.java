@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.serialize;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An append-only table of strings with stable ids, which encoders and decoders can share so that a string is only ever written once in full.
+ *
+ * Data written using a table can only be read back using the same table instance, so a table must live at least as long as the data encoded with it.
+ * This makes it a good fit for temporary data that is read by the same process, such as the binary stores of resolution results, and a bad fit for anything persisted across builds.
+ * Strings are never removed, so the table should be discarded with the scope that owns it.
+ * To bound the memory retained by the table, it stops accepting new strings once it contains its maximum number of strings.
+ * Encoders then write the strings that are not in the table in full.
+ *
+ * Looking up the id of a string that is already in the table, and looking up a string by id, do not allocate.
+ */
+public class SharedStringTable {
+    /**
+     * Returned by {@link #idOf(String)} for a string that is not in the table when the table is full.
+     */
+    public static final int NOT_ADDED = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>(INITIAL_CAPACITY);
+    private final int maximumSize;
+    private volatile String[] strings;
+    private int count;
+
+    public SharedStringTable() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public SharedStringTable(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.strings = new String[Math.min(INITIAL_CAPACITY, maximumSize)];
+    }
+
+    /**
+     * Returns the id of the given string, adding the string to this table if required, or {@link #NOT_ADDED} when the string is not in the table and the table is full.
+     */
+    public int idOf(String string) {
+        Integer id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        return add(string);
+    }
+
+    private synchronized int add(String string) {
+        Integer id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        if (count >= maximumSize) {
+            return NOT_ADDED;
+        }
+        String[] current = strings;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, (int) Math.min((long) count * 2, maximumSize));
+        }
+        current[count] = string;
+        // Publish the new string before its id can be seen by other threads
+        strings = current;
+        ids.put(string, count);
+        return count++;
+    }
+
+    /**
+     * Returns the string with the given id.
+     *
+     * @throws IllegalArgumentException when no string has been added to this table with the given id.
+     */
+    public String get(int id) {
+        String[] current = strings;
+        if (id >= 0 && id < current.length) {
+            String string = current[id];
+            if (string != null) {
+                return string;
+            }
+        }
+        return getAfterLocking(id);
+    }
+
+    private synchronized String getAfterLocking(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException(String.format("No string with id %s, this table contains %s strings.", id, count));
+        }
+        return strings[id];
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+}
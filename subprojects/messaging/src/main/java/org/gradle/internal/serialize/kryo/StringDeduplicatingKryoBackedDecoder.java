@@ -20,7 +20,9 @@
 import com.esotericsoftware.kryo.io.Input;
 import org.gradle.internal.serialize.AbstractDecoder;
 import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.SharedStringTable;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
@@ -32,8 +34,13 @@
  */
 public class StringDeduplicatingKryoBackedDecoder extends AbstractDecoder implements Decoder, Closeable {
     public static final int INITIAL_CAPACITY = 32;
+    // Codes written before each string when strings are shared through a table
+    static final int NULL_STRING = 0;
+    static final int INLINE_STRING = 1;
+    static final int FIRST_SHARED_STRING = 2;
     private final Input input;
     private final InputStream inputStream;
+    private final SharedStringTable sharedStrings;
     private String[] strings;
     private long extraSkipped;
 
@@ -42,7 +49,15 @@ public StringDeduplicatingKryoBackedDecoder(InputStream inputStream) {
     }
 
     public StringDeduplicatingKryoBackedDecoder(InputStream inputStream, int bufferSize) {
+        this(inputStream, bufferSize, null);
+    }
+
+    /**
+     * Creates a decoder that reads strings as ids in the given table, which must be the table used to encode them.
+     */
+    public StringDeduplicatingKryoBackedDecoder(InputStream inputStream, int bufferSize, @Nullable SharedStringTable sharedStrings) {
         this.inputStream = inputStream;
+        this.sharedStrings = sharedStrings;
         input = new Input(this.inputStream, bufferSize);
     }
 
@@ -147,6 +162,9 @@ public String readString() throws EOFException {
 
     @Override
     public String readNullableString() throws EOFException {
+        if (sharedStrings != null) {
+            return readSharedString();
+        }
         try {
             int idx = readInt();
             if (idx == -1) {
@@ -173,6 +191,23 @@ public String readNullableString() throws EOFException {
         }
     }
 
+    @Nullable
+    private String readSharedString() throws EOFException {
+        int code = readSmallInt();
+        switch (code) {
+            case NULL_STRING:
+                return null;
+            case INLINE_STRING:
+                try {
+                    return input.readString();
+                } catch (KryoException e) {
+                    throw maybeEndOfStream(e);
+                }
+            default:
+                return sharedStrings.get(code - FIRST_SHARED_STRING);
+        }
+    }
+
     /**
      * Returns the total number of bytes consumed by this decoder. Some additional bytes may also be buffered by this decoder but have not been consumed.
      */
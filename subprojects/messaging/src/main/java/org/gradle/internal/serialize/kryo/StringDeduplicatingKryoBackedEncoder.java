@@ -20,6 +20,7 @@
 import com.google.common.collect.Maps;
 import org.gradle.internal.serialize.AbstractEncoder;
 import org.gradle.internal.serialize.FlushableEncoder;
+import org.gradle.internal.serialize.SharedStringTable;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
@@ -30,13 +31,22 @@ public class StringDeduplicatingKryoBackedEncoder extends AbstractEncoder implem
     private Map<String, Integer> strings;
 
     private final Output output;
+    private final SharedStringTable sharedStrings;
 
     public StringDeduplicatingKryoBackedEncoder(OutputStream outputStream) {
         this(outputStream, 4096);
     }
 
     public StringDeduplicatingKryoBackedEncoder(OutputStream outputStream, int bufferSize) {
+        this(outputStream, bufferSize, null);
+    }
+
+    /**
+     * Creates an encoder that writes each string as its id in the given table, or in full when the table is full. The result can only be read by a {@link StringDeduplicatingKryoBackedDecoder} that uses the same table.
+     */
+    public StringDeduplicatingKryoBackedEncoder(OutputStream outputStream, int bufferSize, @Nullable SharedStringTable sharedStrings) {
         output = new Output(outputStream, bufferSize);
+        this.sharedStrings = sharedStrings;
     }
 
     @Override
@@ -84,6 +94,10 @@ public void writeString(CharSequence value) {
 
     @Override
     public void writeNullableString(@Nullable CharSequence value) {
+        if (sharedStrings != null) {
+            writeSharedString(value);
+            return;
+        }
         if (value == null) {
             output.writeInt(-1);
             return;
@@ -104,6 +118,21 @@ public void writeNullableString(@Nullable CharSequence value) {
         }
     }
 
+    private void writeSharedString(@Nullable CharSequence value) {
+        if (value == null) {
+            output.writeInt(StringDeduplicatingKryoBackedDecoder.NULL_STRING, true);
+            return;
+        }
+        String string = value.toString();
+        int id = sharedStrings.idOf(string);
+        if (id == SharedStringTable.NOT_ADDED) {
+            output.writeInt(StringDeduplicatingKryoBackedDecoder.INLINE_STRING, true);
+            output.writeString(string);
+        } else {
+            output.writeInt(id + StringDeduplicatingKryoBackedDecoder.FIRST_SHARED_STRING, true);
+        }
+    }
+
     /**
      * Returns the total number of bytes written by this encoder, some of which may still be buffered.
      */
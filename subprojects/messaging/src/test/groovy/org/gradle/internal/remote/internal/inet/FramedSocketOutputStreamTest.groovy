@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.internal.remote.internal.inet
+
+import org.gradle.internal.remote.internal.KryoBackedMessageSerializer
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.internal.serialize.Serializers
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+
+@Timeout(60)
+class FramedSocketOutputStreamTest extends Specification {
+    def serializer = Serializers.stateful(BaseSerializerFactory.STRING_SERIALIZER)
+    def bufferPool = new DirectBufferPool(1024, 4)
+    def server = ServerSocketChannel.open()
+    SocketConnection<String> sender
+    SocketConnection<String> receiver
+
+    def setup() {
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+        def client = SocketChannel.open(server.socket().getLocalSocketAddress())
+        sender = new SocketConnection<String>(client, new KryoBackedMessageSerializer(), serializer, bufferPool)
+        receiver = new SocketConnection<String>(server.accept(), new KryoBackedMessageSerializer(), serializer)
+    }
+
+    def cleanup() {
+        receiver?.stop()
+        server.close()
+    }
+
+    def "delivers messages of any size in order"() {
+        def random = new Random(1234)
+        def messages = (1..500).collect { index ->
+            def length = random.nextInt(10) == 0 ? random.nextInt(50_000) : random.nextInt(100)
+            (0..<length).collect { (char) ('a' + random.nextInt(26)) }.join("") + index
+        }
+
+        when:
+        def writer = Thread.start {
+            messages.eachWithIndex { message, index ->
+                sender.dispatch(message)
+                if (index % 50 == 0) {
+                    sender.flush()
+                }
+            }
+            sender.stop()
+        }
+        def received = []
+        def message
+        while ((message = receiver.receive()) != null) {
+            received << message
+        }
+        writer.join()
+
+        then:
+        received == messages
+    }
+
+    def "returns buffers to the pool once they have been written"() {
+        when:
+        100.times {
+            sender.dispatch("message " + it)
+        }
+        sender.flush()
+
+        then:
+        bufferPool.retainedCount > 0
+
+        when:
+        def retained = bufferPool.retainedCount
+        sender.dispatch("another message")
+        sender.flush()
+
+        then:
+        bufferPool.retainedCount == retained
+        receiver.receive() == "message 0"
+
+        cleanup:
+        sender.stop()
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.internal.serialize.kryo
+
+import org.gradle.internal.serialize.AbstractCodecTest
+import org.gradle.internal.serialize.Decoder
+import org.gradle.internal.serialize.Encoder
+import org.gradle.internal.serialize.SharedStringTable
+
+class SharedStringTableKryoBackedCodecTest extends AbstractCodecTest {
+    def sharedStrings = new SharedStringTable()
+
+    @Override
+    void encodeTo(OutputStream outputStream, Closure<Encoder> closure) {
+        def encoder = new StringDeduplicatingKryoBackedEncoder(outputStream, 10, sharedStrings)
+        closure.call(encoder)
+        encoder.flush()
+    }
+
+    @Override
+    void decodeFrom(InputStream inputStream, Closure<Decoder> closure) {
+        def decoder = new StringDeduplicatingKryoBackedDecoder(inputStream, 10, sharedStrings)
+        closure.call(decoder)
+    }
+
+    def "writes strings seen by other encoders as ids"() {
+        def longString = "a" * 1000
+
+        when:
+        def first = encode { Encoder encoder ->
+            encoder.writeString(longString)
+        }
+        def second = encode { Encoder encoder ->
+            encoder.writeString("other")
+            encoder.writeString(new StringBuilder(longString))
+        }
+
+        then:
+        first.length == 1
+        second.length == 2
+        sharedStrings.size() == 2
+
+        and:
+        decode(second) { Decoder decoder ->
+            assert decoder.readString() == "other"
+            assert decoder.readString().is(sharedStrings.get(0))
+        }
+    }
+
+    def "writes strings in full once the table is full"() {
+        def table = new SharedStringTable(1)
+        def outputStream = new ByteArrayOutputStream()
+        def encoder = new StringDeduplicatingKryoBackedEncoder(outputStream, 10, table)
+
+        when:
+        encoder.writeString("shared")
+        encoder.writeString("not shared")
+        encoder.writeNullableString(null)
+        encoder.writeString("not shared")
+        encoder.writeString("shared")
+        encoder.flush()
+
+        then:
+        table.size() == 1
+        table.idOf("not shared") == SharedStringTable.NOT_ADDED
+
+        and:
+        def decoder = new StringDeduplicatingKryoBackedDecoder(new ByteArrayInputStream(outputStream.toByteArray()), 10, table)
+        decoder.readString() == "shared"
+        decoder.readString() == "not shared"
+        decoder.readNullableString() == null
+        decoder.readString() == "not shared"
+        decoder.readString() == "shared"
+    }
+
+    def "fails to decode id that is not in the table"() {
+        def outputStream = new ByteArrayOutputStream()
+        def encoder = new StringDeduplicatingKryoBackedEncoder(outputStream, 10, new SharedStringTable())
+        encoder.writeString("not shared")
+        encoder.flush()
+
+        when:
+        decode(outputStream.toByteArray()) { Decoder decoder ->
+            decoder.readString()
+        }
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
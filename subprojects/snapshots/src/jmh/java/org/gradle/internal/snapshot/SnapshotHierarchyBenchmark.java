@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot;
+
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Measures looking up and updating snapshots in wide directories.
+ *
+ * The hierarchy contains a directory with {@link #width} sub-directories, each containing {@link #width} files.
+ * Run with {@code -prof gc} to compare the allocation rate of updates.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SnapshotHierarchyBenchmark {
+    private static final String ROOT = "/some/project";
+    private static final int NUMBER_OF_PATHS = 1024;
+
+    @Param({"8", "128", "1024"})
+    int width;
+
+    @Param({"CASE_SENSITIVE", "CASE_INSENSITIVE"})
+    CaseSensitivity caseSensitivity;
+
+    private SnapshotHierarchy hierarchy;
+    private List<FileSystemNode> children;
+    private ChildIndex childIndex;
+    private VfsRelativePath[] childPaths;
+    private String[] filePaths;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234L);
+        List<CompleteFileSystemLocationSnapshot> directories = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            String directoryPath = ROOT + "/" + directoryName(i);
+            List<CompleteFileSystemLocationSnapshot> files = new ArrayList<>(width);
+            for (int j = 0; j < width; j++) {
+                String name = fileName(j);
+                files.add(new RegularFileSnapshot(directoryPath + "/" + name, name, HashCode.fromInt(random.nextInt()), DefaultFileMetadata.file(0, 0, AccessType.DIRECT)));
+            }
+            files.sort(CompleteFileSystemLocationSnapshot.BY_NAME);
+            directories.add(new CompleteDirectorySnapshot(directoryPath, directoryName(i), files, HashCode.fromInt(random.nextInt()), AccessType.DIRECT));
+        }
+        directories.sort(CompleteFileSystemLocationSnapshot.BY_NAME);
+        CompleteDirectorySnapshot root = new CompleteDirectorySnapshot(ROOT, "project", directories, HashCode.fromInt(random.nextInt()), AccessType.DIRECT);
+        hierarchy = DefaultSnapshotHierarchy.empty(caseSensitivity).store(ROOT, root, SnapshotHierarchy.NodeDiffListener.NOOP);
+
+        children = new ArrayList<>(directories);
+        childIndex = new ChildIndex(children, caseSensitivity);
+        childPaths = new VfsRelativePath[NUMBER_OF_PATHS];
+        filePaths = new String[NUMBER_OF_PATHS];
+        for (int i = 0; i < NUMBER_OF_PATHS; i++) {
+            String directoryPath = ROOT + "/" + directoryName(random.nextInt(width));
+            filePaths[i] = directoryPath + "/" + fileName(random.nextInt(width));
+            childPaths[i] = VfsRelativePath.of(directoryPath).suffixStartingFrom(ROOT.length());
+        }
+    }
+
+    private static String directoryName(int index) {
+        return "directory-" + index;
+    }
+
+    private static String fileName(int index) {
+        return "File" + index + ".java";
+    }
+
+    private int nextPath() {
+        next = (next + 1) & (NUMBER_OF_PATHS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Optional<MetadataSnapshot> findChildWithBinarySearch() {
+        return SnapshotUtil.getMetadataFromChildren(children, null, childPaths[nextPath()], caseSensitivity, Optional::empty);
+    }
+
+    @Benchmark
+    public Optional<MetadataSnapshot> findChildWithIndex() {
+        return SnapshotUtil.getMetadataFromChildren(children, childIndex, childPaths[nextPath()], caseSensitivity, Optional::empty);
+    }
+
+    @Benchmark
+    public Optional<MetadataSnapshot> getMetadata() {
+        return hierarchy.getMetadata(filePaths[nextPath()]);
+    }
+
+    @Benchmark
+    public SnapshotHierarchy invalidateFile() {
+        return hierarchy.invalidate(filePaths[nextPath()], SnapshotHierarchy.NodeDiffListener.NOOP);
+    }
+}
@@ -18,21 +18,33 @@
 
 import com.google.common.collect.ImmutableList;
 
-import java.util.ArrayList;
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
 
 public abstract class AbstractIncompleteSnapshotWithChildren extends AbstractFileSystemNode {
     protected final List<? extends FileSystemNode> children;
+    // Created lazily for nodes with many children. Racing threads create equivalent indexes, so the field doesn't need to be volatile.
+    @Nullable
+    private ChildIndex index;
 
     public AbstractIncompleteSnapshotWithChildren(String pathToParent, List<? extends FileSystemNode> children) {
         super(pathToParent);
-        this.children = children;
+        this.children = ImmutableList.copyOf(children);
+    }
+
+    @Nullable
+    private ChildIndex getChildIndex(CaseSensitivity caseSensitivity) {
+        ChildIndex index = SnapshotUtil.indexFor(children, this.index, caseSensitivity);
+        if (index != this.index) {
+            this.index = index;
+        }
+        return index;
     }
 
     @Override
     public Optional<FileSystemNode> invalidate(VfsRelativePath relativePath, CaseSensitivity caseSensitivity, SnapshotHierarchy.NodeDiffListener diffListener) {
-        return SnapshotUtil.handleChildren(children, relativePath, caseSensitivity, new SnapshotUtil.ChildHandler<Optional<FileSystemNode>>() {
+        return SnapshotUtil.handleChildren(children, getChildIndex(caseSensitivity), relativePath, caseSensitivity, new SnapshotUtil.ChildHandler<Optional<FileSystemNode>>() {
             @Override
             public Optional<FileSystemNode> handleNewChild(int insertBefore) {
                 return Optional.of(withIncompleteChildren());
@@ -48,9 +60,7 @@ public Optional<FileSystemNode> handleChildOfExisting(int childIndex) {
                         if (children.size() == 1) {
                             return withAllChildrenRemoved();
                         }
-                        List<FileSystemNode> merged = new ArrayList<>(children);
-                        merged.remove(childIndex);
-                        return Optional.of(withIncompleteChildren(getPathToParent(), merged));
+                        return Optional.of(withIncompleteChildren(getPathToParent(), SnapshotUtil.withRemovedChild(children, childIndex)));
                     });
             }
         });
@@ -58,14 +68,12 @@ public Optional<FileSystemNode> handleChildOfExisting(int childIndex) {
 
     @Override
     public FileSystemNode store(VfsRelativePath relativePath, CaseSensitivity caseSensitivity, MetadataSnapshot snapshot, SnapshotHierarchy.NodeDiffListener diffListener) {
-        return SnapshotUtil.handleChildren(children, relativePath, caseSensitivity, new SnapshotUtil.ChildHandler<FileSystemNode>() {
+        return SnapshotUtil.handleChildren(children, getChildIndex(caseSensitivity), relativePath, caseSensitivity, new SnapshotUtil.ChildHandler<FileSystemNode>() {
             @Override
             public FileSystemNode handleNewChild(int insertBefore) {
-                List<FileSystemNode> newChildren = new ArrayList<>(children);
                 FileSystemNode newChild = snapshot.asFileSystemNode(relativePath.getAsString());
-                newChildren.add(insertBefore, newChild);
                 diffListener.nodeAdded(newChild);
-                return withIncompleteChildren(getPathToParent(), newChildren);
+                return withIncompleteChildren(getPathToParent(), SnapshotUtil.withInsertedChild(children, insertBefore, newChild));
             }
 
             @Override
@@ -85,7 +93,7 @@ public FileSystemNode withPathToParent(String newPathToParent) {
 
     @Override
     public Optional<MetadataSnapshot> getSnapshot(VfsRelativePath relativePath, CaseSensitivity caseSensitivity) {
-        return SnapshotUtil.getMetadataFromChildren(children, relativePath, caseSensitivity, Optional::empty);
+        return SnapshotUtil.getMetadataFromChildren(children, getChildIndex(caseSensitivity), relativePath, caseSensitivity, Optional::empty);
     }
 
     /**
@@ -115,9 +123,7 @@ private FileSystemNode withReplacedChild(int childIndex, FileSystemNode childToR
         if (children.size() == 1) {
             return withIncompleteChildren(getPathToParent(), ImmutableList.of(newChild));
         }
-        List<FileSystemNode> merged = new ArrayList<>(children);
-        merged.set(childIndex, newChild);
-        return withIncompleteChildren(getPathToParent(), merged);
+        return withIncompleteChildren(getPathToParent(), SnapshotUtil.withReplacedChild(children, childIndex, newChild));
     }
 
     @Override
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot;
+
+import java.util.List;
+
+import static org.gradle.internal.snapshot.CaseSensitivity.CASE_SENSITIVE;
+import static org.gradle.internal.snapshot.PathUtil.isFileSeparator;
+
+/**
+ * A hash index from the first path segment of the children of a node to their position in the sorted list of children.
+ *
+ * Looking up a child of a wide node in the index hashes the searched path once,
+ * instead of calling {@link VfsRelativePath#compareToFirstSegment(String, CaseSensitivity)} for every step of a binary search.
+ * The index only knows about existing children, so finding the position for a new child still requires a binary search.
+ *
+ * Siblings never share their first path segment, so there is at most one matching child.
+ * The index is immutable and can be shared between threads.
+ *
+ * The index is retained together with its node, so it is kept small: each slot is a {@code char},
+ * and the table has between 4/3 and 8/3 slots per child, adding between 3 and 6 bytes per child.
+ * That is about as much as the list of children itself, and little compared to the snapshots of the children.
+ */
+class ChildIndex {
+    /**
+     * Nodes with fewer children are searched without an index, so most nodes don't need one.
+     */
+    static final int MINIMUM_CHILD_COUNT_FOR_INDEX = 128;
+    /**
+     * The position of each child plus one has to fit into a slot.
+     */
+    static final int MAXIMUM_CHILD_COUNT_FOR_INDEX = Character.MAX_VALUE;
+
+    private final CaseSensitivity caseSensitivity;
+    // Position of the child plus one, or 0 for an empty slot
+    private final char[] slots;
+    private final int mask;
+    private final int shift;
+
+    ChildIndex(List<? extends FileSystemNode> children, CaseSensitivity caseSensitivity) {
+        this.caseSensitivity = caseSensitivity;
+        // Keep the load factor between 3/8 and 3/4, so probe sequences stay short
+        int minimumSlotCount = children.size() + (children.size() + 2) / 3;
+        this.slots = new char[Integer.highestOneBit(minimumSlotCount - 1) << 1];
+        this.mask = slots.length - 1;
+        this.shift = Integer.numberOfLeadingZeros(mask);
+        for (int i = 0; i < children.size(); i++) {
+            String pathToParent = children.get(i).getPathToParent();
+            int slot = slotFor(hashFirstSegment(pathToParent, 0, caseSensitivity));
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = (char) (i + 1);
+        }
+    }
+
+    /**
+     * Whether nodes with the given children should use an index to find a child.
+     */
+    static boolean isUsefulFor(List<?> children) {
+        return children.size() >= MINIMUM_CHILD_COUNT_FOR_INDEX && children.size() <= MAXIMUM_CHILD_COUNT_FOR_INDEX;
+    }
+
+    boolean isFor(CaseSensitivity caseSensitivity) {
+        return this.caseSensitivity == caseSensitivity;
+    }
+
+    /**
+     * Returns the position of the child which has the same first path segment as the relative path, or -1 if there is none.
+     *
+     * @param children the children this index was created for.
+     */
+    int find(List<? extends FileSystemNode> children, VfsRelativePath relativePath) {
+        String absolutePath = relativePath.getAbsolutePath();
+        int offset = absolutePath.length() - relativePath.length();
+        int slot = slotFor(hashFirstSegment(absolutePath, offset, caseSensitivity));
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            int position = entry - 1;
+            if (relativePath.compareToFirstSegment(children.get(position).getPathToParent(), caseSensitivity) == 0) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slotFor(int hash) {
+        // Fibonacci hashing: names like File1, File2, ... have similar hashes, and multiplying spreads them into the high bits
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Hashes the segment of the path starting at the offset.
+     *
+     * Segments which {@link VfsRelativePath#compareToFirstSegment(String, CaseSensitivity)} considers equal have the same hash.
+     * When ignoring the case, that is when the upper case of each char converted to lower case is the same.
+     */
+    private static int hashFirstSegment(String path, int offset, CaseSensitivity caseSensitivity) {
+        int hash = 0;
+        boolean caseSensitive = caseSensitivity == CASE_SENSITIVE;
+        for (int i = offset; i < path.length(); i++) {
+            char currentChar = path.charAt(i);
+            if (isFileSeparator(currentChar)) {
+                break;
+            }
+            hash = 31 * hash + (caseSensitive ? currentChar : foldCase(currentChar));
+        }
+        return hash;
+    }
+
+    private static char foldCase(char currentChar) {
+        if (currentChar < 128) {
+            return currentChar >= 'A' && currentChar <= 'Z'
+                ? (char) (currentChar + ('a' - 'A'))
+                : currentChar;
+        }
+        return Character.toLowerCase(Character.toUpperCase(currentChar));
+    }
+}
@@ -22,7 +22,7 @@
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.hash.HashCode;
 
-import java.util.ArrayList;
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,13 +34,25 @@
 public class CompleteDirectorySnapshot extends AbstractCompleteFileSystemLocationSnapshot {
     private final List<CompleteFileSystemLocationSnapshot> children;
     private final HashCode contentHash;
+    // Created lazily for directories with many children. Racing threads create equivalent indexes, so the field doesn't need to be volatile.
+    @Nullable
+    private ChildIndex index;
 
     public CompleteDirectorySnapshot(String absolutePath, String name, List<CompleteFileSystemLocationSnapshot> children, HashCode contentHash, AccessType accessType) {
         super(absolutePath, name, accessType);
-        this.children = children;
+        this.children = ImmutableList.copyOf(children);
         this.contentHash = contentHash;
     }
 
+    @Nullable
+    private ChildIndex getChildIndex(CaseSensitivity caseSensitivity) {
+        ChildIndex index = SnapshotUtil.indexFor(children, this.index, caseSensitivity);
+        if (index != this.index) {
+            this.index = index;
+        }
+        return index;
+    }
+
     @Override
     public HashCode getHash() {
         return contentHash;
@@ -75,14 +87,14 @@ public List<CompleteFileSystemLocationSnapshot> getChildren() {
     @Override
     protected Optional<MetadataSnapshot> getChildSnapshot(VfsRelativePath relativePath, CaseSensitivity caseSensitivity) {
         return Optional.of(
-            SnapshotUtil.getMetadataFromChildren(children, relativePath, caseSensitivity, Optional::empty)
+            SnapshotUtil.getMetadataFromChildren(children, getChildIndex(caseSensitivity), relativePath, caseSensitivity, Optional::empty)
                 .orElseGet(() -> missingSnapshotForAbsolutePath(relativePath.getAbsolutePath()))
         );
     }
 
     @Override
     public Optional<FileSystemNode> invalidate(VfsRelativePath relativePath, CaseSensitivity caseSensitivity, SnapshotHierarchy.NodeDiffListener diffListener) {
-        return SnapshotUtil.handleChildren(children, relativePath, caseSensitivity, new SnapshotUtil.ChildHandler<Optional<FileSystemNode>>() {
+        return SnapshotUtil.handleChildren(children, getChildIndex(caseSensitivity), relativePath, caseSensitivity, new SnapshotUtil.ChildHandler<Optional<FileSystemNode>>() {
             @Override
             public Optional<FileSystemNode> handleNewChild(int insertBefore) {
                 diffListener.nodeRemoved(CompleteDirectorySnapshot.this);
@@ -123,19 +135,8 @@ private List<FileSystemNode> getChildren(int childIndex, @SuppressWarnings("Opti
                 }
 
                 return invalidated
-                    .map(invalidatedChild -> {
-                        List<FileSystemNode> newChildren = new ArrayList<>(children);
-                        newChildren.set(childIndex, invalidatedChild);
-                        return newChildren;
-                    }).orElseGet(() -> {
-                        if (children.size() == 2) {
-                            CompleteFileSystemLocationSnapshot singleChild = childIndex == 0 ? children.get(1) : children.get(0);
-                            return ImmutableList.of(singleChild);
-                        }
-                        List<FileSystemNode> newChildren = new ArrayList<>(children);
-                        newChildren.remove(childIndex);
-                        return newChildren;
-                    });
+                    .map(invalidatedChild -> SnapshotUtil.<FileSystemNode>withReplacedChild(children, childIndex, invalidatedChild))
+                    .orElseGet(() -> SnapshotUtil.<FileSystemNode>withRemovedChild(children, childIndex));
             }
         });
     }
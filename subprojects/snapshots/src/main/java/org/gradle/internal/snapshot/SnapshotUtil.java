@@ -19,6 +19,7 @@
 import com.google.common.collect.ImmutableList;
 import org.gradle.internal.file.FileType;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
@@ -33,6 +34,13 @@ public class SnapshotUtil {
     private static final int MINIMUM_CHILD_COUNT_FOR_BINARY_SEARCH = 10;
 
     public static Optional<MetadataSnapshot> getMetadataFromChildren(List<? extends FileSystemNode> children, VfsRelativePath relativePath, CaseSensitivity caseSensitivity, Supplier<Optional<MetadataSnapshot>> noChildFoundResult) {
+        return getMetadataFromChildren(children, null, relativePath, caseSensitivity, noChildFoundResult);
+    }
+
+    /**
+     * Same as {@link #getMetadataFromChildren(List, VfsRelativePath, CaseSensitivity, Supplier)}, using the index to find the child if there is one.
+     */
+    static Optional<MetadataSnapshot> getMetadataFromChildren(List<? extends FileSystemNode> children, @Nullable ChildIndex childIndex, VfsRelativePath relativePath, CaseSensitivity caseSensitivity, Supplier<Optional<MetadataSnapshot>> noChildFoundResult) {
         int numberOfChildren = children.size();
         switch (numberOfChildren) {
             case 0:
@@ -61,7 +69,9 @@ public static Optional<MetadataSnapshot> getMetadataFromChildren(List<? extends
                     }
                     return noChildFoundResult.get();
                 } else {
-                    int foundChild = SearchUtil.binarySearch(children, child -> relativePath.compareToFirstSegment(child.getPathToParent(), caseSensitivity));
+                    int foundChild = childIndex != null
+                        ? childIndex.find(children, relativePath)
+                        : SearchUtil.binarySearch(children, child -> relativePath.compareToFirstSegment(child.getPathToParent(), caseSensitivity));
                     return (foundChild >= 0 && relativePath.hasPrefix(children.get(foundChild).getPathToParent(), caseSensitivity))
                         ? getSnapshotFromChild(children.get(foundChild), relativePath, caseSensitivity)
                         : noChildFoundResult.get();
@@ -160,6 +170,19 @@ public Optional<FileSystemNode> handleDifferent(int commonPrefixLength) {
     }
 
     public static <T> T handleChildren(List<? extends FileSystemNode> children, VfsRelativePath relativePath, CaseSensitivity caseSensitivity, ChildHandler<T> childHandler) {
+        return handleChildren(children, null, relativePath, caseSensitivity, childHandler);
+    }
+
+    /**
+     * Same as {@link #handleChildren(List, VfsRelativePath, CaseSensitivity, ChildHandler)}, using the index to find an existing child if there is one.
+     */
+    static <T> T handleChildren(List<? extends FileSystemNode> children, @Nullable ChildIndex index, VfsRelativePath relativePath, CaseSensitivity caseSensitivity, ChildHandler<T> childHandler) {
+        if (index != null) {
+            int existingChild = index.find(children, relativePath);
+            if (existingChild >= 0) {
+                return childHandler.handleChildOfExisting(existingChild);
+            }
+        }
         int childIndex = SearchUtil.binarySearch(
             children,
             candidate -> relativePath.compareToFirstSegment(candidate.getPathToParent(), caseSensitivity)
@@ -170,6 +193,54 @@ public static <T> T handleChildren(List<? extends FileSystemNode> children, VfsR
         return childHandler.handleNewChild(-childIndex - 1);
     }
 
+    /**
+     * Returns the index for the children, reusing the existing index if it fits,
+     * or {@code null} if the children are few enough to be searched without an index.
+     */
+    @Nullable
+    static ChildIndex indexFor(List<? extends FileSystemNode> children, @Nullable ChildIndex existingIndex, CaseSensitivity caseSensitivity) {
+        if (!ChildIndex.isUsefulFor(children)) {
+            return null;
+        }
+        return existingIndex != null && existingIndex.isFor(caseSensitivity)
+            ? existingIndex
+            : new ChildIndex(children, caseSensitivity);
+    }
+
+    /**
+     * Returns a copy of the children with the new child inserted at the given position.
+     *
+     * The copy is exactly as large as needed, since the lists of children are retained for a long time.
+     */
+    static <T> ImmutableList<T> withInsertedChild(List<? extends T> children, int insertBefore, T newChild) {
+        ImmutableList.Builder<T> builder = ImmutableList.builderWithExpectedSize(children.size() + 1);
+        builder.addAll(children.subList(0, insertBefore));
+        builder.add(newChild);
+        builder.addAll(children.subList(insertBefore, children.size()));
+        return builder.build();
+    }
+
+    /**
+     * Returns a copy of the children with the child at the given position replaced.
+     */
+    static <T> ImmutableList<T> withReplacedChild(List<? extends T> children, int childIndex, T newChild) {
+        ImmutableList.Builder<T> builder = ImmutableList.builderWithExpectedSize(children.size());
+        builder.addAll(children.subList(0, childIndex));
+        builder.add(newChild);
+        builder.addAll(children.subList(childIndex + 1, children.size()));
+        return builder.build();
+    }
+
+    /**
+     * Returns a copy of the children without the child at the given position.
+     */
+    static <T> ImmutableList<T> withRemovedChild(List<? extends T> children, int childIndex) {
+        ImmutableList.Builder<T> builder = ImmutableList.builderWithExpectedSize(children.size() - 1);
+        builder.addAll(children.subList(0, childIndex));
+        builder.addAll(children.subList(childIndex + 1, children.size()));
+        return builder.build();
+    }
+
     public interface ChildHandler<T> {
         T handleNewChild(int insertBefore);
         T handleChildOfExisting(int childIndex);
@@ -29,6 +29,7 @@
 import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
 import org.gradle.internal.snapshot.MissingFileSnapshot;
 import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.RelativePathSegmentsTracker;
 import org.gradle.internal.snapshot.SnapshottingFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,12 +46,18 @@
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class DirectorySnapshotter {
     private static final Logger LOGGER = LoggerFactory.getLogger(DirectorySnapshotter.class);
@@ -59,17 +66,33 @@ public class DirectorySnapshotter {
     private final FileHasher hasher;
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
+    @Nullable
+    private final ExecutorService hashingExecutor;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, String... defaultExcludes) {
+        this(hasher, stringInterner, null, defaultExcludes);
+    }
+
+    /**
+     * Creates a snapshotter which hashes the regular files it finds on the given executor, when an executor is given.
+     *
+     * The directory tree is still walked on the calling thread, so the filtering and symlink handling are the same as for sequential snapshotting.
+     * The resulting snapshots are identical.
+     */
+    public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, @Nullable ExecutorService hashingExecutor, String... defaultExcludes) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
+        this.hashingExecutor = hashingExecutor;
     }
 
     public CompleteFileSystemLocationSnapshot snapshot(String absolutePath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, final AtomicBoolean hasBeenFiltered) {
         try {
             Path rootPath = Paths.get(absolutePath);
-            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes);
+            SnapshotBuilder builder = hashingExecutor == null
+                ? new ImmediateSnapshotBuilder()
+                : new ParallelHashingSnapshotBuilder(hashingExecutor);
+            PathVisitor visitor = new PathVisitor(builder, predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes);
             Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
             return visitor.getResult();
         } catch (IOException e) {
@@ -170,8 +193,143 @@ public boolean test(String element) {
         }
     }
 
+    /**
+     * Receives the results of the directory walk.
+     */
+    private interface SnapshotBuilder {
+        boolean isRoot();
+
+        Iterable<String> getRelativePath();
+
+        void preVisitDirectory(String absolutePath, String name);
+
+        void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot);
+
+        /**
+         * Visits a regular file, whose snapshot is created by the given supplier. The supplier may be called on a different thread.
+         */
+        void visitRegularFile(Supplier<CompleteFileSystemLocationSnapshot> fileSnapshot);
+
+        void postVisitDirectory(AccessType accessType);
+
+        CompleteFileSystemLocationSnapshot getResult();
+    }
+
+    private static class ImmediateSnapshotBuilder implements SnapshotBuilder {
+        private final MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+
+        @Override
+        public boolean isRoot() {
+            return builder.isRoot();
+        }
+
+        @Override
+        public Iterable<String> getRelativePath() {
+            return builder.getRelativePath();
+        }
+
+        @Override
+        public void preVisitDirectory(String absolutePath, String name) {
+            builder.preVisitDirectory(absolutePath, name);
+        }
+
+        @Override
+        public void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+            builder.visitFile(fileSnapshot);
+        }
+
+        @Override
+        public void visitRegularFile(Supplier<CompleteFileSystemLocationSnapshot> fileSnapshot) {
+            builder.visitFile(fileSnapshot.get());
+        }
+
+        @Override
+        public void postVisitDirectory(AccessType accessType) {
+            builder.postVisitDirectory(accessType);
+        }
+
+        @Override
+        public CompleteFileSystemLocationSnapshot getResult() {
+            return builder.getResult();
+        }
+    }
+
+    /**
+     * Records the walk and submits the snapshotting of regular files to an executor.
+     * The recorded walk is replayed into a {@link MerkleDirectorySnapshotBuilder} once all the files have been snapshotted.
+     */
+    private static class ParallelHashingSnapshotBuilder implements SnapshotBuilder {
+        private final ExecutorService executor;
+        private final RelativePathSegmentsTracker relativePathSegmentsTracker = new RelativePathSegmentsTracker();
+        private final List<Consumer<MerkleDirectorySnapshotBuilder>> steps = new ArrayList<>();
+
+        public ParallelHashingSnapshotBuilder(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public boolean isRoot() {
+            return relativePathSegmentsTracker.isRoot();
+        }
+
+        @Override
+        public Iterable<String> getRelativePath() {
+            return relativePathSegmentsTracker.getRelativePath();
+        }
+
+        @Override
+        public void preVisitDirectory(String absolutePath, String name) {
+            relativePathSegmentsTracker.enter(name);
+            steps.add(builder -> builder.preVisitDirectory(absolutePath, name));
+        }
+
+        @Override
+        public void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+            steps.add(builder -> builder.visitFile(fileSnapshot));
+        }
+
+        @Override
+        public void visitRegularFile(Supplier<CompleteFileSystemLocationSnapshot> fileSnapshot) {
+            Future<CompleteFileSystemLocationSnapshot> task = executor.submit(fileSnapshot::get);
+            steps.add(builder -> builder.visitFile(join(task)));
+        }
+
+        @Override
+        public void postVisitDirectory(AccessType accessType) {
+            relativePathSegmentsTracker.leave();
+            steps.add(builder -> builder.postVisitDirectory(accessType));
+        }
+
+        @Override
+        public CompleteFileSystemLocationSnapshot getResult() {
+            MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+            for (Consumer<MerkleDirectorySnapshotBuilder> step : steps) {
+                step.accept(builder);
+            }
+            return builder.getResult();
+        }
+
+        private static CompleteFileSystemLocationSnapshot join(Future<CompleteFileSystemLocationSnapshot> task) {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
     private static class PathVisitor implements java.nio.file.FileVisitor<Path> {
-        private final MerkleDirectorySnapshotBuilder builder;
+        private final SnapshotBuilder builder;
         private final SnapshottingFilter.DirectoryWalkerPredicate predicate;
         private final AtomicBoolean hasBeenFiltered;
         private final FileHasher hasher;
@@ -181,13 +339,14 @@ private static class PathVisitor implements java.nio.file.FileVisitor<Path> {
         private final Deque<String> parentDirectories = new ArrayDeque<>();
 
         public PathVisitor(
+            SnapshotBuilder builder,
             @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
             AtomicBoolean hasBeenFiltered,
             FileHasher hasher,
             Interner<String> stringInterner,
             DefaultExcludes defaultExcludes
         ) {
-            this.builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+            this.builder = builder;
             this.predicate = predicate;
             this.hasBeenFiltered = hasBeenFiltered;
             this.hasher = hasher;
@@ -257,7 +416,12 @@ private String remapAbsolutePath(Path dir) {
         private void visitResolvedFile(Path file, BasicFileAttributes targetAttributes, AccessType accessType) {
             String internedName = intern(file.getFileName().toString());
             if (shouldVisit(file, internedName, false, builder.getRelativePath())) {
-                builder.visitFile(snapshotFile(file, internedName, targetAttributes, accessType));
+                String internedAbsoluteFilePath = intern(remapAbsolutePath(file));
+                if (targetAttributes.isRegularFile()) {
+                    builder.visitRegularFile(() -> snapshotRegularFile(file, internedAbsoluteFilePath, internedName, targetAttributes, accessType));
+                } else {
+                    builder.visitFile(new MissingFileSnapshot(internedAbsoluteFilePath, internedName, accessType));
+                }
             }
         }
 
@@ -271,18 +435,15 @@ private BasicFileAttributes readAttributesOfSymlinkTarget(Path symlink, BasicFil
             }
         }
 
-        private CompleteFileSystemLocationSnapshot snapshotFile(Path absoluteFilePath, String internedName, BasicFileAttributes attrs, AccessType accessType) {
-            String internedAbsoluteFilePath = intern(remapAbsolutePath(absoluteFilePath));
-            if (attrs.isRegularFile()) {
-                try {
-                    long lastModified = attrs.lastModifiedTime().toMillis();
-                    long fileLength = attrs.size();
-                    FileMetadata metadata = DefaultFileMetadata.file(lastModified, fileLength, accessType);
-                    HashCode hash = hasher.hash(absoluteFilePath.toFile(), fileLength, lastModified);
-                    return new RegularFileSnapshot(internedAbsoluteFilePath, internedName, hash, metadata);
-                } catch (UncheckedIOException e) {
-                    LOGGER.info("Could not read file path '{}'.", absoluteFilePath, e);
-                }
+        private CompleteFileSystemLocationSnapshot snapshotRegularFile(Path absoluteFilePath, String internedAbsoluteFilePath, String internedName, BasicFileAttributes attrs, AccessType accessType) {
+            try {
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                long fileLength = attrs.size();
+                FileMetadata metadata = DefaultFileMetadata.file(lastModified, fileLength, accessType);
+                HashCode hash = hasher.hash(absoluteFilePath.toFile(), fileLength, lastModified);
+                return new RegularFileSnapshot(internedAbsoluteFilePath, internedName, hash, metadata);
+            } catch (UncheckedIOException e) {
+                LOGGER.info("Could not read file path '{}'.", absoluteFilePath, e);
             }
             return new MissingFileSnapshot(internedAbsoluteFilePath, internedName, accessType);
         }
@@ -35,8 +35,10 @@
 import org.gradle.internal.snapshot.impl.DirectorySnapshotter;
 import org.gradle.internal.snapshot.impl.FileSystemSnapshotFilter;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
@@ -52,9 +54,16 @@ public class DefaultVirtualFileSystem extends AbstractVirtualFileSystem {
     private final StripedProducerGuard<String> producingSnapshots = new StripedProducerGuard<>();
 
     public DefaultVirtualFileSystem(FileHasher hasher, Interner<String> stringInterner, Stat stat, CaseSensitivity caseSensitivity, SnapshotHierarchy.DiffCapturingUpdateFunctionDecorator updateFunctionDecorator, String... defaultExcludes) {
+        this(hasher, stringInterner, stat, caseSensitivity, updateFunctionDecorator, null, defaultExcludes);
+    }
+
+    /**
+     * Creates a virtual file system which hashes the files of the directories it snapshots on the given executor, when an executor is given.
+     */
+    public DefaultVirtualFileSystem(FileHasher hasher, Interner<String> stringInterner, Stat stat, CaseSensitivity caseSensitivity, SnapshotHierarchy.DiffCapturingUpdateFunctionDecorator updateFunctionDecorator, @Nullable ExecutorService snapshottingExecutor, String... defaultExcludes) {
         this.stat = stat;
         this.updateFunctionDecorator = updateFunctionDecorator;
-        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, defaultExcludes);
+        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, snapshottingExecutor, defaultExcludes);
         this.hasher = hasher;
         this.root = new AtomicSnapshotHierarchyReference(DefaultSnapshotHierarchy.empty(caseSensitivity));
     }
@@ -137,6 +137,9 @@ abstract class AbstractSnapshotWithChildrenTest<NODE extends FileSystemNode, CHI
         ['name', 'name1/some', 'name2/other/third'],
         ['aa/b1', 'ab/a1', 'name', 'name1/some', 'name2/other/third'],
         ("a".."z").toList(),
+        // Wide enough to be searched via a ChildIndex
+        ("a".."z").collectMany { [it, it * 2, it * 3, it * 4, it * 5] },
+        ("a".."z").collectMany { ["${it}/some".toString(), "${it * 2}/other/third".toString(), it * 3, it * 4, it * 5] },
     ]
 
     /**
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.gradle.internal.snapshot.CaseSensitivity.CASE_INSENSITIVE
+import static org.gradle.internal.snapshot.CaseSensitivity.CASE_SENSITIVE
+
+@Unroll
+class ChildIndexTest extends Specification {
+    def children = (0..<200).collect { PartialDirectorySnapshot.withoutKnownChildren("child$it") }
+        .sort(false) { a, b -> PathUtil.getPathComparator(CASE_SENSITIVE).compare(a.pathToParent, b.pathToParent) } +
+        PartialDirectorySnapshot.withoutKnownChildren("kelvin")
+
+    def "finds every child by its path and by paths of its descendants (#caseSensitivity)"() {
+        def index = new ChildIndex(children, caseSensitivity)
+
+        expect:
+        children.eachWithIndex { child, position ->
+            assert index.find(children, relativePath(child.pathToParent)) == position
+            assert index.find(children, relativePath("${child.pathToParent}/some/descendant")) == position
+            assert index.find(children, relativePath("${child.pathToParent}\\other\\descendant")) == position
+        }
+
+        where:
+        caseSensitivity << CaseSensitivity.values()
+    }
+
+    def "does not find #path (#caseSensitivity)"() {
+        def index = new ChildIndex(children, caseSensitivity)
+
+        expect:
+        index.find(children, relativePath(path)) == -1
+
+        where:
+        [path, caseSensitivity] << [["child200", "child", "chil", "child42a/some", "other", "hild42"], CaseSensitivity.values()].combinations()
+    }
+
+    def "finds children ignoring the case when the file system is case insensitive"() {
+        def caseInsensitiveIndex = new ChildIndex(children, CASE_INSENSITIVE)
+        def caseSensitiveIndex = new ChildIndex(children, CASE_SENSITIVE)
+        def position = children.findIndexOf { it.pathToParent == expectedChild }
+
+        expect:
+        caseInsensitiveIndex.find(children, relativePath(path)) == position
+        caseSensitiveIndex.find(children, relativePath(path)) == -1
+
+        where:
+        path               | expectedChild
+        "CHILD42"          | "child42"
+        "Child7/some/path" | "child7"
+        "\u212Aelvin/some" | "kelvin"
+    }
+
+    def "is only used for nodes with many children"() {
+        expect:
+        !ChildIndex.isUsefulFor(children.subList(0, ChildIndex.MINIMUM_CHILD_COUNT_FOR_INDEX - 1))
+        ChildIndex.isUsefulFor(children.subList(0, ChildIndex.MINIMUM_CHILD_COUNT_FOR_INDEX))
+        SnapshotUtil.indexFor(children.subList(0, 2), null, CASE_SENSITIVE) == null
+        !ChildIndex.isUsefulFor(new ArrayList(Collections.nCopies(ChildIndex.MAXIMUM_CHILD_COUNT_FOR_INDEX + 1, children[0])))
+    }
+
+    def "reuses index for the same case sensitivity"() {
+        def index = SnapshotUtil.indexFor(children, null, CASE_SENSITIVE)
+
+        expect:
+        SnapshotUtil.indexFor(children, index, CASE_SENSITIVE).is(index)
+        SnapshotUtil.indexFor(children, index, CASE_INSENSITIVE).isFor(CASE_INSENSITIVE)
+    }
+
+    private static VfsRelativePath relativePath(String path) {
+        VfsRelativePath.of("/root/" + path).suffixStartingFrom("root/".length())
+    }
+}
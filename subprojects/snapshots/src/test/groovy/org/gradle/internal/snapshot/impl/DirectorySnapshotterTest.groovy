@@ -39,6 +39,7 @@ import spock.lang.Issue
 import spock.lang.Specification
 
 import java.nio.file.Paths
+import java.util.concurrent.Executors
 import java.util.concurrent.atomic.AtomicBoolean
 
 @UsesNativeServices
@@ -258,6 +259,38 @@ class DirectorySnapshotterTest extends Specification {
         pipe.delete()
     }
 
+    @Requires(TestPrecondition.SYMLINKS)
+    def "parallel snapshotting produces the same snapshot as sequential snapshotting"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        (1..50).each {
+            rootDir.file("dir${it % 5}/sub${it % 3}/file${it}.txt") << "content $it"
+            rootDir.file("dir${it % 5}/file${it}.html") << "html $it"
+        }
+        def linkTarget = tmpDir.createDir("linkTarget")
+        linkTarget.file("linked.txt") << "linked"
+        rootDir.file("dir0/linkedDir").createLink(linkTarget)
+        rootDir.file("linkedFile.txt").createLink(linkTarget.file("linked.txt"))
+        rootDir.file("brokenLink").createLink("missing")
+        def patterns = new PatternSet().exclude("dir1/**").include("**/*.txt")
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), executor)
+
+        when:
+        def sequentialFiltered = new AtomicBoolean(false)
+        def parallelFiltered = new AtomicBoolean(false)
+        def sequential = directorySnapshotter.snapshot(rootDir.absolutePath, directoryWalkerPredicate(patterns), sequentialFiltered)
+        def parallel = parallelSnapshotter.snapshot(rootDir.absolutePath, directoryWalkerPredicate(patterns), parallelFiltered)
+
+        then:
+        parallel.hash == sequential.hash
+        describe(parallel) == describe(sequential)
+        parallelFiltered.get() == sequentialFiltered.get()
+
+        cleanup:
+        executor.shutdown()
+    }
+
     def "default excludes are correctly parsed"() {
         def defaultExcludes = new DirectorySnapshotter.DefaultExcludes(DirectoryScanner.getDefaultExcludes())
 
@@ -279,6 +312,27 @@ class DirectorySnapshotterTest extends Specification {
         !defaultExcludes.excludeFile('#some')
     }
 
+    private static List<String> describe(CompleteFileSystemLocationSnapshot snapshot) {
+        def description = []
+        snapshot.accept(new FileSystemSnapshotVisitor() {
+            @Override
+            boolean preVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+                description << "${directorySnapshot.absolutePath} ${directorySnapshot.hash} ${directorySnapshot.accessType}"
+                return true
+            }
+
+            @Override
+            void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+                description << "${fileSnapshot.class.simpleName} ${fileSnapshot.absolutePath} ${fileSnapshot.hash} ${fileSnapshot.accessType}"
+            }
+
+            @Override
+            void postVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+            }
+        })
+        return description
+    }
+
     private static String fileSystemRoot() {
         "${Paths.get("").toAbsolutePath().root}"
     }